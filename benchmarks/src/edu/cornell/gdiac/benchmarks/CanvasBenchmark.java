@@ -0,0 +1,57 @@
+package edu.cornell.gdiac.benchmarks;
+
+import com.badlogic.gdx.graphics.Color;
+import edu.cornell.gdiac.temporary.GameCanvas;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of the shape drawing of {@link GameCanvas}, as used by the level editor grid.
+ *
+ * GL is stubbed, so this measures filling the sprite batch (and any allocation), not the GPU.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CanvasBenchmark {
+    private GameCanvas canvas;
+    private int frame;
+
+    @Setup
+    public void setup() {
+        Stubs.init();
+        canvas = new GameCanvas();
+        canvas.begin();
+    }
+
+    @TearDown
+    public void tearDown() {
+        canvas.end();
+        canvas.dispose();
+    }
+
+    /** Draws one horizontal grid line */
+    @Benchmark
+    public void drawLine() {
+        float y = frame++ % 800;
+        canvas.drawLine(0, y, 1200, y, 2, Color.GRAY);
+    }
+
+    /** Draws one outlined rectangle (four lines) */
+    @Benchmark
+    public void drawRectOutline() {
+        float x = frame++ % 1000;
+        canvas.drawRect(x, 100, x + 200, 700, Color.BLACK, false);
+    }
+
+    /** Draws one filled rectangle */
+    @Benchmark
+    public void drawRectFilled() {
+        float x = frame++ % 1000;
+        canvas.drawRect(x, 100, x + 200, 700, Color.DARK_GRAY, true);
+    }
+}
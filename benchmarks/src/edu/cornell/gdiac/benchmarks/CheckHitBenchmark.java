@@ -0,0 +1,84 @@
+package edu.cornell.gdiac.benchmarks;
+
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import edu.cornell.gdiac.temporary.ChartCompiler;
+import edu.cornell.gdiac.temporary.GameplayController;
+import edu.cornell.gdiac.temporary.entity.Note;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of judging hits when a chord is pressed on every line at once.
+ *
+ * Every line has {@link #notesPerLine} notes spread over the miss window, so one
+ * invocation grades every kind of hit (perfect to off beat) on beat and held notes,
+ * spawning the particles, indicators and sounds that go with them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckHitBenchmark {
+    /** Number of lines of a band member */
+    private static final int LINES = 4;
+
+    @Param({"1", "4", "16"})
+    public int notesPerLine;
+
+    private GameplayController gameplay;
+    private Note[] notes;
+    private boolean[] hitReg;
+    private long currentSample;
+
+    @Setup
+    public void setup() {
+        Stubs.init();
+        gameplay = new GameplayController(1200, 800);
+        gameplay.loadLevel(ChartCompiler.load(Stubs.levelPath("challenger-hard")), Stubs.directory());
+        gameplay.populate(Stubs.directory());
+        gameplay.start();
+
+        TextureRegion texture = Stubs.directory().getRegion("hit");
+        int window = gameplay.getRules().getJudgement().miss;
+        currentSample = 10L * Stubs.SAMPLE_RATE;
+        notes = new Note[LINES * notesPerLine];
+        for (int line = 0; line < LINES; line++) {
+            for (int k = 0; k < notesPerLine; k++) {
+                // every other line holds, so both kinds of note are judged
+                Note.NoteType type = line % 2 == 0 ? Note.NoteType.BEAT : Note.NoteType.HELD;
+                long hitSample = currentSample + (long) k * window / notesPerLine;
+                Note note = new Note(line, type, hitSample - Stubs.SAMPLE_RATE, texture);
+                note.setHitSample(hitSample);
+                if (type == Note.NoteType.HELD) {
+                    note.setHoldSamples(Stubs.SAMPLE_RATE / 2);
+                }
+                notes[line * notesPerLine + k] = note;
+            }
+        }
+        hitReg = new boolean[LINES];
+    }
+
+    @TearDown
+    public void tearDown() {
+        gameplay.dispose();
+    }
+
+    /** Judges every note of the chord */
+    @Benchmark
+    public void checkHit() {
+        Arrays.fill(hitReg, false);
+        for (Note note : notes) {
+            note.setDestroyed(false);
+            note.setHolding(false);
+            note.setHitStatus(0);
+            gameplay.getRules().checkHit(note, currentSample, 3, -1, true, hitReg, false);
+        }
+        // particles are only collected once they age, so drop them like a new frame would
+        gameplay.getParticles().clear();
+        gameplay.getNoteIndicatorParticles().clear();
+    }
+}
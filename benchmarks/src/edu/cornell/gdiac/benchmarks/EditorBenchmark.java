@@ -0,0 +1,61 @@
+package edu.cornell.gdiac.benchmarks;
+
+import edu.cornell.gdiac.temporary.GameCanvas;
+import edu.cornell.gdiac.temporary.editor.EditorMode;
+import edu.cornell.gdiac.temporary.editor.EditorNote;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of placing and removing a note in the level editor as the chart grows.
+ *
+ * The note is placed after every other note of the chart, which is where charts are
+ * usually written, and the editor has to look at the whole chart for conflicts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EditorBenchmark {
+    /** Number of lanes and lines of the edited level */
+    private static final int LANES = 4;
+    private static final int LINES = 4;
+
+    @Param({"1000", "10000"})
+    public int notes;
+
+    private GameCanvas canvas;
+    private EditorMode editor;
+    private int lastPosition;
+
+    @Setup
+    public void setup() throws IOException {
+        Stubs.init();
+        canvas = new GameCanvas();
+        editor = new EditorMode(canvas);
+        editor.populate(Stubs.directory());
+        // a note every quarter second on every line, which snaps to a distinct beat position
+        int perPosition = LANES * LINES;
+        for (int i = 0; i < notes; i++) {
+            int position = (i / perPosition) * Stubs.SAMPLE_RATE / 4;
+            editor.addNote(EditorNote.NoteType.BEAT, i % LANES, (i / LANES) % LINES, position, 0);
+        }
+        lastPosition = (notes / perPosition + 1) * Stubs.SAMPLE_RATE / 4;
+    }
+
+    @TearDown
+    public void tearDown() {
+        canvas.dispose();
+    }
+
+    /** Places a note at the end of the chart and removes it again */
+    @Benchmark
+    public EditorNote addAndDeleteNote() {
+        EditorNote note = editor.addNote(EditorNote.NoteType.BEAT, 0, 0, lastPosition, 0);
+        return editor.deleteNote(0, 0, note.getPos());
+    }
+}
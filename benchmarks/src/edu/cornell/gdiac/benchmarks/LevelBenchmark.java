@@ -0,0 +1,56 @@
+package edu.cornell.gdiac.benchmarks;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.JsonReader;
+import edu.cornell.gdiac.assets.AssetDirectory;
+import edu.cornell.gdiac.temporary.Chart;
+import edu.cornell.gdiac.temporary.Level;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of loading each shipped level: parsing its chart and building the {@link Level}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelBenchmark {
+    @Param({
+            "aliens-easy", "aliens-medium", "aliens-hard",
+            "american-easy", "american-medium", "american-hard",
+            "challenger-easy", "challenger-medium", "challenger-hard",
+            "real-tutorial-easy", "real-tutorial-medium", "real-tutorial-hard",
+            "tutorial-easy", "tutorial-medium", "tutorial-hard",
+            "yr-easy", "yr-medium", "yr-hard"
+    })
+    public String level;
+
+    private AssetDirectory directory;
+    private String json;
+    private Chart chart;
+
+    @Setup
+    public void setup() {
+        directory = Stubs.directory();
+        json = Gdx.files.internal(Stubs.levelPath(level)).readString();
+        chart = Chart.fromJson(new JsonReader().parse(json));
+    }
+
+    /** Parses the level JSON into a chart */
+    @Benchmark
+    public Chart parseChart() {
+        return Chart.fromJson(new JsonReader().parse(json));
+    }
+
+    /** Builds the level (band members, film strips, song) from a parsed chart */
+    @Benchmark
+    public Level construct() {
+        Level level = new Level(chart, directory);
+        level.dispose();
+        return level;
+    }
+}
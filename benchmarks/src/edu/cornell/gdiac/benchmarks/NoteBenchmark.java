@@ -0,0 +1,82 @@
+package edu.cornell.gdiac.benchmarks;
+
+import edu.cornell.gdiac.temporary.ChartCompiler;
+import edu.cornell.gdiac.temporary.GameplayController;
+import edu.cornell.gdiac.temporary.Level;
+import edu.cornell.gdiac.temporary.entity.BandMember;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of the notes of a level: spawning them from the chart, moving them down
+ * the lanes and collecting the ones that were destroyed.
+ *
+ * The level runs on its frame clock, so every invocation is one 60th of a second of song,
+ * no matter how long it took. The song starts over when it ends.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NoteBenchmark {
+    @Param({"tutorial-easy", "aliens-hard", "challenger-hard", "american-hard", "yr-hard"})
+    public String level;
+
+    private GameplayController gameplay;
+    private Level song;
+    private BandMember[] bandMembers;
+
+    @Setup
+    public void setup() {
+        Stubs.init();
+        gameplay = new GameplayController(1200, 800);
+        gameplay.loadLevel(ChartCompiler.load(Stubs.levelPath(level)), Stubs.directory());
+        gameplay.populate(Stubs.directory());
+        gameplay.start();
+        song = gameplay.level;
+        bandMembers = song.getBandMembers();
+        song.setFrameClock(true);
+        song.startmusic();
+        // play into the song, so there are notes on screen from the first invocation
+        for (int i = 0; i < 600; i++) {
+            frame();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        gameplay.dispose();
+    }
+
+    /** A full gameplay frame without input: dead notes, spawning, moving and collecting */
+    @Benchmark
+    public void frame() {
+        if (song.getLevelSample() >= song.getMaxSample()) {
+            gameplay.reloadLevel();
+            gameplay.start();
+            song.setFrameClock(true);
+            song.startmusic();
+        }
+        gameplay.update(1, 0);
+        gameplay.garbageCollect();
+    }
+
+    /** Moves the notes of every band member, without spawning or collecting any */
+    @Benchmark
+    public void updateNotes() {
+        for (BandMember bandMember : bandMembers) {
+            bandMember.updateNotes(gameplay.noteSpawnY, song.getLevelSample());
+        }
+    }
+
+    /** Collects the notes of every band member when none of them were destroyed */
+    @Benchmark
+    public void garbageCollect() {
+        for (BandMember bandMember : bandMembers) {
+            bandMember.garbageCollect();
+        }
+    }
+}
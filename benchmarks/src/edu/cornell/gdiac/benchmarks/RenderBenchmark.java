@@ -0,0 +1,114 @@
+package edu.cornell.gdiac.benchmarks;
+
+import edu.cornell.gdiac.temporary.ChartCompiler;
+import edu.cornell.gdiac.temporary.GameCanvas;
+import edu.cornell.gdiac.temporary.GameplayController;
+import edu.cornell.gdiac.temporary.LevelSelect;
+import edu.cornell.gdiac.temporary.RenderStats;
+import edu.cornell.gdiac.temporary.editor.EditorMode;
+import edu.cornell.gdiac.temporary.editor.EditorNote;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost and render counts of drawing a frame of the gameplay, the level editor and
+ * the level select screen.
+ *
+ * The canvas does not render, so this measures the drawing code and filling the batch.
+ * The {@link RenderStats} of the last frame of each screen (draws, flushes, texture
+ * switches and vertices) are printed at the end of the run; with the textures packed
+ * into atlases, the number of texture switches is what a frame costs the GPU. The counts
+ * of each screen are kept under a budget by RenderCountsTest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+    /** Number of lanes and lines of the edited level */
+    private static final int LANES = 4;
+    private static final int LINES = 4;
+    /** Number of notes of the edited level */
+    private static final int EDITOR_NOTES = 1000;
+
+    private GameCanvas canvas;
+    private GameplayController gameplay;
+    private boolean[] triggers;
+    private boolean[] switches;
+    private EditorMode editor;
+    private LevelSelect levelSelect;
+
+    /** Render counts of the last frame of each screen */
+    private final RenderStats levelStats = new RenderStats();
+    private final RenderStats editorStats = new RenderStats();
+    private final RenderStats levelSelectStats = new RenderStats();
+
+    @Setup
+    public void setup() {
+        Stubs.init();
+        canvas = new GameCanvas(false);
+
+        gameplay = new GameplayController(canvas.getWidth(), canvas.getHeight());
+        gameplay.loadLevel(ChartCompiler.load(Stubs.levelPath("yr-hard")), Stubs.directory());
+        gameplay.populate(Stubs.directory());
+        gameplay.start();
+        gameplay.level.setFrameClock(true);
+        gameplay.level.startmusic();
+        // play into the song, so there are notes on screen
+        for (int i = 0; i < 600; i++) {
+            gameplay.update(1, 0);
+            gameplay.garbageCollect();
+        }
+        triggers = new boolean[LINES];
+        switches = new boolean[LANES];
+
+        editor = new EditorMode(canvas);
+        editor.populate(Stubs.directory());
+        for (int i = 0; i < EDITOR_NOTES; i++) {
+            int position = (i / (LANES * LINES)) * Stubs.SAMPLE_RATE / 4;
+            editor.addNote(EditorNote.NoteType.BEAT, i % LANES, (i / LANES) % LINES, position, 0);
+        }
+
+        levelSelect = new LevelSelect(canvas);
+        levelSelect.populate(Stubs.directory());
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println();
+        System.out.println("Level.drawEverything: " + levelStats);
+        System.out.println("EditorMode.draw:      " + editorStats);
+        System.out.println("LevelSelect.draw:     " + levelSelectStats);
+        System.out.println("Text layouts:         " + canvas.getTextLayoutCache());
+        gameplay.dispose();
+        canvas.dispose();
+    }
+
+    /** Draws the lanes, notes and band members of a level in play */
+    @Benchmark
+    public void levelDraw() {
+        canvas.begin();
+        // no switch in progress, so the goal is the active band member
+        gameplay.level.drawEverything(canvas, gameplay.getActiveBandMember(), gameplay.getActiveBandMember(),
+                triggers, switches, gameplay.inBetweenWidth / 5f);
+        canvas.end();
+        levelStats.set(canvas.getRenderStats());
+    }
+
+    /** Draws the level editor with a chart of {@link #EDITOR_NOTES} notes */
+    @Benchmark
+    public void editorDraw() {
+        editor.draw(1 / 60f);
+        editorStats.set(canvas.getRenderStats());
+    }
+
+    /** Draws the level select screen */
+    @Benchmark
+    public void levelSelectDraw() {
+        levelSelect.draw();
+        levelSelectStats.set(canvas.getRenderStats());
+    }
+}
@@ -0,0 +1,49 @@
+package edu.cornell.gdiac.benchmarks;
+
+import edu.cornell.gdiac.temporary.Judgement;
+import edu.cornell.gdiac.temporary.Scoreboard;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of scoring a hit, with the combo levels and letter grades of a real level.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoreboardBenchmark {
+    /** Hits between two misses */
+    private static final int COMBO = 50;
+
+    private Scoreboard scoreboard;
+    private int hits;
+
+    @Setup
+    public void setup() {
+        Stubs.init();
+        // the same combo levels as the gameplay controller
+        scoreboard = new Scoreboard(4, new int[]{1, 2, 3, 5}, new long[]{10, 20, 30});
+        scoreboard.setletterTH(new long[]{20000, 40000, 60000, 80000});
+    }
+
+    @TearDown
+    public void tearDown() {
+        scoreboard.dispose();
+    }
+
+    /** Scores one hit, with a miss every {@link #COMBO} hits */
+    @Benchmark
+    public long receiveHit() {
+        hits++;
+        if (hits % COMBO == 0) {
+            scoreboard.resetCombo();
+        } else {
+            scoreboard.receiveHit(Judgement.points(hits % 3));
+        }
+        return scoreboard.getScore();
+    }
+}
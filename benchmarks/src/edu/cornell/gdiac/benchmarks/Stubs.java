@@ -0,0 +1,245 @@
+package edu.cornell.gdiac.benchmarks;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.backends.headless.mock.graphics.MockGraphics;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.utils.ObjectMap;
+import edu.cornell.gdiac.assets.AssetDirectory;
+import edu.cornell.gdiac.audio.AudioEngine;
+import edu.cornell.gdiac.audio.MusicQueue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.IntBuffer;
+
+/**
+ * Stand-ins for the graphics and audio of the game, so gameplay code can be benchmarked
+ * without a window or a sound card.
+ *
+ * The benchmarks run in a headless application. Every GL call does nothing, every
+ * sound is silent, and every song is {@link #SONG_LENGTH} seconds long at
+ * {@link #SAMPLE_RATE}. Textures are real (so sizes and film strips work), but are
+ * never uploaded anywhere. The screen is {@link #WIDTH} by {@link #HEIGHT}, so the
+ * screens lay themselves out as in a window.
+ */
+public class Stubs {
+    /** Sample rate of every stubbed song */
+    public static final int SAMPLE_RATE = 44100;
+    /** Length of every stubbed song, in seconds */
+    public static final float SONG_LENGTH = 300f;
+    /** Size of the stubbed screen, in pixels */
+    public static final int WIDTH = 1200;
+    public static final int HEIGHT = 800;
+
+    /** The levels shipped with the game (the JSON files in assets/levels) */
+    public static final String[] LEVELS = {
+            "aliens-easy", "aliens-medium", "aliens-hard",
+            "american-easy", "american-medium", "american-hard",
+            "challenger-easy", "challenger-medium", "challenger-hard",
+            "real-tutorial-easy", "real-tutorial-medium", "real-tutorial-hard",
+            "tutorial-easy", "tutorial-medium", "tutorial-hard",
+            "yr-easy", "yr-medium", "yr-hard"
+    };
+
+    private static boolean initialized;
+    private static AssetDirectory directory;
+
+    /**
+     * Starts the headless application and replaces GL and audio with stubs.
+     *
+     * This is safe to call from every benchmark setup; only the first call does anything.
+     */
+    public static synchronized void init() {
+        if (initialized) {
+            return;
+        }
+        HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+        // never call render, the benchmarks drive the game themselves
+        config.updatesPerSecond = -1;
+        new HeadlessApplication(new ApplicationAdapter() {}, config);
+        // the editor logs every placement at the debug level, which would flood the output
+        Gdx.app.setLogLevel(Application.LOG_INFO);
+        // a headless screen has no size, which would leave every screen empty
+        Gdx.graphics = new MockGraphics() {
+            @Override
+            public int getWidth() {
+                return WIDTH;
+            }
+
+            @Override
+            public int getHeight() {
+                return HEIGHT;
+            }
+
+            @Override
+            public int getBackBufferWidth() {
+                return WIDTH;
+            }
+
+            @Override
+            public int getBackBufferHeight() {
+                return HEIGHT;
+            }
+        };
+
+        GL20 gl = stub(GL20.class);
+        Gdx.gl = gl;
+        Gdx.gl20 = gl;
+        Gdx.audio = stub(AudioEngine.class);
+        // shaders have no uniforms when nothing is compiled
+        ShaderProgram.pedantic = false;
+        initialized = true;
+    }
+
+    /**
+     * Returns the path of a shipped level, relative to the assets directory
+     *
+     * @param level the name of the level (see {@link #LEVELS})
+     * @return the path of the level JSON
+     */
+    public static String levelPath(String level) {
+        return "levels/" + level + ".json";
+    }
+
+    /**
+     * Returns an asset directory that answers every request without loading anything.
+     *
+     * Every texture is a blank 256x256 texture (one per key), every font is the libGDX default
+     * font and every song is a stub. Other asset types are not available.
+     *
+     * @return the stubbed asset directory
+     */
+    public static synchronized AssetDirectory directory() {
+        init();
+        if (directory == null) {
+            directory = new StubDirectory();
+        }
+        return directory;
+    }
+
+    /**
+     * Returns an object that does nothing for the given interface.
+     *
+     * Methods return zero, false or null, except that methods returning an interface
+     * return a stub of that interface, and sample rates and durations are those of a
+     * {@link #SONG_LENGTH} second song at {@link #SAMPLE_RATE}.
+     *
+     * @param type the interface to stub
+     * @return the stub
+     */
+    public static <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{type}, new StubHandler(type)));
+    }
+
+    private static class StubHandler implements InvocationHandler {
+        /** The stubbed interface */
+        private final Class<?> type;
+        /** Names handed out by glGen* and glCreate* */
+        private int handles;
+
+        StubHandler(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "Stub " + type.getSimpleName();
+                case "getSampleRate":
+                    return SAMPLE_RATE;
+                case "getDuration":
+                    return SONG_LENGTH;
+                case "glGetShaderiv":
+                case "glGetProgramiv":
+                    // everything compiles and links, and has no attributes or uniforms
+                    int pname = (Integer) args[1];
+                    ((IntBuffer) args[2]).put(0, pname == GL20.GL_COMPILE_STATUS || pname == GL20.GL_LINK_STATUS ? 1 : 0);
+                    return null;
+                default:
+                    break;
+            }
+            if (name.startsWith("glGen") || name.startsWith("glCreate")) {
+                return ++handles;
+            }
+            // covariant overrides (e.g. AudioEngine.newMusic) must return the most specific type
+            Class<?> returns = type.getMethod(name, method.getParameterTypes()).getReturnType();
+            if (returns.isInterface()) {
+                return stub(returns);
+            }
+            if (returns == boolean.class) {
+                return false;
+            } else if (returns == int.class) {
+                return 0;
+            } else if (returns == long.class) {
+                return 0L;
+            } else if (returns == float.class) {
+                return 0f;
+            } else if (returns == double.class) {
+                return 0d;
+            } else if (returns == short.class) {
+                return (short) 0;
+            } else if (returns == byte.class) {
+                return (byte) 0;
+            } else if (returns == char.class) {
+                return (char) 0;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * An asset directory that hands out the same stub for every key, except for textures:
+     * every key gets its own texture (of the same image), so texture switches can be counted.
+     */
+    private static class StubDirectory extends AssetDirectory {
+        private final Pixmap pixmap;
+        private final ObjectMap<String, Texture> textures = new ObjectMap<String, Texture>();
+        private final BitmapFont font;
+        private final MusicQueue music;
+
+        StubDirectory() {
+            super("assets.json");
+            // kept for as long as the textures that share it
+            pixmap = new Pixmap(256, 256, Pixmap.Format.RGBA8888);
+            font = new BitmapFont();
+            music = stub(MusicQueue.class);
+        }
+
+        @Override
+        public <T> T getEntry(String key, Class<T> type) {
+            if (type == Texture.class) {
+                Texture texture = textures.get(key);
+                if (texture == null) {
+                    texture = new Texture(pixmap);
+                    textures.put(key, texture);
+                }
+                return type.cast(texture);
+            } else if (type == BitmapFont.class) {
+                return type.cast(font);
+            } else if (type == MusicQueue.class) {
+                return type.cast(music);
+            }
+            return null;
+        }
+
+        @Override
+        public <T> boolean hasEntry(String key, Class<T> type) {
+            return getEntry(key, type) != null;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package edu.cornell.gdiac.benchmarks;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
+import edu.cornell.gdiac.temporary.ChartCompiler;
+import edu.cornell.gdiac.temporary.GameCanvas;
+import edu.cornell.gdiac.temporary.GameplayController;
+import edu.cornell.gdiac.temporary.LevelSelect;
+import edu.cornell.gdiac.temporary.RecordingBatch;
+import edu.cornell.gdiac.temporary.RenderStats;
+import edu.cornell.gdiac.temporary.editor.EditorMode;
+import edu.cornell.gdiac.temporary.editor.EditorNote;
+import edu.cornell.gdiac.temporary.entity.BandMember;
+import edu.cornell.gdiac.temporary.entity.Note;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the draws, flushes and texture switches counted by {@link RecordingBatch}.
+ *
+ * The batch is checked against draw sequences whose counts are known, then the screens of
+ * {@link RenderBenchmark} are drawn through it and their counts checked against a budget.
+ * Every texture of the stubbed asset directory is its own texture (there are no atlases),
+ * so the budgets are those of a game whose textures are not packed.
+ */
+public class RenderCountsTest {
+    /**
+     * Budget of a frame of a four band member level, without its notes: the background,
+     * and for every band member its lanes, border, character and bar, the hit bar of the
+     * active band member and the switch bars of the others, and the autoplay overlay.
+     * Every texture of the frame may be switched to once.
+     */
+    private static final int LEVEL_DRAWS = 80;
+    private static final int LEVEL_SWITCHES = 45;
+    /** Budget of a beat or switch note (a sprite that may be cut at the edge of its lane) */
+    private static final int NOTE_DRAWS = 2;
+    private static final int NOTE_SWITCHES = 1;
+    /** Budget of a held note: its trail, head and end (each of which may be cut), and its splashes */
+    private static final int HELD_NOTE_DRAWS = 64;
+    private static final int HELD_NOTE_SWITCHES = 5;
+
+    /** Number of notes of the edited level */
+    private static final int EDITOR_NOTES = 100;
+    /**
+     * Budget of a frame of the level editor, without its notes: four lanes with their beat
+     * lines, and the buttons. The lanes, lines and buttons share the white texture of the
+     * canvas, so the switches do not grow with the notes.
+     */
+    private static final int EDITOR_DRAWS = 300;
+    private static final int EDITOR_SWITCHES = 10;
+
+    /** Budget of a frame of the level select screen: its buttons, three album covers and a best score */
+    private static final int LEVEL_SELECT_DRAWS = 24;
+    private static final int LEVEL_SELECT_SWITCHES = 24;
+
+    private Texture a;
+    private Texture b;
+    private RecordingBatch batch;
+    /** A canvas that only counts, for drawing whole screens */
+    private GameCanvas canvas;
+
+    @Before
+    public void setup() {
+        Stubs.init();
+        a = Stubs.directory().getEntry("a", Texture.class);
+        b = Stubs.directory().getEntry("b", Texture.class);
+        batch = new RecordingBatch(null);
+        canvas = new GameCanvas(false);
+    }
+
+    @After
+    public void tearDown() {
+        canvas.dispose();
+    }
+
+    @Test
+    public void drawsOfOneTextureShareAFlush() {
+        batch.begin();
+        for (int i = 0; i < 10; i++) {
+            batch.draw(a, 0, 0);
+        }
+        batch.end();
+        assertCounts(batch.getStats(), 10, 1, 1, 40);
+    }
+
+    @Test
+    public void textureSwitchFlushes() {
+        batch.begin();
+        batch.draw(a, 0, 0);
+        batch.draw(a, 0, 0);
+        batch.draw(b, 0, 0);
+        batch.draw(a, 0, 0);
+        batch.end();
+        assertCounts(batch.getStats(), 4, 3, 3, 16);
+    }
+
+    @Test
+    public void fullBatchFlushes() {
+        int quads = RecordingBatch.CAPACITY / 4 + 1;
+        batch.begin();
+        for (int i = 0; i < quads; i++) {
+            batch.draw(a, 0, 0);
+        }
+        batch.end();
+        assertCounts(batch.getStats(), quads, 2, 1, 4 * quads);
+    }
+
+    @Test
+    public void blendingChangeFlushes() {
+        batch.begin();
+        batch.draw(a, 0, 0);
+        batch.setBlendFunction(GL20.GL_ONE, GL20.GL_ONE);
+        batch.draw(a, 0, 0);
+        // setting the same function again does not flush
+        batch.setBlendFunction(GL20.GL_ONE, GL20.GL_ONE);
+        batch.draw(a, 0, 0);
+        batch.end();
+        assertCounts(batch.getStats(), 3, 2, 1, 12);
+    }
+
+    @Test
+    public void flushWithNothingPendingIsNotCounted() {
+        batch.begin();
+        batch.flush();
+        batch.draw(a, 0, 0);
+        batch.flush();
+        batch.flush();
+        batch.end();
+        assertCounts(batch.getStats(), 1, 1, 1, 4);
+    }
+
+    @Test
+    public void beginResetsTheCounts() {
+        batch.begin();
+        batch.draw(a, 0, 0);
+        batch.draw(b, 0, 0);
+        batch.end();
+        batch.begin();
+        batch.draw(b, 0, 0);
+        batch.end();
+        assertCounts(batch.getStats(), 1, 1, 1, 4);
+    }
+
+    @Test
+    public void levelDraw() {
+        GameplayController gameplay = new GameplayController(canvas.getWidth(), canvas.getHeight());
+        gameplay.loadLevel(ChartCompiler.load(Stubs.levelPath("yr-hard")), Stubs.directory());
+        gameplay.populate(Stubs.directory());
+        gameplay.start();
+        gameplay.level.setFrameClock(true);
+        gameplay.level.startmusic();
+        // play into the song, so there are notes on screen
+        for (int i = 0; i < 600; i++) {
+            gameplay.update(1, 0);
+            gameplay.garbageCollect();
+        }
+        int active = gameplay.getActiveBandMember();
+        BandMember[] members = gameplay.level.getBandMembers();
+        assertEquals("band members", 4, members.length);
+
+        // the notes drawn are the hit notes of the active band member and the switch notes of the others
+        int notes = 0;
+        int held = 0;
+        for (int i = 0; i < members.length; i++) {
+            for (Note note : i == active ? members[i].getHitNotes() : members[i].getSwitchNotes()) {
+                if (!note.isDestroyed()) {
+                    if (note.getNoteType() == Note.NoteType.HELD) {
+                        held++;
+                    } else {
+                        notes++;
+                    }
+                }
+            }
+        }
+        assertTrue("no notes on screen", notes + held > 0);
+
+        canvas.begin();
+        gameplay.level.drawEverything(canvas, active, active, new boolean[4], new boolean[4], gameplay.inBetweenWidth / 5f);
+        canvas.end();
+        assertWithinBudget(canvas.getRenderStats(),
+                LEVEL_DRAWS + notes * NOTE_DRAWS + held * HELD_NOTE_DRAWS,
+                LEVEL_SWITCHES + notes * NOTE_SWITCHES + held * HELD_NOTE_SWITCHES);
+        gameplay.dispose();
+    }
+
+    @Test
+    public void editorDraw() {
+        EditorMode editor = new EditorMode(canvas);
+        editor.populate(Stubs.directory());
+        for (int i = 0; i < EDITOR_NOTES; i++) {
+            editor.addNote(EditorNote.NoteType.BEAT, i % 4, (i / 4) % 4, (i / 16) * Stubs.SAMPLE_RATE / 4, 0);
+        }
+        editor.draw(1 / 60f);
+        assertWithinBudget(canvas.getRenderStats(), EDITOR_DRAWS + EDITOR_NOTES * NOTE_DRAWS, EDITOR_SWITCHES);
+    }
+
+    @Test
+    public void levelSelectDraw() {
+        LevelSelect levelSelect = new LevelSelect(canvas);
+        levelSelect.populate(Stubs.directory());
+        levelSelect.draw();
+        assertWithinBudget(canvas.getRenderStats(), LEVEL_SELECT_DRAWS, LEVEL_SELECT_SWITCHES);
+    }
+
+    private static void assertCounts(RenderStats stats, int draws, int flushes, int switches, int vertices) {
+        assertEquals("draws", draws, stats.getDraws());
+        assertEquals("flushes", flushes, stats.getFlushes());
+        assertEquals("texture switches", switches, stats.getTextureSwitches());
+        assertEquals("vertices", vertices, stats.getVertices());
+    }
+
+    /**
+     * Checks the counts of a frame against its budget
+     *
+     * A frame may flush once per texture switch, once per full batch and once at the end.
+     *
+     * @param stats     the counts of the frame
+     * @param draws     the most draws the frame may make
+     * @param switches  the most texture switches the frame may make
+     */
+    private static void assertWithinBudget(RenderStats stats, int draws, int switches) {
+        assertTrue("nothing was drawn", stats.getDraws() > 0);
+        assertTrue("draws " + stats.getDraws() + " > " + draws, stats.getDraws() <= draws);
+        assertTrue("texture switches " + stats.getTextureSwitches() + " > " + switches,
+                stats.getTextureSwitches() <= switches);
+        int flushes = switches + stats.getVertices() / RecordingBatch.CAPACITY + 1;
+        assertTrue("flushes " + stats.getFlushes() + " > " + flushes, stats.getFlushes() <= flushes);
+    }
+}
@@ -16,19 +16,25 @@
  */
 package edu.cornell.gdiac.assets;
 
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.assets.AssetDescriptor;
+import com.badlogic.gdx.assets.AssetLoaderParameters;
 import com.badlogic.gdx.assets.AssetManager;
 import com.badlogic.gdx.assets.loaders.*;
 import com.badlogic.gdx.assets.loaders.resolvers.InternalFileHandleResolver;
 import com.badlogic.gdx.audio.Music;
 import com.badlogic.gdx.audio.Sound;
+import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.*;
 import com.badlogic.gdx.graphics.g2d.freetype.*;
 import com.badlogic.gdx.scenes.scene2d.ui.Skin;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.JsonReader;
 import com.badlogic.gdx.utils.JsonValue;
 import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ObjectSet;
 import edu.cornell.gdiac.audio.*;
 import edu.cornell.gdiac.util.*;
 
@@ -44,8 +50,18 @@ import edu.cornell.gdiac.util.*;
  * objects.  However, it also requires {@link AssetParser} objects.  An asset parser
  * takes an JSON entry in the directory and instructs the appropriate loader how to
  * load that file.  This class has built in parsers for the classes {@link Texture}, 
- * {@link TextureRegion},  {@link BitmapFont}, {@link SoundEffect}, {@link MusicQueue},
- * and {@link JsonValue}.
+ * {@link TextureRegion},  {@link TextureAtlas}, {@link BitmapFont}, {@link SoundEffect},
+ * {@link MusicQueue}, and {@link JsonValue}.
+ *
+ * Textures may be packed into atlases at build time. Use {@link #getRegion} to get a
+ * texture as a region of its atlas (or of the plain texture if it was not packed).
+ * A texture that was packed is not loaded on its own, so {@link #getEntry} returns
+ * its atlas page instead.
+ *
+ * Textures and atlases may also be grouped into tiers, in the "tiers" section of the
+ * directory.  The assets of a tier are not loaded with the rest of the directory, but
+ * only when {@link #loadTier} is called, and {@link #unloadTier} releases them again.
+ * This way, each screen only keeps the assets it needs in memory.
  *
  * If you wish to add custom assets, you need to add BOTH a custom {@link AssetLoader}
  * and a custom {@link AssetParser} to this manager.  While a type can only have one
@@ -69,6 +85,21 @@ public class AssetDirectory extends AssetManager {
     protected Index contents;
     /** The dedicated loader for the {@link Index} class */
     protected DirectoryLoader topLoader;
+    /** The regions returned by {@link #getRegion}, so each key is only looked up once */
+    protected ObjectMap<String, TextureRegion> regions;
+    /** The files of each tier of the directory */
+    protected ObjectMap<String, Array<String>> tiers;
+    /** The tiers that are currently loaded */
+    protected Array<String> loadedTiers;
+    /** The load requests of every tier file, deferred until a tier with the file is loaded */
+    protected ObjectMap<String, Array<AssetDescriptor>> deferred;
+    /** The atlas key of every texture packed into an atlas of the directory */
+    protected ObjectMap<String, String> packed;
+    /** The texture files only used by packed textures, which are never loaded */
+    protected ObjectSet<String> packedFiles;
+
+    /** The directory sections that may have entries in a tier */
+    private static final String[] TIERED_SECTIONS = { "textures", "atlases" };
 
     /**
      * This class represents the top level index of an asset directory.
@@ -165,6 +196,7 @@ public class AssetDirectory extends AssetManager {
         // And now the default parsers
         topLoader.addParser( new JsonValueParser() );
         topLoader.addParser( new TextureParser() );
+        topLoader.addParser( new AtlasParser() );
         topLoader.addParser( new TextureRegionParser() );
         topLoader.addParser( new FilmStripParser() );
         topLoader.addParser( new FreetypeFontParser() );
@@ -204,6 +236,9 @@ public class AssetDirectory extends AssetManager {
      * Any additional asset parsers should be added with the {@link #addParser} method. 
      */
     public void loadAssets() {
+        JsonValue json = new JsonReader().parse( resolver.resolve( filename ) );
+        readAtlases( json );
+        readTiers( json );
         DirectoryLoader.DirectoryLoaderParameters params = new DirectoryLoader.DirectoryLoaderParameters();
         params.loadedCallback = callback;
         load( filename, Index.class, params );
@@ -221,10 +256,300 @@ public class AssetDirectory extends AssetManager {
         }
         for (ObjectMap<String, String> category : contents.keymap.values()) {
             for (String filename : category.values()) {
-                unload( filename );
+                if (packedFiles.contains( filename )) {
+                    continue;
+                }
+                if (!deferred.containsKey( filename ) || isResident( filename )) {
+                    unload( filename );
+                }
             }
         }
         contents = null;
+        regions = null;
+        tiers = null;
+        loadedTiers = null;
+        deferred = null;
+        packed = null;
+        packedFiles = null;
+    }
+
+    /**
+     * Queues a file to be loaded
+     *
+     * While the directory itself is loading, the files of its tiers are not queued.
+     * Their requests are kept until a tier with the file is loaded. Textures that were
+     * packed into an atlas are not loaded at all.
+     *
+     * @param fileName  the file name of the asset
+     * @param type      the asset type
+     * @param parameter the loader parameters (may be null)
+     */
+    @Override
+    public synchronized <T> void load(String fileName, Class<T> type, AssetLoaderParameters<T> parameter) {
+        if (contents == null && type == Texture.class && packedFiles != null && packedFiles.contains( fileName )) {
+            return;
+        }
+        Array<AssetDescriptor> requests = deferred == null ? null : deferred.get( fileName );
+        if (requests != null && contents == null) {
+            requests.add( new AssetDescriptor<T>( fileName, type, parameter ) );
+            return;
+        }
+        super.load( fileName, type, parameter );
+    }
+
+    /**
+     * Reads the regions of the atlases of the asset directory
+     *
+     * Every region of an atlas is the texture with the same key. A texture file is
+     * skipped when loading the directory if all of its keys were packed. Atlases that
+     * were not generated yet are ignored, so their textures are loaded as usual.
+     *
+     * @param json  the contents of the asset directory
+     */
+    private void readAtlases(JsonValue json) {
+        packed = new ObjectMap<String, String>();
+        packedFiles = new ObjectSet<String>();
+        for (JsonValue entry = json.getChild( "atlases" ); entry != null; entry = entry.next()) {
+            String file = entry.isString() ? entry.asString() : entry.getString( "file", null );
+            FileHandle handle = file == null ? null : resolver.resolve( file );
+            if (handle == null || !handle.exists()) {
+                continue;
+            }
+            TextureAtlas.TextureAtlasData data = new TextureAtlas.TextureAtlasData( handle, handle.parent(), false );
+            for (TextureAtlas.TextureAtlasData.Region region : data.getRegions()) {
+                packed.put( region.name, entry.name() );
+            }
+        }
+
+        ObjectSet<String> unpacked = new ObjectSet<String>();
+        for (JsonValue entry = json.getChild( "textures" ); entry != null; entry = entry.next()) {
+            String file = entry.isString() ? entry.asString() : entry.getString( "file", null );
+            if (file != null) {
+                if (packed.containsKey( entry.name() )) {
+                    packedFiles.add( file );
+                } else {
+                    unpacked.add( file );
+                }
+            }
+        }
+        for (String file : unpacked) {
+            packedFiles.remove( file );
+        }
+    }
+
+    /**
+     * Reads the tiers of the asset directory
+     *
+     * The "tiers" section maps each tier name to a list of texture and atlas keys.
+     * Any key listed in a tier is also a tier on its own, so that a single asset (like
+     * the background of a level) can be loaded without the rest of its tier.  A file
+     * that is also used by a key outside of every tier is loaded with the directory.
+     *
+     * @param json  the contents of the asset directory
+     */
+    private void readTiers(JsonValue json) {
+        tiers = new ObjectMap<String, Array<String>>();
+        loadedTiers = new Array<String>();
+        deferred = new ObjectMap<String, Array<AssetDescriptor>>();
+
+        JsonValue section = json.get( "tiers" );
+        if (section == null) {
+            return;
+        }
+
+        ObjectMap<String, Array<String>> keyfiles = new ObjectMap<String, Array<String>>();
+        for (String name : TIERED_SECTIONS) {
+            for (JsonValue entry = json.getChild( name ); entry != null; entry = entry.next()) {
+                String file = entry.isString() ? entry.asString() : entry.getString( "file", null );
+                if (file != null) {
+                    if (!keyfiles.containsKey( entry.name() )) {
+                        keyfiles.put( entry.name(), new Array<String>() );
+                    }
+                    keyfiles.get( entry.name() ).add( file );
+                }
+            }
+        }
+
+        ObjectSet<String> tiered = new ObjectSet<String>();
+        for (JsonValue tier = section.child(); tier != null; tier = tier.next()) {
+            for (String key : tier.asStringArray()) {
+                if (keyfiles.containsKey( key )) {
+                    tiered.add( key );
+                } else {
+                    Gdx.app.error( "AssetDirectory", "Tier " + tier.name() + " has no asset " + key );
+                }
+            }
+        }
+        ObjectSet<String> eager = new ObjectSet<String>();
+        for (ObjectMap.Entry<String, Array<String>> entry : keyfiles.entries()) {
+            if (!tiered.contains( entry.key )) {
+                eager.addAll( entry.value );
+            }
+        }
+
+        for (JsonValue tier = section.child(); tier != null; tier = tier.next()) {
+            Array<String> files = new Array<String>();
+            for (String key : tier.asStringArray()) {
+                addTierFiles( files, keyfiles.get( key ), eager );
+            }
+            tiers.put( tier.name(), files );
+        }
+        for (String key : tiered) {
+            if (!tiers.containsKey( key )) {
+                Array<String> files = new Array<String>();
+                addTierFiles( files, keyfiles.get( key ), eager );
+                tiers.put( key, files );
+            }
+        }
+    }
+
+    /**
+     * Adds the files of a key to a tier, deferring their loading
+     *
+     * @param files     the files of the tier
+     * @param keyfiles  the files of the key
+     * @param eager     the files loaded with the directory
+     */
+    private void addTierFiles(Array<String> files, Array<String> keyfiles, ObjectSet<String> eager) {
+        if (keyfiles == null) {
+            return;
+        }
+        for (int ii = 0; ii < keyfiles.size; ii++) {
+            String file = keyfiles.get( ii );
+            if (!eager.contains( file ) && !files.contains( file, false )) {
+                files.add( file );
+                if (!deferred.containsKey( file )) {
+                    deferred.put( file, new Array<AssetDescriptor>() );
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if a file is part of a loaded tier
+     *
+     * @param file  the file name
+     *
+     * @return true if a file is part of a loaded tier
+     */
+    private boolean isResident(String file) {
+        for (int ii = 0; ii < loadedTiers.size; ii++) {
+            if (tiers.get( loadedTiers.get( ii ) ).contains( file, false )) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queues the assets of a tier to be loaded
+     *
+     * The assets are loaded by {@link #update}, like any other queued asset. Use
+     * {@link #finishLoadingTier} to wait for them. Files shared with an already loaded
+     * tier are not loaded twice.
+     *
+     * The method {@link #loadAssets} must have finished for this method to do anything.
+     *
+     * @param name  the tier name (or the key of an asset in a tier)
+     */
+    public void loadTier(String name) {
+        Array<String> files = tiers == null ? null : tiers.get( name );
+        if (files == null || contents == null) {
+            Gdx.app.error( "AssetDirectory", "No asset tier " + name );
+            return;
+        }
+        if (loadedTiers.contains( name, false )) {
+            return;
+        }
+        for (int ii = 0; ii < files.size; ii++) {
+            String file = files.get( ii );
+            if (!isResident( file )) {
+                Array<AssetDescriptor> requests = deferred.get( file );
+                for (int jj = 0; jj < requests.size; jj++) {
+                    load( requests.get( jj ) );
+                }
+            }
+        }
+        loadedTiers.add( name );
+        if (regions != null) {
+            regions.clear();
+        }
+    }
+
+    /**
+     * Blocks until every asset of a tier is loaded
+     *
+     * Other queued assets may still be loading when this method returns.
+     *
+     * @param name  the tier name (or the key of an asset in a tier)
+     */
+    public void finishLoadingTier(String name) {
+        if (!isTierLoaded( name )) {
+            loadTier( name );
+        }
+        Array<String> files = tiers == null ? null : tiers.get( name );
+        if (files == null) {
+            return;
+        }
+        for (int ii = 0; ii < files.size; ii++) {
+            String file = files.get( ii );
+            // Files that were never requested (like atlases that were not packed) are skipped
+            if (deferred.get( file ).size > 0 && !isLoaded( file )) {
+                finishLoadingAsset( file );
+            }
+        }
+        if (regions != null) {
+            regions.clear();
+        }
+    }
+
+    /**
+     * Unloads the assets of a tier
+     *
+     * Files shared with another loaded tier stay loaded. Nothing happens if the tier
+     * is not loaded.
+     *
+     * @param name  the tier name (or the key of an asset in a tier)
+     */
+    public void unloadTier(String name) {
+        if (loadedTiers == null || !loadedTiers.removeValue( name, false )) {
+            return;
+        }
+        Array<String> files = tiers.get( name );
+        for (int ii = 0; ii < files.size; ii++) {
+            String file = files.get( ii );
+            if (!isResident( file )) {
+                Array<AssetDescriptor> requests = deferred.get( file );
+                for (int jj = 0; jj < requests.size; jj++) {
+                    unload( file );
+                }
+            }
+        }
+        if (regions != null) {
+            regions.clear();
+        }
+    }
+
+    /**
+     * Returns true if the tier is loaded (or queued to load)
+     *
+     * @param name  the tier name (or the key of an asset in a tier)
+     *
+     * @return true if the tier is loaded (or queued to load)
+     */
+    public boolean isTierLoaded(String name) {
+        return loadedTiers != null && loadedTiers.contains( name, false );
+    }
+
+    /**
+     * Returns the names of the loaded tiers
+     *
+     * The array is a copy, so it is safe to unload tiers while going through it.
+     *
+     * @return the names of the loaded tiers
+     */
+    public Array<String> getLoadedTiers() {
+        return loadedTiers == null ? new Array<String>() : new Array<String>( loadedTiers );
     }
     
     /**
@@ -275,28 +600,89 @@ public class AssetDirectory extends AssetManager {
      * The method {@link #loadAssets} must have been called for this method to
      * return a value.
      *
+     * A texture that was packed into an atlas is served by the atlas: its region for
+     * a {@link TextureRegion}, and the atlas page holding it for a {@link Texture}.
+     *
      * @param key  the asset directory key
      * @param type the asset type
      *
      * @return the asset associated with the given directory key
      */
     public <T> T getEntry(String key, Class<T> type) {
-        ObjectMap<String, String> keys = contents.keymap.get( type, null );
-        if (keys == null) {
-            return null;
+        if ((type == Texture.class || type == TextureRegion.class) && packed != null && packed.containsKey( key )) {
+            TextureRegion region = getRegion( key );
+            if (region == null || type == TextureRegion.class) {
+                return type.cast( region );
+            }
+            return type.cast( region.getTexture() );
         }
-        String filename = keys.get( key, null );
+        ObjectMap<String, String> keys = contents.keymap.get( type, null );
+        String filename = keys == null ? null : keys.get( key, null );
         if (filename == null) {
+            if (type == TextureRegion.class) {
+                return type.cast( getRegion( key ) );
+            }
             return null;
         }
+        if (deferred != null && deferred.containsKey( filename ) && !isLoaded( filename, type )) {
+            // Better a hitch than a crash
+            Gdx.app.error( "AssetDirectory", key + " is not in a loaded tier, loading it now" );
+            finishLoadingTier( key );
+        }
         return get( filename, type );
     }
 
+    /**
+     * Returns the texture region for the given texture key
+     *
+     * If the texture was packed into one of the atlases of the directory, this is its
+     * region of the atlas page. Drawing regions of the same page back to back does not
+     * rebind the texture, so code drawing many images each frame should prefer this to
+     * {@link #getEntry} for the {@link Texture}. Otherwise, it is a region covering the
+     * whole texture.
+     *
+     * The region is shared by every caller asking for the same key, so it should not
+     * be modified. To animate it, wrap it in a {@link FilmStrip}.
+     *
+     * The method {@link #loadAssets} must have been called for this method to
+     * return a value.
+     *
+     * @param key  the texture key in the asset directory
+     *
+     * @return the texture region for the given texture key (or null if there is none)
+     */
+    public TextureRegion getRegion(String key) {
+        if (regions == null) {
+            regions = new ObjectMap<String, TextureRegion>();
+        }
+        TextureRegion region = regions.get( key, null );
+        if (region != null) {
+            return region;
+        }
+        String atlas = packed == null ? null : packed.get( key, null );
+        if (atlas != null) {
+            TextureAtlas pages = getEntry( atlas, TextureAtlas.class );
+            region = pages == null ? null : pages.findRegion( key );
+            if (region == null) {
+                return null;
+            }
+        } else {
+            Texture texture = getEntry( key, Texture.class );
+            if (texture == null) {
+                return null;
+            }
+            region = new TextureRegion( texture );
+        }
+        regions.put( key, region );
+        return region;
+    }
+
     /**
      * Returns true if there is an asset associated with the given directory key
      * 
      * The method {@link #loadAssets} must have been called for this method to
-     * return anything other than false.
+     * return anything other than false. Assets of a tier that is not loaded count
+     * as entries, as {@link #getEntry} will load them.
      *
      * @param key  the asset directory key
      * @param type the asset type
@@ -304,14 +690,14 @@ public class AssetDirectory extends AssetManager {
      * @return true if there is an asset associated with the given directory key
      */
     public <T> boolean hasEntry(String key, Class<T> type) {
-        ObjectMap<String, String> keys = contents.keymap.get( type, null );
-        if (keys == null) {
-            return false;
+        if ((type == Texture.class || type == TextureRegion.class) && packed != null && packed.containsKey( key )) {
+            return true;
         }
-        String filename = keys.get( key, null );
+        ObjectMap<String, String> keys = contents.keymap.get( type, null );
+        String filename = keys == null ? null : keys.get( key, null );
         if (filename == null) {
-            return false;
+            return type == TextureRegion.class && hasEntry( key, Texture.class );
         }
-        return contains( filename, type );
+        return contains( filename, type ) || (deferred != null && deferred.containsKey( filename ));
     }
 }
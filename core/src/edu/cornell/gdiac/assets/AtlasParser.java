@@ -0,0 +1,87 @@
+/*
+ * AtlasParser.java
+ *
+ * This is an interface for parsing a JSON entry into a TextureAtlas asset. Atlases are
+ * produced at build time by packing the textures of the directory (see the packAtlases
+ * task of the desktop project). The regions of an atlas are named after the texture
+ * keys they were packed from, so AssetDirectory can substitute them for those textures.
+ */
+package edu.cornell.gdiac.assets;
+
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.utils.JsonValue;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/**
+ * This class parses a JSON entry into a {@link TextureAtlas}.
+ *
+ * Atlases are defined in a section called "atlases", mapping a key to the packed
+ * .atlas file. Packing is an optional build step, so an atlas whose file does not
+ * exist is skipped; the directory then falls back to the individual textures.
+ */
+public class AtlasParser implements AssetParser<TextureAtlas> {
+    /** The current atlas entry in the JSON directory */
+    private JsonValue root;
+
+    /**
+     * Returns the asset type generated by this parser
+     *
+     * @return the asset type generated by this parser
+     */
+    public Class<TextureAtlas> getType() {
+        return TextureAtlas.class;
+    }
+
+    /**
+     * Resets the parser iterator for the given directory.
+     *
+     * The value directory is assumed to be the root of a larger JSON structure.
+     * The individual assets are defined by subtrees in this structure.
+     *
+     * @param directory    The JSON representation of the asset directory
+     */
+    public void reset(JsonValue directory) {
+        root = directory;
+        root = root.getChild( "atlases" );
+    }
+
+    /**
+     * Returns true if there are still assets left to generate
+     *
+     * @return true if there are still assets left to generate
+     */
+    public boolean hasNext() {
+        return root != null;
+    }
+
+    /**
+     * Processes the next available atlas, loading it into the asset manager
+     *
+     * The JSON value is the atlas file. The key will be the name of the atlas entry.
+     * Atlases that have not been packed are skipped.
+     *
+     * This method fails silently if there are no available assets to process.
+     *
+     * @param manager	The asset manager to load an asset
+     * @param keymap    The mapping of JSON keys to asset file names
+     */
+    public void processNext(AssetManager manager, ObjectMap<String,String> keymap) {
+        String file = root.asString();
+        if (file != null && manager.getFileHandleResolver().resolve( file ).exists()) {
+            keymap.put(root.name(),file);
+            manager.load( file,TextureAtlas.class );
+        }
+        root = root.next();
+    }
+
+    /**
+     * Returns true if o is another AtlasParser
+     *
+     * @return true if o is another AtlasParser
+     */
+    public boolean equals(Object o) {
+        return o instanceof AtlasParser;
+    }
+
+}
@@ -0,0 +1,463 @@
+/*
+ * FontCache.java
+ *
+ * This module keeps the fonts rasterized with FreeType on disk, so that they are only
+ * rasterized once.  FreeType is slow for the large sizes of the game, and the glyph
+ * pages and metrics it produces for a given font file and size never change.
+ */
+package edu.cornell.gdiac.assets;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.PixmapIO;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.StreamUtils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * This class creates fonts from TrueType files, keeping what FreeType rasterized on disk.
+ *
+ * A font is stored as its glyph pages (PNG files) and a binary file with its metrics
+ * and glyphs, so that it can be rebuilt exactly as FreeType made it.  The entries are
+ * named after the font file and size, plus a hash of the contents of the font file and
+ * of the parameters.  Changing a font in assets/fonts (or the characters asked for)
+ * changes the hash, so the font is rasterized again and the stale entry is deleted.
+ *
+ * If the cache cannot be read or written, the font is rasterized as before.
+ */
+public class FontCache {
+    /** Local directory that fonts are cached in */
+    public static final String CACHE_DIRECTORY = "cache/fonts/";
+    /** Version of the cache files, to change whenever their layout does */
+    private static final int VERSION = 1;
+    /** Size of a glyph page */
+    private static final int PAGE_SIZE = 1024;
+
+    /** The directory of the cache */
+    private final FileHandle directory;
+    /** The hash of the contents of each font file, so it is only read once */
+    private final ObjectMap<String, String> fileHashes = new ObjectMap<String, String>();
+    /** Number of fonts loaded from the cache */
+    private int hits;
+    /** Number of fonts rasterized with FreeType */
+    private int misses;
+
+    /**
+     * Creates a font cache in the given directory
+     *
+     * @param directory The directory of the cache
+     */
+    public FontCache(FileHandle directory) {
+        this.directory = directory;
+    }
+
+    /** Returns the number of fonts loaded from the cache */
+    public int getHits() {
+        return hits;
+    }
+
+    /** Returns the number of fonts rasterized with FreeType */
+    public int getMisses() {
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+        return hits + " fonts from the cache, " + misses + " rasterized";
+    }
+
+    /**
+     * Returns a new font of the given typeface, size and characters
+     *
+     * The font is loaded from the cache if it is there, and rasterized (and cached)
+     * otherwise.  The font owns its textures.  This method must be called on the
+     * thread with the OpenGL context.
+     *
+     * @param file          The internal file name of the TrueType font
+     * @param size          The font size in pixels
+     * @param characters    The characters to rasterize
+     *
+     * @return a new font of the given typeface, size and characters
+     */
+    public BitmapFont load(String file, int size, String characters) {
+        FileHandle source = Gdx.files.internal(file);
+        String prefix = source.nameWithoutExtension() + "-" + size + "-";
+        String name = prefix + hash(source, size, characters);
+
+        FileHandle entry = directory.child(name + ".font");
+        if (entry.exists()) {
+            try {
+                BitmapFont font = read(name, entry);
+                hits++;
+                return font;
+            } catch (IOException | GdxRuntimeException e) {
+                Gdx.app.error("FontCache", "Could not read " + entry.path() + ", rasterizing " + file, e);
+            }
+        }
+        misses++;
+        return generate(source, size, characters, prefix, name);
+    }
+
+    /**
+     * Returns the hash identifying a font file rasterized with the given parameters
+     *
+     * @param source        The TrueType font file
+     * @param size          The font size in pixels
+     * @param characters    The characters to rasterize
+     *
+     * @return the hash identifying the font
+     */
+    private String hash(FileHandle source, int size, String characters) {
+        String fileHash = fileHashes.get(source.path());
+        if (fileHash == null) {
+            fileHash = digest(source.readBytes());
+            fileHashes.put(source.path(), fileHash);
+        }
+        String parameters = fileHash + "/" + VERSION + "/" + size + "/" + characters;
+        try {
+            return digest(parameters.getBytes("UTF-8")).substring(0, 16);
+        } catch (IOException e) {
+            throw new GdxRuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the SHA-1 digest of the given bytes, in hexadecimal
+     *
+     * @param bytes The bytes to digest
+     *
+     * @return the SHA-1 digest of the given bytes
+     */
+    private static String digest(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new GdxRuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns a font rasterized with FreeType, after writing it to the cache
+     *
+     * @param source        The TrueType font file
+     * @param size          The font size in pixels
+     * @param characters    The characters to rasterize
+     * @param prefix        The beginning of the names of the entries of this typeface and size
+     * @param name          The name of the cache entry of the font
+     *
+     * @return a font rasterized with FreeType
+     */
+    private BitmapFont generate(FileHandle source, int size, String characters, String prefix, String name) {
+        // Pack into our own packer, so that the pages are still pixmaps we can write
+        PixmapPacker packer = new PixmapPacker(PAGE_SIZE, PAGE_SIZE, Pixmap.Format.RGBA8888, 1, false);
+        packer.setTransparentColor(Color.WHITE);
+        packer.getTransparentColor().a = 0;
+
+        FreeTypeFontGenerator generator = new FreeTypeFontGenerator(source);
+        BitmapFont.BitmapFontData data;
+        try {
+            FreeTypeFontGenerator.FreeTypeFontParameter parameter = new FreeTypeFontGenerator.FreeTypeFontParameter();
+            parameter.size = size;
+            parameter.characters = characters;
+            parameter.packer = packer;
+            data = generator.generateData(parameter);
+        } finally {
+            generator.dispose();
+        }
+
+        Array<PixmapPacker.Page> pages = packer.getPages();
+        deleteEntries(prefix);
+        try {
+            write(name, data, pages);
+        } catch (IOException | GdxRuntimeException e) {
+            Gdx.app.error("FontCache", "Could not cache " + source.path(), e);
+            deleteEntries(prefix);
+        }
+
+        Array<TextureRegion> regions = new Array<TextureRegion>(pages.size);
+        for (PixmapPacker.Page page : pages) {
+            regions.add(new TextureRegion(new Texture(page.getPixmap())));
+        }
+        packer.dispose();
+        return newFont(data, regions);
+    }
+
+    /**
+     * Returns a font made of the given data and glyph pages, which it owns
+     *
+     * @param data      The metrics and glyphs of the font
+     * @param regions   The glyph pages
+     *
+     * @return a font made of the given data and glyph pages
+     */
+    private static BitmapFont newFont(BitmapFont.BitmapFontData data, Array<TextureRegion> regions) {
+        BitmapFont font = new BitmapFont(data, regions, true);
+        font.setOwnsTexture(true);
+        return font;
+    }
+
+    /**
+     * Deletes every cache entry whose name begins with the given prefix
+     *
+     * @param prefix    The beginning of the names of the entries to delete
+     */
+    private void deleteEntries(String prefix) {
+        for (FileHandle file : directory.list()) {
+            if (file.name().startsWith(prefix)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes a font to the cache
+     *
+     * The glyph pages are written first, so that an entry whose font file exists is
+     * complete.
+     *
+     * @param name  The name of the cache entry
+     * @param data  The metrics and glyphs of the font
+     * @param pages The glyph pages
+     */
+    private void write(String name, BitmapFont.BitmapFontData data, Array<PixmapPacker.Page> pages) throws IOException {
+        for (int i = 0; i < pages.size; i++) {
+            PixmapIO.writePNG(directory.child(name + "-" + i + ".png"), pages.get(i).getPixmap());
+        }
+
+        DataOutputStream out = new DataOutputStream(directory.child(name + ".font").write(false, 8192));
+        try {
+            out.writeInt(VERSION);
+            out.writeInt(pages.size);
+            out.writeBoolean(data.flipped);
+            out.writeFloat(data.padTop);
+            out.writeFloat(data.padRight);
+            out.writeFloat(data.padBottom);
+            out.writeFloat(data.padLeft);
+            out.writeFloat(data.lineHeight);
+            out.writeFloat(data.capHeight);
+            out.writeFloat(data.ascent);
+            out.writeFloat(data.descent);
+            out.writeFloat(data.down);
+            out.writeFloat(data.blankLineScale);
+            out.writeFloat(data.scaleX);
+            out.writeFloat(data.scaleY);
+            out.writeFloat(data.spaceXadvance);
+            out.writeFloat(data.xHeight);
+            out.writeFloat(data.cursorX);
+            out.writeBoolean(data.markupEnabled);
+            writeChars(out, data.breakChars);
+            writeChars(out, data.xChars);
+            writeChars(out, data.capChars);
+
+            int count = 0;
+            for (BitmapFont.Glyph[] page : data.glyphs) {
+                if (page == null) continue;
+                for (BitmapFont.Glyph glyph : page) {
+                    if (glyph != null) count++;
+                }
+            }
+            out.writeInt(count);
+            for (BitmapFont.Glyph[] page : data.glyphs) {
+                if (page == null) continue;
+                for (BitmapFont.Glyph glyph : page) {
+                    if (glyph != null) writeGlyph(out, glyph);
+                }
+            }
+            out.writeBoolean(data.missingGlyph != null);
+            if (data.missingGlyph != null) {
+                writeGlyph(out, data.missingGlyph);
+            }
+        } finally {
+            StreamUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Writes a glyph and its kerning
+     *
+     * @param out   The stream to write to
+     * @param glyph The glyph to write
+     */
+    private static void writeGlyph(DataOutputStream out, BitmapFont.Glyph glyph) throws IOException {
+        out.writeInt(glyph.id);
+        out.writeInt(glyph.srcX);
+        out.writeInt(glyph.srcY);
+        out.writeInt(glyph.width);
+        out.writeInt(glyph.height);
+        out.writeInt(glyph.xoffset);
+        out.writeInt(glyph.yoffset);
+        out.writeInt(glyph.xadvance);
+        out.writeInt(glyph.page);
+        out.writeBoolean(glyph.fixedWidth);
+
+        int count = 0;
+        if (glyph.kerning != null) {
+            for (byte[] page : glyph.kerning) {
+                if (page == null) continue;
+                for (byte amount : page) {
+                    if (amount != 0) count++;
+                }
+            }
+        }
+        out.writeInt(count);
+        if (count == 0) return;
+        // kerning is paged by the second character, every page the same length
+        for (int i = 0; i < glyph.kerning.length; i++) {
+            byte[] page = glyph.kerning[i];
+            if (page == null) continue;
+            for (int j = 0; j < page.length; j++) {
+                if (page[j] != 0) {
+                    out.writeInt(i * page.length + j);
+                    out.writeByte(page[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes an array of characters, which may be null
+     *
+     * @param out   The stream to write to
+     * @param chars The characters to write
+     */
+    private static void writeChars(DataOutputStream out, char[] chars) throws IOException {
+        if (chars == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(chars.length);
+        for (char c : chars) {
+            out.writeChar(c);
+        }
+    }
+
+    /**
+     * Returns a font read from the cache
+     *
+     * @param name  The name of the cache entry
+     * @param entry The font file of the entry
+     *
+     * @return a font read from the cache
+     */
+    private BitmapFont read(String name, FileHandle entry) throws IOException {
+        BitmapFont.BitmapFontData data = new BitmapFont.BitmapFontData();
+        int pages;
+        DataInputStream in = new DataInputStream(entry.read(8192));
+        try {
+            if (in.readInt() != VERSION) {
+                throw new GdxRuntimeException("Cache entry of another version");
+            }
+            pages = in.readInt();
+            data.flipped = in.readBoolean();
+            data.padTop = in.readFloat();
+            data.padRight = in.readFloat();
+            data.padBottom = in.readFloat();
+            data.padLeft = in.readFloat();
+            data.lineHeight = in.readFloat();
+            data.capHeight = in.readFloat();
+            data.ascent = in.readFloat();
+            data.descent = in.readFloat();
+            data.down = in.readFloat();
+            data.blankLineScale = in.readFloat();
+            data.scaleX = in.readFloat();
+            data.scaleY = in.readFloat();
+            data.spaceXadvance = in.readFloat();
+            data.xHeight = in.readFloat();
+            data.cursorX = in.readFloat();
+            data.markupEnabled = in.readBoolean();
+            data.breakChars = readChars(in);
+            data.xChars = readChars(in);
+            data.capChars = readChars(in);
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                BitmapFont.Glyph glyph = readGlyph(in);
+                data.setGlyph(glyph.id, glyph);
+            }
+            if (in.readBoolean()) {
+                data.missingGlyph = readGlyph(in);
+            }
+        } finally {
+            StreamUtils.closeQuietly(in);
+        }
+
+        Array<TextureRegion> regions = new Array<TextureRegion>(pages);
+        try {
+            for (int i = 0; i < pages; i++) {
+                regions.add(new TextureRegion(new Texture(directory.child(name + "-" + i + ".png"))));
+            }
+        } catch (GdxRuntimeException e) {
+            for (TextureRegion region : regions) {
+                region.getTexture().dispose();
+            }
+            throw e;
+        }
+        return newFont(data, regions);
+    }
+
+    /**
+     * Returns a glyph and its kerning read from a stream
+     *
+     * @param in    The stream to read from
+     *
+     * @return a glyph read from the stream
+     */
+    private static BitmapFont.Glyph readGlyph(DataInputStream in) throws IOException {
+        BitmapFont.Glyph glyph = new BitmapFont.Glyph();
+        glyph.id = in.readInt();
+        glyph.srcX = in.readInt();
+        glyph.srcY = in.readInt();
+        glyph.width = in.readInt();
+        glyph.height = in.readInt();
+        glyph.xoffset = in.readInt();
+        glyph.yoffset = in.readInt();
+        glyph.xadvance = in.readInt();
+        glyph.page = in.readInt();
+        glyph.fixedWidth = in.readBoolean();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int ch = in.readInt();
+            glyph.setKerning(ch, in.readByte());
+        }
+        return glyph;
+    }
+
+    /**
+     * Returns an array of characters read from a stream, which may be null
+     *
+     * @param in    The stream to read from
+     *
+     * @return an array of characters read from the stream
+     */
+    private static char[] readChars(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = in.readChar();
+        }
+        return chars;
+    }
+}
@@ -13,9 +13,13 @@
  */
 package edu.cornell.gdiac.assets;
 
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
 import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectIntMap;
 import com.badlogic.gdx.utils.ObjectMap;
 
 /**
@@ -38,6 +42,14 @@ import com.badlogic.gdx.utils.ObjectMap;
  * the manager becomes the resource owner of that resource, and will be responsible for 
  * disposing of it. All references to the object outside of the reference manager 
  * will be essentially weak references (in the C++ sense).
+ *
+ * This class also shares fonts rasterized with FreeType.  Rasterizing a font is slow,
+ * so {@link #acquireFont} only does it the first time a typeface, size and character
+ * set is asked for, and hands out the same {@link BitmapFont} after that.  Each font
+ * is disposed once every holder has given it back with {@link #releaseFont}.  As the
+ * font is shared, a holder that changes its scale or color must set them again before
+ * each use.  The rasterized fonts are also kept on disk by a {@link FontCache}, so later
+ * runs do not need FreeType at all.
  */
 public class ResourceManager {
 	/** The singleton instance of this resource manager */
@@ -46,11 +58,19 @@ public class ResourceManager {
     final ObjectMap<Class, ObjectMap<String, Disposable>> resources = new ObjectMap<Class, ObjectMap<String, Disposable>>();
     /** The classes supported by this resource manager */
     final ObjectMap<String, Class> resourceTypes = new ObjectMap<String, Class>();
+    /** The shared fonts, by typeface, size and characters */
+    final ObjectMap<String, BitmapFont> fonts = new ObjectMap<String, BitmapFont>();
+    /** The number of holders of each shared font */
+    final ObjectIntMap<String> fontHolders = new ObjectIntMap<String>();
+    /** The fonts rasterized on earlier runs */
+    final FontCache fontCache;
 
     /**
      * Creates a new resource manager.
      */
-    private ResourceManager() { }
+    private ResourceManager() {
+        fontCache = new FontCache(Gdx.files.local(FontCache.CACHE_DIRECTORY));
+    }
 
     /**
      * Returns the singleton resource manager.
@@ -296,6 +316,79 @@ public class ResourceManager {
         }
         resources.clear();
         resourceTypes.clear();
+        for (BitmapFont font : fonts.values()) {
+            font.dispose();
+        }
+        fonts.clear();
+        fontHolders.clear();
+    }
+
+    /**
+     * Returns a shared font of the given typeface and size, with the default characters
+     *
+     * @param file  The internal file name of the TrueType font
+     * @param size  The font size in pixels
+     *
+     * @return a shared font of the given typeface and size
+     */
+    public BitmapFont acquireFont(String file, int size) {
+        return acquireFont(file, size, FreeTypeFontGenerator.DEFAULT_CHARS);
+    }
+
+    /**
+     * Returns a shared font of the given typeface, size and characters
+     *
+     * The font is loaded from the font cache (or rasterized) the first time it is
+     * asked for.  Every call must be matched by a call to {@link #releaseFont} once
+     * the font is no longer used.
+     * This method must be called on the thread with the OpenGL context.
+     *
+     * @param file          The internal file name of the TrueType font
+     * @param size          The font size in pixels
+     * @param characters    The characters to rasterize
+     *
+     * @return a shared font of the given typeface, size and characters
+     */
+    public synchronized BitmapFont acquireFont(String file, int size, String characters) {
+        String key = file + "@" + size + "/" + characters;
+        BitmapFont font = fonts.get(key);
+        if (font == null) {
+            font = fontCache.load(file, size, characters);
+            fonts.put(key, font);
+        }
+        fontHolders.getAndIncrement(key, 0, 1);
+        return font;
+    }
+
+    /**
+     * Gives back a font returned by {@link #acquireFont}
+     *
+     * Once every holder has given the font back, it is disposed.
+     *
+     * @param font  The font to give back
+     *
+     * @throws GdxRuntimeException if the font is not shared by this manager
+     */
+    public synchronized void releaseFont(BitmapFont font) {
+        String key = fonts.findKey(font, true);
+        if (key == null) {
+            throw new GdxRuntimeException("Font is not shared by this resource manager.");
+        }
+        if (fontHolders.getAndIncrement(key, 0, -1) > 1) {
+            return;
+        }
+        fontHolders.remove(key, 0);
+        fonts.remove(key);
+        font.dispose();
+    }
+
+    /**
+     * Returns the cache of the fonts rasterized on earlier runs
+     *
+     * @return the cache of the fonts rasterized on earlier runs
+     */
+    public FontCache getFontCache() {
+        return fontCache;
     }
     
 	/**
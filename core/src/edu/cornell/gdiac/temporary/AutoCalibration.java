@@ -0,0 +1,109 @@
+package edu.cornell.gdiac.temporary;
+
+import java.util.Arrays;
+
+/**
+ * Measures calibration drift from the timing of the hits of a run.
+ *
+ * Every judged hit is off its note by some signed error: positive if the player was
+ * late, after the audio offset was applied. A calibrated player is as often early as
+ * late, so the median error of a whole run is the drift of their calibration. This is
+ * corrected between songs, so players stay calibrated without going back to
+ * {@link CalibrationMode}.
+ *
+ * Hits are never further than the ok window from their note, so the errors are kept in
+ * a histogram of one millisecond bins over {@link #RANGE} milliseconds either side. That
+ * takes the same memory however long the run is, and answers any quantile to the
+ * millisecond.
+ *
+ * A correction is only suggested after {@link #MIN_HITS} hits, and only if the drift is
+ * at least {@link #MIN_DRIFT} milliseconds. It is half the drift, at most
+ * {@link #MAX_STEP} milliseconds, so one unusual run cannot throw the calibration off.
+ */
+public class AutoCalibration {
+    /** Largest error kept, in milliseconds either side (larger errors go in the end bins) */
+    private static final int RANGE = 128;
+    /** Fewest hits in a run to suggest a correction from */
+    private static final int MIN_HITS = 32;
+    /** Smallest drift worth correcting, in milliseconds */
+    private static final int MIN_DRIFT = 4;
+    /** Share of the drift corrected after a run */
+    private static final float DAMPING = 0.5f;
+    /** Largest correction after a run, in milliseconds */
+    private static final int MAX_STEP = 20;
+
+    /** Number of hits in each millisecond bin, from -RANGE to RANGE */
+    private final int[] bins = new int[2 * RANGE + 1];
+    /** Number of hits */
+    private int count;
+
+    /**
+     * Adds the error of a hit
+     *
+     * @param error how late the hit was, in milliseconds (negative if it was early)
+     */
+    public void add(double error) {
+        int bin = (int) Math.round(error) + RANGE;
+        bins[Math.max(0, Math.min(bins.length - 1, bin))]++;
+        count++;
+    }
+
+    /** Returns the number of hits */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the given quantile of the errors, to the millisecond
+     *
+     * @param q the quantile, from 0 to 1
+     * @return the error below which the given share of the hits are (0 if there are none)
+     */
+    public int getQuantile(float q) {
+        if (count == 0) {
+            return 0;
+        }
+        int rank = Math.max(1, (int) Math.ceil(q * count));
+        int seen = 0;
+        for (int i = 0; i < bins.length; i++) {
+            seen += bins[i];
+            if (seen >= rank) {
+                return i - RANGE;
+            }
+        }
+        return RANGE;
+    }
+
+    /** Returns the median error, in milliseconds */
+    public int getMedian() {
+        return getQuantile(0.5f);
+    }
+
+    /**
+     * Returns the correction to add to the calibration offsets, and forgets the hits
+     *
+     * @return the correction in milliseconds (0 if no correction is needed)
+     */
+    public int finishRun() {
+        int correction = 0;
+        int drift = getMedian();
+        if (count >= MIN_HITS && Math.abs(drift) >= MIN_DRIFT) {
+            correction = Math.round(DAMPING * drift);
+            correction = Math.max(-MAX_STEP, Math.min(MAX_STEP, correction));
+        }
+        clear();
+        return correction;
+    }
+
+    /** Forgets the hits */
+    public void clear() {
+        Arrays.fill(bins, 0);
+        count = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, median %dms, quartiles %dms to %dms",
+                count, getMedian(), getQuantile(0.25f), getQuantile(0.75f));
+    }
+}
@@ -0,0 +1,180 @@
+package edu.cornell.gdiac.temporary;
+
+import java.util.Arrays;
+
+/**
+ * Estimates a latency from the timing errors of taps to a beat.
+ *
+ * Each error is how late (positive) or early (negative) a tap was, in milliseconds. One
+ * sloppy tap would skew a plain average, so the taps far from the rest are rejected
+ * first: a tap is an outlier if it is more than {@link #REJECTION} robust standard
+ * deviations from the median, where the robust standard deviation is 1.4826 times the
+ * median absolute deviation (MAD) from the median. The estimate is the mean of the taps
+ * that are left, with a 95% confidence interval for it.
+ *
+ * The engine knows nothing about what the taps were made to. A calibration screen keeps
+ * one for the beat that is heard (the audio latency) and one for the beat that is seen
+ * (the visual latency).
+ */
+public class CalibrationEngine {
+    /** Number of robust standard deviations from the median past which a tap is an outlier */
+    private static final double REJECTION = 3;
+    /** Smallest robust standard deviation, in milliseconds, so near-identical taps are not all outliers */
+    private static final double MIN_DEVIATION = 2;
+    /** Scale from the MAD to the standard deviation of normally distributed taps */
+    private static final double MAD_SCALE = 1.4826;
+    /** Number of standard errors either side of the mean in a 95% confidence interval */
+    private static final double Z_95 = 1.96;
+
+    /** The errors of the taps, in milliseconds */
+    private double[] errors;
+    /** Number of taps */
+    private int size;
+
+    /** Whether the statistics below are up to date with the taps */
+    private boolean solved;
+    private double estimate;
+    private double halfWidth;
+    private int inliers;
+
+    /**
+     * Creates an engine for up to the given number of taps
+     *
+     * @param capacity  the number of taps to expect; more are accepted
+     */
+    public CalibrationEngine(int capacity) {
+        errors = new double[Math.max(1, capacity)];
+    }
+
+    /**
+     * Adds the timing error of a tap
+     *
+     * @param error how late the tap was, in milliseconds (negative if it was early)
+     */
+    public void add(double error) {
+        if (size == errors.length) {
+            errors = Arrays.copyOf(errors, 2 * size);
+        }
+        errors[size++] = error;
+        solved = false;
+    }
+
+    /** Drops every tap */
+    public void clear() {
+        size = 0;
+        solved = false;
+    }
+
+    /** Returns the number of taps */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the estimated latency, in milliseconds
+     *
+     * @return the mean error of the taps that are not outliers (0 if there are none)
+     */
+    public double getEstimate() {
+        solve();
+        return estimate;
+    }
+
+    /**
+     * Returns the estimated latency, rounded to the millisecond
+     *
+     * @return the estimated latency, rounded to the millisecond
+     */
+    public int getOffset() {
+        return (int) Math.round(getEstimate());
+    }
+
+    /**
+     * Returns the half width of the 95% confidence interval of the estimate, in milliseconds
+     *
+     * @return the half width of the confidence interval (infinite with fewer than two inliers)
+     */
+    public double getConfidence() {
+        solve();
+        return halfWidth;
+    }
+
+    /** Returns the lower end of the 95% confidence interval of the estimate */
+    public double getLowerBound() {
+        return getEstimate() - getConfidence();
+    }
+
+    /** Returns the upper end of the 95% confidence interval of the estimate */
+    public double getUpperBound() {
+        return getEstimate() + getConfidence();
+    }
+
+    /** Returns the number of taps kept for the estimate */
+    public int getNumInliers() {
+        solve();
+        return inliers;
+    }
+
+    /** Returns the number of taps rejected as outliers */
+    public int getNumOutliers() {
+        solve();
+        return size - inliers;
+    }
+
+    /**
+     * Computes the statistics of the taps, if they changed since the last time
+     */
+    private void solve() {
+        if (solved) {
+            return;
+        }
+        solved = true;
+        estimate = 0;
+        halfWidth = Double.POSITIVE_INFINITY;
+        inliers = 0;
+        if (size == 0) {
+            return;
+        }
+
+        double[] sorted = Arrays.copyOf(errors, size);
+        Arrays.sort(sorted);
+        double median = median(sorted);
+        for (int i = 0; i < size; i++) {
+            sorted[i] = Math.abs(errors[i] - median);
+        }
+        Arrays.sort(sorted);
+        double deviation = Math.max(MAD_SCALE * median(sorted), MIN_DEVIATION);
+
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            if (Math.abs(errors[i] - median) <= REJECTION * deviation) {
+                sum += errors[i];
+                inliers++;
+            }
+        }
+        estimate = sum / inliers;
+        if (inliers > 1) {
+            double squares = 0;
+            for (int i = 0; i < size; i++) {
+                if (Math.abs(errors[i] - median) <= REJECTION * deviation) {
+                    squares += (errors[i] - estimate) * (errors[i] - estimate);
+                }
+            }
+            halfWidth = Z_95 * Math.sqrt(squares / (inliers - 1) / inliers);
+        }
+    }
+
+    /**
+     * Returns the median of a sorted array
+     */
+    private double median(double[] sorted) {
+        int mid = size / 2;
+        return size % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1fms +/- %.1fms (%d taps, %d outliers)",
+                getEstimate(), getConfidence(), size, getNumOutliers());
+    }
+}
@@ -6,18 +6,27 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.GlyphLayout;
-import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
-import com.badlogic.gdx.utils.JsonReader;
-import com.badlogic.gdx.utils.JsonValue;
 import edu.cornell.gdiac.assets.AssetDirectory;
+import edu.cornell.gdiac.assets.ResourceManager;
 import edu.cornell.gdiac.audio.AudioEngine;
 import edu.cornell.gdiac.audio.AudioSource;
 import edu.cornell.gdiac.audio.MusicQueue;
 import edu.cornell.gdiac.util.ScreenListener;
 
-import java.util.LinkedList;
-import java.util.List;
-
+/**
+ * The screen that measures the latencies of the player's setup.
+ *
+ * Calibration has two parts. First the player taps to the beat they hear, which measures
+ * the audio latency: how late a tap lands after the song position it is meant for. Then
+ * the song is muted and the player taps when the note flashes, which measures the
+ * visual latency the same way. Judgement is corrected by the audio latency, and notes
+ * are drawn shifted by the difference of the two, so a player who follows the notes
+ * lands as well as one who follows the music.
+ *
+ * Taps are timed from the moment the key event arrived, not from the frame that reads
+ * it, and each part is estimated by a {@link CalibrationEngine}, so one sloppy tap does
+ * not skew the result.
+ */
 public class CalibrationMode implements Screen {
 
     /** Whether this player mode is still active */
@@ -30,7 +39,11 @@ public class CalibrationMode implements Screen {
     private BitmapFont smallerFont;
     private GlyphLayout instructionsLayout;
     private GlyphLayout smallerFontLayout;
-    private String instruction = "PRESS THE SPACEBAR TO THE BEAT";
+    private String instruction = AUDIO_INSTRUCTION;
+    /** The instruction while measuring the audio latency */
+    private static final String AUDIO_INSTRUCTION = "PRESS THE SPACEBAR TO THE BEAT";
+    /** The instruction while measuring the visual latency */
+    private static final String VISUAL_INSTRUCTION = "PRESS THE SPACEBAR WHEN THE NOTE FLASHES";
     private String smallerInstruction = "Make sure not to click out of the window while calibrating!";
 
     /** The song */
@@ -56,9 +69,6 @@ public class CalibrationMode implements Screen {
     /** Drawing scale for reszing */
     private float scale;
 
-    /** Color of the text for interface */
-    private Color textColor = new Color(27f / 255, 1f / 255, 103f / 255, 1);
-
     /** Reference to drawing context to display graphics (VIEW CLASS) */
     private GameCanvas canvas;
     /** Reads input from keyboard or game pad (CONTROLLER CLASS) */
@@ -66,10 +76,25 @@ public class CalibrationMode implements Screen {
     /** Listener that will update the player mode when we are done */
     private ScreenListener listener;
 
-    /** List of beats that user has hit */
-    private List<Integer> userHitBeats;
-    /** offset after calibration  */
+    /** The song position, extrapolated between audio updates */
+    private SongClock clock;
+    /** The last position reported by the music, to tell when it loops */
+    private float lastPosition;
+    /** The volume of the music before it is muted for the visual part */
+    private float volume;
+
+    /** Number of taps in the current part, including the ones dropped */
+    private int taps;
+    /** Whether the visual latency is being measured (the audio latency otherwise) */
+    private boolean visualPart;
+    /** The timing errors of the taps to the beat heard */
+    private CalibrationEngine audioEngine;
+    /** The timing errors of the taps to the note flashing */
+    private CalibrationEngine visualEngine;
+    /** audio offset after calibration, in milliseconds */
     private int offset;
+    /** visual offset after calibration, in milliseconds */
+    private int visualOffset;
     /** whether we finished calibration */
     private boolean isCalibrated;
     /** Beats per minute (BPM) of the calibration beat */
@@ -81,6 +106,12 @@ public class CalibrationMode implements Screen {
     private final int NUM_BEATS_TO_HIT = 12;
     /** Specified number of hit beats to remove from count in calibration calculation */
     private final int NUM_BEATS_REMOVED = 2;
+    /** Most beats to hit in a part, if the estimate is not yet confident */
+    private final int MAX_BEATS_TO_HIT = 2 * NUM_BEATS_TO_HIT;
+    /** Half width of the confidence interval (in milliseconds) a part should reach */
+    private final double TARGET_CONFIDENCE = 10;
+    /** How long the note flashes on every beat of the visual part, in milliseconds */
+    private final int FLASH_LENGTH = 100;
 
     /**
      * Constructs new CalibrationController
@@ -89,8 +120,10 @@ public class CalibrationMode implements Screen {
     public CalibrationMode(GameCanvas canvas) {
         inputController = InputController.getInstance();
         this.canvas = canvas;
-        userHitBeats = new LinkedList<>();
+        audioEngine = new CalibrationEngine(MAX_BEATS_TO_HIT);
+        visualEngine = new CalibrationEngine(MAX_BEATS_TO_HIT);
         offset = SaveManager.getInstance().getCalibrationOffset();
+        visualOffset = SaveManager.getInstance().getVisualCalibrationOffset();
         isCalibrated = false;
         instructionsLayout = new GlyphLayout();
         smallerFontLayout = new GlyphLayout();
@@ -98,7 +131,11 @@ public class CalibrationMode implements Screen {
 
     /** Resets the calibration mode by clearing beats, calibration is false, and resetting music */
     private void reset() {
-        userHitBeats.clear();
+        taps = 0;
+        visualPart = false;
+        instruction = AUDIO_INSTRUCTION;
+        audioEngine.clear();
+        visualEngine.clear();
         isCalibrated = false;
         music.stop();
         music.reset();
@@ -108,11 +145,16 @@ public class CalibrationMode implements Screen {
         music.setLooping(true);
     }
 
-    /** Returns the calibration offset */
+    /** Returns the audio calibration offset, in milliseconds */
     public int getOffset() {
         return offset;
     }
 
+    /** Returns the visual calibration offset, in milliseconds */
+    public int getVisualOffset() {
+        return visualOffset;
+    }
+
     /**
      * Returns true if the player is done calibrating and wants to go back to the main menu.
      * @return true if the player is ready to exit calibration mode
@@ -147,22 +189,23 @@ public class CalibrationMode implements Screen {
      * @param directory 	Reference to the asset directory.
      */
     public void populate(AssetDirectory directory) {
-        JsonReader jr = new JsonReader();
-        JsonValue assets = jr.parse(Gdx.files.internal("assets.json"));
-
-        // fonts
-        FreeTypeFontGenerator generator = new FreeTypeFontGenerator(Gdx.files.internal("fonts/Blinker-Bold.ttf"));
-        FreeTypeFontGenerator.FreeTypeFontParameter parameter = new FreeTypeFontGenerator.FreeTypeFontParameter();
-        parameter.size = 50;
-        parameter.color = textColor;
-        instructionsFont = generator.generateFont(parameter);
-
-        generator = new FreeTypeFontGenerator(Gdx.files.internal("fonts/Blinker-SemiBold.ttf"));
-        parameter.size = 30;
-        smallerFont = generator.generateFont(parameter);
-
-        music = ((AudioEngine) Gdx.audio).newMusic(Gdx.files.internal(assets.get("samples").getString("calibration")));
-        songSource = music.getSource(0);
+        // fonts (shared, so their scale is set before every draw)
+        if (instructionsFont == null) {
+            instructionsFont = ResourceManager.get().acquireFont("fonts/Blinker-Bold.ttf", 50);
+            smallerFont = ResourceManager.get().acquireFont("fonts/Blinker-SemiBold.ttf", 30);
+        }
+
+        if (music != null) {
+            // the song belongs to the song cache
+            music.stop();
+            music.clearSources();
+            music.dispose();
+            SongCache.getInstance().release(songSource);
+        }
+        songSource = SongCache.getInstance().acquire("calibration");
+        music = ((AudioEngine) Gdx.audio).newMusicBuffer(songSource.getChannels() == 1, songSource.getSampleRate());
+        music.addSource(songSource);
+        clock = new SongClock(songSource.getSampleRate());
         background = directory.getEntry("calibration-background", Texture.class);
         calibrationHeader = directory.getEntry("calibration-header", Texture.class);
         headerLine = directory.getEntry("header-line", Texture.class);
@@ -188,14 +231,17 @@ public class CalibrationMode implements Screen {
 
     /** Draws elements to the screen */
     private void draw() {
+        instructionsFont.getData().setScale(scale);
+        smallerFont.getData().setScale(scale);
         canvas.begin();
         canvas.drawBackground(background,0,0);
 
         canvas.draw(calibrationHeader, Color.WHITE, calibrationHeader.getWidth()/2, calibrationHeader.getHeight()/2, canvas.getWidth()/2, canvas.getHeight() * 0.9f, 0, scale, scale);
 
         float noteScale = 0.3f;
-        // draw hit indicator
-        if (inputController.didCalibrationPress()) {
+        // draw hit indicator (in the visual part, the note flashes on the beat instead)
+        boolean lit = visualPart ? isFlashing() : inputController.didCalibrationPress();
+        if (lit) {
             canvas.draw(calibrationNoteHit, Color.WHITE, calibrationNoteHit.getWidth() / 2, calibrationNoteHit.getHeight() / 2, canvas.getWidth() / 2, canvas.getHeight() / 2, 0, noteScale * scale, noteScale * scale);
         } else {
             canvas.draw(calibrationNote, Color.WHITE, calibrationNote.getWidth() / 2, calibrationNote.getHeight() / 2, canvas.getWidth() / 2, canvas.getHeight() / 2, 0, noteScale * scale, noteScale * scale);
@@ -218,7 +264,7 @@ public class CalibrationMode implements Screen {
 
         // draw the beat needed:
         int i = 0;
-        while (i < userHitBeats.size()) {
+        while (i < Math.min(taps, totalHits)) {
             canvas.draw(circleIndicatorHit, Color.WHITE, circleIndicator.getWidth()/2, circleIndicator.getHeight()/2,
                     startingX + i * (circleIndicatorTrueWidth + spaceApart), circleDrawY, 0,
                     circleIndicatorScale * scale, circleIndicatorScale * scale);
@@ -244,50 +290,86 @@ public class CalibrationMode implements Screen {
         // resolve inputs from the user
         resolveInputs();
 
-        // check music and calibration states
-        if (userHitBeats.size() - NUM_BEATS_REMOVED >= NUM_BEATS_TO_HIT && !isCalibrated) {
+        // check music and calibration states; a part goes on past its taps until it is confident
+        CalibrationEngine engine = visualPart ? visualEngine : audioEngine;
+        if (!isCalibrated && engine.size() >= NUM_BEATS_TO_HIT
+                && (engine.getConfidence() <= TARGET_CONFIDENCE || engine.size() >= MAX_BEATS_TO_HIT)) {
             setCalibration();
         }
     }
 
     /**
-     * computes values of userHitBeats to set the offset after calibration
+     * Finishes the current part of the calibration, saving its offset
      */
     private void setCalibration() {
-        int sum = 0;
-        // skip first two because of potential initial noisy data
-        for (int i = NUM_BEATS_REMOVED; i < userHitBeats.size(); i++) {
-            sum += userHitBeats.get(i);
+        if (!visualPart) {
+            offset = audioEngine.getOffset();
+            SaveManager.getInstance().saveCalibration(offset);
+            Gdx.app.log("CalibrationMode", "Audio latency " + audioEngine);
+            // the visual part is timed by the same clock, with the song muted
+            visualPart = true;
+            instruction = VISUAL_INSTRUCTION;
+            taps = 0;
+            volume = music.getVolume();
+            music.setVolume(0);
+        } else {
+            visualOffset = visualEngine.getOffset();
+            SaveManager.getInstance().saveVisualCalibration(visualOffset);
+            Gdx.app.log("CalibrationMode", "Visual latency " + visualEngine);
+            music.setVolume(volume);
+            isCalibrated = true;
+        }
+    }
+
+    /**
+     * Returns the song position, in milliseconds, at the given time
+     *
+     * @param time the time in nanoseconds (same timebase as System.nanoTime)
+     * @return the song position at the given time
+     */
+    private double getPositionAt(long time) {
+        float position = music.getPosition();
+        if (position < lastPosition) {
+            // the song looped, and the clock never runs backwards on its own
+            clock.reset();
         }
-        this.offset = userHitBeats.size() > 0 ? sum / userHitBeats.size() : 0;
-        SaveManager.getInstance().saveCalibration(offset);
-        isCalibrated = true;
+        lastPosition = position;
+        long now = System.nanoTime();
+        long sample = clock.getSample(position, music.isPlaying(), now);
+        return 1000.0 * sample / songSource.getSampleRate() - (now - time) / 1e6;
+    }
+
+    /**
+     * Returns true if the note should be lit in the visual part, right after a beat
+     */
+    private boolean isFlashing() {
+        double position = getPositionAt(System.nanoTime());
+        return position >= 0 && position % DIST_BETWEEN_BEAT < FLASH_LENGTH;
     }
 
     /** Resolves inputs from the input controller */
     private void resolveInputs() {
-        // use space to take inputs
-        boolean hitSpace = inputController.didCalibrationHit();
-
-        // essentially, resolve the current position at which you hit the space bar
-        // assign the beat it's at, and then determine how far off you are
-        if (hitSpace) {
-            int currPosInMs = Math.round(music.getPosition() * 1000);
-            // your beat that you hit the space bar at
-            int hitBeat = Math.round((float) (currPosInMs) / DIST_BETWEEN_BEAT);
-            // the beat we are actually at
-            int actualBeat = hitBeat * DIST_BETWEEN_BEAT;
-            int diff = currPosInMs - actualBeat;
-
-            if (!isCalibrated) {
-                userHitBeats.add(diff);
+        // use space to take inputs, timed from when each press arrived
+        for (int i = 0; i < inputController.getNumCalibrationTaps() && !isCalibrated; i++) {
+            double tapPosition = getPositionAt(inputController.getCalibrationTapTime(i));
+            // the beat nearest the tap, and how far off it the tap was
+            double hitBeat = Math.rint(tapPosition / DIST_BETWEEN_BEAT);
+            double diff = tapPosition - hitBeat * DIST_BETWEEN_BEAT;
+
+            // skip the first taps because of potential initial noisy data
+            if (taps >= NUM_BEATS_REMOVED) {
+                (visualPart ? visualEngine : audioEngine).add(diff);
             }
+            taps++;
         }
     }
 
     @Override
     public void show() {
         active = true;
+        inputController.setGameplayProcessor();
+        clock.reset();
+        lastPosition = 0;
         music.play();
     }
 
@@ -303,9 +385,6 @@ public class CalibrationMode implements Screen {
         float sx = ((float)width)/1200;
         float sy = ((float)height)/800;
         scale = (Math.min(sx, sy));
-
-        instructionsFont.getData().setScale(scale);
-        smallerFont.getData().setScale(scale);
     }
 
     @Override
@@ -324,7 +403,15 @@ public class CalibrationMode implements Screen {
         canvas = null;
         // TODO: dispose all assets
         if (music != null){
+            music.stop();
+            music.clearSources();
             music.dispose();
+            SongCache.getInstance().release(songSource);
+            music = null;
+        }
+        if (instructionsFont != null) {
+            ResourceManager.get().releaseFont(instructionsFont);
+            ResourceManager.get().releaseFont(smallerFont);
         }
     }
 
@@ -0,0 +1,299 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.JsonValue;
+import edu.cornell.gdiac.temporary.entity.Note;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Immutable chart of a level.
+ *
+ * A chart holds everything a level needs from its JSON file, but stores the notes
+ * as one row per note in primitive arrays instead of as {@link Note} objects. Notes are
+ * only turned into {@link Note} objects once they are about to appear on screen, so a
+ * chart with thousands of notes costs a handful of arrays. Since nothing here is ever
+ * modified, the same chart can be used to restart a level any number of times.
+ */
+public class Chart {
+    /** Type of a beat note in {@link Lane#types} */
+    public static final byte BEAT = 0;
+    /** Type of a held note in {@link Lane#types} */
+    public static final byte HELD = 1;
+    /** Type of a switch note in {@link Lane#types} */
+    public static final byte SWITCH = 2;
+
+    /**
+     * The notes and competency flags of a single band member.
+     *
+     * Row i of the note arrays is the i-th note of the band member, in the order
+     * of the chart file. Competency flags are sorted by position.
+     */
+    public static class Lane {
+        /** Instrument of this band member (violin, piano, drum or voice) */
+        public final String instrument;
+        /** Sample at which each note should be hit */
+        public final long[] hitSamples;
+        /** Number of samples each note is held for (0 if not a held note) */
+        public final long[] holdSamples;
+        /** Line of each note (-1 for switch notes) */
+        public final byte[] lines;
+        /** Type of each note ({@link #BEAT}, {@link #HELD} or {@link #SWITCH}) */
+        public final byte[] types;
+        /** Sample at which each competency flag takes effect */
+        public final long[] compPositions;
+        /** Competency loss rate of each flag */
+        public final int[] compRates;
+        /** Competency gain rate of each flag */
+        public final int[] compGains;
+
+        /**
+         * Creates a lane from its note and competency flag arrays
+         *
+         * The arrays are kept, not copied, so they must not be modified afterwards.
+         */
+        public Lane(String instrument, long[] hitSamples, long[] holdSamples, byte[] lines, byte[] types,
+                    long[] compPositions, int[] compRates, int[] compGains) {
+            this.instrument = instrument;
+            this.hitSamples = hitSamples;
+            this.holdSamples = holdSamples;
+            this.lines = lines;
+            this.types = types;
+            this.compPositions = compPositions;
+            this.compRates = compRates;
+            this.compGains = compGains;
+        }
+
+        /**
+         * Returns the number of notes in this lane
+         *
+         * @return the number of notes in this lane
+         */
+        public int size() {
+            return hitSamples.length;
+        }
+
+        /**
+         * Returns the number of competency flags in this lane
+         *
+         * @return the number of competency flags in this lane
+         */
+        public int numCompFlags() {
+            return compPositions.length;
+        }
+
+        /**
+         * Returns the {@link Note.NoteType} of the given row
+         *
+         * @param row the note row
+         * @return the {@link Note.NoteType} of the given row
+         */
+        public Note.NoteType getNoteType(int row) {
+            switch (types[row]) {
+                case HELD:
+                    return Note.NoteType.HELD;
+                case SWITCH:
+                    return Note.NoteType.SWITCH;
+                default:
+                    return Note.NoteType.BEAT;
+            }
+        }
+    }
+
+    // PROPERTIES
+    public final String levelName;
+    public final int levelNumber;
+    public final String background;
+    public final String song;
+    public final int bpm;
+    public final int fallSpeed;
+    public final int maxCompetency;
+    public final long aThreshold;
+    public final long bThreshold;
+    public final long cThreshold;
+    public final long sThreshold;
+
+    /** The notes of each band member */
+    public final Lane[] lanes;
+
+    /** Pairs of samples (start, end) in which the game plays itself, or null if not a tutorial */
+    public final long[] autoplayRanges;
+    /** Pairs of (sample, band member) at which the game switches by itself, or null if not a tutorial */
+    public final long[] switchSamples;
+    /** Pairs of samples (start, end) in which the tutorial arrow is shown, or null if not a tutorial */
+    public final long[] arrowAppear;
+
+    /** Sample of each random hit */
+    public final long[] randomHitPositions;
+    /** Probability of each band member for each random hit */
+    public final int[][] randomHitProbabilities;
+
+    /**
+     * Creates a chart from its properties
+     *
+     * The arrays are kept, not copied, so they must not be modified afterwards.
+     */
+    public Chart(String levelName, int levelNumber, String background, String song, int bpm, int fallSpeed,
+                 int maxCompetency, long aThreshold, long bThreshold, long cThreshold, long sThreshold,
+                 Lane[] lanes, long[] autoplayRanges, long[] switchSamples, long[] arrowAppear,
+                 long[] randomHitPositions, int[][] randomHitProbabilities) {
+        this.levelName = levelName;
+        this.levelNumber = levelNumber;
+        this.background = background;
+        this.song = song;
+        this.bpm = bpm;
+        this.fallSpeed = fallSpeed;
+        this.maxCompetency = maxCompetency;
+        this.aThreshold = aThreshold;
+        this.bThreshold = bThreshold;
+        this.cThreshold = cThreshold;
+        this.sThreshold = sThreshold;
+        this.lanes = lanes;
+        this.autoplayRanges = autoplayRanges;
+        this.switchSamples = switchSamples;
+        this.arrowAppear = arrowAppear;
+        this.randomHitPositions = randomHitPositions;
+        this.randomHitProbabilities = randomHitProbabilities;
+    }
+
+    /**
+     * Returns true if this chart is a tutorial
+     *
+     * @return true if this chart is a tutorial
+     */
+    public boolean isTutorial() {
+        return autoplayRanges != null;
+    }
+
+    /**
+     * Returns true if a band member of this chart plays the instrument
+     *
+     * @param instrument the instrument name
+     * @return true if a band member of this chart plays the instrument
+     */
+    public boolean hasInstrument(String instrument) {
+        for (Lane lane : lanes) {
+            if (lane.instrument.equals(instrument)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the asset tiers a level of this chart needs: its instruments and background
+     *
+     * @return the asset tiers of the level, each once
+     */
+    public Array<String> getAssetTiers() {
+        Array<String> tiers = new Array<String>();
+        for (Lane lane : lanes) {
+            if (!tiers.contains(lane.instrument, false)) {
+                tiers.add(lane.instrument);
+            }
+        }
+        tiers.add(background);
+        return tiers;
+    }
+
+    /**
+     * Creates a chart from the JSON of a level
+     *
+     * The JSON is not referenced by the chart, so it can be discarded afterwards.
+     *
+     * @param data the level JSON
+     * @return the chart of the level
+     */
+    public static Chart fromJson(JsonValue data) {
+        JsonValue bandMemberData = data.get("bandMembers");
+        Lane[] lanes = new Lane[bandMemberData.size];
+        int i = 0;
+        for (JsonValue member = bandMemberData.child; member != null; member = member.next, i++) {
+            lanes[i] = laneFromJson(member);
+        }
+
+        long[] autoplayRanges = null;
+        long[] switchSamples = null;
+        long[] arrowAppear = null;
+        JsonValue tutorialData = data.get("tutorialData");
+        if (tutorialData != null) {
+            autoplayRanges = tutorialData.get("autoplayRanges").asLongArray();
+            switchSamples = tutorialData.get("switchSamples").asLongArray();
+            arrowAppear = tutorialData.get("arrowAppear").asLongArray();
+        }
+
+        JsonValue randomHits = data.get("randomHits");
+        int numHits = randomHits == null ? 0 : randomHits.size;
+        long[] randomHitPositions = new long[numHits];
+        int[][] randomHitProbabilities = new int[numHits][];
+        i = 0;
+        for (JsonValue hit = numHits == 0 ? null : randomHits.child; hit != null; hit = hit.next, i++) {
+            randomHitPositions[i] = hit.getLong("position");
+            JsonValue probabilities = hit.get("probabilities");
+            randomHitProbabilities[i] = new int[probabilities.size];
+            int j = 0;
+            for (JsonValue p = probabilities.child; p != null; p = p.next, j++) {
+                randomHitProbabilities[i][j] = p.getInt("probability");
+            }
+        }
+
+        return new Chart(data.getString("levelName"), data.getInt("levelNumber"), data.getString("background"),
+                data.getString("song"), data.getInt("bpm"), data.getInt("fallSpeed"), data.getInt("maxCompetency"),
+                data.get("thresholdA").asLong(), data.get("thresholdB").asLong(),
+                data.get("thresholdC").asLong(), data.get("thresholdS").asLong(),
+                lanes, autoplayRanges, switchSamples, arrowAppear, randomHitPositions, randomHitProbabilities);
+    }
+
+    /**
+     * Creates the lane of a single band member from its JSON
+     */
+    private static Lane laneFromJson(JsonValue member) {
+        JsonValue noteData = member.get("notes");
+        int numNotes = noteData.size;
+        long[] hitSamples = new long[numNotes];
+        long[] holdSamples = new long[numNotes];
+        byte[] lines = new byte[numNotes];
+        byte[] types = new byte[numNotes];
+        int j = 0;
+        for (JsonValue note = noteData.child; note != null; note = note.next, j++) {
+            String type = note.getString("type");
+            hitSamples[j] = note.getLong("position");
+            lines[j] = (byte) note.getInt("line");
+            if (type.equals("beat")) {
+                types[j] = BEAT;
+            } else if (type.equals("switch")) {
+                types[j] = SWITCH;
+            } else {
+                types[j] = HELD;
+                holdSamples[j] = note.getLong("duration");
+            }
+        }
+
+        // comp flags take effect in order of song position
+        JsonValue compFlags = member.get("compFlags");
+        int numFlags = compFlags.size;
+        long[][] flags = new long[numFlags][];
+        j = 0;
+        for (JsonValue flag = compFlags.child; flag != null; flag = flag.next, j++) {
+            flags[j] = new long[]{flag.getLong("position"), flag.getInt("rate"), flag.getInt("gain")};
+        }
+        Arrays.sort(flags, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+        long[] compPositions = new long[numFlags];
+        int[] compRates = new int[numFlags];
+        int[] compGains = new int[numFlags];
+        for (j = 0; j < numFlags; j++) {
+            compPositions[j] = flags[j][0];
+            compRates[j] = (int) flags[j][1];
+            compGains[j] = (int) flags[j][2];
+        }
+
+        return new Lane(member.getString("instrument"), hitSamples, holdSamples, lines, types,
+                compPositions, compRates, compGains);
+    }
+}
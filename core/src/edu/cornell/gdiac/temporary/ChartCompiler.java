@@ -0,0 +1,373 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.JsonReader;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compiles level JSON files into a compact binary chart format and loads them back.
+ *
+ * JSON stays the authoring format (the level editor writes JSON). The first time a level
+ * is played, its JSON is compiled into a binary chart in the local charts directory, and
+ * from then on the binary is memory-mapped instead of parsing the JSON. If the JSON is
+ * newer than the binary, the binary is compiled again.
+ *
+ * The binary format is big-endian and laid out as follows:
+ * <pre>
+ * header:  magic, version, flags, levelName, background, song, levelNumber, bpm,
+ *          fallSpeed, maxCompetency, thresholdA, thresholdB, thresholdC, thresholdS,
+ *          numLanes
+ * lane:    instrument, numNotes, numFlags,
+ *          hit samples (delta), types (byte), lines (byte), hold samples of held notes,
+ *          flag positions (delta), flag rates, flag gains
+ * tutorial (if flagged): autoplayRanges, switchSamples, arrowAppear (count + deltas)
+ * random hits: count, then for each: position (delta), count + probabilities
+ * </pre>
+ * Strings are a short length followed by UTF-8 bytes. Deltas and hold samples are
+ * zig-zag variable length integers, so sorted positions take one to three bytes each.
+ */
+public class ChartCompiler {
+    /** Marks a file as a compiled chart ("TMPC") */
+    private static final int MAGIC = 0x544D5043;
+    /** Version of the format; bump this whenever the layout changes */
+    private static final int VERSION = 1;
+    /** Header flag set if the chart has tutorial data */
+    private static final int FLAG_TUTORIAL = 1;
+    /** Local directory that compiled charts are written to */
+    private static final String CHART_DIRECTORY = "charts/";
+    /** File extension of compiled charts */
+    private static final String CHART_EXTENSION = ".chart";
+    /** Suffix of a chart while it is being written */
+    private static final String TEMPORARY = ".tmp";
+
+    /**
+     * Returns the chart of the given level JSON, compiling it first if needed.
+     *
+     * If the binary cannot be written or read (for example, a read-only install),
+     * this falls back to parsing the JSON.
+     *
+     * @param levelPath internal path of the level JSON (e.g. "levels/yr-hard.json")
+     * @return the chart of the level
+     */
+    public static Chart load(String levelPath) {
+        FileHandle json = Gdx.files.internal(levelPath);
+        FileHandle binary = Gdx.files.local(CHART_DIRECTORY + json.pathWithoutExtension() + CHART_EXTENSION);
+        if (binary.exists() && json.lastModified() <= binary.lastModified()) {
+            try {
+                return map(binary.file());
+            } catch (IOException | RuntimeException e) {
+                // stale format or damaged file, so compile it again
+                Gdx.app.log("ChartCompiler", "Recompiling " + levelPath + ": " + e.getMessage());
+            }
+        }
+        Chart chart = Chart.fromJson(new JsonReader().parse(json));
+        try {
+            write(chart, binary);
+        } catch (IOException | RuntimeException e) {
+            Gdx.app.error("ChartCompiler", "Could not write compiled chart for " + levelPath, e);
+        }
+        return chart;
+    }
+
+    /**
+     * Memory-maps a compiled chart and reads it
+     *
+     * @param file the compiled chart
+     * @return the chart stored in the file
+     */
+    public static Chart map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        }
+    }
+
+    /**
+     * Compiles a chart and writes it to the given file
+     *
+     * The chart is written to a temporary file first and then moved in place, so a
+     * run that is cut off never leaves a partial chart behind.
+     *
+     * @param chart the chart to compile
+     * @param file  the file to write to
+     */
+    public static void write(Chart chart, FileHandle file) throws IOException {
+        FileHandle temporary = file.sibling(file.name() + TEMPORARY);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(temporary.write(false)))) {
+                write(chart, out);
+            }
+            Files.move(temporary.file().toPath(), file.file().toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            temporary.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Compiles a chart to the given stream
+     *
+     * @param chart the chart to compile
+     * @param out   the stream to write to
+     */
+    public static void write(Chart chart, DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(chart.isTutorial() ? FLAG_TUTORIAL : 0);
+        writeString(out, chart.levelName);
+        writeString(out, chart.background);
+        writeString(out, chart.song);
+        out.writeInt(chart.levelNumber);
+        out.writeInt(chart.bpm);
+        out.writeInt(chart.fallSpeed);
+        out.writeInt(chart.maxCompetency);
+        out.writeLong(chart.aThreshold);
+        out.writeLong(chart.bThreshold);
+        out.writeLong(chart.cThreshold);
+        out.writeLong(chart.sThreshold);
+
+        out.writeInt(chart.lanes.length);
+        for (Chart.Lane lane : chart.lanes) {
+            writeString(out, lane.instrument);
+            out.writeInt(lane.size());
+            out.writeInt(lane.numCompFlags());
+            writeDeltas(out, lane.hitSamples);
+            out.write(lane.types);
+            out.write(lane.lines);
+            for (int i = 0; i < lane.size(); i++) {
+                if (lane.types[i] == Chart.HELD) {
+                    writeVarLong(out, lane.holdSamples[i]);
+                }
+            }
+            writeDeltas(out, lane.compPositions);
+            for (int rate : lane.compRates) {
+                out.writeInt(rate);
+            }
+            for (int gain : lane.compGains) {
+                out.writeInt(gain);
+            }
+        }
+
+        if (chart.isTutorial()) {
+            writeArray(out, chart.autoplayRanges);
+            writeArray(out, chart.switchSamples);
+            writeArray(out, chart.arrowAppear);
+        }
+
+        out.writeInt(chart.randomHitPositions.length);
+        long last = 0;
+        for (int i = 0; i < chart.randomHitPositions.length; i++) {
+            writeVarLong(out, chart.randomHitPositions[i] - last);
+            last = chart.randomHitPositions[i];
+            int[] probabilities = chart.randomHitProbabilities[i];
+            out.writeByte(probabilities.length);
+            for (int p : probabilities) {
+                out.writeInt(p);
+            }
+        }
+    }
+
+    /**
+     * Reads a compiled chart from the given buffer
+     *
+     * @param in the buffer holding the compiled chart
+     * @return the chart stored in the buffer
+     */
+    public static Chart read(ByteBuffer in) throws IOException {
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a compiled chart");
+            }
+            int version = in.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported chart version " + version);
+            }
+            int flags = in.getShort();
+            String levelName = readString(in);
+            String background = readString(in);
+            String song = readString(in);
+            int levelNumber = in.getInt();
+            int bpm = in.getInt();
+            int fallSpeed = in.getInt();
+            int maxCompetency = in.getInt();
+            long aThreshold = in.getLong();
+            long bThreshold = in.getLong();
+            long cThreshold = in.getLong();
+            long sThreshold = in.getLong();
+
+            // a lane takes at least 10 bytes: an empty instrument and two counts
+            Chart.Lane[] lanes = new Chart.Lane[readCount(in, 10)];
+            for (int l = 0; l < lanes.length; l++) {
+                String instrument = readString(in);
+                // a note takes at least a delta, a type and a line; a flag a delta, a rate and a gain
+                int numNotes = readCount(in, 3);
+                int numFlags = readCount(in, 9);
+                long[] hitSamples = readDeltas(in, numNotes);
+                byte[] types = new byte[numNotes];
+                in.get(types);
+                byte[] lines = new byte[numNotes];
+                in.get(lines);
+                long[] holdSamples = new long[numNotes];
+                for (int i = 0; i < numNotes; i++) {
+                    if (types[i] == Chart.HELD) {
+                        holdSamples[i] = readVarLong(in);
+                    }
+                }
+                long[] compPositions = readDeltas(in, numFlags);
+                int[] compRates = new int[numFlags];
+                for (int i = 0; i < numFlags; i++) {
+                    compRates[i] = in.getInt();
+                }
+                int[] compGains = new int[numFlags];
+                for (int i = 0; i < numFlags; i++) {
+                    compGains[i] = in.getInt();
+                }
+                lanes[l] = new Chart.Lane(instrument, hitSamples, holdSamples, lines, types,
+                        compPositions, compRates, compGains);
+            }
+
+            long[] autoplayRanges = null;
+            long[] switchSamples = null;
+            long[] arrowAppear = null;
+            if ((flags & FLAG_TUTORIAL) != 0) {
+                autoplayRanges = readArray(in);
+                switchSamples = readArray(in);
+                arrowAppear = readArray(in);
+            }
+
+            // a random hit takes at least a delta and a count
+            int numHits = readCount(in, 2);
+            long[] randomHitPositions = new long[numHits];
+            int[][] randomHitProbabilities = new int[numHits][];
+            long last = 0;
+            for (int i = 0; i < numHits; i++) {
+                last += readVarLong(in);
+                randomHitPositions[i] = last;
+                randomHitProbabilities[i] = new int[in.get() & 0xFF];
+                for (int j = 0; j < randomHitProbabilities[i].length; j++) {
+                    randomHitProbabilities[i][j] = in.getInt();
+                }
+            }
+
+            return new Chart(levelName, levelNumber, background, song, bpm, fallSpeed, maxCompetency,
+                    aThreshold, bThreshold, cThreshold, sThreshold, lanes,
+                    autoplayRanges, switchSamples, arrowAppear, randomHitPositions, randomHitProbabilities);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Compiled chart is truncated", e);
+        }
+    }
+
+    // FORMAT HELPERS
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Writes a count followed by the deltas of the values */
+    private static void writeArray(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        writeDeltas(out, values);
+    }
+
+    /** Reads an array written by {@link #writeArray} */
+    private static long[] readArray(ByteBuffer in) throws IOException {
+        return readDeltas(in, readCount(in, 1));
+    }
+
+    /**
+     * Reads the number of entries that follow, checking they fit in the rest of the buffer
+     *
+     * A damaged count would otherwise allocate an array of any size.
+     *
+     * @param in       the buffer holding the compiled chart
+     * @param minBytes the fewest bytes an entry takes
+     * @return the number of entries
+     */
+    private static int readCount(ByteBuffer in, int minBytes) throws IOException {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / minBytes) {
+            throw new IOException("Compiled chart is damaged: " + count + " entries in " + in.remaining() + " bytes");
+        }
+        return count;
+    }
+
+    /** Writes each value as the difference from the previous one */
+    private static void writeDeltas(DataOutputStream out, long[] values) throws IOException {
+        long last = 0;
+        for (long value : values) {
+            writeVarLong(out, value - last);
+            last = value;
+        }
+    }
+
+    /** Reads count values written by {@link #writeDeltas} */
+    private static long[] readDeltas(ByteBuffer in, int count) {
+        long[] values = new long[count];
+        long last = 0;
+        for (int i = 0; i < count; i++) {
+            last += readVarLong(in);
+            values[i] = last;
+        }
+        return values;
+    }
+
+    /** Writes a zig-zag encoded variable length integer (7 bits per byte) */
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    /** Reads a value written by {@link #writeVarLong} */
+    static long readVarLong(ByteBuffer in) {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Compiles level JSON files from the command line
+     *
+     * Each argument is a level JSON file. The compiled chart is written next to it
+     * with the {@value #CHART_EXTENSION} extension.
+     *
+     * @param args the level JSON files to compile
+     */
+    public static void main(String[] args) throws IOException {
+        for (String path : args) {
+            FileHandle json = new FileHandle(path);
+            Chart chart = Chart.fromJson(new JsonReader().parse(json));
+            FileHandle binary = json.sibling(json.nameWithoutExtension() + CHART_EXTENSION);
+            write(chart, binary);
+            System.out.println(path + " (" + json.length() + " bytes) -> " + binary.path() + " (" + binary.length() + " bytes)");
+        }
+    }
+}
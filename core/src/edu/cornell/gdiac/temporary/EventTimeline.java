@@ -0,0 +1,188 @@
+package edu.cornell.gdiac.temporary;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The timed events of a chart that are not notes, in song order.
+ *
+ * These are the competency flags of every band member and the tutorial cues (autoplay
+ * ranges, switch prompts and arrows). They are merged from the chart into primitive
+ * arrays sorted by song sample once, when the level is loaded. A cursor then walks them
+ * as the song advances: {@link #next} returns the events reached by a sample, and the
+ * owner applies them to its state. Everything that is asked about the events later
+ * (such as whether the tutorial is in an autoplay range) reads that state, with no
+ * side effects.
+ *
+ * A range is a pair of events: its start, on its first sample, and its end, on the
+ * sample after its last one. Events on the same sample keep the order they were added in.
+ */
+public class EventTimeline {
+    /** Event kind of a competency flag of a band member (loss and gain rates) */
+    public static final int COMP_FLAG = 0;
+    /** Event kind of the start of an autoplay range */
+    public static final int AUTOPLAY_START = 1;
+    /** Event kind of the end of an autoplay range */
+    public static final int AUTOPLAY_END = 2;
+    /** Event kind of the start of a switch prompt to a band member */
+    public static final int SWITCH_START = 3;
+    /** Event kind of the end of a switch prompt */
+    public static final int SWITCH_END = 4;
+    /** Event kind of the start of an arrow cue */
+    public static final int ARROW_START = 5;
+    /** Event kind of the end of an arrow cue */
+    public static final int ARROW_END = 6;
+
+    private long[] samples = new long[16];
+    private int[] kinds = new int[16];
+    private int[] targets = new int[16];
+    /** First value of each event: the loss rate of a flag, the last sample of a range */
+    private long[] values = new long[16];
+    /** Second value of each event: the gain rate of a flag */
+    private int[] gains = new int[16];
+    private int size;
+    /** The first event that has not been reached */
+    private int cursor;
+
+    /**
+     * Creates the timeline of a chart
+     *
+     * @param chart         the chart of the level
+     * @param sampleRate    the sample rate of the song
+     */
+    public EventTimeline(Chart chart, int sampleRate) {
+        for (int i = 0; i < chart.lanes.length; i++) {
+            Chart.Lane lane = chart.lanes[i];
+            for (int j = 0; j < lane.numCompFlags(); j++) {
+                add(COMP_FLAG, i, lane.compPositions[j], lane.compRates[j], lane.compGains[j]);
+            }
+        }
+        if (chart.isTutorial()) {
+            for (int i = 0; i + 1 < chart.autoplayRanges.length; i += 2) {
+                addRange(AUTOPLAY_START, AUTOPLAY_END, 0, chart.autoplayRanges[i], chart.autoplayRanges[i + 1]);
+            }
+            // a switch prompt opens half a second before the switch note, and closes half a second after
+            for (int i = 0; i + 1 < chart.switchSamples.length; i += 2) {
+                long sample = chart.switchSamples[i];
+                addRange(SWITCH_START, SWITCH_END, (int) chart.switchSamples[i + 1],
+                        sample - sampleRate / 2, sample + sampleRate / 2);
+            }
+            for (int i = 0; i + 1 < chart.arrowAppear.length; i += 2) {
+                addRange(ARROW_START, ARROW_END, 0, chart.arrowAppear[i], chart.arrowAppear[i + 1]);
+            }
+        }
+        sort();
+    }
+
+    /**
+     * Adds the start and end events of a range
+     *
+     * @param start     the kind of the start event
+     * @param end       the kind of the end event
+     * @param target    the band member of the range
+     * @param first     the first sample of the range
+     * @param last      the last sample of the range
+     */
+    private void addRange(int start, int end, int target, long first, long last) {
+        add(start, target, first, last, 0);
+        add(end, target, last + 1, last, 0);
+    }
+
+    private void add(int kind, int target, long sample, long value, int gain) {
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, size * 2);
+            kinds = Arrays.copyOf(kinds, size * 2);
+            targets = Arrays.copyOf(targets, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            gains = Arrays.copyOf(gains, size * 2);
+        }
+        samples[size] = sample;
+        kinds[size] = kind;
+        targets[size] = target;
+        values[size] = value;
+        gains[size] = gain;
+        size++;
+    }
+
+    /**
+     * Sorts the events by sample, keeping the order of events on the same sample
+     */
+    private void sort() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        // object sorts are stable, so ties keep the order they were added in
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(samples[a], samples[b]);
+            }
+        });
+        long[] s = new long[size];
+        int[] k = new int[size];
+        int[] t = new int[size];
+        long[] v = new long[size];
+        int[] g = new int[size];
+        for (int i = 0; i < size; i++) {
+            s[i] = samples[order[i]];
+            k[i] = kinds[order[i]];
+            t[i] = targets[order[i]];
+            v[i] = values[order[i]];
+            g[i] = gains[order[i]];
+        }
+        samples = s;
+        kinds = k;
+        targets = t;
+        values = v;
+        gains = g;
+    }
+
+    /** Returns the number of events in this timeline */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the song sample of the i-th event */
+    public long getSample(int i) {
+        return samples[i];
+    }
+
+    /** Returns the kind of the i-th event */
+    public int getKind(int i) {
+        return kinds[i];
+    }
+
+    /** Returns the band member of the i-th event */
+    public int getTarget(int i) {
+        return targets[i];
+    }
+
+    /** Returns the loss rate of a flag, or the last sample of a range, of the i-th event */
+    public long getValue(int i) {
+        return values[i];
+    }
+
+    /** Returns the gain rate of a flag of the i-th event */
+    public int getGain(int i) {
+        return gains[i];
+    }
+
+    /**
+     * Returns the next event reached by the given sample, and moves past it
+     *
+     * @param sample    the current song sample
+     * @return the index of the event, or -1 if the sample has not reached the next event
+     */
+    public int next(long sample) {
+        if (cursor < size && samples[cursor] <= sample) {
+            return cursor++;
+        }
+        return -1;
+    }
+
+    /** Moves the cursor back to the start of the song */
+    public void reset() {
+        cursor = 0;
+    }
+}
@@ -0,0 +1,300 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Times the phases of every frame of {@link GameMode}, to find out what a dropped frame
+ * was spent on.
+ *
+ * Each phase is timed with {@link System#nanoTime} between {@link #begin} and {@link #end}.
+ * A phase that runs several times in one frame (e.g. when a replay runs several game steps
+ * per frame) is summed. The last {@link #WINDOW} frames are kept, and their median, 99th
+ * percentile and maximum are drawn as a small overlay. Every frame can also be written
+ * to a CSV file for offline analysis, along with the {@link RenderStats} of its drawing.
+ *
+ * While the profiler is off, timing a phase only checks a flag.
+ */
+public class FrameProfiler {
+    /** Reading and converting input */
+    public static final int INPUT = 0;
+    /** Judging hits and switches (GameplayController.reactToAction) */
+    public static final int REACT = 1;
+    /** Moving notes and particles (GameplayController.update) */
+    public static final int UPDATE = 2;
+    /** Collecting destroyed notes and particles (GameplayController.garbageCollect) */
+    public static final int GC = 3;
+    /** Drawing the lanes, notes and band members (Level.drawEverything) */
+    public static final int LEVEL = 4;
+    /** Drawing hit particles and indicators */
+    public static final int PARTICLES = 5;
+    /** Drawing the scoreboard (Scoreboard.displayScoreBoard) */
+    public static final int SCOREBOARD = 6;
+    /** The whole frame, from the start of update to the end of draw */
+    public static final int FRAME = 7;
+    /** Names of the phases, as shown in the overlay and the CSV header */
+    private static final String[] NAMES = {"input", "react", "update", "gc", "level", "particles", "scoreboard", "frame"};
+    /** Number of phases */
+    private static final int PHASES = NAMES.length;
+
+    /** Number of frames the percentiles are computed over (10 seconds at 60 fps) */
+    private static final int WINDOW = 600;
+    /** Number of frames between updates of the overlay */
+    private static final int REFRESH = 30;
+    /** Local directory that CSV files are written to */
+    public static final String PROFILE_DIRECTORY = "profiles/";
+
+    /** Whether phases are being timed */
+    private boolean enabled;
+    /** Start time of each running phase */
+    private final long[] start = new long[PHASES];
+    /** Time spent in each phase this frame */
+    private final long[] current = new long[PHASES];
+    /** Last WINDOW frames of each phase, as a ring buffer */
+    private final long[][] history = new long[PHASES][WINDOW];
+    /** Next slot of the ring buffer */
+    private int next;
+    /** Number of frames in the ring buffer */
+    private int size;
+    /** Number of frames timed since the profiler was turned on */
+    private long frames;
+    /** Scratch space for sorting a phase */
+    private final long[] sorted = new long[WINDOW];
+    /** Lines of the overlay, rebuilt every REFRESH frames */
+    private final String[] lines = new String[PHASES + 2];
+    /** Render counts of the last frame */
+    private final RenderStats render = new RenderStats();
+
+    /** Writer of the CSV file, or null if no file is being written */
+    private Writer csv;
+    /** The CSV file being written */
+    private FileHandle csvFile;
+
+    /** Color of the overlay background */
+    private final Color background = new Color(0f, 0f, 0f, 0.6f);
+
+    /** Returns true if the profiler is timing phases */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns the profiler on or off. Turning it on starts a new window.
+     *
+     * @param on true to start timing phases
+     */
+    public void setEnabled(boolean on) {
+        if (on && !enabled) {
+            next = 0;
+            size = 0;
+            frames = 0;
+            Arrays.fill(current, 0);
+            Arrays.fill(lines, null);
+        }
+        if (!on) {
+            stopCsv();
+        }
+        enabled = on;
+    }
+
+    /**
+     * Marks the start of a frame
+     */
+    public void beginFrame() {
+        if (!enabled) {
+            return;
+        }
+        Arrays.fill(current, 0);
+        begin(FRAME);
+    }
+
+    /**
+     * Starts timing a phase
+     *
+     * @param phase the phase (e.g. {@link #REACT})
+     */
+    public void begin(int phase) {
+        if (enabled) {
+            start[phase] = System.nanoTime();
+        }
+    }
+
+    /**
+     * Stops timing a phase, adding the time since {@link #begin} to this frame
+     *
+     * @param phase the phase (e.g. {@link #REACT})
+     */
+    public void end(int phase) {
+        if (enabled) {
+            current[phase] += System.nanoTime() - start[phase];
+        }
+    }
+
+    /**
+     * Marks the end of a frame, storing its times and writing them to the CSV file
+     *
+     * @param stats the render counts of the frame
+     */
+    public void endFrame(RenderStats stats) {
+        if (!enabled) {
+            return;
+        }
+        end(FRAME);
+        render.set(stats);
+        for (int i = 0; i < PHASES; i++) {
+            history[i][next] = current[i];
+        }
+        next = (next + 1) % WINDOW;
+        size = Math.min(size + 1, WINDOW);
+        frames++;
+        if (csv != null) {
+            writeRow();
+        }
+        if (frames % REFRESH == 1) {
+            refresh();
+        }
+    }
+
+    /**
+     * Returns a percentile of a phase over the window, in nanoseconds
+     *
+     * @param phase      the phase (e.g. {@link #REACT})
+     * @param percentile the percentile, from 0 to 100
+     * @return the percentile of the phase
+     */
+    public long getPercentile(int phase, float percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        System.arraycopy(history[phase], 0, sorted, 0, size);
+        Arrays.sort(sorted, 0, size);
+        int index = (int) Math.ceil(percentile / 100f * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+
+    /**
+     * Rebuilds the lines of the overlay from the window
+     */
+    private void refresh() {
+        lines[0] = String.format("%-10s %6s %6s %6s ms", "phase", "p50", "p99", "max");
+        for (int i = 0; i < PHASES; i++) {
+            lines[i + 1] = String.format("%-10s %6.2f %6.2f %6.2f", NAMES[i],
+                    getPercentile(i, 50) / 1e6, getPercentile(i, 99) / 1e6, getPercentile(i, 100) / 1e6);
+        }
+        lines[PHASES + 1] = String.format("%d draws %d flushes %d switches %d verts", render.getDraws(),
+                render.getFlushes(), render.getTextureSwitches(), render.getVertices());
+    }
+
+    /**
+     * Draws the overlay in the top left corner of the screen
+     *
+     * The canvas must be active (between begin and end).
+     *
+     * @param canvas the canvas to draw to
+     * @param font   the font of the overlay
+     */
+    public void draw(GameCanvas canvas, BitmapFont font) {
+        if (!enabled || lines[0] == null) {
+            return;
+        }
+        float scale = font.getData().scaleX;
+        font.getData().setScale(0.5f);
+        float lineHeight = font.getLineHeight();
+        float top = canvas.getHeight() - lineHeight / 2;
+        float width = 0.35f * canvas.getWidth();
+        canvas.fillTranslucentRect(0, top - (lines.length + (csv != null ? 1 : 0)) * lineHeight - lineHeight / 2,
+                width, canvas.getHeight(), background);
+        for (int i = 0; i < lines.length; i++) {
+            canvas.drawText(lines[i], font, lineHeight / 2, top - i * lineHeight, Color.WHITE);
+        }
+        if (csv != null) {
+            canvas.drawText("recording " + csvFile.name(), font, lineHeight / 2, top - lines.length * lineHeight, Color.RED);
+        }
+        font.getData().setScale(scale);
+    }
+
+    /** Returns true if frames are being written to a CSV file */
+    public boolean isWritingCsv() {
+        return csv != null;
+    }
+
+    /**
+     * Starts writing the time of every phase of every frame to a new CSV file in the
+     * local profile directory. This turns the profiler on.
+     */
+    public void startCsv() {
+        stopCsv();
+        setEnabled(true);
+        csvFile = Gdx.files.local(PROFILE_DIRECTORY + "frames-" + System.currentTimeMillis() + ".csv");
+        try {
+            csv = new BufferedWriter(csvFile.writer(false, "UTF-8"));
+        } catch (GdxRuntimeException e) {
+            Gdx.app.error("FrameProfiler", "Could not open " + csvFile.path(), e);
+            return;
+        }
+        try {
+            csv.write("frame");
+            for (String name : NAMES) {
+                csv.write("," + name + "_ns");
+            }
+            csv.write(",draws,flushes,texture_switches,vertices\n");
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Stops writing the CSV file, if one is being written
+     */
+    public void stopCsv() {
+        if (csv == null) {
+            return;
+        }
+        try {
+            csv.close();
+            Gdx.app.log("FrameProfiler", "Wrote " + frames + " frames to " + csvFile.path());
+        } catch (IOException e) {
+            Gdx.app.error("FrameProfiler", "Could not close " + csvFile.path(), e);
+        }
+        csv = null;
+    }
+
+    private void writeRow() {
+        try {
+            csv.write(Long.toString(frames));
+            for (int i = 0; i < PHASES; i++) {
+                csv.write(',');
+                csv.write(Long.toString(current[i]));
+            }
+            csv.write(',');
+            csv.write(Integer.toString(render.getDraws()));
+            csv.write(',');
+            csv.write(Integer.toString(render.getFlushes()));
+            csv.write(',');
+            csv.write(Integer.toString(render.getTextureSwitches()));
+            csv.write(',');
+            csv.write(Integer.toString(render.getVertices()));
+            csv.write('\n');
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        Gdx.app.error("FrameProfiler", "Could not write " + csvFile.path(), e);
+        try {
+            csv.close();
+        } catch (IOException ignored) {
+            // already failed
+        }
+        csv = null;
+    }
+}
@@ -53,6 +53,20 @@ public class GDXRoot extends Game implements ScreenListener {
 	private CalibrationMode calibration;
 
 	private LevelSelect levelscreen;
+	/** Prepares the chart and song of levels on a worker thread */
+	private LevelLoader levelLoader;
+
+	// ASSET TIERS (see AssetDirectory#loadTier)
+	/** Assets of the level select screen */
+	private static final String SELECT_TIER = "select";
+	/** Assets of every level in play (the instruments and backgrounds are tiers of their own) */
+	private static final String PLAY_TIER = "play";
+	/** Assets of the level editor */
+	private static final String EDITOR_TIER = "editor";
+	/** Assets of the calibration screen */
+	private static final String CALIBRATION_TIER = "calibration";
+	/** Time spent loading queued assets every frame, in milliseconds */
+	private static final int STREAM_BUDGET = 4;
 
 
 	/**
@@ -83,6 +97,9 @@ public class GDXRoot extends Game implements ScreenListener {
 		}
 		calibration = new CalibrationMode(canvas);
 		levelscreen = new LevelSelect(canvas);
+		levelLoader = new LevelLoader();
+		levelscreen.setLevelLoader(levelLoader);
+		playing.setLevelLoader(levelLoader);
 
 		loading.setScreenListener(this);
 		setScreen(loading);
@@ -109,6 +126,13 @@ public class GDXRoot extends Game implements ScreenListener {
 		editing = null;
 		menu.dispose();
 		menu = null;
+		levelLoader.dispose();
+		levelLoader = null;
+		Gdx.app.log("GDXRoot", "Song cache: " + SongCache.getInstance());
+		SongCache.getInstance().clear();
+		Gdx.app.log("GDXRoot", "Font cache: " + ResourceManager.get().getFontCache());
+		ResourceManager.dispose();
+		SaveManager.dispose();
 
 		// Unload all the resources
 		if (directory != null) {
@@ -133,6 +157,42 @@ public class GDXRoot extends Game implements ScreenListener {
 		super.resize(width,height);
 	}
 	
+	/**
+	 * Called when the Application should render itself.
+	 *
+	 * Before the screen is drawn, queued asset tiers are loaded for a few milliseconds,
+	 * so that the screens a player is likely to go to next are ready when they get there.
+	 */
+	public void render() {
+		if (directory != null) {
+			directory.update(STREAM_BUDGET);
+		}
+		super.render();
+	}
+
+	/**
+	 * Queues the asset tiers of the next screen and unloads all other tiers.
+	 *
+	 * The menu assets are not in a tier, so they are never unloaded. A screen that
+	 * needs a tier right away must wait for it with AssetDirectory#finishLoadingTier.
+	 *
+	 * @param names	The tiers to keep or load
+	 */
+	private void useTiers(String... names) {
+		for (String tier : directory.getLoadedTiers()) {
+			boolean used = false;
+			for (String name : names) {
+				used |= name.equals(tier);
+			}
+			if (!used) {
+				directory.unloadTier(tier);
+			}
+		}
+		for (String name : names) {
+			directory.loadTier(name);
+		}
+	}
+
 	/**
 	 * The given screen has made a request to exit its player mode.
 	 * This is where most of the screen switching logic is done.
@@ -145,6 +205,8 @@ public class GDXRoot extends Game implements ScreenListener {
 	public void exitScreen(Screen screen, int exitCode) {
 		if (screen == loading && exitCode == ExitCode.TO_MENU) {
 			directory = loading.getAssets();
+			// the player is likely to pick a level next
+			useTiers(SELECT_TIER);
 			menu.setScreenListener(this);
 			menu.populate(directory);
 			setScreen(menu);
@@ -154,6 +216,9 @@ public class GDXRoot extends Game implements ScreenListener {
 		}
 		else if (exitCode == ExitCode.TO_LEVEL) {
 			screen.hide();
+			// gameplay is loaded in the background while a level is picked
+			useTiers(SELECT_TIER, PLAY_TIER);
+			directory.finishLoadingTier(SELECT_TIER);
 			levelscreen.reset();
 			levelscreen.setScreenListener(this);
 			levelscreen.populate(directory);
@@ -162,29 +227,39 @@ public class GDXRoot extends Game implements ScreenListener {
 		} else if (exitCode == ExitCode.TO_PLAYING){
 			screen.hide();
 			playing.setScreenListener(this);
+			// the level loads its own instruments and background
+			directory.finishLoadingTier(SELECT_TIER);
+			directory.finishLoadingTier(PLAY_TIER);
 			String fileName = LevelSelect.getSelectedJson();
 			int levelIdx = levelscreen.getSelectedLevel();
 			playing.readLevel( fileName, directory, levelIdx, levelscreen.getSelectedDifficulty());
 			playing.populate(directory);
-			playing.initializeOffset(calibration.getOffset());
+			// the saved offsets include the corrections made in play since the last calibration
+			playing.initializeOffset(SaveManager.getInstance().getCalibrationOffset(),
+					SaveManager.getInstance().getVisualCalibrationOffset());
 			playing.setSoundVolume(MenuMode.getFXVolumeSetting(), MenuMode.getMusicVolumeSetting());
 			playing.reset();
 			setScreen(playing);
 			playing.show();
 		} else if (exitCode == ExitCode.TO_EDITOR) {
 			screen.hide();
+			useTiers(EDITOR_TIER);
+			directory.finishLoadingTier(EDITOR_TIER);
 			editing.setScreenListener(this);
 			editing.populate(directory);
 			setScreen(editing);
 			editing.show();
 		} else if (exitCode == ExitCode.TO_CALIBRATION) {
 			screen.hide();
+			useTiers(CALIBRATION_TIER);
+			directory.finishLoadingTier(CALIBRATION_TIER);
 			calibration.setScreenListener(this);
 			calibration.populate(directory);
 			setScreen(calibration);
 			calibration.show();
 		} else if (exitCode == ExitCode.TO_MENU) {
 			screen.hide();
+			useTiers(SELECT_TIER);
 			menu.setScreenListener(this);
 			setScreen(menu);
 			menu.reset();
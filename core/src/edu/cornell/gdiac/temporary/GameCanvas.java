@@ -21,6 +21,7 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.math.*;
 import com.badlogic.gdx.graphics.*;
 import com.badlogic.gdx.graphics.g2d.*;
+import com.badlogic.gdx.utils.Array;
 import edu.cornell.gdiac.util.FilmStrip;
 
 import java.util.ArrayList;
@@ -36,7 +37,11 @@ import java.util.ArrayList;
 public class GameCanvas {
 
 	/** While we are not drawing polygons (yet), this spritebatch is more reliable */
-	private PolygonSpriteBatch spriteBatch;
+	private RecordingBatch spriteBatch;
+	/** Whether the sprite batch draws anything (false when only counting draws) */
+	private boolean rendering;
+	/** The render counts of the last frame (from begin to end) */
+	private final RenderStats lastFrame = new RenderStats();
 	
 	/** Track whether or not we are active (for error checking) */
 	private boolean active;
@@ -54,6 +59,8 @@ public class GameCanvas {
 	private Affine2 local;
 	/** Cache object to unify everything under a master draw method */
 	private TextureRegion holder;
+	/** The layouts of the text drawn, kept from frame to frame */
+	private final TextLayoutCache textLayouts = new TextLayoutCache();
 	Pixmap pixel;
 	ArrayList<Texture> disp;
 	Texture pixelTexture;
@@ -65,8 +72,22 @@ public class GameCanvas {
 	 * of the necessary graphics objects.
 	 */
 	public GameCanvas() {
+		this(true);
+	}
+
+	/**
+	 * Creates a new GameCanvas, which may not draw anything.
+	 *
+	 * A canvas that does not render still counts (and can record) everything drawn
+	 * with it, without making any GL calls of its own. Textures still need GL to be
+	 * created, which a headless application can stub out.
+	 *
+	 * @param render whether to draw to the screen
+	 */
+	public GameCanvas(boolean render) {
 		active = false;
-		spriteBatch = new PolygonSpriteBatch();
+		rendering = render;
+		spriteBatch = new RecordingBatch(render ? new PolygonSpriteBatch() : null);
 		// Set the projection matrix (for proper scaling)
 		spriteBatch.getProjectionMatrix().setToOrtho2D(0, 0, getWidth(), getHeight());
 		// Initialize the cache objects
@@ -89,7 +110,6 @@ public class GameCanvas {
 		pixel.dispose();
 		spriteBatch.dispose();
 		pixelTexture.dispose();
-		PRG = null;
 		pixel = null;
     	spriteBatch = null;
     	local  = null;
@@ -231,6 +251,8 @@ public class GameCanvas {
 	 public void resize() {
 		// Resizing screws up the spriteBatch projection matrix
 		spriteBatch.getProjectionMatrix().setToOrtho2D(0, 0, getWidth(), getHeight());
+		// The screens rescale their fonts to the new size
+		textLayouts.clear();
 	}
 	
 	/**
@@ -283,14 +305,15 @@ public class GameCanvas {
 	 * Nothing is flushed to the graphics card until the method end() is called.
 	 */
     public void begin() {
-		unitPerp = new Vector2();
     	spriteBatch.begin();
 		disp = new ArrayList<>();
     	active = true;
 
     	// Clear the screen
-		Gdx.gl.glClearColor(0.39f, 0.58f, 0.93f, 1.0f);  // Homage to the XNA years
-		Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
+		if (rendering) {
+			Gdx.gl.glClearColor(0.39f, 0.58f, 0.93f, 1.0f);  // Homage to the XNA years
+			Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
+		}
     }
 
 	/**
@@ -300,8 +323,65 @@ public class GameCanvas {
 		spriteBatch.setColor(Color.WHITE);
     	spriteBatch.end();
     	active = false;
+		lastFrame.set(spriteBatch.getStats());
     }
 
+	/**
+	 * Returns the render counts of the last drawing sequence (from begin to end)
+	 *
+	 * The counts are of the sequence before the current one if drawing is active.
+	 *
+	 * @return the render counts of the last drawing sequence
+	 */
+	public RenderStats getRenderStats() {
+		return lastFrame;
+	}
+
+	/**
+	 * Starts or stops recording every draw of a drawing sequence as a command.
+	 *
+	 * Recording allocates a command per draw, so it is meant for tools, not for play.
+	 *
+	 * @param recording true to record draws
+	 */
+	public void setRecording(boolean recording) {
+		spriteBatch.setRecording(recording);
+	}
+
+	/**
+	 * Returns the draws of the current (or last) drawing sequence, if recording
+	 *
+	 * @return the draws of the current (or last) drawing sequence
+	 */
+	public Array<RecordingBatch.Command> getRecordedCommands() {
+		return spriteBatch.getCommands();
+	}
+
+	/**
+	 * Returns the layout of the text in the font, with its current scale and color
+	 *
+	 * The layout is the one the drawText methods use, kept from frame to frame, so
+	 * measuring text before drawing it costs nothing more. It must not be changed,
+	 * and should be used right away.
+	 *
+	 * @param font The font to lay the text out with
+	 * @param text The string to lay out
+	 *
+	 * @return the layout of the text in the font
+	 */
+	public GlyphLayout getTextLayout(BitmapFont font, String text) {
+		return textLayouts.get(font, text);
+	}
+
+	/**
+	 * Returns the cache of the layouts of the text drawn
+	 *
+	 * @return the cache of the layouts of the text drawn
+	 */
+	public TextLayoutCache getTextLayoutCache() {
+		return textLayouts;
+	}
+
     
 	/**
      * Draw the seamless background image.
@@ -335,14 +415,77 @@ public class GameCanvas {
 
     }
 
+	/** Number of floats per vertex of the sprite batch (x, y, color, u, v) */
+	private static final int VERTEX_SIZE = 5;
+	/** Triangles of up to four quads, each given by its corners in the order of {@link #putQuad} */
+	private static final short[] QUAD_TRIANGLES = {
+			0, 1, 2, 1, 2, 3,
+			4, 5, 6, 5, 6, 7,
+			8, 9, 10, 9, 10, 11,
+			12, 13, 14, 13, 14, 15};
+	/** Vertices of the shape being drawn, written straight into the sprite batch */
+	private final float[] shapeVertices = new float[4 * 4 * VERTEX_SIZE];
+
+	/**
+	 * Writes the corners of a quad into the shape vertices.
+	 *
+	 * The corners are (x1, y1), (x2, y2), (x3, y3), (x4, y4), where the first three and
+	 * the last three each form a triangle.
+	 *
+	 * @param quad which quad of the shape this is (0 to 3)
+	 * @param color the packed color of the quad
+	 */
+	private void putQuad(int quad, float x1, float y1, float x2, float y2,
+						 float x3, float y3, float x4, float y4, float color) {
+		int i = quad * 4 * VERTEX_SIZE;
+		i = putVertex(i, x1, y1, color);
+		i = putVertex(i, x2, y2, color);
+		i = putVertex(i, x3, y3, color);
+		putVertex(i, x4, y4, color);
+	}
+
+	private int putVertex(int i, float x, float y, float color) {
+		shapeVertices[i] = x;
+		shapeVertices[i + 1] = y;
+		shapeVertices[i + 2] = color;
+		// the center of the white pixel
+		shapeVertices[i + 3] = 0.5f;
+		shapeVertices[i + 4] = 0.5f;
+		return i + VERTEX_SIZE;
+	}
+
 	/**
-	 * Pointer used to determine a unit vector in a certain direction for line drawing
+	 * Writes a line of the given thickness into the shape vertices as a quad
+	 *
+	 * @param quad which quad of the shape this is (0 to 3)
+	 * @param color the packed color of the line
+	 * @return false if the line has no length (and nothing was written)
 	 */
+	private boolean putLine(int quad, float x1, float y1, float x2, float y2, float thickness, float color) {
+		float dist = (float) Math.sqrt((x2 - x1)*(x2-x1) + (y2 - y1)*(y2-y1));
+		if (dist == 0) {
+			return false;
+		}
+		//Offset both ends along the unit perpendicular - we are essentially drawing a very thin rectangle
+		float px = (thickness/2f)*(y2-y1)/dist;
+		float py = (thickness/2f)*(x1-x2)/dist;
+		putQuad(quad, x1 + px, y1 + py, x1 - px, y1 - py, x2 + px, y2 + py, x2 - px, y2 - py, color);
+		return true;
+	}
 
-	Vector2 unitPerp;
+	/**
+	 * Sends the first quads of the shape vertices to the sprite batch
+	 *
+	 * @param quads the number of quads to draw
+	 */
+	private void drawQuads(int quads) {
+		spriteBatch.draw(pixelTexture, shapeVertices, 0, quads * 4 * VERTEX_SIZE, QUAD_TRIANGLES, 0, quads * 6);
+	}
 
 	/**
 	 * Draw a line given the starting and ending coordinates
+	 *
+	 * The color is drawn opaque (its alpha is ignored). This does not allocate anything.
 	 * @param x1
 	 * @param y1
 	 * @param x2
@@ -351,31 +494,16 @@ public class GameCanvas {
 	 * @param c
 	 */
 	public void drawLine(float x1, float y1, float x2, float y2, int thickness, Color c){
-
-		//Calculate the distance and direction
-		float dist = (float) Math.sqrt((x2 - x1)*(x2-x1) + (y2 - y1)*(y2-y1));
-		unitPerp.set((y2-y1)/dist, (x1-x2)/dist);
-		//Form two triangles - we are essentially drawing a very thin rectangle
-		float[] coors = new float[]{x1 + (thickness/2f)*unitPerp.x,y1 + (thickness/2f)*unitPerp.y,
-									x1 - (thickness/2f)*unitPerp.x,y1 - (thickness/2f)*unitPerp.y,
-									x2 + (thickness/2f)*unitPerp.x,y2 + (thickness/2f)*unitPerp.y,
-									x2 - (thickness/2f)*unitPerp.x,y2 - (thickness/2f)*unitPerp.y};
-
-
-		short[] triangles = new short[]{0, 1, 2, 1, 2, 3};
-		//Create the PolygonRegion and set the color, then draw it with no offset
-		PolygonRegion PRG = new PolygonRegion(new TextureRegion(pixelTexture), coors, triangles);
-		Color tint = new Color(c.r, c.g,c.b,1f);
-
-		spriteBatch.setColor(tint);
-		spriteBatch.draw(PRG, 0, 0);
-
+		if (putLine(0, x1, y1, x2, y2, thickness, Color.toFloatBits(c.r, c.g, c.b, 1f))) {
+			drawQuads(1);
+		}
 	}
-//PolygonRegion pointer used for drawing discrete lines and shapes
-	PolygonRegion PRG;
 
 	/**
 	 * Draw a rectangle given 2 coordinates
+	 *
+	 * The color is drawn opaque (its alpha is ignored). An outline is 3 pixels thick.
+	 * This does not allocate anything.
 	 * @param x1
 	 * @param y1
 	 * @param x2
@@ -384,33 +512,42 @@ public class GameCanvas {
 	 * @param filled
 	 */
 	public void drawRect(float x1, float y1, float x2, float y2, Color c, boolean filled){
+		float color = Color.toFloatBits(c.r, c.g, c.b, 1f);
 		//If its filled
 		if(filled){
 			//Set the triangle coordiantes to the 4 corners
-			float[] coors = new float[]{x1,y1,
-										x1,y2,
-										x2,y1,
-										x2,y2};
-
-
-			short[] triangles = new short[]{0, 1, 2, 1, 3, 2};
-			//Generate a polyregion
-			PRG = new PolygonRegion(new TextureRegion(pixelTexture), coors, triangles);
-			//set the color
-			Color tint = new Color(c.r, c.g,c.b,1f);
-			spriteBatch.setColor(tint);
-			//draw
-			spriteBatch.draw(PRG, 0, 0);
+			putQuad(0, x1, y1, x1, y2, x2, y1, x2, y2, color);
+			drawQuads(1);
 		}
 		else{
-			//If not filled, draw 4 lines representing the boundaries
-			drawLine(x1,y1,x1,y2,3, c);
-			drawLine(x1,y1,x2,y1,3, c);
-			drawLine(x2,y1,x2,y2,3, c);
-			drawLine(x1,y2,x2,y2,3, c);
+			//If not filled, draw 4 lines representing the boundaries in one batch
+			int quads = 0;
+			if (putLine(quads, x1,y1,x1,y2,3, color)) quads++;
+			if (putLine(quads, x1,y1,x2,y1,3, color)) quads++;
+			if (putLine(quads, x2,y1,x2,y2,3, color)) quads++;
+			if (putLine(quads, x1,y2,x2,y2,3, color)) quads++;
+			if (quads > 0) {
+				drawQuads(quads);
+			}
 		}
 	}
 
+	/**
+	 * Fills a rectangle given 2 coordinates, blended by the alpha of the color
+	 *
+	 * Unlike {@link #drawRect}, a translucent color lets what is under the rectangle
+	 * show through. This does not allocate anything.
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @param c
+	 */
+	public void fillTranslucentRect(float x1, float y1, float x2, float y2, Color c){
+		putQuad(0, x1, y1, x1, y2, x2, y1, x2, y2, c.toFloatBits());
+		drawQuads(1);
+	}
+
 //	/**
 //	 * Fills in a rectangle with a certain texture
 //	 * @param tr
@@ -607,10 +744,10 @@ public class GameCanvas {
 				y - textureRegion.getRegionHeight() * (scale * (0.5f - yStart)),
 				trueWidth,
 				trueHeight,
-				xStart,
-				1f - yStart,
-				xEnd,
-				1f - yEnd
+				lerp(textureRegion.getU(), textureRegion.getU2(), xStart),
+				lerp(textureRegion.getV2(), textureRegion.getV(), yStart),
+				lerp(textureRegion.getU(), textureRegion.getU2(), xEnd),
+				lerp(textureRegion.getV2(), textureRegion.getV(), yEnd)
 		);
 	}
 
@@ -637,13 +774,29 @@ public class GameCanvas {
 				y - textureRegion.getRegionHeight() * (scale * (0.5f - yStart)),
 				trueWidth,
 				trueHeight,
-				xStart,
-				1f - yStart,
-				xEnd,
-				1f - yEnd
+				lerp(textureRegion.getU(), textureRegion.getU2(), xStart),
+				lerp(textureRegion.getV2(), textureRegion.getV(), yStart),
+				lerp(textureRegion.getU(), textureRegion.getU2(), xEnd),
+				lerp(textureRegion.getV2(), textureRegion.getV(), yEnd)
 		);
 	}
 	
+	/**
+	 * Returns the texture coordinate a fraction of the way across a region
+	 *
+	 * Subsections are given as fractions of the region, which need not be the whole
+	 * texture (e.g. if it was packed into an atlas).
+	 *
+	 * @param from 	The texture coordinate at fraction 0
+	 * @param to 	The texture coordinate at fraction 1
+	 * @param t 	The fraction of the region
+	 *
+	 * @return the texture coordinate a fraction of the way across a region
+	 */
+	private static float lerp(float from, float to, float t) {
+		return from + (to - from) * t;
+	}
+
 	/**
 	 * Compute the affine transform (and store it in local) for this image.
 	 * 
@@ -679,7 +832,7 @@ public class GameCanvas {
 			return;
 		}
 		
-		GlyphLayout layout = new GlyphLayout(font,text);
+		GlyphLayout layout = textLayouts.get(font, text);
 		font.setColor(Color.BLACK);
 		font.draw(spriteBatch, layout, x, y);
     }
@@ -690,7 +843,7 @@ public class GameCanvas {
 			return;
 		}
 
-		GlyphLayout layout = new GlyphLayout(font,text);
+		GlyphLayout layout = textLayouts.get(font, text);
 		font.draw(spriteBatch, layout, x, y);
 	}
 
@@ -709,7 +862,7 @@ public class GameCanvas {
 			return;
 		}
 
-		GlyphLayout layout = new GlyphLayout(font,text);
+		GlyphLayout layout = textLayouts.get(font, text);
 		font.setColor(c);
 
 		font.draw(spriteBatch, layout, x, y);
@@ -743,7 +896,7 @@ public class GameCanvas {
 			return;
 		}
 
-		GlyphLayout layout = new GlyphLayout(font,text);
+		GlyphLayout layout = textLayouts.get(font, text);
 		float x = (getWidth()  - layout.width) / 2.0f;
 		float y = (getHeight() + layout.height) / 2.0f;
 		font.setColor(tint);
@@ -13,22 +13,24 @@ package edu.cornell.gdiac.temporary;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Screen;
+import com.badlogic.gdx.files.FileHandle;
 
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.GlyphLayout;
-import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
 import com.badlogic.gdx.math.Vector2;
-import com.badlogic.gdx.utils.JsonReader;
-import com.badlogic.gdx.utils.JsonValue;
+import com.badlogic.gdx.utils.Array;
 import edu.cornell.gdiac.assets.AssetDirectory;
+import edu.cornell.gdiac.assets.ResourceManager;
 import edu.cornell.gdiac.util.FilmStrip;
 import edu.cornell.gdiac.temporary.entity.Particle;
 
 
 import edu.cornell.gdiac.util.ScreenListener;
 
+import java.io.IOException;
+
 /**
  * The primary controller class for the game.
  *
@@ -58,9 +60,6 @@ public class GameMode implements Screen {
 	}
 
 	// Loaded assets
-	// background images
-	private FilmStrip streetLevelBackground;
-
 	/** Textures for the intro sequence of the level*/
 	private Texture introMask;
 	private Texture introThree;
@@ -126,6 +125,10 @@ public class GameMode implements Screen {
 	private GameCanvas canvas;
 
 	private BitmapFont blinkerRegular;
+	/** Size of blinkerRegular, in pixels */
+	private int blinkerRegularSize;
+	/** Font sizes are rounded to multiples of this, so resizing the window only rasterizes a few sizes */
+	private static final int FONT_SIZE_STEP = 15;
 
 	/** Reads input from keyboard or game pad (CONTROLLER CLASS) */
 	private InputController inputController;
@@ -167,8 +170,27 @@ public class GameMode implements Screen {
 	private Texture line;
 	private Texture scoreIcon;
 	AssetDirectory directory;
-	FreeTypeFontGenerator generator;
-	FreeTypeFontGenerator.FreeTypeFontParameter parameter;
+	/** The asset tiers of the current level (its instruments and background) */
+	private Array<String> levelTiers = new Array<String>();
+	/** Prepares the chart and song of levels ahead of time (null to read them when needed) */
+	private LevelLoader levelLoader;
+
+	/** Internal path of the current level JSON */
+	private String levelPath;
+	/** The calibration offset, in milliseconds */
+	private int offsetMs;
+	/** The visual calibration offset, in milliseconds */
+	private int visualOffsetMs;
+	/** Records the current run, or null if it is not being recorded */
+	private Replay.Recorder recorder;
+	/** Replay file of the last finished run, or null if there is none */
+	private FileHandle lastReplay;
+	/** The replay being watched, or null if the player is playing */
+	private Replay playback;
+	/** Number of game frames per rendered frame while watching a replay (1 to 16) */
+	private int playbackSpeed = 1;
+	/** Times the phases of every frame (F3 shows the overlay, F4 writes a CSV file) */
+	private FrameProfiler profiler = new FrameProfiler();
 
 	/**
 	 * Creates a new game with the given drawing context.
@@ -207,10 +229,14 @@ public class GameMode implements Screen {
 	}
 
 	/**
-	 * Initializes the offset to use for the gameplayController
-	 * @param offset the offset from CalibrationMode
+	 * Initializes the offsets to use for the gameplayController
+	 * @param offset the audio offset from CalibrationMode
+	 * @param visualOffset the visual offset from CalibrationMode
 	 */
-	public void initializeOffset(int offset) {
+	public void initializeOffset(int offset, int visualOffset) {
+		offsetMs = offset;
+		visualOffsetMs = visualOffset;
+		gameplayController.setVisualOffset(visualOffset);
 		gameplayController.setOffset(offset);
 	}
 
@@ -222,13 +248,43 @@ public class GameMode implements Screen {
 		directory = assetDirectory;
 		nextIdx = (difficulty)+(((selectedLevel+1)*3));
 
-		JsonReader jr = new JsonReader();
-
-		JsonValue levelData = jr.parse(Gdx.files.internal(levelString));
-		gameplayController.loadLevel(levelData, directory);
+		// the previous level is thrown away, so only its recording needs to be closed
+		closeRecorder();
+		playback = null;
+		gameplayController.setPlayback(null);
+		lastReplay = null;
+		levelPath = levelString;
+		LevelData data = levelLoader == null ? LevelData.load(levelString) : levelLoader.take(levelString);
+		loadLevelTiers(data.chart);
+		gameplayController.loadLevel(data, directory);
 		inputController = InputController.getInstance();
 	}
 
+	/**
+	 * Loads the asset tiers of the instruments and background of a chart
+	 *
+	 * This blocks until they are loaded. The level select screen usually queued them
+	 * while the level was highlighted, so only what is left is waited for. The tiers
+	 * of the previous level that the chart does not use are unloaded.
+	 *
+	 * @param chart the chart of the level
+	 */
+	private void loadLevelTiers(Chart chart) {
+		Array<String> previous = levelTiers;
+		levelTiers = chart.getAssetTiers();
+		for (int i = 0; i < levelTiers.size; i++) {
+			directory.loadTier(levelTiers.get(i));
+		}
+		for (int i = 0; i < levelTiers.size; i++) {
+			directory.finishLoadingTier(levelTiers.get(i));
+		}
+		for (int i = 0; i < previous.size; i++) {
+			if (!levelTiers.contains(previous.get(i), false)) {
+				directory.unloadTier(previous.get(i));
+			}
+		}
+	}
+
 	public void setSoundVolume(float fxVolume, float musicVolume) {
 		gameplayController.level.setMusicVolume(musicVolume);
 	}
@@ -243,6 +299,10 @@ public class GameMode implements Screen {
 		}
 		gameplayController = null;
 		canvas = null;
+		if (blinkerRegular != null) {
+			ResourceManager.get().releaseFont(blinkerRegular);
+			blinkerRegular = null;
+		}
 	}
 
 	/**
@@ -255,12 +315,11 @@ public class GameMode implements Screen {
 	 * @param directory     Reference to the asset directory.
 	 */
 	public void populate(AssetDirectory directory) {
-		generator = new FreeTypeFontGenerator(Gdx.files.internal("fonts/Blinker-Regular.ttf"));
-		parameter = new FreeTypeFontGenerator.FreeTypeFontParameter();
-		parameter.size = 30;
-		blinkerRegular = generator.generateFont(parameter);
+		if (blinkerRegular == null) {
+			blinkerRegular = ResourceManager.get().acquireFont("fonts/Blinker-Regular.ttf", 30);
+			blinkerRegularSize = 30;
+		}
 
-		streetLevelBackground = new FilmStrip(directory.getEntry("street-background", Texture.class), 1, 1);
 		winBackground = new FilmStrip(directory.getEntry("win-background", Texture.class), 1, 1);
 		loseBackground = new FilmStrip(directory.getEntry("lose-background", Texture.class), 1, 1);
 		displayFont = directory.getEntry("times",BitmapFont.class);
@@ -330,16 +389,31 @@ public class GameMode implements Screen {
 
 	private void update(float delta) {
 		// Process the game input
+		profiler.begin(FrameProfiler.INPUT);
 		inputController.readInput(gameplayController.NUM_LANES);
+		profiler.end(FrameProfiler.INPUT);
+		if (inputController.didToggleProfiler()) {
+			profiler.setEnabled(!profiler.isEnabled());
+		}
+		if (inputController.didToggleProfilerCsv()) {
+			if (profiler.isWritingCsv()) {
+				profiler.stopCsv();
+			} else {
+				profiler.startCsv();
+			}
+		}
 
 		boolean didInput = inputController.didMouseLift();
 
 		// Test whether to reset the game.
 		switch (gameState) {
 			case INTRO:
+				profiler.begin(FrameProfiler.INPUT);
 				gameplayController.receiveInput(inputController);
+				profiler.end(FrameProfiler.INPUT);
 				// wait a few frames before starting
 				if (ticks == 0) {
+					startRun();
 					gameplayController.start();
 					gameplayController.update(0, 0);
 					saidThree = false;
@@ -349,8 +423,12 @@ public class GameMode implements Screen {
 				introTime = gameplayController.updateIntro(ticks);
 				ticks++;
 				if (!justPaused) {
+					profiler.begin(FrameProfiler.REACT);
 					gameplayController.reactToAction();
+					profiler.end(FrameProfiler.REACT);
+					profiler.begin(FrameProfiler.UPDATE);
 					gameplayController.update(0, ticks);
+					profiler.end(FrameProfiler.UPDATE);
 				}
 				if (introTime >= 0 && !saidThree){
 					introSFX.playSound("three", 0.3f);
@@ -411,6 +489,9 @@ public class GameMode implements Screen {
 //						reset();
 					}
 				}
+				if (inputController.didWatchReplay()) {
+					watchReplay();
+				}
 				break;
 			case OVER:
 				if (ticks >= 120) {
@@ -449,19 +530,38 @@ public class GameMode implements Screen {
 						s.playSound(0, 0.3f);
 						resetLevel();
 					}
+					if (inputController.didWatchReplay()) {
+						watchReplay();
+					}
 				} else {
 					play(delta);
 					ticks++;
 				}
 				break;
 			case PLAY:
+				profiler.begin(FrameProfiler.INPUT);
 				gameplayController.receiveInput(inputController);
+				profiler.end(FrameProfiler.INPUT);
+				int replaySpeed = inputController.getReplaySpeed();
+				if (playback != null && replaySpeed > 0) {
+					playbackSpeed = replaySpeed;
+					gameplayController.level.setFrameClock(playbackSpeed > 1);
+				}
 				if (inputController.didExit()) {
 					gameplayController.level.pauseMusic();
 					gameState = GameState.PAUSE;
 				} else {
 					play(delta);
 					ticks++;
+					// replays faster than realtime run several game frames per rendered frame
+					int steps = playback != null ? playbackSpeed : 1;
+					for (int i = 1; i < steps && gameState == GameState.PLAY; i++) {
+						profiler.begin(FrameProfiler.INPUT);
+						gameplayController.receiveInput(inputController);
+						profiler.end(FrameProfiler.INPUT);
+						play(delta);
+						ticks++;
+					}
 				}
 				break;
 			case PAUSE:
@@ -503,6 +603,7 @@ public class GameMode implements Screen {
 
 	public void setScoreScale(float heightConfine){
 		String disp = "Score 0000000";
+		blinkerRegular.getData().setScale(scoreScale);
 		scoreLayout.setText(blinkerRegular, disp);
 		scoreScale *= heightConfine/scoreLayout.height;
 		blinkerRegular.getData().setScale(scoreScale);
@@ -527,13 +628,123 @@ public class GameMode implements Screen {
 	 * All the logic to reset a level
 	 */
 	private void resetLevel() {
+		closeRecorder();
 		gameplayController.reset();
 		gameplayController.reloadLevel();
+		stopPlayback();
 		ticks = 0;
 		endTime = 0;
 		gameState = GameState.INTRO;
 	}
 
+	/**
+	 * Starts a run of the level from the intro.
+	 *
+	 * A run played by the player is recorded to a new replay. A run of a replay restores
+	 * the seed and offsets of the recorded run and plays back its input.
+	 */
+	private void startRun() {
+		closeRecorder();
+		if (playback != null) {
+			RandomController.setSeed(playback.seed);
+			gameplayController.setOffset(playback.offset);
+			gameplayController.setVisualOffset(playback.visualOffset);
+			gameplayController.setPlayback(playback);
+			gameplayController.level.setFrameClock(playbackSpeed > 1);
+			return;
+		}
+		long seed = System.nanoTime();
+		RandomController.setSeed(seed);
+		Level level = gameplayController.level;
+		try {
+			recorder = Replay.record(levelPath, offsetMs, visualOffsetMs, seed, level.getMusic().getSampleRate(), level.getMaxSample());
+		} catch (IOException e) {
+			Gdx.app.error("GameMode", "Could not record replay of " + levelPath, e);
+			recorder = null;
+		}
+		gameplayController.setRecorder(recorder);
+	}
+
+	/**
+	 * Records the totals of the run and closes its replay
+	 *
+	 * @param failed true if the run ended because a band member ran out of competency
+	 */
+	private void finishRecording(boolean failed) {
+		if (recorder != null) {
+			recorder.finish(gameplayController, failed);
+			lastReplay = recorder.getFile();
+			recorder = null;
+			gameplayController.setRecorder(null);
+		}
+	}
+
+	/**
+	 * Corrects the calibration offsets by the drift measured over the run that just ended
+	 *
+	 * Both offsets move together, so judgement shifts and the notes are drawn where
+	 * they were. The correction is saved, and used from the next run on.
+	 */
+	private void finishAutoCalibration() {
+		AutoCalibration hits = gameplayController.getAutoCalibration();
+		String measured = hits.toString();
+		int correction = hits.finishRun();
+		if (correction == 0) {
+			return;
+		}
+		SaveManager saves = SaveManager.getInstance();
+		offsetMs += correction;
+		visualOffsetMs += correction;
+		saves.saveCalibration(offsetMs);
+		saves.saveVisualCalibration(visualOffsetMs);
+		gameplayController.setVisualOffset(visualOffsetMs);
+		gameplayController.setOffset(offsetMs);
+		Gdx.app.log("GameMode", "Calibration corrected by " + correction + "ms to " + offsetMs + "ms (" + measured + ")");
+	}
+
+	/**
+	 * Closes the replay of an unfinished run
+	 */
+	private void closeRecorder() {
+		if (recorder != null) {
+			recorder.close();
+			recorder = null;
+			gameplayController.setRecorder(null);
+		}
+	}
+
+	/**
+	 * Restarts the level, playing back the replay of the last finished run
+	 */
+	private void watchReplay() {
+		if (lastReplay == null) {
+			return;
+		}
+		Replay replay;
+		try {
+			replay = Replay.read(lastReplay);
+		} catch (IOException e) {
+			Gdx.app.error("GameMode", "Could not read replay " + lastReplay.path(), e);
+			return;
+		}
+		s.playSound(0, 0.3f);
+		resetLevel();
+		playback = replay;
+	}
+
+	/**
+	 * Returns control to the player if a replay is being watched
+	 */
+	private void stopPlayback() {
+		if (playback != null) {
+			playback = null;
+			gameplayController.setPlayback(null);
+			gameplayController.setOffset(offsetMs);
+			gameplayController.setVisualOffset(visualOffsetMs);
+			gameplayController.level.setFrameClock(false);
+		}
+	}
+
 	/**
 	 * This method processes a single step in the game loop.
 	 *
@@ -542,11 +753,17 @@ public class GameMode implements Screen {
 	protected void play(float delta) {
 		// Update objects.
 		if (gameState == GameState.PLAY) {
+			profiler.begin(FrameProfiler.REACT);
 			gameplayController.reactToAction();
+			profiler.end(FrameProfiler.REACT);
+			profiler.begin(FrameProfiler.UPDATE);
 			gameplayController.update(1, ticks);
+			profiler.end(FrameProfiler.UPDATE);
 
 		} else {
+			profiler.begin(FrameProfiler.UPDATE);
 			gameplayController.update(2, ticks);
+			profiler.end(FrameProfiler.UPDATE);
 		}
 
 		// if we have a competency bar at 0
@@ -554,13 +771,22 @@ public class GameMode implements Screen {
 			ticks = 0;
 			gameState = GameState.OVER;
 			gameplayController.level.stopMusic();
+			finishRecording(true);
+			finishAutoCalibration();
 		}
 
 		// in the future, we should prob move this else where.
 		// so that it is checked near the end of the game.
 		if (gameplayController.checkWinCon()){
 			endTime++;
-			SaveManager.getInstance().saveGame(gameplayController.level.getLevelName(), gameplayController.sb.getScore(), gameplayController.sb.getLetterGradeAsString(), gameplayController.sb.getMaxCombo());
+			finishRecording(false);
+			if (playback == null && endTime == 1) {
+				SaveManager.getInstance().saveRun(gameplayController.level.getLevelName(), gameplayController.sb.getScore(),
+						gameplayController.sb.getLetterGradeAsString(), gameplayController.sb.getMaxCombo(),
+						gameplayController.getNPerfect(), gameplayController.getNGood(),
+						gameplayController.getNOk(), gameplayController.getNMiss());
+				finishAutoCalibration();
+			}
 			if (endTime < 150) {
 				gameplayController.level.setMusicVolume(volume*(1- ((float) endTime / 150)));
 			}
@@ -570,11 +796,17 @@ public class GameMode implements Screen {
 			if (endTime >= 180) {
 				gameState = GameState.WON;
 				endTime = 0;
+				// the player may go on to the next level from the win screen
+				if (levelLoader != null && nextIdx < LevelSelect.getnLevels()) {
+					levelLoader.prepare(LevelSelect.getAllLevels()[nextIdx]);
+				}
 			}
 		}
 
 		// Clean up destroyed objects
+		profiler.begin(FrameProfiler.GC);
 		gameplayController.garbageCollect();
+		profiler.end(FrameProfiler.GC);
 	}
 
 	/**
@@ -595,12 +827,15 @@ public class GameMode implements Screen {
 			drawWin();
 		} else if (gameState == GameState.PLAY || gameState == GameState.INTRO || gameState == GameState.PAUSE || (gameState == GameState.OVER && ticks < 120)){
 //			Draw everything in the current level
+			profiler.begin(FrameProfiler.LEVEL);
 			gameplayController.level.drawEverything(canvas,
-					gameplayController.activeBandMember, gameplayController.goalBandMember,
-					inputController.triggerPress, inputController.didSwitch(),
+					gameplayController.getActiveBandMember(), gameplayController.getGoalBandMember(),
+					gameplayController.getDrawnTriggers(inputController), gameplayController.getDrawnSwitches(inputController),
 					gameplayController.inBetweenWidth/5f);
+			profiler.end(FrameProfiler.LEVEL);
 
 			// Draw the particles on top
+			profiler.begin(FrameProfiler.PARTICLES);
 			for (Particle o : gameplayController.getParticles()) {
 				o.draw(canvas);
 			}
@@ -608,10 +843,16 @@ public class GameMode implements Screen {
 			for (Particle o : gameplayController.getNoteIndicatorParticles()){
 				o.draw(canvas);
 			}
+			profiler.end(FrameProfiler.PARTICLES);
 
 			// draw the scoreboard
 			if (!gameplayController.level.isInAutoplayRange() && !gameplayController.level.isAutoSwitching()) {
+				profiler.begin(FrameProfiler.SCOREBOARD);
 				gameplayController.sb.displayScoreBoard(canvas);
+				profiler.end(FrameProfiler.SCOREBOARD);
+			}
+			if (playback != null) {
+				canvas.drawText("Replay " + playbackSpeed + "x", blinkerRegular, centerX*0.05f, centerY*1.9f, Color.WHITE);
 			}
 			// draw pause menu UI if paused
 			if (gameState == GameState.PAUSE) {
@@ -694,6 +935,7 @@ public class GameMode implements Screen {
 				canvas.draw(introMask, mask, 0, 0, 0, 0, 0, (float)canvas.getWidth()/introMask.getWidth(), (float)canvas.getHeight()/introMask.getHeight());
 			}
 		}
+		profiler.draw(canvas, lucidaFont);
 		canvas.end();
 	}
 
@@ -877,8 +1119,14 @@ public class GameMode implements Screen {
 		float sx = ((float)width)/STANDARD_WIDTH;
 		float sy = ((float)height)/STANDARD_HEIGHT;
 		scale = Math.min(sx, sy);
-		parameter.size = Math.round(30*(1+scale));
-		blinkerRegular = generator.generateFont(parameter);
+		int size = Math.max(1, Math.round(30*(1+scale)/FONT_SIZE_STEP))*FONT_SIZE_STEP;
+		if (blinkerRegular == null || size != blinkerRegularSize) {
+			if (blinkerRegular != null) {
+				ResourceManager.get().releaseFont(blinkerRegular);
+			}
+			blinkerRegular = ResourceManager.get().acquireFont("fonts/Blinker-Regular.ttf", size);
+			blinkerRegularSize = size;
+		}
 
 		centerY = height/2;
 		centerX = width/2;
@@ -894,8 +1142,10 @@ public class GameMode implements Screen {
 	 */
 	public void render(float delta) {
 		if (active) {
+			profiler.beginFrame();
 			update(delta);
 			draw();
+			profiler.endFrame(canvas.getRenderStats());
 			if (isReady() && listener != null) {
 				listener.exitScreen(this, pressState);
 			}
@@ -927,6 +1177,8 @@ public class GameMode implements Screen {
 		active = true;
 		ticks = 0;
 		gameState = GameState.INTRO;
+		// Trigger presses are timestamped by the input processor
+		InputController.getInstance().setGameplayProcessor();
 	}
 
 	/**
@@ -935,6 +1187,8 @@ public class GameMode implements Screen {
 	public void hide() {
 		// Useless if called in outside animation loop
 		active = false;
+		closeRecorder();
+		profiler.stopCsv();
 	}
 
 	/**
@@ -946,4 +1200,13 @@ public class GameMode implements Screen {
 		this.listener = listener;
 	}
 
+	/**
+	 * Sets the loader that prepares the chart and song of levels ahead of time
+	 *
+	 * @param loader the level loader
+	 */
+	public void setLevelLoader(LevelLoader loader) {
+		levelLoader = loader;
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,882 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.utils.Array;
+import edu.cornell.gdiac.temporary.entity.BandMember;
+import edu.cornell.gdiac.temporary.entity.Note;
+
+import java.util.Arrays;
+
+/**
+ * The rules of a run: judging hits and releases, killing missed notes, the competency of
+ * the band members and the tutorial cues.
+ *
+ * These rules only read song samples, never where the notes are drawn, and never touch
+ * graphics or audio. The game ({@link GameplayController}) and the headless simulator
+ * ({@link GameSimulator}) both play through them, so given the same input on the same
+ * frames they end with the same score.
+ *
+ * A frame is two calls. {@link #react} judges the input of the frame at the song position
+ * of the last update, then {@link #update} moves the song to the position of the next
+ * frame. What the game shows or plays in reaction (hit indicators, particles, keysounds)
+ * is left to a {@link Listener}.
+ */
+public class GameRules {
+    /** Number of combo levels of the score */
+    public static final int COMBO_LEVELS = 4;
+    /** Score multiplier of each combo level */
+    public static final int[] MULTIPLIERS = {1, 2, 3, 5};
+    /** Combo needed to leave each combo level */
+    public static final long[] COMBO_METERS = {10, 20, 30};
+    /** Number of trigger lines of a band member */
+    public static final int LINES = 4;
+
+    /**
+     * Creates the notes of the chart as they are about to fall
+     */
+    public interface NoteFactory {
+        /**
+         * Creates a note. Its hit sample and hold length are set by the rules.
+         *
+         * @param line        the line of the note (-1 for switch notes)
+         * @param type        the type of the note
+         * @param startSample the sample at which the note starts falling
+         * @return the new note
+         */
+        Note createNote(int line, Note.NoteType type, long startSample);
+    }
+
+    /**
+     * Reacts to what happens in a run, for everything the rules leave out
+     */
+    public interface Listener {
+        /**
+         * Called when a note is hit, or a held note released, within the hit windows
+         *
+         * @param note   the note
+         * @param grade  the grade of the hit (see {@link Judgement})
+         * @param sample the song sample of the input, before the audio offset
+         * @param lifted true if this was the release of a held note
+         */
+        void noteHit(Note note, int grade, long sample, boolean lifted);
+
+        /**
+         * Called when a note of the active band member falls past the play area unplayed
+         *
+         * @param note the note
+         */
+        void noteDropped(Note note);
+
+        /**
+         * Called when a held note is held past its end
+         *
+         * @param note the note
+         */
+        void holdFinished(Note note);
+    }
+
+    private final Chart chart;
+    private final int sampleRate;
+    private final BandMember[] members;
+    private final NoteFactory factory;
+    private Listener listener;
+    private final Judgement judgement;
+    private final ScoreTracker score;
+    /** The competency flags and tutorial cues of the chart, in song order */
+    private final EventTimeline timeline;
+
+    /** Samples a note falls from the spawn line to the hit line */
+    private final long spawnOffset;
+    /** Switch notes fall twice as slow */
+    private final long spawnOffsetSwitch;
+    /** Samples held for each competency gain of a held note */
+    private final long samplesPerBeat;
+    /** Length of a switch between band members, in samples */
+    private final long switchSamples;
+    /** See {@link #getDeathRatio} */
+    private final double deathRatio;
+
+    /** The audio calibration offset, in samples */
+    private long offset;
+    /** The length of the song; notes that end after it are skipped */
+    private long maxSample = Long.MAX_VALUE;
+
+    /** The song position of the last update */
+    private long sample;
+    /** The last sample that competency decayed at */
+    private long lastDec;
+    private int activeBandMember;
+    private int goalBandMember;
+    /** Whether a switch between band members is under way, and the sample it started at */
+    private boolean transition;
+    private long transitionStart;
+
+    private int numberPerfect;
+    private int numberGood;
+    private int numberOk;
+    /** Number of off-beat hits and bad releases */
+    private int numberMiss;
+    /** Number of notes that fell past the play area unplayed */
+    private int numberDropped;
+
+    /** What the active band member did this frame, which drives its animation and decay */
+    private boolean df;
+    private boolean jk;
+    private boolean miss;
+
+    /** Whether the tutorial is playing the notes, and the range it is playing */
+    private boolean inAutoplay;
+    private long startRange;
+    private long endRange;
+    /** Whether the tutorial is switching band members, the range of the switch and its target */
+    private boolean autoSwitching;
+    private long startSwitchRange;
+    private long endSwitchRange = -1;
+    private int toBandMember;
+    /** Whether the tutorial has pressed the switch of its current range */
+    private boolean switchCued;
+    /** Whether the tutorial is showing its arrow */
+    private boolean arrowAppearing;
+
+    /**
+     * The input of the tutorial, which replaces the player's while it plays. The keys it
+     * holds down are read at the start of the next frame, like the keyboard.
+     */
+    private final boolean[] scriptedPress = new boolean[LINES];
+    private final boolean[] scriptedLast = new boolean[LINES];
+    private final boolean[] scriptedTriggers = new boolean[LINES];
+    private final boolean[] scriptedLifted = new boolean[LINES];
+    private final boolean[] scriptedSwitchPress;
+    private final boolean[] scriptedSwitchLast;
+    private final boolean[] scriptedSwitches;
+
+    /** Lines that already registered a hit this frame, so one press cannot hit two notes */
+    private final boolean[] hitReg = new boolean[LINES];
+    /** Lines that already registered a hit from the current trigger event */
+    private final boolean[] eventReg = new boolean[LINES];
+
+    /**
+     * Creates the rules of a chart
+     *
+     * @param chart      the chart to play
+     * @param members    the band members, one for each lane of the chart
+     * @param sampleRate the sample rate of the song of the chart
+     * @param factory    creates the notes of the chart as they spawn
+     */
+    public GameRules(Chart chart, BandMember[] members, int sampleRate, NoteFactory factory) {
+        this.chart = chart;
+        this.members = members;
+        this.sampleRate = sampleRate;
+        this.factory = factory;
+        judgement = new Judgement(sampleRate);
+        score = new ScoreTracker(COMBO_LEVELS, MULTIPLIERS, COMBO_METERS);
+        score.setletterTH(new long[]{chart.cThreshold, chart.bThreshold, chart.aThreshold, chart.sThreshold});
+        timeline = new EventTimeline(chart, sampleRate);
+        spawnOffset = 10L * sampleRate / chart.fallSpeed;
+        spawnOffsetSwitch = 2L * spawnOffset;
+        samplesPerBeat = (long) (sampleRate * (60f / chart.bpm));
+        switchSamples = (sampleRate * 60L / chart.bpm) / 4;
+        deathRatio = getDeathRatio(members.length);
+        scriptedSwitchPress = new boolean[members.length];
+        scriptedSwitchLast = new boolean[members.length];
+        scriptedSwitches = new boolean[members.length];
+    }
+
+    /**
+     * Creates the band members of a chart, without any textures
+     *
+     * @param chart      the chart to play
+     * @param sampleRate the sample rate of the song of the chart
+     * @return a band member for each lane of the chart, at full competency
+     */
+    public static BandMember[] createBandMembers(Chart chart, int sampleRate) {
+        BandMember[] members = new BandMember[chart.lanes.length];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = new BandMember();
+            members[i].setLane(chart.lanes[i]);
+            members[i].setCurComp(chart.maxCompetency);
+            members[i].setMaxComp(chart.maxCompetency);
+            members[i].setSPB(sampleRate * 60f / chart.bpm);
+        }
+        return members;
+    }
+
+    /**
+     * Returns how far a note has fallen when it dies, relative to the hit line.
+     *
+     * Notes fall linearly from the spawn line (progress 0) to the hit line (progress 1) and
+     * die once they are below the bottom of the play area. The play area always has the same
+     * aspect ratio (see GameplayController.setBounds), so this only depends on the number of
+     * lanes.
+     *
+     * @param numLanes the number of band members
+     * @return the progress at which a note dies
+     */
+    public static double getDeathRatio(int numLanes) {
+        // lane width over play area height (GameplayController.setWidths)
+        double k = 2.0 / (numLanes - 1 + (numLanes - 1) * 0.25 + 4);
+        // (noteSpawnY - noteDieY) / (noteSpawnY - hitY) (GameplayController.setYVals)
+        return (1 + 2 * k) / (1 + k);
+    }
+
+    /**
+     * Sets what reacts to the events of a run
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the audio calibration offset
+     *
+     * @param offset the offset in milliseconds, from CalibrationMode
+     */
+    public void setOffset(int offset) {
+        this.offset = (int) (((float) offset / 1000) * sampleRate);
+    }
+
+    /**
+     * Returns the audio calibration offset, in samples
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Sets the length of the song. Notes that end after the song are skipped.
+     *
+     * @param maxSample the number of samples in the song
+     */
+    public void setMaxSample(long maxSample) {
+        this.maxSample = maxSample;
+    }
+
+    /**
+     * Rewinds the band members, the score and the tutorial to the start of the song
+     *
+     * No notes are on screen until the first {@link #update}.
+     */
+    public void restart() {
+        score.resetScore();
+        score.resetCombo();
+        for (BandMember member : members) {
+            member.restart();
+        }
+        timeline.reset();
+        sample = 0;
+        lastDec = 0;
+        activeBandMember = 0;
+        goalBandMember = 0;
+        transition = false;
+        numberPerfect = 0;
+        numberGood = 0;
+        numberOk = 0;
+        numberMiss = 0;
+        numberDropped = 0;
+        df = false;
+        jk = false;
+        miss = false;
+        inAutoplay = false;
+        autoSwitching = false;
+        arrowAppearing = false;
+        startSwitchRange = 0;
+        endSwitchRange = -1;
+        switchCued = false;
+        clearScriptedInput();
+        Arrays.fill(scriptedSwitchPress, false);
+    }
+
+    /**
+     * Judges the input of a frame at the song position of the last update.
+     *
+     * The trigger events are judged at their own samples. Switches happen at the song
+     * position, and a switch drops the rest of the input of its frame. While the tutorial
+     * plays, the player's input is ignored and the tutorial's is judged instead.
+     *
+     * @param switches     which band members the player switched to this frame
+     * @param numEvents    the number of trigger events this frame
+     * @param eventLines   the line of each trigger event
+     * @param eventPressed whether each trigger event was a press (true) or a release (false)
+     * @param eventSamples the song sample of each trigger event
+     */
+    public void react(boolean[] switches, int numEvents, int[] eventLines, boolean[] eventPressed, long[] eventSamples) {
+        df = false;
+        jk = false;
+        miss = false;
+        boolean scripted = isScripted();
+        if (scripted) {
+            readScriptedInput();
+            switches = scriptedSwitches;
+            numEvents = 0;
+        } else {
+            clearScriptedInput();
+        }
+        Arrays.fill(hitReg, false);
+
+        // SWITCH NOTE HIT HANDLING
+        if (!transition) {
+            for (int i = 0; i < switches.length && i < members.length; ++i) {
+                if (switches[i] && i != activeBandMember) {
+                    BandMember active = members[activeBandMember];
+                    //Check only the lanes that are not the current active lane
+                    Array<Note> switchNotes = members[i].getSwitchNotes();
+                    for (int k = 0; k < switchNotes.size; k++) {
+                        checkHit(switchNotes.get(k), sample, active.getGainRate() * 2, 0, true, hitReg, false);
+                    }
+                    Array<Note> hitNotes = active.getHitNotes();
+                    for (int k = 0; k < hitNotes.size; k++) {
+                        Note n = hitNotes.get(k);
+                        if (n.getNoteType() == Note.NoteType.HELD && n.isHolding()) {
+                            checkHit(n, sample, (int) (active.getGainRate() * 0.75), -1, true, hitReg, true);
+                        }
+                    }
+                    goalBandMember = i;
+                    transition = true;
+                    transitionStart = sample;
+                    members[activeBandMember].changeMode();
+                    members[goalBandMember].changeMode();
+                    // the rest of the input of this frame is dropped
+                    return;
+                }
+            }
+        } else if (sample - transitionStart >= switchSamples) {
+            transition = false;
+            activeBandMember = goalBandMember;
+        }
+
+        //Now check for hit and held notes
+        Array<Note> hitNotes = members[transition ? goalBandMember : activeBandMember].getHitNotes();
+        judgeHitEvents(hitNotes, numEvents, eventLines, eventPressed, eventSamples);
+        int gainRate = members[activeBandMember].getGainRate();
+        for (int k = 0; k < hitNotes.size; k++) {
+            Note n = hitNotes.get(k);
+            int line = n.getLine();
+            if (n.getNoteType() == Note.NoteType.BEAT) {
+                if (sample >= n.getHitSample()) {
+                    setScriptedPress(line, true);
+                }
+                if (scripted && scriptedTriggers[line] && !hitReg[line]) {
+                    checkHit(n, sample, gainRate, -1, true, hitReg, false);
+                    setScriptedPress(line, false);
+                }
+                continue;
+            }
+            // HOLD NOTE
+            long end = n.getHitSample() + n.getHoldSamples();
+            if (sample >= n.getHitSample() && sample <= end) {
+                setScriptedPress(line, true);
+            }
+            if (sample > end) {
+                setScriptedPress(line, false);
+            }
+            //Check if we hit the trigger down close enough to the head
+            if (scripted && scriptedTriggers[line] && !hitReg[line]) {
+                checkHit(n, sample, gainRate, -1, false, hitReg, false);
+            }
+            //check if we lifted close to the end (we only check if we ended up holding the note in the first place)
+            if (scripted && scriptedLifted[line] && n.isHolding()) {
+                releaseHeld(n, sample, hitReg);
+            }
+            if (n.isHolding()) {
+                if (line < members.length / 2) {
+                    df = true;
+                } else {
+                    jk = true;
+                }
+                // gain competency every beat held
+                if ((sample - n.getHitSample()) / samplesPerBeat > n.getHeldFor()) {
+                    members[activeBandMember].compUpdate(gainRate);
+                    n.setHeldFor(n.getHeldFor() + 1);
+                }
+            }
+            // destroy if the note end has gone past (only while holding), and reset the combo
+            if (((sample - offset) - end) > judgement.okHit && n.isHolding()) {
+                if (listener != null) {
+                    listener.holdFinished(n);
+                }
+                n.setDestroyed(true);
+                score.resetCombo();
+            }
+        }
+    }
+
+    /**
+     * Judges every trigger press and release of a frame at the sample it happened on.
+     *
+     * Each press can register at most one hit. Releases only affect held notes that are
+     * currently being held.
+     */
+    private void judgeHitEvents(Array<Note> hitNotes, int numEvents, int[] eventLines,
+                                boolean[] eventPressed, long[] eventSamples) {
+        int gainRate = members[activeBandMember].getGainRate();
+        for (int e = 0; e < numEvents; e++) {
+            int line = eventLines[e];
+            if (line < 0 || line >= LINES) {
+                continue;
+            }
+            long eventSample = eventSamples[e];
+            eventReg[line] = false;
+            for (int i = 0; i < hitNotes.size; i++) {
+                Note n = hitNotes.get(i);
+                if (n.getLine() != line || n.isDestroyed()) {
+                    continue;
+                }
+                if (eventPressed[e]) {
+                    if (!eventReg[line]) {
+                        checkHit(n, eventSample, gainRate, -1, n.getNoteType() == Note.NoteType.BEAT, eventReg, false);
+                    }
+                } else if (n.getNoteType() == Note.NoteType.HELD && n.isHolding()) {
+                    releaseHeld(n, eventSample, eventReg);
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles letting go of a held note
+     *
+     * @param n the held note, which must currently be holding
+     * @param releaseSample the sample at which the note was released
+     * @param hitReg the lines that already registered a hit
+     */
+    private void releaseHeld(Note n, long releaseSample, boolean[] hitReg) {
+        checkHit(n, releaseSample, (int) (members[activeBandMember].getGainRate() * 0.75), -1, true, hitReg, true);
+        n.setHeldFor(0);
+        n.setDestroyed(true);
+        n.setHolding(false);
+    }
+
+    /**
+     * Handles logic of a hit, whether it is on beat or not, etc.
+     *
+     * @param note the note that we are trying to hit
+     * @param currentSample the song sample of the input
+     * @param gainRate the competency gained by a perfect hit
+     * @param offBeatLoss the hit status of the note if it is hit off beat
+     * @param destroy whether a hit destroys the note
+     * @param hitReg the lines that already registered a hit, updated on a hit
+     * @param lifted whether the note was lifted (if held, can only be true if NoteType == HELD)
+     */
+    public void checkHit(Note note, long currentSample, int gainRate, int offBeatLoss,
+                         boolean destroy, boolean[] hitReg, boolean lifted) {
+        Note.NoteType nt = note.getNoteType();
+        // check for precondition that lifted is true iff note type is HELD
+        assert !lifted || nt == Note.NoteType.HELD;
+
+        long adjustedPosition = currentSample - offset;
+        long dist = lifted ? Math.abs(adjustedPosition - (note.getHitSample() + note.getHoldSamples()))
+                : Math.abs(adjustedPosition - note.getHitSample());
+
+        int grade = judgement.grade(dist);
+        if (grade != Judgement.NONE) {
+            if (Judgement.isHit(grade)) {
+                if (nt != Note.NoteType.SWITCH) {
+                    df = note.getLine() < 2;
+                    jk = note.getLine() >= 2;
+                }
+                if (grade == Judgement.PERFECT) {
+                    numberPerfect++;
+                } else if (grade == Judgement.GOOD) {
+                    numberGood++;
+                } else {
+                    numberOk++;
+                }
+                //Set that we have registered a hit for this line, so a single hit does not
+                //count for two notes that are close together
+                note.setHolding(true);
+                note.setHitStatus(Judgement.compGain(grade, gainRate));
+                if (note.getLine() != -1) {
+                    hitReg[note.getLine()] = true;
+                }
+                if (listener != null) {
+                    listener.noteHit(note, grade, currentSample, lifted);
+                }
+                note.setDestroyed(destroy);
+                score.receiveHit(Judgement.points(grade));
+            } else if (nt == Note.NoteType.SWITCH || nt == Note.NoteType.BEAT) {
+                // lose some competency since you played a bit off beat
+                miss = true;
+                score.resetCombo();
+                note.setHitStatus(offBeatLoss);
+                numberMiss++;
+            }
+        }
+        if (nt == Note.NoteType.HELD && !lifted && adjustedPosition - note.getHitSample() < note.getHoldSamples()
+                && adjustedPosition >= note.getHitSample()) {
+            note.setHolding(true);
+            df = note.getLine() < 2;
+            jk = note.getLine() >= 2;
+        }
+        //if we let go too early we need to reset the combo
+        if (lifted && grade == Judgement.NONE) {
+            miss = true;
+            score.resetCombo();
+            note.setHitStatus(offBeatLoss);
+            numberMiss++;
+        }
+    }
+
+    /**
+     * Moves the song to the position of the next frame.
+     *
+     * The competency flags and tutorial cues reached are applied, notes that fell past the
+     * play area die, destroyed notes give their competency and are dropped, the band
+     * members decay and the notes that should be falling by then spawn.
+     *
+     * @param nextSample the song position of the next frame (negative during the intro)
+     * @param playing    whether the song is playing, so competency decays
+     */
+    public void update(long nextSample, boolean playing) {
+        // the song waits at its start during the intro
+        long songSample = Math.max(nextSample, 0);
+        applyTimeline(songSample);
+        if (autoSwitching && !switchCued && songSample >= (startSwitchRange + endSwitchRange) / 2f) {
+            scriptedSwitchPress[toBandMember] = true;
+            switchCued = true;
+        }
+
+        checkDeadNotes();
+
+        BandMember active = members[activeBandMember];
+        active.recieveSample(sample);
+        active.recieveFlags(df, jk, miss);
+
+        sample = nextSample;
+        for (BandMember member : members) {
+            if (playing && !member.getHitNotes().isEmpty() && !member.hasHold()) {
+                member.compUpdate(-1f * member.getLossRate() * (sample - lastDec) / ((float) sampleRate));
+            }
+            spawnNotes(member);
+        }
+        lastDec = sample;
+
+        if (!autoSwitching) {
+            Arrays.fill(scriptedSwitchPress, false);
+            switchCued = false;
+        }
+    }
+
+    /**
+     * Applies the competency flags and tutorial cues reached by the given sample
+     *
+     * Every event reached since the last call is applied, in song order, so a frame that
+     * skips past several flags of a band member ends with the rates of the last one.
+     */
+    private void applyTimeline(long currentSample) {
+        for (int i = timeline.next(currentSample); i != -1; i = timeline.next(currentSample)) {
+            switch (timeline.getKind(i)) {
+                case EventTimeline.COMP_FLAG:
+                    BandMember member = members[timeline.getTarget(i)];
+                    member.setLossRate((int) timeline.getValue(i));
+                    member.setGainRate(timeline.getGain(i));
+                    break;
+                case EventTimeline.AUTOPLAY_START:
+                    inAutoplay = true;
+                    startRange = timeline.getSample(i);
+                    endRange = timeline.getValue(i);
+                    break;
+                case EventTimeline.AUTOPLAY_END:
+                    inAutoplay = false;
+                    break;
+                case EventTimeline.SWITCH_START:
+                    autoSwitching = true;
+                    startSwitchRange = timeline.getSample(i);
+                    endSwitchRange = timeline.getValue(i);
+                    toBandMember = timeline.getTarget(i);
+                    break;
+                case EventTimeline.SWITCH_END:
+                    // switch prompts can overlap, so a prompt that already gave way to the
+                    // next one must not end it
+                    if (timeline.getValue(i) == endSwitchRange) {
+                        autoSwitching = false;
+                    }
+                    break;
+                case EventTimeline.ARROW_START:
+                    arrowAppearing = true;
+                    break;
+                case EventTimeline.ARROW_END:
+                    arrowAppearing = false;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Kills the notes that have fallen past the play area, applies the competency of the
+     * destroyed notes of the band members being played, and drops the destroyed notes.
+     */
+    private void checkDeadNotes() {
+        for (int i = 0; i < members.length; ++i) {
+            BandMember member = members[i];
+            boolean judged = i == activeBandMember || i == goalBandMember;
+            Array<Note> hitNotes = member.getHitNotes();
+            for (int k = 0; k < hitNotes.size; k++) {
+                Note n = hitNotes.get(k);
+                //If a note is out of bounds and it has not been hit, we need to mark it destroyed
+                if (!n.isDestroyed() && isDead(n)) {
+                    n.setDestroyed(true);
+                    numberDropped++;
+                    if (i == activeBandMember) {
+                        score.resetCombo();
+                        miss = true;
+                        if (listener != null) {
+                            listener.noteDropped(n);
+                        }
+                    }
+                }
+                if (n.isDestroyed() && judged) {
+                    member.compUpdate(n.getHitStatus());
+                }
+            }
+            Array<Note> switchNotes = member.getSwitchNotes();
+            for (int k = 0; k < switchNotes.size; k++) {
+                Note n = switchNotes.get(k);
+                if (!n.isDestroyed() && isDead(n)) {
+                    n.setHitStatus(0);
+                    n.setDestroyed(true);
+                }
+                if (n.isDestroyed() && judged) {
+                    member.compUpdate(n.getHitStatus());
+                }
+            }
+            member.garbageCollect();
+        }
+    }
+
+    /**
+     * Returns whether a note has fallen past the play area at the song position.
+     *
+     * This goes by the song position alone: the visual calibration shifts where a note is
+     * drawn, but not when it is missed.
+     */
+    private boolean isDead(Note n) {
+        if (n.isHolding()) {
+            return false;
+        }
+        long fall = n.getHitSample() - n.getStartSample();
+        // the top of a held note falls last
+        long tail = n.getNoteType() == Note.NoteType.HELD ? n.getHoldSamples() : 0;
+        return (sample - n.getStartSample() - tail) > fall * deathRatio;
+    }
+
+    /**
+     * Creates the notes of the band member that should be falling by the song position.
+     *
+     * Notes are created in chart order, starting from the band member's chart cursor.
+     * Notes that end after the song are skipped.
+     */
+    private void spawnNotes(BandMember member) {
+        Chart.Lane lane = member.getLane();
+        int row = member.getNextNote();
+        while (row < lane.size()) {
+            if (lane.hitSamples[row] + lane.holdSamples[row] > maxSample) {
+                row++;
+                continue;
+            }
+            Note.NoteType type = lane.getNoteType(row);
+            long startSample = lane.hitSamples[row] - (type == Note.NoteType.SWITCH ? spawnOffsetSwitch : spawnOffset);
+            if (startSample > sample) {
+                break;
+            }
+            Note n = factory.createNote(lane.lines[row], type, startSample);
+            n.setHitSample(lane.hitSamples[row]);
+            if (type == Note.NoteType.HELD) {
+                n.setHoldSamples(lane.holdSamples[row]);
+            }
+            member.addNote(n);
+            row++;
+        }
+        member.setNextNote(row);
+    }
+
+    /**
+     * Takes the keys the tutorial held down last frame, like the keyboard is read
+     */
+    private void readScriptedInput() {
+        for (boolean pressed : scriptedSwitchPress) {
+            if (pressed) {
+                // a switch lets go of every trigger
+                Arrays.fill(scriptedPress, false);
+            }
+        }
+        for (int i = 0; i < LINES; i++) {
+            scriptedTriggers[i] = !scriptedLast[i] && scriptedPress[i];
+            scriptedLifted[i] = scriptedLast[i] && !scriptedPress[i];
+            scriptedLast[i] = scriptedPress[i];
+        }
+        for (int i = 0; i < scriptedSwitches.length; i++) {
+            scriptedSwitches[i] = !scriptedSwitchLast[i] && scriptedSwitchPress[i];
+            scriptedSwitchLast[i] = scriptedSwitchPress[i];
+        }
+    }
+
+    /**
+     * Lets go of the tutorial's triggers, so it starts from nothing held
+     */
+    private void clearScriptedInput() {
+        Arrays.fill(scriptedPress, false);
+        Arrays.fill(scriptedLast, false);
+        Arrays.fill(scriptedTriggers, false);
+        Arrays.fill(scriptedLifted, false);
+        Arrays.fill(scriptedSwitchLast, false);
+        Arrays.fill(scriptedSwitches, false);
+    }
+
+    /**
+     * Holds down or lets go of a trigger for the tutorial, if it is playing the notes
+     */
+    private void setScriptedPress(int line, boolean pressed) {
+        if (inAutoplay) {
+            scriptedPress[line] = pressed;
+        }
+    }
+
+    /**
+     * Returns true if the player has no notes left to play
+     */
+    public boolean hasMoreNotes() {
+        for (BandMember member : members) {
+            if (member.hasMoreNotes()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if a band member has run out of competency, which fails the run
+     */
+    public boolean hasZeroCompetency() {
+        for (BandMember member : members) {
+            if (member.getCurComp() == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the tutorial plays instead of the player, so the player's input is ignored
+     */
+    public boolean isScripted() {
+        return inAutoplay || autoSwitching;
+    }
+
+    /**
+     * Returns the triggers the tutorial holds down
+     */
+    public boolean[] getScriptedPress() {
+        return scriptedPress;
+    }
+
+    /**
+     * Returns the triggers the tutorial pressed this frame
+     */
+    public boolean[] getScriptedTriggers() {
+        return scriptedTriggers;
+    }
+
+    /**
+     * Returns the band members the tutorial switched to this frame
+     */
+    public boolean[] getScriptedSwitches() {
+        return scriptedSwitches;
+    }
+
+    public boolean isInAutoplayRange() {
+        return inAutoplay;
+    }
+
+    public long getStartRange() {
+        return startRange;
+    }
+
+    public long getEndRange() {
+        return endRange;
+    }
+
+    public boolean isAutoSwitching() {
+        return autoSwitching;
+    }
+
+    public long getStartSwitchRange() {
+        return startSwitchRange;
+    }
+
+    public long getEndSwitchRange() {
+        return endSwitchRange;
+    }
+
+    public int getToBandMember() {
+        return toBandMember;
+    }
+
+    public boolean isArrowAppearing() {
+        return arrowAppearing;
+    }
+
+    public int getActiveBandMember() {
+        return activeBandMember;
+    }
+
+    public int getGoalBandMember() {
+        return goalBandMember;
+    }
+
+    /**
+     * Returns true while the player is switching between band members
+     */
+    public boolean isSwitching() {
+        return transition;
+    }
+
+    /**
+     * Returns how far the current switch between band members is, from 0 to 1
+     */
+    public float getSwitchProgress() {
+        return (sample - transitionStart) / (float) switchSamples;
+    }
+
+    /**
+     * Returns the song position of the last update
+     */
+    public long getSample() {
+        return sample;
+    }
+
+    public BandMember[] getBandMembers() {
+        return members;
+    }
+
+    public Judgement getJudgement() {
+        return judgement;
+    }
+
+    public ScoreTracker getScore() {
+        return score;
+    }
+
+    public int getNPerfect() {
+        return numberPerfect;
+    }
+
+    public int getNGood() {
+        return numberGood;
+    }
+
+    public int getNOk() {
+        return numberOk;
+    }
+
+    public int getNMiss() {
+        return numberMiss;
+    }
+
+    /**
+     * Returns the number of notes that fell past the play area unplayed
+     */
+    public int getNDropped() {
+        return numberDropped;
+    }
+}
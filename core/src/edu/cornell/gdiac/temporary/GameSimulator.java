@@ -0,0 +1,505 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.JsonReader;
+import edu.cornell.gdiac.temporary.entity.BandMember;
+import edu.cornell.gdiac.temporary.entity.Note;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Headless, deterministic simulation of a level.
+ *
+ * This plays a {@link Chart} through the same {@link GameRules} as {@link GameplayController},
+ * but without a GL context, an audio device or the {@link InputController}. The song position
+ * comes from a virtual clock that advances a fixed number of samples per frame, and the input
+ * comes from a {@link Script} of timestamped presses, releases and switches. Since nothing
+ * waits on real time, a whole chart is scored in a few milliseconds.
+ *
+ * Tutorial autoplay and switch cues are played by the rules, so the script is ignored while
+ * they are, as the player's input is in the game.
+ */
+public class GameSimulator {
+    /** Number of frames per second of the live game */
+    public static final int DEFAULT_FRAME_RATE = 60;
+    /** Sample rate used when none is given */
+    public static final int DEFAULT_SAMPLE_RATE = 44100;
+
+    /**
+     * A stream of timestamped player inputs.
+     *
+     * Events can be added in any order; they are sorted by sample before a run, which is
+     * then split into frames by the simulator's own clock. A script recorded from the game
+     * (see {@link Replay}) also holds the frames of the run, and is played frame by frame
+     * in the order it was recorded instead.
+     */
+    public static class Script {
+        /** Event kind of a trigger press */
+        public static final int PRESS = 0;
+        /** Event kind of a trigger release */
+        public static final int RELEASE = 1;
+        /** Event kind of a switch to another band member */
+        public static final int SWITCH = 2;
+        /** Frame flag of a frame where the song was playing */
+        static final int FRAME_PLAYING = 1;
+        /** Frame flag of a frame whose input was judged */
+        static final int FRAME_REACTED = 2;
+
+        private long[] samples = new long[64];
+        private int[] kinds = new int[64];
+        private int[] targets = new int[64];
+        private int size;
+        private boolean sorted = true;
+
+        /** Song sample, flags and number of events before the update of each frame */
+        private long[] frameSamples = new long[0];
+        private byte[] frameFlags = new byte[0];
+        private int[] frameEnds = new int[0];
+        private int numFrames;
+
+        /**
+         * Presses the trigger of a line
+         *
+         * @param line   the line (0 to 3) to press
+         * @param sample the song sample of the press
+         * @return this script, for chaining
+         */
+        public Script press(int line, long sample) {
+            return add(PRESS, line, sample);
+        }
+
+        /**
+         * Releases the trigger of a line
+         *
+         * @param line   the line (0 to 3) to release
+         * @param sample the song sample of the release
+         * @return this script, for chaining
+         */
+        public Script release(int line, long sample) {
+            return add(RELEASE, line, sample);
+        }
+
+        /**
+         * Switches to another band member
+         *
+         * @param bandMember the band member to switch to
+         * @param sample     the song sample of the switch
+         * @return this script, for chaining
+         */
+        public Script switchTo(int bandMember, long sample) {
+            return add(SWITCH, bandMember, sample);
+        }
+
+        private Script add(int kind, int target, long sample) {
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, size * 2);
+                kinds = Arrays.copyOf(kinds, size * 2);
+                targets = Arrays.copyOf(targets, size * 2);
+            }
+            sorted = sorted && (size == 0 || samples[size - 1] <= sample);
+            samples[size] = sample;
+            kinds[size] = kind;
+            targets[size] = target;
+            size++;
+            return this;
+        }
+
+        /**
+         * Ends a frame of the game, after the events added so far
+         *
+         * @param sample  the song sample the frame moved the song to
+         * @param playing whether the song was playing, so competency decayed
+         * @param reacted whether the input of the frame was judged before the song moved
+         * @return this script, for chaining
+         */
+        public Script frame(long sample, boolean playing, boolean reacted) {
+            if (numFrames == frameSamples.length) {
+                int capacity = Math.max(64, numFrames * 2);
+                frameSamples = Arrays.copyOf(frameSamples, capacity);
+                frameFlags = Arrays.copyOf(frameFlags, capacity);
+                frameEnds = Arrays.copyOf(frameEnds, capacity);
+            }
+            frameSamples[numFrames] = sample;
+            frameFlags[numFrames] = (byte) ((playing ? FRAME_PLAYING : 0) | (reacted ? FRAME_REACTED : 0));
+            frameEnds[numFrames] = size;
+            numFrames++;
+            return this;
+        }
+
+        /** Returns the number of frames in this script (0 if it was not recorded from the game) */
+        public int getNumFrames() {
+            return numFrames;
+        }
+
+        /** Returns the song sample the i-th frame moved the song to */
+        public long getFrameSample(int i) {
+            return frameSamples[i];
+        }
+
+        /** Returns true if the song was playing during the i-th frame */
+        public boolean isFramePlaying(int i) {
+            return (frameFlags[i] & FRAME_PLAYING) != 0;
+        }
+
+        /** Returns true if the input of the i-th frame was judged */
+        public boolean didFrameReact(int i) {
+            return (frameFlags[i] & FRAME_REACTED) != 0;
+        }
+
+        /** Returns the number of events before the update of the i-th frame */
+        public int getFrameEnd(int i) {
+            return frameEnds[i];
+        }
+
+        /** Returns the number of events in this script */
+        public int size() {
+            return size;
+        }
+
+        /** Returns the song sample of the i-th event */
+        public long getSample(int i) {
+            return samples[i];
+        }
+
+        /** Returns the kind ({@link #PRESS}, {@link #RELEASE} or {@link #SWITCH}) of the i-th event */
+        public int getKind(int i) {
+            return kinds[i];
+        }
+
+        /** Returns the line or band member of the i-th event */
+        public int getTarget(int i) {
+            return targets[i];
+        }
+
+        /**
+         * Sorts the events by sample, keeping the order of events on the same sample.
+         * Scripts with frames keep the order they were recorded in.
+         */
+        void sort() {
+            if (sorted || numFrames > 0) {
+                return;
+            }
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            // object sorts are stable, so ties keep the order they were added in
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Long.compare(samples[a], samples[b]);
+                }
+            });
+            long[] s = new long[samples.length];
+            int[] k = new int[kinds.length];
+            int[] t = new int[targets.length];
+            for (int i = 0; i < size; i++) {
+                s[i] = samples[order[i]];
+                k[i] = kinds[order[i]];
+                t[i] = targets[order[i]];
+            }
+            samples = s;
+            kinds = k;
+            targets = t;
+            sorted = true;
+        }
+
+        /**
+         * Creates the script of a player who hits every note on time.
+         *
+         * The player switches on every switch note and only plays the notes of the band
+         * member they are on. Beat notes are released after a tenth of a second.
+         *
+         * @param chart      the chart to play
+         * @param sampleRate the sample rate of the song
+         * @return the script of a perfect run
+         */
+        public static Script perfect(Chart chart, int sampleRate) {
+            Script switches = new Script();
+            for (int m = 0; m < chart.lanes.length; m++) {
+                Chart.Lane lane = chart.lanes[m];
+                for (int row = 0; row < lane.size(); row++) {
+                    if (lane.types[row] == Chart.SWITCH) {
+                        switches.switchTo(m, lane.hitSamples[row]);
+                    }
+                }
+            }
+            switches.sort();
+
+            Script script = new Script();
+            for (int i = 0; i < switches.size(); i++) {
+                script.switchTo(switches.getTarget(i), switches.getSample(i));
+            }
+            long tap = sampleRate / 10;
+            for (int m = 0; m < chart.lanes.length; m++) {
+                Chart.Lane lane = chart.lanes[m];
+                for (int row = 0; row < lane.size(); row++) {
+                    long hit = lane.hitSamples[row];
+                    if (lane.types[row] == Chart.SWITCH || activeAt(switches, hit) != m) {
+                        continue;
+                    }
+                    long length = lane.types[row] == Chart.HELD ? lane.holdSamples[row] : tap;
+                    script.press(lane.lines[row], hit);
+                    script.release(lane.lines[row], hit + length);
+                }
+            }
+            script.sort();
+            return script;
+        }
+
+        /** Returns the band member a player following the given switches is on at a sample */
+        private static int activeAt(Script switches, long sample) {
+            int active = 0;
+            for (int i = 0; i < switches.size() && switches.getSample(i) <= sample; i++) {
+                active = switches.getTarget(i);
+            }
+            return active;
+        }
+    }
+
+    /**
+     * The outcome of a simulated run
+     */
+    public static class Result {
+        /** Number of perfect, good and ok hits */
+        public int numberPerfect, numberGood, numberOk;
+        /** Number of off-beat hits and bad releases (the same count as {@link GameplayController#getNMiss}) */
+        public int numberMiss;
+        /** Number of notes that fell past the screen without being hit */
+        public int numberDropped;
+        /** Final score and combo */
+        public long score, maxCombo;
+        /** Final letter grade */
+        public String grade;
+        /** Lowest competency any band member reached */
+        public float minCompetency;
+        /** Whether the run ended because a band member ran out of competency */
+        public boolean failed;
+        /** Song sample at which the run ended */
+        public long endSample;
+        /** Number of simulated frames */
+        public int frames;
+        /** Wall clock time of the run, in nanoseconds */
+        public long elapsedNanos;
+        /** Sample rate of the simulated song */
+        int sampleRate;
+
+        /**
+         * Returns how many times faster than realtime the run was simulated
+         *
+         * @return the ratio of simulated song time to wall clock time
+         */
+        public double getSpeedup() {
+            return elapsedNanos == 0 ? 0 : (endSample * 1e9 / sampleRate) / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %d (max combo %d) perfect %d good %d ok %d miss %d dropped %d, " +
+                            "min competency %.1f%s, %d frames in %.2fms (%.0fx realtime)",
+                    grade, score, maxCombo, numberPerfect, numberGood, numberOk, numberMiss, numberDropped,
+                    minCompetency, failed ? " FAILED" : "", frames, elapsedNanos / 1e6, getSpeedup());
+        }
+    }
+
+    private final Chart chart;
+    private final int sampleRate;
+    private final GameRules rules;
+
+    private int samplesPerFrame;
+
+    // Input of the current frame
+    private final boolean[] switches;
+    private int[] eventLines = new int[16];
+    private boolean[] eventPressed = new boolean[16];
+    private long[] eventSamples = new long[16];
+
+    /**
+     * Creates a simulator for a chart
+     *
+     * @param chart      the chart to play
+     * @param sampleRate the sample rate of the song of the chart
+     */
+    public GameSimulator(Chart chart, int sampleRate) {
+        this.chart = chart;
+        this.sampleRate = sampleRate;
+        BandMember[] members = GameRules.createBandMembers(chart, sampleRate);
+        rules = new GameRules(chart, members, sampleRate, new GameRules.NoteFactory() {
+            @Override
+            public Note createNote(int line, Note.NoteType type, long startSample) {
+                return new Note(line, type, startSample);
+            }
+        });
+        switches = new boolean[members.length];
+        samplesPerFrame = sampleRate / DEFAULT_FRAME_RATE;
+    }
+
+    /**
+     * Sets the number of frames simulated per second of song
+     *
+     * @param frameRate the frame rate
+     */
+    public void setFrameRate(int frameRate) {
+        samplesPerFrame = Math.max(1, sampleRate / frameRate);
+    }
+
+    /**
+     * Sets the calibration offset
+     *
+     * @param offset the offset in milliseconds, as in {@link GameplayController#setOffset}
+     */
+    public void setOffset(int offset) {
+        rules.setOffset(offset);
+    }
+
+    /**
+     * Sets what reacts to the hits and drops of the simulated runs
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setListener(GameRules.Listener listener) {
+        rules.setListener(listener);
+    }
+
+    /**
+     * Sets the length of the song. Notes that end after the song are skipped.
+     *
+     * @param maxSample the number of samples in the song
+     */
+    public void setMaxSample(long maxSample) {
+        rules.setMaxSample(maxSample);
+    }
+
+    /**
+     * Plays the chart from the start with the given input
+     *
+     * @param script the player input
+     * @return the outcome of the run
+     */
+    public Result run(Script script) {
+        long start = System.nanoTime();
+        Result result = new Result();
+        result.sampleRate = sampleRate;
+        result.minCompetency = chart.maxCompetency;
+        rules.restart();
+        if (script.getNumFrames() > 0) {
+            runFrames(script, result);
+        } else {
+            runClock(script, result);
+        }
+        ScoreTracker score = rules.getScore();
+        result.numberPerfect = rules.getNPerfect();
+        result.numberGood = rules.getNGood();
+        result.numberOk = rules.getNOk();
+        result.numberMiss = rules.getNMiss();
+        result.numberDropped = rules.getNDropped();
+        result.score = score.getScore();
+        result.maxCombo = score.getMaxCombo();
+        result.grade = score.getLetterGradeAsString();
+        result.endSample = rules.getSample();
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Plays a script on the simulator's own clock, until the notes run out or the run fails
+     */
+    private void runClock(Script script, Result result) {
+        script.sort();
+        // notes that are already on screen at the start
+        rules.update(0, true);
+        int event = 0;
+        while (!result.failed && rules.hasMoreNotes()) {
+            long nextSample = rules.getSample() + samplesPerFrame;
+            // Everything that happened before the next update belongs to this frame
+            int first = event;
+            while (event < script.size() && script.getSample(event) < nextSample) {
+                event++;
+            }
+            react(script, first, event);
+            rules.update(nextSample, true);
+            endFrame(result);
+        }
+    }
+
+    /**
+     * Plays a script on the frames it was recorded with, so the rules see the same calls
+     * as in the game and the run ends with the same totals
+     */
+    private void runFrames(Script script, Result result) {
+        int event = 0;
+        for (int f = 0; f < script.getNumFrames(); f++) {
+            int end = script.getFrameEnd(f);
+            if (script.didFrameReact(f)) {
+                react(script, event, end);
+            }
+            event = end;
+            rules.update(script.getFrameSample(f), script.isFramePlaying(f));
+            endFrame(result);
+        }
+    }
+
+    private void endFrame(Result result) {
+        for (BandMember member : rules.getBandMembers()) {
+            result.minCompetency = Math.min(result.minCompetency, member.getCurComp());
+        }
+        result.failed = rules.hasZeroCompetency();
+        result.frames++;
+    }
+
+    /**
+     * Hands the events of a frame to the rules, as GameplayController.reactToAction does
+     *
+     * @param script the player input
+     * @param first  the first event of the frame
+     * @param last   the event after the last event of the frame
+     */
+    private void react(Script script, int first, int last) {
+        Arrays.fill(switches, false);
+        int numEvents = 0;
+        for (int e = first; e < last; e++) {
+            int target = script.getTarget(e);
+            if (script.getKind(e) == Script.SWITCH) {
+                if (target >= 0 && target < switches.length) {
+                    switches[target] = true;
+                }
+                continue;
+            }
+            if (target < 0 || target >= GameRules.LINES) {
+                continue;
+            }
+            if (numEvents == eventLines.length) {
+                eventLines = Arrays.copyOf(eventLines, numEvents * 2);
+                eventPressed = Arrays.copyOf(eventPressed, numEvents * 2);
+                eventSamples = Arrays.copyOf(eventSamples, numEvents * 2);
+            }
+            eventLines[numEvents] = target;
+            eventPressed[numEvents] = script.getKind(e) == Script.PRESS;
+            eventSamples[numEvents] = script.getSample(e);
+            numEvents++;
+        }
+        rules.react(switches, numEvents, eventLines, eventPressed, eventSamples);
+    }
+
+    /**
+     * Scores level JSON files with a perfect player, for checking charts from the command line
+     *
+     * Usage: GameSimulator [-rate sampleRate] level.json...
+     *
+     * @param args the level JSON files to simulate
+     */
+    public static void main(String[] args) {
+        int sampleRate = DEFAULT_SAMPLE_RATE;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-rate") && i + 1 < args.length) {
+                sampleRate = Integer.parseInt(args[++i]);
+                continue;
+            }
+            Chart chart = Chart.fromJson(new JsonReader().parse(new FileHandle(args[i])));
+            GameSimulator simulator = new GameSimulator(chart, sampleRate);
+            Script script = Script.perfect(chart, sampleRate);
+            System.out.println(args[i] + ": " + simulator.run(script));
+        }
+    }
+}
@@ -65,10 +65,10 @@ public class GameplayController {
 	/** The backing set for garbage collection */
 	private Array<Particle> backing;
 
-	/** Index of the currently active band member */
-	public int activeBandMember;
 	/** Level object, stores bandMembers */
 	public Level level;
+	/** The rules of the run of the level */
+	private GameRules rules;
 	/** The Y coordinate at which a note will spawn. Notes should spawn completely invisible. */
 	public float noteSpawnY;
 	/**
@@ -78,6 +78,12 @@ public class GameplayController {
 	public float noteDieY;
 	/** The calibration offset (int samples) */
 	public int offset;
+	/** The calibration offset in milliseconds, which the rules of the next level are given */
+	private int offsetMs;
+	/** The visual calibration offset (int samples) */
+	private int visualOffset;
+	/** The timing errors of the hits of the current run */
+	private AutoCalibration autoCalibration = new AutoCalibration();
 
 	/** The minimum x value margin */
 	public float LEFTBOUND;
@@ -97,30 +103,22 @@ public class GameplayController {
 	public float hitY;
 
 	public SoundController<String> sfx;
+	/** The files of the sound effects, to mix them into the song when a replay is played back */
+	private final ObjectMap<String, String> soundFiles = new ObjectMap<>();
+	/** The sound effects played on hits and switches */
+	private static final String[] KEYSOUNDS = {"tap", "switch", "perfectHit", "goodHit", "okHit", "switchHit"};
+	/** Lowest music volume the keysounds can still be mixed at */
+	private static final float MIN_MIX_VOLUME = 0.05f;
 
 	public Scoreboard sb;
 
-	/** number of notes missed */
-	private int numberMiss;
-	/** number of notes hit okay */
-	private int numberOk;
-	/** number of notes hit good */
-	private int numberGood;
-	/** number of notes hit perfect */
-	private int numberPerfect;
-
-	/** the multiplier for a perfect hit */
-	private static float PERFECT_HIT = 1.5f;
-	/** the multiplier for a good hit */
-	private static float GOOD_HIT = 1.25f;
-
 	/**
 	 * Create gameplaycontroler
 	 * @param width
 	 * @param height
 	 */
 	public GameplayController(float width, float height){
-		sb = new Scoreboard(4, new int[]{1, 2, 3, 5}, new long[]{10, 20, 30});
+		sb = new Scoreboard(GameRules.COMBO_LEVELS, GameRules.MULTIPLIERS, GameRules.COMBO_METERS);
 		particles = new Array<>();
 		backing = new Array<>();
 		noteIndicatorParticles =new Array<>();
@@ -135,31 +133,47 @@ public class GameplayController {
 		allSounds = allSounds.get("soundEffects");
 		for(int i = 0; i < allSounds.size; ++i){
 			JsonValue cur = allSounds.get(i);
-			sfx.addSound(cur.getString(0), cur.getString(1));
+			// an optional third value is the number of times the effect may overlap
+			sfx.addSound(cur.getString(0), cur.getString(1),
+					cur.size > 2 ? cur.getInt(2) : SoundController.DEFAULT_VOICES);
+			soundFiles.put(cur.getString(0), cur.getString(1));
 		}
-		numberMiss =0;
-		numberOk =0;
-		numberGood =0;
-		numberPerfect =0;
 	}
 
 	float totalWidth;
 	float totalHeight;
 
 	public int getNMiss(){
-		return numberMiss;
+		return rules.getNMiss();
 	}
 
 	public int getNOk(){
-		return numberOk;
+		return rules.getNOk();
 	}
 
 	public int getNGood(){
-		return numberGood;
+		return rules.getNGood();
 	}
 
 	public int getNPerfect(){
-		return numberPerfect;
+		return rules.getNPerfect();
+	}
+
+	/**
+	 * Returns the rules of the current run
+	 */
+	public GameRules getRules(){
+		return rules;
+	}
+
+	/** Returns the index of the active band member */
+	public int getActiveBandMember(){
+		return rules.getActiveBandMember();
+	}
+
+	/** Returns the index of the band member being switched to (the active one if there is no switch) */
+	public int getGoalBandMember(){
+		return rules.getGoalBandMember();
 	}
 
 	public void setBounds(float width, float height){
@@ -207,19 +221,33 @@ public class GameplayController {
 	/**
 	 * Loads a level
 	 */
-	public void loadLevel(JsonValue levelData, AssetDirectory directory){
+	public void loadLevel(Chart chart, AssetDirectory directory){
+		loadLevel(new LevelData(chart), directory);
+	}
+
+	/**
+	 * Loads a level from its prepared chart and song
+	 */
+	public void loadLevel(LevelData data, AssetDirectory directory){
 		InputController.getInstance().resetTriggers();
-		sb.resetScoreboard();
 		particles = new Array<>();
 		backing = new Array<>();
-		level = null;
-		level = new Level(levelData, directory);
+		if (level != null) {
+			// gives its song back to the song cache
+			level.dispose();
+		}
+		level = new Level(data, directory);
+		level.setDrawOffset(offset - visualOffset);
+		rules = level.getRules();
+		rules.setListener(effects);
+		rules.setOffset(offsetMs);
+		sb.setScoreTracker(rules.getScore());
+		autoCalibration.clear();
+		if (playback != null) {
+			loadKeysounds();
+			scheduleKeysounds();
+		}
 		NUM_LANES = level.getBandMembers().length;
-		// 70 is referring to ms
-		perfectHit = (int) ((0.05f) * level.getMusic().getSampleRate());
-		goodHit = (int) ((0.08f) * level.getMusic().getSampleRate());
-		okHit = (int) ((0.12f) * level.getMusic().getSampleRate());
-		miss = (int) ((0.18f) * level.getMusic().getSampleRate());
 
 		//The space in between two lanes is 1/4 the width of a small lane
 		//the width of the large lane is 6x the width of a small lane
@@ -227,54 +255,35 @@ public class GameplayController {
 		//Therefore, the width of the small lane shall be 1/(5NUM_LANES/4 + 35/4) of the available total width
 		//Values decided by pure look
 		setWidths();
-		//initiate default active band member to 0
-		activeBandMember = 0;
 		setYVals();
 		switches = new boolean[NUM_LANES];
 		triggers = new boolean[lpl];
-		T_SwitchPhases = level.getSamplesPerBeat()/4;
-		activeBandMember = 0;
-		goalBandMember = 0;
-
-		numberMiss =0;
-		numberOk =0;
-		numberGood =0;
-		numberPerfect =0;
-		sb.setletterTH(new long[]{level.getcThreshold(), level.getbThreshold(), level.getaThreshold(), level.getsThreshold()});
 		level.setBounds(new Vector2(totalWidth, totalHeight), new Vector2(0f,19f*TOPBOUND/20f + totalHeight/20f));
+		level.fitKeyLabels(largewidth, smallwidth, TOPBOUND - BOTTOMBOUND);
 	}
 
+	/**
+	 * Restarts the current level.
+	 *
+	 * The chart and song of the level are kept, so this only rewinds the per-run state.
+	 */
 	public void reloadLevel(){
 		InputController.getInstance().resetTriggers();
-		sb.resetScoreboard();
-		particles = new Array<>();
-		backing = new Array<>();
+		particles.clear();
+		backing.clear();
 		level.resetLevel();
+		autoCalibration.clear();
 		NUM_LANES = level.getBandMembers().length;
-		// 70 is referring to ms
-		perfectHit = (int) ((0.05f) * level.getMusic().getSampleRate());
-		goodHit = (int) ((0.08f) * level.getMusic().getSampleRate());
-		okHit = (int) ((0.12f) * level.getMusic().getSampleRate());
-		miss = (int) ((0.18f) * level.getMusic().getSampleRate());
 		//The space in between two lanes is 1/4 the width of a small lane
 		//the width of the large lane is 6x the width of a small lane
 		//In total, we have NUM_LANES - 1 small lanes, 1 large lane, and n - 1 in between segments
 		//Therefore, the width of the small lane shall be 1/(5NUM_LANES/4 + 35/4) of the available total width
 		//Values decided by pure look
 		setWidths();
-		//initiate default active band member to 0
-		activeBandMember = 0;
 		setYVals();
 		switches = new boolean[NUM_LANES];
 		triggers = new boolean[lpl];
-		activeBandMember = 0;
-		goalBandMember = 0;
-		numberMiss =0;
-		numberOk =0;
-		numberGood =0;
-		numberPerfect =0;
 		setupBandMembers();
-		sb.setletterTH(new long[]{level.getcThreshold(), level.getbThreshold(), level.getaThreshold(), level.getsThreshold()});
 		garbageCollectNoteIndicators();
 	}
 
@@ -286,6 +295,7 @@ public class GameplayController {
 		level.setBounds(new Vector2(totalWidth, totalHeight), new Vector2(0f,19f*TOPBOUND/20f + totalHeight/20f));
 		setWidths();
 		setYVals();
+		level.fitKeyLabels(largewidth, smallwidth, TOPBOUND - BOTTOMBOUND);
 		updateBandMemberCoords();
 	}
 
@@ -294,64 +304,41 @@ public class GameplayController {
 	 * @param offset offset from CalibrationMode in milliseconds
 	 */
 	public void setOffset(int offset) {
+		offsetMs = offset;
 		// need to convert to seconds first
 		this.offset = (int) (((float) offset / 1000) * level.getMusic().getSampleRate());
+		level.setDrawOffset(this.offset - visualOffset);
+		rules.setOffset(offset);
 	}
 
 	/**
-	 * Sets up the colors, max competency, lines and other default values as well as creates each band member object
+	 * Returns the timing errors of the hits of the current run
 	 */
-	public void setupBandMembers(){
-		level.setActiveProperties(activeBandMember, largewidth, smallwidth, TOPBOUND - BOTTOMBOUND);
-		level.setBandMemberBl(new Vector2(LEFTBOUND, BOTTOMBOUND), inBetweenWidth);
+	public AutoCalibration getAutoCalibration() {
+		return autoCalibration;
 	}
 
 	/**
-	 * Check for dead notes and out of bounds notes. Competency incremeting due to
-	 * destroyed notes is also done in here.
-	 */
-	public void checkDeadNotes(){
-		for(int i = 0; i < level.getBandMembers().length; ++i){
-			for(Note n : level.getBandMembers()[i].getHitNotes()){
-				//If a note is out of bounds and it has not been hit, we need to mark it destroyed and assign
-				//a negative hit status
-				if(n.getY() < noteDieY && !n.isDestroyed()){
-					n.setDestroyed(true);
-					if(i == activeBandMember){
-						sb.resetCombo();
-						float hitStatusX = LEFTBOUND+((activeBandMember+1)*(HIT_IND_SIZE/3f))+((activeBandMember+1) * smallwidth);
-						float hitStatusY = BOTTOMBOUND-(HIT_IND_SIZE/1.6f);
-						spawnHitIndicator(hitStatusX,hitStatusY,missIndicator,1);
-						MISS = true;
-					}
-				}
-				if(n.isDestroyed()){
-					//if this note is destroyed we need to increment the competency of the
-					//lane it was destroyed in by its hitstatus
-					if(i == activeBandMember || i == goalBandMember){
-						level.getBandMembers()[i].compUpdate(n.getHitStatus());
-					}
-				}
-			}
-
-			for(Note n : level.getBandMembers()[i].getSwitchNotes()){
-				//If a note is out of bounds and it has not been hit, we need to mark it destroyed and assign
-				//a negative hit status
-				if(n.getY() < noteDieY && !n.isDestroyed()){
-					n.setHitStatus(0);
-					n.setDestroyed(true);
-				}
-				if(n.isDestroyed()){
-					//if this note is destroyed we need to increment the competency of the
-					//lane it was destroyed in by its hitstatus
-					if(i == activeBandMember || i == goalBandMember){
-						level.getBandMembers()[i].compUpdate(n.getHitStatus());
-					}
-				}
-			}
-		}
+	 * Sets the visual offset, converting it to samples
+	 *
+	 * Judgement only uses the audio offset. Notes are drawn behind the song by the
+	 * difference of the two, so they cross the hit line when a player watching them
+	 * would hit on time.
+	 *
+	 * @param visualOffset visual offset from CalibrationMode in milliseconds
+	 */
+	public void setVisualOffset(int visualOffset) {
+		this.visualOffset = (int) (((float) visualOffset / 1000) * level.getMusic().getSampleRate());
+		level.setDrawOffset(this.offset - this.visualOffset);
 	}
 
+	/**
+	 * Sets up the colors, max competency, lines and other default values as well as creates each band member object
+	 */
+	public void setupBandMembers(){
+		level.setActiveProperties(rules.getActiveBandMember(), largewidth, smallwidth, TOPBOUND - BOTTOMBOUND);
+		level.setBandMemberBl(new Vector2(LEFTBOUND, BOTTOMBOUND), inBetweenWidth);
+	}
 
 	/**
 	 * Check if the player has won the game.
@@ -367,12 +354,7 @@ public class GameplayController {
 	 * @return returns if at least bone band members has 0 competency
 	 */
 	public boolean hasZeroCompetency() {
-		for (BandMember bandMember : level.getBandMembers()) {
-			if (bandMember.getCurComp() == 0) {
-				return true;
-			}
-		}
-		return false;
+		return rules.hasZeroCompetency();
 	}
 
 	/**
@@ -448,26 +430,11 @@ public class GameplayController {
 		return ((int)(3f/countTime)) + 121;
 	}
 
-	private boolean switchSetInAutoPlay = false;
-
 	/**
 	 * Updates the state.
 	 *
 	 */
 	public void update(int mode, int ticks){
-		// check if we are in autoplay
-		InputController.getInstance().setAutoplay(level.isInAutoplayRange());
-		InputController.getInstance().setAutoswitch(level.isAutoSwitching());
-		if (level.isAutoSwitching() && !switchSetInAutoPlay) {
-			if (level.getCurrentSample() >= (level.getStartSwitchRange() + level.getEndSwitchRange()) / 2f) {
-				InputController.getInstance().setSwitch(level.getToBandMember(), true);
-				switchSetInAutoPlay = true;
-			}
-		}
-
-		//First, check for dead notes and remove them from active arrays
-		checkDeadNotes();
-
 		//Update the objects of this class (mostly stars)
 		for(Particle o : particles){
 			o.update(0f);
@@ -476,29 +443,30 @@ public class GameplayController {
 			o.update(0f);
 		}
 
-		level.receiveInterrupt(activeBandMember, DF, JK, MISS);
-		level.updateCompRates();
-		//Then, update the notes for each band member and spawn new notes
+		//Move the song on, which applies the rules of the run, and update the notes of each band member
 		level.updateBandMemberNotes(noteSpawnY, mode, ticks, getIntroLength());
-
-		if (!level.isAutoSwitching()) {
-			InputController.getInstance().resetSwitches();
-			switchSetInAutoPlay = false;
+		if (recorder != null) {
+			recorder.recordFrame(level.getLevelSample(), mode == 1, reacted);
 		}
+		reacted = false;
+
+		// the player's input is ignored while the tutorial plays
+		InputController.getInstance().setAutoplay(rules.isInAutoplayRange());
+		InputController.getInstance().setAutoswitch(rules.isAutoSwitching());
 	}
 
 	/**
 	 * Update the coordinates
 	 */
 	public void updateBandMemberCoords(){
-		if(curP == PlayPhase.NOTES){
+		if(!rules.isSwitching()){
 			//If we are in the notes phase, we use setActiveProperties
-			level.setActiveProperties(activeBandMember, largewidth, smallwidth, TOPBOUND - BOTTOMBOUND);
+			level.setActiveProperties(rules.getActiveBandMember(), largewidth, smallwidth, TOPBOUND - BOTTOMBOUND);
 		}
 		else{
 			//Otherwise we must be in transition, so set the transition properties
-			float progressFrac = t_progress/(float)T_SwitchPhases;
-			level.setTransitionProperties(activeBandMember, goalBandMember, largewidth, smallwidth, TOPBOUND - BOTTOMBOUND, progressFrac);
+			level.setTransitionProperties(rules.getActiveBandMember(), rules.getGoalBandMember(), largewidth, smallwidth,
+					TOPBOUND - BOTTOMBOUND, rules.getSwitchProgress());
 		}
 		//finally, set the bottom left
 		level.setBandMemberBl(new Vector2(LEFTBOUND, BOTTOMBOUND), inBetweenWidth);
@@ -509,7 +477,6 @@ public class GameplayController {
 	 */
 	public void reset() {
 		particles.clear();
-		curP = PlayPhase.NOTES;
 		noteIndicatorParticles.clear();
 	}
 
@@ -557,9 +524,7 @@ public class GameplayController {
 		backing = particles;
 		particles = tmp;
 		backing.clear();
-		for (BandMember bandMember : level.getBandMembers()) {
-			bandMember.garbageCollect();
-		}
+		// the rules drop destroyed notes once they have given their competency
 	}
 
 	// TODO: combine these
@@ -605,148 +570,107 @@ public class GameplayController {
 		noteIndicatorParticles.add(s);
 	}
 
-	/**
-	 * Enum to determine whether or not we are in a phase of hitting notes or switching to another band member
-	 */
-	public enum PlayPhase {
-		NOTES,
-		TRANSITION
-	}
-
-	/** initiate to NOTES phase*/
-	PlayPhase curP = PlayPhase.NOTES;
-	/** Total progress needed before we declare ourselves fully transitioned */
-	long T_SwitchPhases = 8;
-	/** The band member lane index that we are trying to switch to */
-	int goalBandMember;
-	/** The current transition progress */
-	long t_progress;
-
-	long t_start;
-
 	/** Switch inputs */
 	public boolean[] switches;
 	/** Trigger inputs */
 	public boolean[] triggers;
 
-	public boolean[] lifted;
-
-	public int perfectHit;
-	public int goodHit;
-	public int okHit;
-	public int miss;
-
-	boolean DF;
-	boolean MISS;
-	boolean JK;
-	/**
-	 * Handles logic of a hit, whether it is on beat or not, etc.
-	 * @param note the note that we are trying to hit
-	 * @param currentSample the current sample of the song
-	 * @param hitReg the hitReg array
-	 * @param lifted whether the note was lifted (if held, can only be true if NoteType == HELD)
-	 */
-	public void checkHit(Note note,
-						 long currentSample,
-						 int gainRate, int offBeatLoss,
-						 float spawnEffectY,
-						 boolean destroy,
-						 boolean[] hitReg,
-						 boolean lifted) {
-
-		Note.NoteType nt = note.getNoteType();
-		// check for precondition that lifted is true iff note type is HELD
-		assert !lifted || nt == Note.NoteType.HELD;
-
-		//Check for all the switch notes of this lane, if one is close enough destroy it and
-		//give it positive hit status
-		long adjustedPosition = currentSample - this.offset;
-		long dist = lifted ? Math.abs(adjustedPosition - (note.getHitSample() + note.getHoldSamples()))
-				: Math.abs(adjustedPosition - note.getHitSample());
-
-		// check if note was hit or on beat
-		if(dist < miss) {
-			if (dist < okHit) {
-				if(nt != Note.NoteType.SWITCH){
-					DF = note.getLine() < 2;
-					JK = note.getLine() >= 2;
-				}
-				//If so, destroy the note and set a positive hit status. Also set that we
-				//have registered a hit for this line for this click. This ensures that
-				//We do not have a single hit count for two notes that are close together
-				int compGain = dist < perfectHit ? (int)(PERFECT_HIT*gainRate) : (dist < goodHit ? (int)(GOOD_HIT*gainRate) : gainRate);
-
-				if (dist < perfectHit){
-					numberPerfect++;
-				} else{
-					if (dist < goodHit){
-						numberGood++;
-					} else{
-						numberOk++;
-					}
-				}
+	/** Lines of the trigger events received this frame */
+	private int[] hitEventLines = new int[InputController.MAX_HIT_EVENTS];
+	/** Whether each trigger event was a press (true) or a release (false) */
+	private boolean[] hitEventPressed = new boolean[InputController.MAX_HIT_EVENTS];
+	/** Song sample at which each trigger event happened */
+	private long[] hitEventSamples = new long[InputController.MAX_HIT_EVENTS];
+	/** Number of trigger events received this frame */
+	private int numHitEvents;
+
+	/** Records the input of the current run, or null if it is not recorded */
+	private Replay.Recorder recorder;
+	/** Replay whose input is used instead of the player's, or null */
+	private Replay playback;
+	/** Next event and next frame of the replay to play back */
+	private int playbackEvent;
+	private int playbackFrame;
+	/** Whether the input of this frame was reacted to before the update */
+	private boolean reacted;
+	/** Switch inputs of the replay this frame */
+	private boolean[] playbackSwitches = new boolean[4];
+	/** Whether the sounds of the replay are mixed into the song, rather than played as they happen */
+	private boolean mixingKeysounds;
 
-				float hitStatusX = LEFTBOUND+((activeBandMember+1)*(HIT_IND_SIZE/3))+((activeBandMember+1) * smallwidth);
-				float hitStatusY = BOTTOMBOUND-(HIT_IND_SIZE/1.6f);
-				if (dist < perfectHit){
-					spawnHitIndicator(hitStatusX,hitStatusY,perfectHitIndicator,1.3f);
-				} else{
-					if (dist < goodHit){
-						spawnHitIndicator(hitStatusX,hitStatusY,goodHitIndicator,1);
-					}else{
-						spawnHitIndicator(hitStatusX,hitStatusY,okIndicator,1);
-					}
-				}
-				note.setHolding(true);
-				note.setBottomY(hitY);
-				note.setHitStatus(compGain);
-				spawnHitEffect(note.getHitStatus(), note.getX(), spawnEffectY);
-				if (dist < perfectHit) {
-					spawnEnhancedHitEffect(note.getX(), spawnEffectY);
-				}
-				if (note.getLine() != -1){
-					hitReg[note.getLine()] = true;
-				}
-				note.setDestroyed(destroy);
-				String soundKey = nt == Note.NoteType.SWITCH ?
-						"switchHit" : (dist < perfectHit ? "perfectHit" : (dist < goodHit ? "goodHit" : "okHit"));
-				sfx.playSound(soundKey, GLOBAL_VOLUME_ADJ);
-				int pointsReceived = dist < perfectHit ? 500 : (dist < goodHit ? 250 : 100);
-				sb.receiveHit(pointsReceived);
-			} else {
-				// lose some competency since you played a bit off beat
-				if(nt == Note.NoteType.SWITCH || nt == Note.NoteType.BEAT){
-					MISS = true;
-					sb.resetCombo();
-					note.setHitStatus(offBeatLoss);
-					numberMiss++;
+	/**
+	 * Shows and plays what happens in the run
+	 */
+	private final GameRules.Listener effects = new GameRules.Listener() {
+		@Override
+		public void noteHit(Note note, int grade, long sample, boolean lifted) {
+			// only the player's own presses tell how their calibration drifts
+			if (!lifted && playback == null && !rules.isScripted()) {
+				autoCalibration.add(1000.0 * (sample - rules.getOffset() - note.getHitSample()) / level.getMusic().getSampleRate());
+			}
+			int active = rules.getActiveBandMember();
+			float hitStatusX = LEFTBOUND+((active+1)*(HIT_IND_SIZE/3))+((active+1) * smallwidth);
+			float hitStatusY = BOTTOMBOUND-(HIT_IND_SIZE/1.6f);
+			if (grade == Judgement.PERFECT){
+				spawnHitIndicator(hitStatusX,hitStatusY,perfectHitIndicator,1.3f);
+			} else{
+				if (grade == Judgement.GOOD){
+					spawnHitIndicator(hitStatusX,hitStatusY,goodHitIndicator,1);
+				}else{
+					spawnHitIndicator(hitStatusX,hitStatusY,okIndicator,1);
 				}
 			}
-		}
-		if (nt == Note.NoteType.HELD && !lifted && adjustedPosition - note.getHitSample() < note.getHoldSamples() && adjustedPosition >= note.getHitSample()){
-			note.setHolding(true);
-			note.setBottomY(hitY);
-			DF = note.getLine() < 2;
-			JK = note.getLine() >= 2;
-		}
-		//if we let go too early we need to reset the combo
-		if (lifted && dist >= miss){
-			MISS = true;
-			sb.resetCombo();
-			note.setHitStatus(offBeatLoss);
-			numberMiss++;
+			// held notes are hit on the hit line
+			float effectY = note.getNoteType() == Note.NoteType.HELD ? hitY : note.getY();
+			spawnHitEffect(note.getHitStatus(), note.getX(), effectY);
+			if (grade == Judgement.PERFECT) {
+				spawnEnhancedHitEffect(note.getX(), effectY);
+			}
+			// live hits are only known once the music is decoded past them, so they are
+			// played as sound effects rather than mixed into the song
+			if (!mixingKeysounds) {
+				sfx.playSound(getHitSound(note, grade), GLOBAL_VOLUME_ADJ);
+			}
 		}
 
-	}
+		@Override
+		public void noteDropped(Note note) {
+			int active = rules.getActiveBandMember();
+			float hitStatusX = LEFTBOUND+((active+1)*(HIT_IND_SIZE/3f))+((active+1) * smallwidth);
+			float hitStatusY = BOTTOMBOUND-(HIT_IND_SIZE/1.6f);
+			spawnHitIndicator(hitStatusX,hitStatusY,missIndicator,1);
+		}
 
+		@Override
+		public void holdFinished(Note note) {
+			spawnHitEffect(note.getHitStatus(), note.getX(), hitY);
+		}
+	};
 
 	public void receiveInput(InputController input){
-		DF = false;
-		JK = false;
-		MISS = false;
 		switches = input.didSwitch();
 		triggers = input.didTrigger();
-		lifted = input.triggerLifted;
+		if (playback != null) {
+			readPlayback();
+		} else {
+			// Convert the timestamped events into song positions
+			numHitEvents = input.getNumHitEvents();
+			for (int i = 0; i < numHitEvents; i++) {
+				hitEventLines[i] = input.getHitEventLine(i);
+				hitEventPressed[i] = input.isHitEventPress(i);
+				hitEventSamples[i] = level.getSampleAtTime(input.getHitEventTime(i));
+			}
+		}
+		// the sounds of a replay's input are already mixed into the song
+		if (!mixingKeysounds) {
+			playInputSounds(triggers, switches);
+		}
+	}
+
+	/**
+	 * Plays the sounds of the triggers and switches pressed this frame
+	 */
+	private void playInputSounds(boolean[] triggers, boolean[] switches) {
 		for (boolean trigger : triggers) {
 			if (trigger) {
 				sfx.playSound("tap", GLOBAL_VOLUME_ADJ);
@@ -761,122 +685,204 @@ public class GameplayController {
 		}
 	}
 	/**
-	 * Handle reaction to input
+	 * Appends the input of this frame to the replay being recorded
 	 */
-	public void reactToAction(){
-		long currentSample = level.getLevelSample();
-
-		//This array tells us if a hit has already been registered in this frame for the ith bm.
-		//We do not want one hit to count for two notes that are close together.
-		boolean[] hitReg = new boolean[triggers.length];
-
-		// SWITCH NOTE HIT HANDLING
-		if (curP == PlayPhase.NOTES){
-			for (int i = 0; i < switches.length; ++i){
-				if (switches[i] && i != activeBandMember){
-					//Check only the lanes that are not the current active lane
-					for(Note n : level.getBandMembers()[i].getSwitchNotes()) {
-						int switchGainRate = level.gainRate(activeBandMember) * 2;
-						checkHit(n, currentSample, switchGainRate, 0, n.getY(),true, hitReg, false);
-					}
-					for(Note n : level.getBandMembers()[activeBandMember].getHitNotes()){
-						if(n.getNoteType() == Note.NoteType.HELD && n.isHolding()){
-							int liftedGainRate = (int) (level.gainRate(activeBandMember) * 0.75);
-							checkHit(n, currentSample, liftedGainRate, -1, n.getBottomY(),true, hitReg, true);
-						}
-					}
-					//set goalBM
-					goalBandMember = i;
-					//change phase
-					curP = PlayPhase.TRANSITION;
-					//reset progress
-					t_progress = 0; //transition progress
-					t_start = level.getLevelSample();
-					level.swapActive(activeBandMember, goalBandMember);
-					return;
+	private void recordInput() {
+		for (int i = 0; i < numHitEvents; i++) {
+			recorder.recordHit(hitEventLines[i], hitEventPressed[i], hitEventSamples[i]);
+		}
+		for (int i = 0; i < switches.length; i++) {
+			if (switches[i]) {
+				// switches are handled at the sample of the frame
+				recorder.recordSwitch(i, level.getLevelSample());
+			}
+		}
+	}
+
+	/**
+	 * Takes the input of this frame from the replay instead of the player.
+	 *
+	 * The input of a recorded frame was reacted to at the song position of the frame
+	 * before it, so it is played back once the song gets close to that position.
+	 */
+	private void readPlayback() {
+		long frameEnd = level.getLevelSample() + level.getSamplesPerFrame();
+		GameSimulator.Script script = playback.script;
+		Arrays.fill(playbackSwitches, false);
+		switches = playbackSwitches;
+		numHitEvents = 0;
+		while (playbackFrame < script.getNumFrames()
+				&& (playbackFrame == 0 || script.getFrameSample(playbackFrame - 1) < frameEnd)) {
+			readPlaybackEvents(script, script.getFrameEnd(playbackFrame));
+			playbackFrame++;
+		}
+	}
+
+	/**
+	 * Takes the events of the replay up to the given one as the input of this frame
+	 */
+	private void readPlaybackEvents(GameSimulator.Script script, int end) {
+		while (playbackEvent < end) {
+			int target = script.getTarget(playbackEvent);
+			if (script.getKind(playbackEvent) == GameSimulator.Script.SWITCH) {
+				if (target < playbackSwitches.length) {
+					playbackSwitches[target] = true;
 				}
+			} else if (numHitEvents < hitEventLines.length) {
+				hitEventLines[numHitEvents] = target;
+				hitEventPressed[numHitEvents] = script.getKind(playbackEvent) == GameSimulator.Script.PRESS;
+				hitEventSamples[numHitEvents] = script.getSample(playbackEvent);
+				numHitEvents++;
 			}
+			playbackEvent++;
 		}
-		else {
-			// Transition phase
-			garbageCollectNoteIndicators();
+	}
 
-			// Increment progress
-			t_progress = level.getLevelSample() - t_start;
+	/**
+	 * Records the input of the following runs, or stops recording
+	 *
+	 * @param recorder the recorder to write to, or null to stop recording
+	 */
+	public void setRecorder(Replay.Recorder recorder) {
+		this.recorder = recorder;
+	}
 
-			// Check if we are done, if so set active BM and change phase
-			if(t_progress >= T_SwitchPhases){
-				curP = PlayPhase.NOTES;
-				activeBandMember = goalBandMember;
+	/**
+	 * Plays back the input of a replay from its start instead of the player's input
+	 *
+	 * @param replay the replay to play back, or null to return control to the player
+	 */
+	public void setPlayback(Replay replay) {
+		playback = replay;
+		playbackEvent = 0;
+		playbackFrame = 0;
+		mixingKeysounds = false;
+		if (level != null) {
+			level.getKeysounds().stop();
+			if (replay != null) {
+				loadKeysounds();
+				scheduleKeysounds();
 			}
+		}
+	}
 
-			// During this phase we need to change the BL and widths of each BM
-			updateBandMemberCoords();
+	/**
+	 * Decodes the keysounds into the song mixer of the level, if they are not there yet
+	 */
+	private void loadKeysounds() {
+		KeysoundMixer mixer = level.getKeysounds();
+		for (String key : KEYSOUNDS) {
+			String file = soundFiles.get(key);
+			if (file != null && !mixer.hasSound(key)) {
+				mixer.addSound(key, Gdx.files.internal(file));
+			}
 		}
-		//Now check for hit and held notes
-		int checkBandMember = curP == PlayPhase.NOTES ? activeBandMember : goalBandMember;
-		for (Note n : level.getBandMembers()[checkBandMember].getHitNotes()){
-			if (n.getNoteType() == Note.NoteType.BEAT) {
-				if (currentSample >= n.getHitSample()) {
-					InputController.getInstance().setTrigger(n.getLine(), true);
-				}
-				if (triggers[n.getLine()] && !hitReg[n.getLine()]){
-					//Check for all the notes in this line and in the active band member
-					//See if any are close enough
-					checkHit(n, currentSample, level.gainRate(activeBandMember), -1, n.getY(),true, hitReg, false);
-					InputController.getInstance().setTrigger(n.getLine(), false);
-				}
+	}
+
+	/**
+	 * Mixes every sound of the replay being played back into the song, at the samples
+	 * they belong to.
+	 *
+	 * The song is decoded ahead of what is heard, so a sound is only on time if it is
+	 * scheduled before the song gets to it. The replay is simulated from its start to find
+	 * its hits, and their sounds are scheduled with those of its presses and switches
+	 * before the song plays. If the music is too quiet to carry them, the sounds are
+	 * played as sound effects as they happen instead.
+	 */
+	private void scheduleKeysounds() {
+		final KeysoundMixer mixer = level.getKeysounds();
+		mixer.stop();
+		float musicVolume = level.getMusicVolume();
+		mixingKeysounds = musicVolume >= MIN_MIX_VOLUME;
+		for (String key : KEYSOUNDS) {
+			mixingKeysounds = mixingKeysounds && mixer.hasSound(key);
+		}
+		if (!mixingKeysounds) {
+			return;
+		}
+		// the mixed sound is played at the music volume, so undo it
+		final float gain = GLOBAL_VOLUME_ADJ * SoundController.getVolumeAdjust() / musicVolume;
+		GameSimulator.Script script = playback.script;
+		for (int i = 0; i < script.size(); i++) {
+			if (script.getKind(i) == GameSimulator.Script.PRESS) {
+				mixer.play("tap", script.getSample(i), gain);
+			} else if (script.getKind(i) == GameSimulator.Script.SWITCH) {
+				mixer.play("switch", script.getSample(i), gain);
+			}
+		}
+		GameSimulator simulator = new GameSimulator(level.getChart(), level.getMusic().getSampleRate());
+		simulator.setOffset(playback.offset);
+		simulator.setMaxSample(playback.maxSample);
+		simulator.setListener(new GameRules.Listener() {
+			@Override
+			public void noteHit(Note note, int grade, long sample, boolean lifted) {
+				mixer.play(getHitSound(note, grade), sample, gain);
 			}
-			// HOLD NOTE
-			else {
-				if (currentSample >= n.getHitSample() && currentSample <= n.getHitSample() + n.getHoldSamples()) {
-					InputController.getInstance().setTrigger(n.getLine(), true);
-				}
-				if (currentSample > n.getHitSample() + n.getHoldSamples()) {
-					InputController.getInstance().setTrigger(n.getLine(), false);
-				}
 
-				//Check if we hit the trigger down close enough to the head
-				if(triggers[n.getLine()] && !hitReg[n.getLine()]) {
-					checkHit(n, currentSample, level.gainRate(activeBandMember), -1, n.getBottomY(),false, hitReg, false);
-				}
-				//check if we lifted close to the end (we only check if we ended up holding the note in the first place)
-				if(lifted[n.getLine()] && n.isHolding()) {
-					int liftedGainRate = (int) (level.gainRate(activeBandMember) * 0.75);
-					checkHit(n, currentSample, liftedGainRate, -1, n.getBottomY(),true, hitReg, true);
-					n.setHeldFor(0);
-					// destroy (if you are already holding)
-					n.setDestroyed(true);
-					n.setHolding(false);
-				}
-				// check the hold
-				if (n.isHolding()) {
-					if(n.getLine() < NUM_LANES/2){
-						DF = true;
-					}
-					else{
-						JK = true;
-					}
-					// update competency every beat
-					long samplesPerBeat = (long) (level.getMusic().getSampleRate() * (60f / level.getBpm()));
-					// approximation of how many samples held
-					long heldSamples = level.getCurrentSample() - n.getHitSample();
-					if (heldSamples / samplesPerBeat > n.getHeldFor()) {
-						level.getBandMembers()[activeBandMember].compUpdate(level.gainRate(activeBandMember));
-						n.setHeldFor(n.getHeldFor() + 1);
-					}
-				}
-				// destroy if the note head has gone past (will only be true while you're holding)
-				// also reset the combo
-				if (((currentSample - this.offset) - (n.getHitSample() + n.getHoldSamples())) > okHit && n.isHolding()) {
-					spawnHitEffect(n.getHitStatus(), n.getX(), n.getBottomY());
-					n.setDestroyed(true);
-					sb.resetCombo();
-				}
+			@Override
+			public void noteDropped(Note note) {
 			}
+
+			@Override
+			public void holdFinished(Note note) {
+			}
+		});
+		simulator.run(script);
+	}
+
+	/**
+	 * Returns the sound of a hit of the given grade on a note
+	 */
+	private static String getHitSound(Note note, int grade) {
+		if (note.getNoteType() == Note.NoteType.SWITCH) {
+			return "switchHit";
+		}
+		return grade == Judgement.PERFECT ? "perfectHit" : (grade == Judgement.GOOD ? "goodHit" : "okHit");
+	}
+
+	/**
+	 * Returns true if the input comes from a replay
+	 */
+	public boolean isPlayingBack() {
+		return playback != null;
+	}
+
+	/**
+	 * Handle reaction to input
+	 */
+	public void reactToAction(){
+		// only the input that is reacted to is recorded, so a replay judges the same input
+		if (recorder != null) {
+			recordInput();
+		}
+		reacted = true;
+		boolean wasSwitching = rules.isSwitching();
+		rules.react(switches, numHitEvents, hitEventLines, hitEventPressed, hitEventSamples);
+		numHitEvents = 0;
+		if (rules.isScripted()) {
+			playInputSounds(rules.getScriptedTriggers(), rules.getScriptedSwitches());
+		}
+		if (wasSwitching) {
+			// During this phase we need to change the BL and widths of each BM
+			garbageCollectNoteIndicators();
+			updateBandMemberCoords();
 		}
 	}
 
+	/**
+	 * Returns the triggers drawn as held down: the tutorial's while it plays, otherwise the player's
+	 */
+	public boolean[] getDrawnTriggers(InputController input) {
+		return rules.isScripted() ? rules.getScriptedPress() : input.triggerPress;
+	}
+
+	/**
+	 * Returns the switches drawn as pressed: the tutorial's while it plays, otherwise the player's
+	 */
+	public boolean[] getDrawnSwitches(InputController input) {
+		return rules.isScripted() ? rules.getScriptedSwitches() : input.didSwitch();
+	}
+
 	public void dispose(){
 		if(level!=null){
 			level.dispose();
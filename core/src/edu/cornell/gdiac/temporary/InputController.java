@@ -60,6 +60,8 @@ public class InputController {
 	public static IntMap<int[]> switchesBindingsMain;
 
 	public static int[] triggerBindingsMain;
+	/** Number of times a key binding was changed, so labels of the keys know to update */
+	private static int keybindingChanges;
 
 	//Arrays to registering switch and trigger presses
 	//We need to track their previous values so that we dont register a hold as repeated clicks
@@ -75,6 +77,34 @@ public class InputController {
 	private boolean autoplay;
 	private boolean autoswitch;
 
+	// Timestamped trigger events, recorded by the processor as they arrive
+	/** Maximum number of trigger events buffered between two calls to readInput */
+	public static final int MAX_HIT_EVENTS = 64;
+	/** Lines of the trigger events received since the last call to readInput */
+	private int[] pendingLines;
+	/** Whether each pending event was a press (true) or a release (false) */
+	private boolean[] pendingPressed;
+	/** Time (in nanoseconds) of each pending event */
+	private long[] pendingTimes;
+	/** Number of pending events */
+	private int numPending;
+	/** Lines of the trigger events read this frame */
+	private int[] eventLines;
+	/** Whether each event read this frame was a press (true) or a release (false) */
+	private boolean[] eventPressed;
+	/** Time (in nanoseconds) of each event read this frame */
+	private long[] eventTimes;
+	/** Number of events read this frame */
+	private int numEvents;
+	/** Time (in nanoseconds) of each calibration tap received since the last call to readInput */
+	private long[] pendingTapTimes;
+	/** Number of pending calibration taps */
+	private int numPendingTaps;
+	/** Time (in nanoseconds) of each calibration tap read this frame */
+	private long[] tapTimes;
+	/** Number of calibration taps read this frame */
+	private int numTaps;
+
 	/** XBox Controller support */
 	private XBoxController xbox;
 
@@ -86,6 +116,57 @@ public class InputController {
 		autoswitch = as;
 	}
 
+	/**
+	 * Returns true if the tutorial is currently playing instead of the player.
+	 *
+	 * While this is true the keyboard and the trigger events are ignored. The tutorial
+	 * plays its own input (see {@link GameRules}).
+	 *
+	 * @return true if the tutorial is currently playing instead of the player
+	 */
+	public boolean isScripted() {
+		return autoplay || autoswitch;
+	}
+
+	/**
+	 * Returns the number of timestamped trigger events read this frame
+	 *
+	 * @return the number of timestamped trigger events read this frame
+	 */
+	public int getNumHitEvents() {
+		return numEvents;
+	}
+
+	/**
+	 * Returns the line of the given trigger event
+	 *
+	 * @param index event index, must be < getNumHitEvents()
+	 * @return the line of the given trigger event
+	 */
+	public int getHitEventLine(int index) {
+		return eventLines[index];
+	}
+
+	/**
+	 * Returns true if the given trigger event was a press, false if it was a release
+	 *
+	 * @param index event index, must be < getNumHitEvents()
+	 * @return true if the given trigger event was a press, false if it was a release
+	 */
+	public boolean isHitEventPress(int index) {
+		return eventPressed[index];
+	}
+
+	/**
+	 * Returns the time (in nanoseconds, same timebase as System.nanoTime) of the given trigger event
+	 *
+	 * @param index event index, must be < getNumHitEvents()
+	 * @return the time of the given trigger event
+	 */
+	public long getHitEventTime(int index) {
+		return eventTimes[index];
+	}
+
 	/**
 	 * Returns true if the reset button was pressed.
 	 *
@@ -102,6 +183,47 @@ public class InputController {
 	 */
 	public boolean didExit() { return exitPressed; }
 
+	/**
+	 * Returns true if the watch replay button was just pressed.
+	 *
+	 * @return true if the watch replay button was just pressed
+	 */
+	public boolean didWatchReplay() {
+		return Gdx.input.isKeyJustPressed(Input.Keys.W);
+	}
+
+	/**
+	 * Returns true if the frame profiler overlay button (F3) was just pressed.
+	 *
+	 * @return true if the frame profiler overlay button was just pressed
+	 */
+	public boolean didToggleProfiler() {
+		return Gdx.input.isKeyJustPressed(Input.Keys.F3);
+	}
+
+	/**
+	 * Returns true if the frame profiler CSV button (F4) was just pressed.
+	 *
+	 * @return true if the frame profiler CSV button was just pressed
+	 */
+	public boolean didToggleProfilerCsv() {
+		return Gdx.input.isKeyJustPressed(Input.Keys.F4);
+	}
+
+	/**
+	 * Returns the replay speed (1, 2, 4, 8 or 16) whose number key (1 to 5) was just pressed.
+	 *
+	 * @return the replay speed that was just picked, or 0 if none was
+	 */
+	public int getReplaySpeed() {
+		for (int i = 0; i < 5; i++) {
+			if (Gdx.input.isKeyJustPressed(Input.Keys.NUM_1 + i)) {
+				return 1 << i;
+			}
+		}
+		return 0;
+	}
+
 	/**
 	 * Returns true if the calibration hit button was pressed.
 	 *
@@ -119,6 +241,25 @@ public class InputController {
 		return calibrationHitJustPressed;
 	}
 
+	/**
+	 * Returns the number of timestamped presses of the calibration hit button read this frame
+	 *
+	 * @return the number of calibration taps read this frame
+	 */
+	public int getNumCalibrationTaps() {
+		return numTaps;
+	}
+
+	/**
+	 * Returns the time (in nanoseconds, same timebase as System.nanoTime) of the given calibration tap
+	 *
+	 * @param index tap index, must be < getNumCalibrationTaps()
+	 * @return the time of the given calibration tap
+	 */
+	public long getCalibrationTapTime(int index) {
+		return tapTimes[index];
+	}
+
 	/**
 	 * Returns true if left mouse button was released
 	 * @return true if left mouse button was released
@@ -186,6 +327,14 @@ public class InputController {
 		triggers = new boolean[4];
 		switches = new boolean[4];
 		triggerLifted = new boolean[4];
+		pendingLines = new int[MAX_HIT_EVENTS];
+		pendingPressed = new boolean[MAX_HIT_EVENTS];
+		pendingTimes = new long[MAX_HIT_EVENTS];
+		eventLines = new int[MAX_HIT_EVENTS];
+		eventPressed = new boolean[MAX_HIT_EVENTS];
+		eventTimes = new long[MAX_HIT_EVENTS];
+		pendingTapTimes = new long[MAX_HIT_EVENTS];
+		tapTimes = new long[MAX_HIT_EVENTS];
 		triggerBindingsMain = SaveManager.getInstance().getHitKeybindingSettings(new int[]{
 				Input.Keys.D,
 				Input.Keys.F,
@@ -259,12 +408,26 @@ public class InputController {
 		assert lane < numBandMembers && lane >= 0;
 		updateKeybindingMap(newKeybind, main ? "switchesMain" : "switchesAlt", numBandMembers);
 		switchesBindingsMain.get(numBandMembers)[lane] = newKeybind;
+		keybindingChanges++;
 	}
 
 	// keybindings for hitting the notes (triggers)
 	public void setKeybinding(int line, int newKeybind, boolean main) {
 		updateKeybindingMap(newKeybind, main ? "triggerMain" : "triggerAlt", -1);
 		triggerBindingsMain[line] = newKeybind;
+		keybindingChanges++;
+	}
+
+	/**
+	 * Returns the number of times a key binding was changed
+	 *
+	 * Labels made from {@link #triggerKeyBinds} or {@link #switchKeyBinds} are stale once
+	 * this number changes.
+	 *
+	 * @return the number of times a key binding was changed
+	 */
+	public static int getKeybindingChanges() {
+		return keybindingChanges;
 	}
 
 	// READ INPUT FUNCTIONS
@@ -280,6 +443,8 @@ public class InputController {
 	 * Reads the input for the player and converts the result into game logic.
 	 */
 	public void readInput(int numBandMembers) {
+		// Hand the events received since the last frame over to this frame
+		swapHitEvents();
 		// Check to see if a GamePad is connected
 		if (xbox != null && xbox.isConnected()) {
 			readGamepad();
@@ -300,24 +465,79 @@ public class InputController {
 
 	// READ KEYBOARD FOR THE GAME (not level editor)
 
-	public void setTrigger(int line, boolean val) {
-		if (autoplay) {
-			triggerPress[line] = val;
-		}
+	public void resetTriggers() {
+		Arrays.fill(triggerPress, false);
 	}
 
-	public void setSwitch(int line, boolean val) {
-		if (autoswitch) {
-			switchesPress[line] = val;
-		}
+	/**
+	 * Drops every buffered trigger event, including the ones read this frame
+	 */
+	public void clearHitEvents() {
+		numPending = 0;
+		numEvents = 0;
+		numPendingTaps = 0;
+		numTaps = 0;
 	}
 
-	public void resetTriggers() {
-		Arrays.fill(triggerPress, false);
+	/**
+	 * Makes the events received since the last frame the events of this frame.
+	 *
+	 * Pending and frame events are double buffered so the processor never writes
+	 * into the arrays that gameplay is currently reading.
+	 */
+	private void swapHitEvents() {
+		int[] lines = eventLines;
+		eventLines = pendingLines;
+		pendingLines = lines;
+		boolean[] pressed = eventPressed;
+		eventPressed = pendingPressed;
+		pendingPressed = pressed;
+		long[] times = eventTimes;
+		eventTimes = pendingTimes;
+		pendingTimes = times;
+		numEvents = numPending;
+		numPending = 0;
+		times = tapTimes;
+		tapTimes = pendingTapTimes;
+		pendingTapTimes = times;
+		numTaps = numPendingTaps;
+		numPendingTaps = 0;
+	}
+
+	/**
+	 * Records a press or release of a trigger key at the time it was received.
+	 *
+	 * Events are ignored while autoplay or autoswitch drives the triggers, just like
+	 * the polled keyboard state. If the buffer is full the event is dropped.
+	 *
+	 * @param keycode the key that was pressed or released
+	 * @param pressed true if this is a press, false if this is a release
+	 * @param time    the time of the event in nanoseconds
+	 */
+	private void recordHitEvent(int keycode, boolean pressed, long time) {
+		if (isScripted() || numPending >= MAX_HIT_EVENTS) {
+			return;
+		}
+		for (int i = 0; i < triggerBindingsMain.length; i++) {
+			if (triggerBindingsMain[i] == keycode) {
+				pendingLines[numPending] = i;
+				pendingPressed[numPending] = pressed;
+				pendingTimes[numPending] = time;
+				numPending++;
+				return;
+			}
+		}
 	}
 
-	public void resetSwitches() {
-		Arrays.fill(switchesPress, false);
+	/**
+	 * Returns the time of the input event currently being processed, in nanoseconds.
+	 *
+	 * Backends that do not timestamp their events report 0, in which case we use
+	 * the time that the event reached us.
+	 */
+	private long eventTime() {
+		long time = Gdx.input.getCurrentEventTime();
+		return time == 0 ? System.nanoTime() : time;
 	}
 
 
@@ -463,10 +683,16 @@ public class InputController {
 	public class Processor implements InputProcessor {
 
 		public boolean keyDown (int keycode){
+			long time = eventTime();
+			recordHitEvent(keycode, true, time);
+			if (keycode == Input.Keys.SPACE && numPendingTaps < MAX_HIT_EVENTS) {
+				pendingTapTimes[numPendingTaps++] = time;
+			}
 			return false;
 		}
 
 		public boolean keyUp (int keycode){
+			recordHitEvent(keycode, false, eventTime());
 			return false;
 		}
 
@@ -660,4 +886,14 @@ public class InputController {
 		Gdx.input.setInputProcessor(processor);
 	}
 
+	/**
+	 * Installs the processor for gameplay so that trigger presses and releases are timestamped
+	 *
+	 * Calibration uses it too, for its timestamped taps.
+	 */
+	public void setGameplayProcessor() {
+		clearHitEvents();
+		Gdx.input.setInputProcessor(processor);
+	}
+
 }
@@ -0,0 +1,110 @@
+package edu.cornell.gdiac.temporary;
+
+/**
+ * The timing rules of a hit.
+ *
+ * This holds the hit windows of a song and turns the distance between a hit and its
+ * note into a grade, points and a competency gain. It has no graphics or audio, so
+ * the same rules are used by {@link GameplayController} and {@link GameSimulator}.
+ */
+public class Judgement {
+    /** Grade of a hit within the perfect window */
+    public static final int PERFECT = 0;
+    /** Grade of a hit within the good window */
+    public static final int GOOD = 1;
+    /** Grade of a hit within the ok window */
+    public static final int OK = 2;
+    /** Grade of a hit that is close to the note, but outside the ok window */
+    public static final int OFF_BEAT = 3;
+    /** Grade of a hit that is too far from the note to count at all */
+    public static final int NONE = 4;
+
+    /** the multiplier for a perfect hit */
+    private static final float PERFECT_HIT = 1.5f;
+    /** the multiplier for a good hit */
+    private static final float GOOD_HIT = 1.25f;
+
+    /** Perfect window (in samples) */
+    public final int perfectHit;
+    /** Good window (in samples) */
+    public final int goodHit;
+    /** Ok window (in samples) */
+    public final int okHit;
+    /** Window (in samples) within which a hit affects the note at all */
+    public final int miss;
+
+    /**
+     * Creates the hit windows for a song
+     *
+     * @param sampleRate the sample rate of the song
+     */
+    public Judgement(int sampleRate) {
+        perfectHit = (int) ((0.05f) * sampleRate);
+        goodHit = (int) ((0.08f) * sampleRate);
+        okHit = (int) ((0.12f) * sampleRate);
+        miss = (int) ((0.18f) * sampleRate);
+    }
+
+    /**
+     * Returns the grade of a hit
+     *
+     * @param dist distance (in samples) between the hit and the note
+     * @return the grade of the hit
+     */
+    public int grade(long dist) {
+        if (dist >= miss) {
+            return NONE;
+        }
+        if (dist >= okHit) {
+            return OFF_BEAT;
+        }
+        return dist < perfectHit ? PERFECT : (dist < goodHit ? GOOD : OK);
+    }
+
+    /**
+     * Returns true if the grade counts as hitting the note
+     *
+     * @param grade the grade of a hit
+     * @return true if the grade counts as hitting the note
+     */
+    public static boolean isHit(int grade) {
+        return grade <= OK;
+    }
+
+    /**
+     * Returns the points of a hit, before the combo multiplier
+     *
+     * @param grade the grade of a hit
+     * @return the points of the hit
+     */
+    public static int points(int grade) {
+        switch (grade) {
+            case PERFECT:
+                return 500;
+            case GOOD:
+                return 250;
+            case OK:
+                return 100;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns the competency gained by a hit
+     *
+     * @param grade    the grade of a hit
+     * @param gainRate the gain rate of the band member
+     * @return the competency gained by the hit
+     */
+    public static int compGain(int grade, int gainRate) {
+        switch (grade) {
+            case PERFECT:
+                return (int) (PERFECT_HIT * gainRate);
+            case GOOD:
+                return (int) (GOOD_HIT * gainRate);
+            default:
+                return gainRate;
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.ObjectMap;
+import edu.cornell.gdiac.audio.AudioEngine;
+import edu.cornell.gdiac.audio.AudioSource;
+import edu.cornell.gdiac.audio.AudioStream;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The song of a level, with the hit sounds of a replay mixed into it at the song sample
+ * they belong to.
+ *
+ * This source stands in for the song in the music buffer of the level. Its stream reads
+ * the song and adds every scheduled sound over it, so a sound plays at its exact place
+ * in the music, however the frames are paced. The sounds are decoded into memory when
+ * added, in the channel layout and sample rate of the song.
+ *
+ * The music buffer decodes the song ahead of what is heard, by up to a few buffers. A
+ * sound is only on time if it is scheduled before its sample is decoded, so sounds are
+ * meant to be scheduled ahead, such as every sound of a replay before it plays. Sounds
+ * wait in a queue, ordered by sample, until the song is decoded up to them. A sound
+ * scheduled at a sample already decoded starts at the next sample decoded instead.
+ * Live input is only known once its sample has been decoded, and the music buffer does
+ * not bound how far ahead it decodes, so live hits are not mixed here. They are played
+ * as sound effects (see {@link GameplayController}).
+ *
+ * The stream is read on the audio thread, so the scheduling methods are synchronized.
+ */
+public class KeysoundMixer implements AudioSource {
+    /** Number of sounds that may play at once */
+    private static final int VOICES = 16;
+
+    /** The song the sounds are mixed into */
+    private final AudioSource song;
+    /** The number of channels of the song */
+    private final int channels;
+    /** The sounds, as interleaved samples in the layout of the song */
+    private final ObjectMap<String, short[]> sounds = new ObjectMap<String, short[]>();
+
+    /** The samples of the sound of each voice (null if the voice is free) */
+    private final short[][] voiceData = new short[VOICES][];
+    /** The song sample each voice starts at */
+    private final long[] voiceStart = new long[VOICES];
+    /** The gain of each voice */
+    private final float[] voiceGain = new float[VOICES];
+
+    /** The scheduled sounds, by the song sample they start at */
+    private long[] queueStart = new long[64];
+    private short[][] queueData = new short[64][];
+    private float[] queueGain = new float[64];
+    private int queueSize;
+    /** The first scheduled sound that has not started yet */
+    private int queueNext;
+
+    /** The first song sample not decoded yet */
+    private long head;
+
+    /**
+     * Creates a mixer over the given song
+     *
+     * @param song  The song to mix sounds into
+     */
+    public KeysoundMixer(AudioSource song) {
+        this.song = song;
+        this.channels = song.getChannels();
+    }
+
+    /**
+     * Returns the song the sounds are mixed into
+     *
+     * @return the song the sounds are mixed into
+     */
+    public AudioSource getSong() {
+        return song;
+    }
+
+    /**
+     * Returns true if a sound of the given key has been added
+     *
+     * @param key   The key of the sound
+     *
+     * @return true if a sound of the given key has been added
+     */
+    public synchronized boolean hasSound(String key) {
+        return sounds.containsKey(key);
+    }
+
+    /**
+     * Decodes a sound into memory, to be played with {@link #play}
+     *
+     * @param key   The key of the sound
+     * @param file  The audio file of the sound
+     */
+    public void addSound(String key, FileHandle file) {
+        AudioSource source = ((AudioEngine) Gdx.audio).newSource(file);
+        try {
+            short[] samples = decode(source);
+            synchronized (this) {
+                sounds.put(key, samples);
+            }
+        } finally {
+            source.dispose();
+        }
+    }
+
+    /**
+     * Returns the samples of a source, in the channel layout and sample rate of the song
+     *
+     * @param source    The source to decode
+     *
+     * @return the samples of a source, in the layout of the song
+     */
+    private short[] decode(AudioSource source) {
+        int inChannels = source.getChannels();
+        AudioStream stream = source.getStream();
+        short[] decoded = new short[(int) stream.getSampleSize() + 1];
+        short[] page = new short[4096 * inChannels];
+        int size = 0;
+        int read;
+        while ((read = stream.read(page)) > 0) {
+            if (size + read > decoded.length) {
+                decoded = Arrays.copyOf(decoded, Math.max(size + read, 2 * decoded.length));
+            }
+            System.arraycopy(page, 0, decoded, size, read);
+            size += read;
+        }
+
+        // resample each channel of the song from the nearest channels of the source
+        int inFrames = size / inChannels;
+        double step = (double) source.getSampleRate() / song.getSampleRate();
+        int outFrames = (int) (inFrames / step);
+        short[] samples = new short[outFrames * channels];
+        for (int frame = 0; frame < outFrames; frame++) {
+            double position = frame * step;
+            int before = (int) position;
+            int after = Math.min(before + 1, inFrames - 1);
+            double weight = position - before;
+            for (int c = 0; c < channels; c++) {
+                double value;
+                if (inChannels == channels || inChannels > 1 && channels > 1) {
+                    int in = Math.min(c, inChannels - 1);
+                    value = decoded[before * inChannels + in] * (1 - weight) + decoded[after * inChannels + in] * weight;
+                } else if (inChannels == 1) {
+                    value = decoded[before] * (1 - weight) + decoded[after] * weight;
+                } else {
+                    // a mono song gets the average of the channels of the sound
+                    value = 0;
+                    for (int in = 0; in < inChannels; in++) {
+                        value += decoded[before * inChannels + in] * (1 - weight) + decoded[after * inChannels + in] * weight;
+                    }
+                    value /= inChannels;
+                }
+                samples[frame * channels + c] = (short) value;
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Schedules a sound at the given song sample
+     *
+     * The sound starts no earlier than the next sample to be decoded, so it is only on
+     * time if it is scheduled before the song is decoded up to it.
+     *
+     * @param key       The key of the sound
+     * @param sample    The song sample (audio frame) the sound belongs to
+     * @param gain      The gain of the sound
+     */
+    public synchronized void play(String key, long sample, float gain) {
+        short[] sound = sounds.get(key);
+        if (sound == null) {
+            Gdx.app.error("KeysoundMixer", "No keysound " + key);
+            return;
+        }
+        if (queueSize == queueStart.length) {
+            queueStart = Arrays.copyOf(queueStart, queueSize * 2);
+            queueData = Arrays.copyOf(queueData, queueSize * 2);
+            queueGain = Arrays.copyOf(queueGain, queueSize * 2);
+        }
+        long start = Math.max(sample, head);
+        // sounds are mostly scheduled in order, so look for their place from the end
+        int i = queueSize;
+        while (i > queueNext && queueStart[i - 1] > start) {
+            queueStart[i] = queueStart[i - 1];
+            queueData[i] = queueData[i - 1];
+            queueGain[i] = queueGain[i - 1];
+            i--;
+        }
+        queueStart[i] = start;
+        queueData[i] = sound;
+        queueGain[i] = gain;
+        queueSize++;
+    }
+
+    /** Stops every sound, and drops the scheduled ones */
+    public synchronized void stop() {
+        stopVoices();
+        Arrays.fill(queueData, 0, queueSize, null);
+        queueSize = 0;
+        queueNext = 0;
+    }
+
+    /** Stops the sounds that are playing */
+    private void stopVoices() {
+        for (int i = 0; i < VOICES; i++) {
+            voiceData[i] = null;
+        }
+    }
+
+    /**
+     * Starts the scheduled sounds that begin before the given song sample
+     *
+     * When every voice is busy, the one that started first is dropped.
+     *
+     * @param first     The first song sample being mixed
+     * @param end       The song sample after the last one being mixed
+     */
+    private void startVoices(long first, long end) {
+        while (queueNext < queueSize && queueStart[queueNext] < end) {
+            int voice = 0;
+            for (int i = 0; i < VOICES; i++) {
+                if (voiceData[i] == null || voiceStart[i] + voiceData[i].length / channels <= first) {
+                    voice = i;
+                    break;
+                }
+                if (voiceStart[i] < voiceStart[voice]) {
+                    voice = i;
+                }
+            }
+            voiceData[voice] = queueData[queueNext];
+            voiceStart[voice] = queueStart[queueNext];
+            voiceGain[voice] = queueGain[queueNext];
+            queueNext++;
+        }
+    }
+
+    /**
+     * Adds the voices playing over the given song bytes, and moves the head past them
+     *
+     * @param buffer    The 16-bit little-endian song samples
+     * @param length    The number of bytes to mix into
+     * @param offset    The byte offset of the buffer in the song
+     */
+    private synchronized void mix(byte[] buffer, int length, long offset) {
+        int frameBytes = 2 * channels;
+        long first = offset / frameBytes;
+        int frames = length / frameBytes;
+        startVoices(first, first + frames);
+        for (int i = 0; i < VOICES; i++) {
+            short[] sound = voiceData[i];
+            if (sound == null) continue;
+            long start = voiceStart[i];
+            int soundFrames = sound.length / channels;
+            if (start + soundFrames <= first) {
+                voiceData[i] = null;
+                continue;
+            }
+            int from = (int) Math.max(0, start - first);
+            int to = (int) Math.min(frames, start + soundFrames - first);
+            float gain = voiceGain[i];
+            for (int frame = from; frame < to; frame++) {
+                int in = (int) (first + frame - start) * channels;
+                for (int c = 0; c < channels; c++) {
+                    int pos = frame * frameBytes + 2 * c;
+                    int value = (short) ((buffer[pos] & 0xff) | (buffer[pos + 1] << 8));
+                    value += (int) (sound[in + c] * gain);
+                    if (value > Short.MAX_VALUE) value = Short.MAX_VALUE;
+                    if (value < Short.MIN_VALUE) value = Short.MIN_VALUE;
+                    buffer[pos] = (byte) value;
+                    buffer[pos + 1] = (byte) (value >> 8);
+                }
+            }
+        }
+        head = first + frames;
+    }
+
+    /**
+     * Moves the head to the given byte offset of the song, after a seek or reset
+     *
+     * The scheduled sounds are kept, and the ones that are not over by the new head play
+     * again from where the song is.
+     *
+     * @param offset    The byte offset of the song
+     */
+    private synchronized void seek(long offset) {
+        head = offset / (2 * channels);
+        stopVoices();
+        queueNext = 0;
+        while (queueNext < queueSize && queueStart[queueNext] + queueData[queueNext].length / channels <= head) {
+            queueNext++;
+        }
+    }
+
+    @Override
+    public FileHandle getFile() {
+        return song.getFile();
+    }
+
+    @Override
+    public int getChannels() {
+        return channels;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return song.getSampleRate();
+    }
+
+    @Override
+    public float getDuration() {
+        return song.getDuration();
+    }
+
+    @Override
+    public AudioStream getStream() {
+        return new Stream(song.getStream());
+    }
+
+    @Override
+    public ByteBuffer getData() {
+        return song.getData();
+    }
+
+    /** Drops the decoded sounds. The song belongs to its cache, and is left alone. */
+    @Override
+    public synchronized void dispose() {
+        stop();
+        sounds.clear();
+    }
+
+    /** A stream of the song with the scheduled sounds mixed in */
+    private class Stream implements AudioStream {
+        /** The stream of the song */
+        private final AudioStream stream;
+        /** Bytes read for the sample reads */
+        private byte[] bytes;
+
+        Stream(AudioStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public AudioSource getSource() {
+            return KeysoundMixer.this;
+        }
+
+        @Override
+        public long getByteSize() {
+            return stream.getByteSize();
+        }
+
+        @Override
+        public long getByteOffset() {
+            return stream.getByteOffset();
+        }
+
+        @Override
+        public long getSampleSize() {
+            return stream.getSampleSize();
+        }
+
+        @Override
+        public long getSampleOffset() {
+            return stream.getSampleOffset();
+        }
+
+        @Override
+        public int read(byte[] buffer) {
+            long offset = stream.getByteOffset();
+            int read = stream.read(buffer);
+            if (read > 0) {
+                mix(buffer, read, offset);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(short[] buffer) {
+            int read = read(bytes(buffer.length));
+            for (int i = 0; i < read / 2; i++) {
+                buffer[i] = (short) ((bytes[2 * i] & 0xff) | (bytes[2 * i + 1] << 8));
+            }
+            return read / 2;
+        }
+
+        @Override
+        public int read(float[] buffer) {
+            int read = read(bytes(buffer.length));
+            for (int i = 0; i < read / 2; i++) {
+                buffer[i] = (short) ((bytes[2 * i] & 0xff) | (bytes[2 * i + 1] << 8)) / (float) Short.MAX_VALUE;
+            }
+            return read / 2;
+        }
+
+        @Override
+        public int seek(long pos, byte[] buffer) {
+            int read = stream.seek(pos, buffer);
+            KeysoundMixer.this.seek(pos);
+            if (read > 0) {
+                mix(buffer, read, pos);
+            }
+            return read;
+        }
+
+        @Override
+        public int seek(long pos, short[] buffer) {
+            int read = seek(2 * pos, bytes(buffer.length));
+            for (int i = 0; i < read / 2; i++) {
+                buffer[i] = (short) ((bytes[2 * i] & 0xff) | (bytes[2 * i + 1] << 8));
+            }
+            return read / 2;
+        }
+
+        @Override
+        public int seek(long pos, float[] buffer) {
+            int read = seek(2 * pos, bytes(buffer.length));
+            for (int i = 0; i < read / 2; i++) {
+                buffer[i] = (short) ((bytes[2 * i] & 0xff) | (bytes[2 * i + 1] << 8)) / (float) Short.MAX_VALUE;
+            }
+            return read / 2;
+        }
+
+        @Override
+        public void reset() {
+            stream.reset();
+            KeysoundMixer.this.seek(0);
+        }
+
+        @Override
+        public void loop() {
+            stream.loop();
+            KeysoundMixer.this.seek(0);
+        }
+
+        /**
+         * Returns the byte buffer for reading the given number of samples
+         *
+         * @param samples   The number of samples to read
+         *
+         * @return the byte buffer for reading the given number of samples
+         */
+        private byte[] bytes(int samples) {
+            if (bytes == null || bytes.length != 2 * samples) {
+                bytes = new byte[2 * samples];
+            }
+            return bytes;
+        }
+    }
+}
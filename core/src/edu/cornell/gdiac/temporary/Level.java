@@ -5,12 +5,11 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.GlyphLayout;
-import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.Vector2;
-import com.badlogic.gdx.utils.JsonReader;
 import com.badlogic.gdx.utils.JsonValue;
-import com.badlogic.gdx.utils.Queue;
 import edu.cornell.gdiac.assets.AssetDirectory;
+import edu.cornell.gdiac.assets.ResourceManager;
 import edu.cornell.gdiac.audio.AudioEngine;
 import edu.cornell.gdiac.audio.AudioSource;
 import edu.cornell.gdiac.audio.MusicQueue;
@@ -18,44 +17,27 @@ import edu.cornell.gdiac.temporary.entity.BandMember;
 import edu.cornell.gdiac.temporary.entity.Note;
 import edu.cornell.gdiac.util.FilmStrip;
 
-import java.util.Comparator;
-import java.util.PriorityQueue;
+public class Level implements GameRules.NoteFactory {
 
-public class Level {
+    private TextureRegion arrow;
+    private TextureRegion pawIndicator;
 
-    private Texture arrow;
-    private Texture pawIndicator;
-
-    private Texture hitCBOX;
-    private Texture switchCBOX;
-
-    private FreeTypeFontGenerator fontGenerator;
+    private TextureRegion hitCBOX;
+    private TextureRegion switchCBOX;
 
+    /** Font of the tutorial controls (shared, see ResourceManager#acquireFont) */
     private BitmapFont font;
-    private FreeTypeFontGenerator.FreeTypeFontParameter fontParameter;
 
     public BandMember[] getBandMembers() {
         return bandMembers;
     }
 
-    public Texture getHitNoteTexture() {
-        return hitNoteTexture;
-    }
+    private TextureRegion switchIndicator;
 
-    public Texture getSwitchNoteTexture() {
-        return switchNoteTexture;
-    }
-
-    private Texture switchIndicator;
-
-    private Texture switchIndicatorHit;
+    private TextureRegion switchIndicatorHit;
 
     private Texture bkgTexture;
 
-    public Texture getHoldNoteTexture() {
-        return holdNoteTexture;
-    }
-
     public String getLevelName() {
         return levelName;
     }
@@ -76,20 +58,17 @@ public class Level {
         return music;
     }
 
-    public void setBandMembers(BandMember[] bandMembers) {
-        this.bandMembers = bandMembers;
-    }
-
-    public void setHitNoteTexture(Texture hitNoteTexture) {
-        this.hitNoteTexture = hitNoteTexture;
-    }
-
-    public void setSwitchNoteTexture(Texture switchNoteTexture) {
-        this.switchNoteTexture = switchNoteTexture;
+    /**
+     * Returns the clock that smooths the song position of this level
+     *
+     * @return the clock that smooths the song position of this level
+     */
+    public SongClock getSongClock() {
+        return songClock;
     }
 
-    public void setHoldNoteTexture(Texture holdNoteTexture) {
-        this.holdNoteTexture = holdNoteTexture;
+    public void setBandMembers(BandMember[] bandMembers) {
+        this.bandMembers = bandMembers;
     }
 
     public void setLevelName(String levelName) {
@@ -152,14 +131,15 @@ public class Level {
     private BandMember[] bandMembers;
 
     // TEXTURES
-    private Texture hitNoteTexture;
-    private Texture switchNoteTexture;
-    private Texture holdNoteTexture;
-    private Texture holdEndTexture;
-    private Texture holdTrailTexture;
-    private Texture hpbar;
-    private Texture noteIndicator;
-    private Texture noteIndicatorHit;
+    // regions of the note textures (from the gameplay atlas if it was packed)
+    private TextureRegion hitNoteRegion;
+    private TextureRegion switchNoteRegion;
+    private TextureRegion holdNoteRegion;
+    private TextureRegion holdEndRegion;
+    private TextureRegion holdTrailRegion;
+    private TextureRegion hpbar;
+    private TextureRegion noteIndicator;
+    private TextureRegion noteIndicatorHit;
     private FilmStrip[] violinSet;
     private FilmStrip[] drummerSet;
     private FilmStrip[] singerSet;
@@ -178,7 +158,6 @@ public class Level {
     private int levelNumber;
     private int maxCompetency;
     private int spawnOffset;
-    private long spawnOffsetSwitch;
     private int bpm;
     private long aThreshold;
     private long bThreshold;
@@ -187,289 +166,262 @@ public class Level {
     private MusicQueue music;
 
     private boolean isTutorial;
-    private Queue<Long> autoplayRanges;
-    private Queue<Long> switchRanges;
-    private Queue<Long> arrowAppear;
 
-    private long startRange;
-    private long endRange;
-
-    private long startSwitchRange;
-    private long endSwitchRange = -1;
-    public long getStartSwitchRange() {
-        return startSwitchRange;
-    }
-    public long getEndSwitchRange() {
-        return endSwitchRange;
-    }
+    /** A tutorial key label, fitted to its control box */
+    private static class KeyLabel {
+        /** The name of the key */
+        String text;
+        /** The font scale at which the label fills half of its box */
+        float scale;
+        /** The size of the label at that scale */
+        float width;
+        float height;
+    }
+
+    /** The labels of the trigger keys, and of the switch key of each band member (tutorials only) */
+    private KeyLabel[] triggerLabels;
+    private KeyLabel[] switchLabels;
+    /** The band member sizes the labels were fitted to */
+    private float labelLargeWidth;
+    private float labelSmallWidth;
+    private float labelHeight;
+    /** The key binding changes the labels were made after (see InputController#getKeybindingChanges) */
+    private int labelBindings = -1;
+    /** The rules of a run of this level, which own the judgement and the tutorial cues */
+    private GameRules rules;
 
     public boolean getIsTutorial() {
         return isTutorial;
     }
 
-    private int toBandMember;
-
-    public int getToBandMember() {
-        return toBandMember;
+    /**
+     * Returns the rules of a run of this level
+     *
+     * @return the rules of a run of this level
+     */
+    public GameRules getRules() {
+        return rules;
     }
 
+    /**
+     * Returns true if the tutorial is playing the notes itself
+     *
+     * This is the state of the last update.
+     */
     public boolean isInAutoplayRange() {
-        long currentSample = getCurrentSample();
-        if (isTutorial && !autoplayRanges.isEmpty()) {
-            if (autoplayRanges.size % 2 == 0) {
-                if (currentSample >= autoplayRanges.first()) {
-                    startRange = autoplayRanges.removeFirst();
-                    endRange = autoplayRanges.first();
-                    return true;
-                }
-            } else {
-                if (currentSample <= autoplayRanges.first()) {
-                    return true;
-                } else {
-                    autoplayRanges.removeFirst();
-                }
-            }
-            return false;
-        }
-        return false;
+        return rules.isInAutoplayRange();
     }
 
+    /**
+     * Returns true if the tutorial is switching band members itself
+     *
+     * This is the state of the last update.
+     */
     public boolean isAutoSwitching() {
-        long currentSample = getCurrentSample();
-        if (isTutorial && (currentSample <= endSwitchRange || endSwitchRange == -1 || !switchRanges.isEmpty())) {
-            // set it to one second before
-            if (!switchRanges.isEmpty()) {
-                if (currentSample >= switchRanges.first() - music.getSampleRate()/2) {
-                    startSwitchRange = switchRanges.first() - music.getSampleRate()/2;
-                    endSwitchRange = switchRanges.first() + music.getSampleRate()/2;
-                    switchRanges.removeFirst();
-                    toBandMember = switchRanges.removeFirst().intValue();
-                }
-            }
-            return currentSample <= endSwitchRange && currentSample >= startSwitchRange;
-        }
-        return false;
-    }
-
-    public boolean isArrowAppearing() {
-        long currentSample = getCurrentSample();
-        if (isTutorial && !arrowAppear.isEmpty()) {
-            if (arrowAppear.size % 2 == 0) {
-                if (currentSample >= arrowAppear.first()) {
-                    arrowAppear.removeFirst();
-                    return true;
-                }
-            } else {
-                if (currentSample <= arrowAppear.first()) {
-                    return true;
-                } else {
-                    arrowAppear.removeFirst();
-                }
-            }
-            return false;
-        }
-        return false;
+        return rules.isAutoSwitching();
     }
 
     /**
-     * The last sample that health was decremented due to continuous decay
+     * Returns true if the tutorial is showing its arrow
+     *
+     * This is the state of the last update.
      */
-    private long lastDec;
+    public boolean isArrowAppearing() {
+        return rules.isArrowAppearing();
+    }
 
     /**
      * Horizontal slice of border
      */
-    private Texture HUnit;
+    private TextureRegion HUnit;
 
     /**
      * set to true if music has been started
      */
     private boolean musicInitialized = false;
+    /**
+     * Smoothed clock for the song position
+     */
+    private SongClock songClock;
+    /**
+     * Whether the song position advances by a fixed amount every frame instead of following the music
+     */
+    private boolean frameClock;
+    /**
+     * The song position of the frame clock
+     */
+    private long frameSample;
     /**
      * Vertical slice of border
      */
-    private Texture VUnit;
+    private TextureRegion VUnit;
     /**
      * Corner Texture
      */
-    private Texture CUnit;
+    private TextureRegion CUnit;
 
     /**
      * Line separation texture
      */
-    private Texture sepLine;
+    private TextureRegion sepLine;
 
     /**
      * background of each lane
      */
-    private Texture activeLane;
-    private Texture inactiveLane;
+    private TextureRegion activeLane;
+    private TextureRegion inactiveLane;
     AudioSource songSource;
-    JsonValue data;
+    /** The song as played, with the sounds of a replay being played back mixed in */
+    private KeysoundMixer keysounds;
+    /** The chart of this level */
+    private Chart chart;
 
     float maxSample;
 
-    // this comparator is used for comparing comp flag data later on
-    private static class CustomComparator implements Comparator<Long[]> {
-        @Override
-        public int compare(Long[] o1, Long[] o2) {
-            return Long.compare(o1[0], o2[0]);
-        }
+    public Level(JsonValue data, AssetDirectory directory) {
+        this(Chart.fromJson(data), directory);
     }
 
-    public Level(JsonValue data, AssetDirectory directory) {
+    public Level(Chart chart, AssetDirectory directory) {
+        this(new LevelData(chart), directory);
+    }
+
+    /**
+     * Creates a level from its prepared chart and song
+     *
+     * The data may have been prepared on another thread (see {@link LevelLoader}). This
+     * part needs the GL thread, as it binds the textures of the level.
+     *
+     * @param data      the chart and song of the level
+     * @param directory the asset directory
+     */
+    public Level(LevelData data, AssetDirectory directory) {
+        Chart chart = data.chart;
         sample = 0;
-        JsonReader jr = new JsonReader();
-        JsonValue assets = jr.parse(Gdx.files.internal("assets.json"));
-        bkgTexture = directory.getEntry(data.getString("background"), Texture.class);
+        bkgTexture = directory.getEntry(chart.background, Texture.class);
         // load all related level textures
-        hitNoteTexture = directory.getEntry("hit", Texture.class);
-        switchNoteTexture = directory.getEntry("switch", Texture.class);
-        holdNoteTexture = directory.getEntry("hold-start", Texture.class);
-        holdTrailTexture = directory.getEntry("hold-trail", Texture.class);
-        hpbar = directory.getEntry("hp-bar", Texture.class);
-        holdTrailTexture.setWrap(Texture.TextureWrap.ClampToEdge, Texture.TextureWrap.Repeat);
-        holdEndTexture = directory.getEntry("hold-end", Texture.class);
-        noteIndicator = directory.getEntry("note-indicator", Texture.class);
-        noteIndicatorHit = directory.getEntry("note-indicator-hit", Texture.class);
-        switchIndicator = directory.getEntry("switch-indicator", Texture.class);
-        switchIndicatorHit = directory.getEntry("switch-indicator-hit", Texture.class);
-
-        violinSet = new FilmStrip[7];
-        violinSet[0] = new FilmStrip(directory.getEntry("violin-INACTIVE-NOTES", Texture.class), 1, 6, 6);
-        violinSet[1] = new FilmStrip(directory.getEntry("violin-INACTIVE-NO-NOTES", Texture.class), 1, 6, 6);
-        violinSet[2] = new FilmStrip(directory.getEntry("violin-INACTIVE-LOW", Texture.class), 1, 2, 2);
-        violinSet[3] = new FilmStrip(directory.getEntry("violin-ACTIVE-LEFT", Texture.class), 3, 3, 8);
-        violinSet[4] = new FilmStrip(directory.getEntry("violin-ACTIVE-RIGHT", Texture.class), 3, 3, 8);
-        violinSet[5] = new FilmStrip(directory.getEntry("violin-ACTIVE-IDLE", Texture.class), 1, 6, 6);
-        violinSet[6] = new FilmStrip(directory.getEntry("violin-ACTIVE-MISS", Texture.class), 1, 1, 1);
-
-        singerSet = new FilmStrip[7];
-        singerSet[0] = new FilmStrip(directory.getEntry("singer-INACTIVE-NOTES", Texture.class), 1, 6, 6);
-        singerSet[1] = new FilmStrip(directory.getEntry("singer-INACTIVE-NO-NOTES", Texture.class), 3, 3, 8);
-        singerSet[2] = new FilmStrip(directory.getEntry("singer-INACTIVE-LOW", Texture.class), 2, 2, 4);
-        singerSet[3] = new FilmStrip(directory.getEntry("singer-ACTIVE-LEFT", Texture.class), 3, 3, 8);
-        singerSet[4] = new FilmStrip(directory.getEntry("singer-ACTIVE-RIGHT", Texture.class), 3, 3, 8);
-        singerSet[5] = new FilmStrip(directory.getEntry("singer-ACTIVE-IDLE", Texture.class), 3, 3, 8);
-        singerSet[6] = new FilmStrip(directory.getEntry("singer-ACTIVE-MISS", Texture.class), 1, 1, 1);
-
-        drummerSet = new FilmStrip[7];
-        drummerSet[0] = new FilmStrip(directory.getEntry("drummer-INACTIVE-NOTES", Texture.class), 2, 3, 6);
-        drummerSet[1] = new FilmStrip(directory.getEntry("drummer-INACTIVE-NO-NOTES", Texture.class), 2, 3, 6);
-        drummerSet[2] = new FilmStrip(directory.getEntry("drummer-INACTIVE-LOW", Texture.class), 2, 2, 4);
-        drummerSet[3] = new FilmStrip(directory.getEntry("drummer-ACTIVE-LEFT", Texture.class), 3, 3, 8);
-        drummerSet[4] = new FilmStrip(directory.getEntry("drummer-ACTIVE-RIGHT", Texture.class), 3, 3, 8);
-        drummerSet[5] = new FilmStrip(directory.getEntry("drummer-ACTIVE-IDLE", Texture.class), 2, 3, 6);
-        drummerSet[6] = new FilmStrip(directory.getEntry("drummer-ACTIVE-MISS", Texture.class), 1, 1, 1);
-
-        pianoSet = new FilmStrip[7];
-        pianoSet[0] = new FilmStrip(directory.getEntry("piano-INACTIVE-NOTES", Texture.class), 2, 3, 6);
-        pianoSet[1] = new FilmStrip(directory.getEntry("piano-INACTIVE-NO-NOTES", Texture.class), 2, 3, 6);
-        pianoSet[2] = new FilmStrip(directory.getEntry("piano-INACTIVE-LOW", Texture.class), 2, 2, 4);
-        pianoSet[3] = new FilmStrip(directory.getEntry("piano-ACTIVE-LEFT", Texture.class), 3, 3, 8);
-        pianoSet[4] = new FilmStrip(directory.getEntry("piano-ACTIVE-RIGHT", Texture.class), 3, 3, 8);
-        pianoSet[5] = new FilmStrip(directory.getEntry("piano-ACTIVE-IDLE", Texture.class), 2, 3, 6);
-        pianoSet[6] = new FilmStrip(directory.getEntry("piano-ACTIVE-MISS", Texture.class), 2, 2, 4);
-
-        ghostLoom = new FilmStrip(directory.getEntry("ghost-loom", Texture.class), 1, 1, 1);
-
-        backSplash = new FilmStrip(directory.getEntry("back-splash", Texture.class), 5, 5, 23);
-        frontSplash = new FilmStrip(directory.getEntry("front-splash", Texture.class), 5, 5, 21);
-
-        arrow = directory.getEntry("pointer-arrow", Texture.class);
-        pawIndicator = directory.getEntry("paw-indicator", Texture.class);
-        hitCBOX = directory.getEntry("hitCBox", Texture.class);
-        switchCBOX = directory.getEntry("switchCBox", Texture.class);
+        hpbar = directory.getRegion("hp-bar");
+        noteIndicator = directory.getRegion("note-indicator");
+        noteIndicatorHit = directory.getRegion("note-indicator-hit");
+        switchIndicator = directory.getRegion("switch-indicator");
+        switchIndicatorHit = directory.getRegion("switch-indicator-hit");
+        hitNoteRegion = directory.getRegion("hit");
+        switchNoteRegion = directory.getRegion("switch");
+        holdNoteRegion = directory.getRegion("hold-start");
+        holdEndRegion = directory.getRegion("hold-end");
+        holdTrailRegion = directory.getRegion("hold-trail");
+
+        // only the instruments of the chart are loaded (see GameMode#readLevel)
+        if (chart.hasInstrument("violin")) {
+            violinSet = new FilmStrip[7];
+            violinSet[0] = new FilmStrip(directory.getRegion("violin-INACTIVE-NOTES"), 1, 6, 6);
+            violinSet[1] = new FilmStrip(directory.getRegion("violin-INACTIVE-NO-NOTES"), 1, 6, 6);
+            violinSet[2] = new FilmStrip(directory.getRegion("violin-INACTIVE-LOW"), 1, 2, 2);
+            violinSet[3] = new FilmStrip(directory.getRegion("violin-ACTIVE-LEFT"), 3, 3, 8);
+            violinSet[4] = new FilmStrip(directory.getRegion("violin-ACTIVE-RIGHT"), 3, 3, 8);
+            violinSet[5] = new FilmStrip(directory.getRegion("violin-ACTIVE-IDLE"), 1, 6, 6);
+            violinSet[6] = new FilmStrip(directory.getRegion("violin-ACTIVE-MISS"), 1, 1, 1);
+        }
+
+        if (chart.hasInstrument("voice")) {
+            singerSet = new FilmStrip[7];
+            singerSet[0] = new FilmStrip(directory.getRegion("singer-INACTIVE-NOTES"), 1, 6, 6);
+            singerSet[1] = new FilmStrip(directory.getRegion("singer-INACTIVE-NO-NOTES"), 3, 3, 8);
+            singerSet[2] = new FilmStrip(directory.getRegion("singer-INACTIVE-LOW"), 2, 2, 4);
+            singerSet[3] = new FilmStrip(directory.getRegion("singer-ACTIVE-LEFT"), 3, 3, 8);
+            singerSet[4] = new FilmStrip(directory.getRegion("singer-ACTIVE-RIGHT"), 3, 3, 8);
+            singerSet[5] = new FilmStrip(directory.getRegion("singer-ACTIVE-IDLE"), 3, 3, 8);
+            singerSet[6] = new FilmStrip(directory.getRegion("singer-ACTIVE-MISS"), 1, 1, 1);
+        }
+
+        if (chart.hasInstrument("drum")) {
+            drummerSet = new FilmStrip[7];
+            drummerSet[0] = new FilmStrip(directory.getRegion("drummer-INACTIVE-NOTES"), 2, 3, 6);
+            drummerSet[1] = new FilmStrip(directory.getRegion("drummer-INACTIVE-NO-NOTES"), 2, 3, 6);
+            drummerSet[2] = new FilmStrip(directory.getRegion("drummer-INACTIVE-LOW"), 2, 2, 4);
+            drummerSet[3] = new FilmStrip(directory.getRegion("drummer-ACTIVE-LEFT"), 3, 3, 8);
+            drummerSet[4] = new FilmStrip(directory.getRegion("drummer-ACTIVE-RIGHT"), 3, 3, 8);
+            drummerSet[5] = new FilmStrip(directory.getRegion("drummer-ACTIVE-IDLE"), 2, 3, 6);
+            drummerSet[6] = new FilmStrip(directory.getRegion("drummer-ACTIVE-MISS"), 1, 1, 1);
+        }
+
+        if (chart.hasInstrument("piano")) {
+            pianoSet = new FilmStrip[7];
+            pianoSet[0] = new FilmStrip(directory.getRegion("piano-INACTIVE-NOTES"), 2, 3, 6);
+            pianoSet[1] = new FilmStrip(directory.getRegion("piano-INACTIVE-NO-NOTES"), 2, 3, 6);
+            pianoSet[2] = new FilmStrip(directory.getRegion("piano-INACTIVE-LOW"), 2, 2, 4);
+            pianoSet[3] = new FilmStrip(directory.getRegion("piano-ACTIVE-LEFT"), 3, 3, 8);
+            pianoSet[4] = new FilmStrip(directory.getRegion("piano-ACTIVE-RIGHT"), 3, 3, 8);
+            pianoSet[5] = new FilmStrip(directory.getRegion("piano-ACTIVE-IDLE"), 2, 3, 6);
+            pianoSet[6] = new FilmStrip(directory.getRegion("piano-ACTIVE-MISS"), 2, 2, 4);
+        }
+
+        ghostLoom = new FilmStrip(directory.getRegion("ghost-loom"), 1, 1, 1);
+
+        backSplash = new FilmStrip(directory.getRegion("back-splash"), 5, 5, 23);
+        frontSplash = new FilmStrip(directory.getRegion("front-splash"), 5, 5, 21);
+
+        arrow = directory.getRegion("pointer-arrow");
+        pawIndicator = directory.getRegion("paw-indicator");
+        hitCBOX = directory.getRegion("hitCBox");
+        switchCBOX = directory.getRegion("switchCBox");
 
         autoplayBackground = directory.getEntry("autoplay-background", Texture.class);
         progressBackground = directory.getEntry("autoplay-progress-background", Texture.class);
         progressForeground = directory.getEntry("autoplay-progress-foreground", Texture.class);
         progressKnob = directory.getEntry("autoplay-progress-knob", Texture.class);
 
-        this.data = data;
-        //Read in Json  Value and populate asset textures
-        lastDec = 0;
-        levelName = data.getString("levelName");
-        levelNumber = data.getInt("levelNumber");
-        maxCompetency = data.getInt("maxCompetency");
-        aThreshold = data.get("thresholdA").asLong();
-        bThreshold = data.get("thresholdB").asLong();
-        cThreshold = data.get("thresholdC").asLong();
-        sThreshold = data.get("thresholdS").asLong();
-        bpm = data.getInt("bpm");
-        String song = data.getString("song");
-        int fallSpeed = data.getInt("fallSpeed");
-        music = ((AudioEngine) Gdx.audio).newMusic(Gdx.files.internal(assets.get("samples").getString(song)));
-        songSource = music.getSource(0);
+        this.chart = chart;
+        //Read in the chart and populate asset textures
+        levelName = chart.levelName;
+        levelNumber = chart.levelNumber;
+        maxCompetency = chart.maxCompetency;
+        aThreshold = chart.aThreshold;
+        bThreshold = chart.bThreshold;
+        cThreshold = chart.cThreshold;
+        sThreshold = chart.sThreshold;
+        bpm = chart.bpm;
+        songSource = data.song;
+        keysounds = new KeysoundMixer(songSource);
+        music = ((AudioEngine) Gdx.audio).newMusicBuffer(songSource.getChannels() == 1, songSource.getSampleRate());
+        music.addSource(keysounds);
         music.setVolume(0.8f);
+        songClock = new SongClock(music.getSampleRate());
         maxSample = songSource.getDuration() * songSource.getSampleRate();
-        HUnit = directory.getEntry("borderHUnit", Texture.class);
-        VUnit = directory.getEntry("borderVUnit", Texture.class);
-        CUnit = directory.getEntry("borderCorner", Texture.class);
-        activeLane = directory.getEntry("activeLane", Texture.class);
-        inactiveLane = directory.getEntry("inactiveLane", Texture.class);
-        sepLine = directory.getEntry("separationLine", Texture.class);
-
-        // preallocate band members
-        bandMembers = new BandMember[data.get("bandMembers").size];
-        spawnOffset = 10*music.getSampleRate()/fallSpeed;
-        // switch note is twice as slow
-        spawnOffsetSwitch = 2L * spawnOffset;
-        float samplesPerBeat = songSource.getSampleRate() * 60f/bpm;
-        for(int i = 0; i < bandMembers.length; i++){
-            bandMembers[i] = new BandMember();
-            JsonValue bandMemberData = data.get("bandMembers").get(i);
-
-            // we store comp flags as arrays of size 3: song position, lossRate, gainRate
-            // we sort these comp flags in a PriorityQueue for each band member based on song position
-            JsonValue compFlags = bandMemberData.get("compFlags");
-            PriorityQueue<Long[]> compData = new PriorityQueue<>(10, new CustomComparator());
-            for(int j = 0; j < compFlags.size; ++j){
-                JsonValue thisCompFlag = compFlags.get(j);
-                Long[] arr = new Long[3];
-                arr[0] = thisCompFlag.getLong("position");
-                arr[1] = (long) thisCompFlag.getInt("rate");
-                arr[2] = (long) thisCompFlag.getInt("gain");
-                compData.add(arr);
-            }
-            bandMembers[i].setCompData(compData);
+        HUnit = directory.getRegion("borderHUnit");
+        VUnit = directory.getRegion("borderVUnit");
+        CUnit = directory.getRegion("borderCorner");
+        activeLane = directory.getRegion("activeLane");
+        inactiveLane = directory.getRegion("inactiveLane");
+        sepLine = directory.getRegion("separationLine");
 
-            Queue<Note> notes = new Queue<>();
-            JsonValue noteData = bandMemberData.get("notes");
-            for(int j = 0; j < noteData.size; ++j){
-                JsonValue thisNote = noteData.get(j);
-                Note n;
+        createBandMembers();
+        rules = new GameRules(chart, bandMembers, music.getSampleRate(), this);
+        rules.setMaxSample((long) maxSample);
 
-                if (thisNote.getString("type").equals("beat")){
-                    if(thisNote.getLong("position") > maxSample){
-                        continue;
-                    }
-                    n = new Note(thisNote.getInt("line"), Note.NoteType.BEAT, thisNote.getLong("position") - spawnOffset, hitNoteTexture);
-                }
-                else if (thisNote.getString("type").equals("switch")){
-                    if(thisNote.getLong("position") > maxSample){
-                        continue;
-                    }
-                    n = new Note(thisNote.getInt("line"), Note.NoteType.SWITCH, thisNote.getLong("position") - spawnOffsetSwitch, switchNoteTexture);
-                }
-                else {
-                    if(thisNote.getLong("position") + thisNote.getLong("duration")> maxSample){
-                        continue;
-                    }
-                    n = new Note(thisNote.getInt("line"), Note.NoteType.HELD, thisNote.getLong("position") - spawnOffset, holdNoteTexture);
-                    n.setHoldTextures(holdTrailTexture,1,holdEndTexture,1, backSplash, frontSplash, getAnimationRateFromBPM(bpm));
-                    n.setHoldSamples(thisNote.getLong("duration"));
-                }
-                n.setHitSample(thisNote.getLong("position"));
-                notes.addLast(n);
-            }
-            bandMembers[i].setAllNotes(notes);
-            bandMembers[i].setCurComp(maxCompetency);
-            bandMembers[i].setMaxComp(maxCompetency);
+        // TUTORIAL LOGIC
+
+        // need autoplay ranges, need switch ranges, need random hit
+        if (chart.isTutorial()) {
+            font = ResourceManager.get().acquireFont("fonts/Blinker-SemiBold.ttf", 96);
+            isTutorial = true;
+        }
+    }
+
+    /**
+     * Creates the band members from the chart, with their textures.
+     *
+     * Notes are not created here. They stay in the chart until they are about to
+     * appear on screen (see {@link #createNote}).
+     */
+    private void createBandMembers() {
+        bandMembers = GameRules.createBandMembers(chart, music.getSampleRate());
+        spawnOffset = 10*music.getSampleRate()/chart.fallSpeed;
+        for(int i = 0; i < bandMembers.length; i++){
+            Chart.Lane lane = chart.lanes[i];
             bandMembers[i].setHpBarFilmStrip(hpbar, 47);
             bandMembers[i].setIndicatorTextures(noteIndicator, noteIndicatorHit);
-            bandMembers[i].setSPB(samplesPerBeat);
-            switch (bandMemberData.getString("instrument")) {
+            switch (lane.instrument) {
                 case "violin":
                     bandMembers[i].setFilmStrips(violinSet);
                     break;
@@ -487,39 +439,32 @@ public class Level {
             bandMembers[i].recieveSample(sample);
             bandMembers[i].pickFrame();
         }
+    }
 
-        // TUTORIAL LOGIC
-
-        // need autoplay ranges, need switch ranges, need random hit
-        JsonValue tutorialData = data.get("tutorialData");
-        if (tutorialData != null) {
-            fontGenerator = new FreeTypeFontGenerator(Gdx.files.internal("fonts/Blinker-SemiBold.ttf"));
-
-            fontParameter = new FreeTypeFontGenerator.FreeTypeFontParameter();
-            fontParameter.size = 96;
-            font = fontGenerator.generateFont(fontParameter);
-            fontScale = 1f;
-            isTutorial = true;
-
-            autoplayRanges = new Queue<>();
-            switchRanges = new Queue<>();
-            arrowAppear = new Queue<>();
-
-            long[] autoplayRanges = tutorialData.get("autoplayRanges").asLongArray();
-            for (long val : autoplayRanges) {
-                this.autoplayRanges.addLast(val);
-            }
-
-            long[] switchRanges = tutorialData.get("switchSamples").asLongArray();
-            for (long val : switchRanges) {
-                this.switchRanges.addLast(val);
-            }
-
-            long[] arrowAppear = tutorialData.get("arrowAppear").asLongArray();
-            for (long val : arrowAppear) {
-                this.arrowAppear.addLast(val);
-            }
+    /**
+     * Creates a note as it spawns, with the textures of this level
+     *
+     * @param line        the line of the note (-1 for switch notes)
+     * @param type        the type of the note
+     * @param startSample the sample at which the note starts falling
+     * @return the new note
+     */
+    @Override
+    public Note createNote(int line, Note.NoteType type, long startSample) {
+        Note n;
+        switch (type) {
+            case SWITCH:
+                n = new Note(line, type, startSample, switchNoteRegion);
+                break;
+            case HELD:
+                n = new Note(line, type, startSample, holdNoteRegion);
+                n.setHoldTextures(holdTrailRegion,1,holdEndRegion,1, backSplash, frontSplash, getAnimationRateFromBPM(bpm));
+                break;
+            default:
+                n = new Note(line, type, startSample, hitNoteRegion);
+                break;
         }
+        return n;
     }
 
     public void setMusicVolume(float vol) {
@@ -622,44 +567,23 @@ public class Level {
     }
 
     private long sample;
-
-    public void receiveInterrupt(int BM_id, boolean DFflag, boolean JKflag, boolean MISSflag){
-        bandMembers[BM_id].recieveSample(sample);
-        bandMembers[BM_id].recieveFlags(DFflag, JKflag, MISSflag);
-    }
-
-    public void swapActive(int prev, int next){
-        bandMembers[prev].changeMode();
-        bandMembers[next].changeMode();
-    }
-
-    /**
-     * We check to see if we have reached the song position of the next comp rate change, and change if we have
-     * */
-    public void updateCompRates() {
-        for (int i=0; i < bandMembers.length; i++) {
-            Long[] top = bandMembers[i].getCompData().peek();
-            if (top == null) return;
-            if (getCurrentSample() >= top[0]) {
-                top = bandMembers[i].getCompData().poll();
-                bandMembers[i].setLossRate((top[1]).intValue());
-                bandMembers[i].setGainRate((top[2]).intValue());
-            }
-        }
-    }
-
-    public int gainRate(int activeBandMember) {
-        return bandMembers[activeBandMember].getGainRate();
-    }
+    /** The time (System.nanoTime) at which sample was last updated */
+    private long sampleTime;
+    /** How far behind the song the notes are drawn, in samples */
+    private long drawOffset;
 
     /**
-     * Spawns new notes according to what sample we are at. Also decrements bandmembers competency. It also updates the frame of the bandmember.
+     * Moves the song to the sample of this frame and updates the rules of the run with it.
+     * Then updates the frames of the band members and the positions of their notes.
      */
     public void updateBandMemberNotes(float spawnY, int mode, int ticks, int introLength){
         //mode: 0 is INTRO, 1 is PLAYING, 2 is GAME_OVER
         //First get the sample we at
         int rate = music.getSampleRate();
         if (mode == 1)       {
+            if (frameClock) {
+                frameSample += getSamplesPerFrame();
+            }
             sample = getCurrentSample();
         } else if (mode == 2){
             sample += (int) ((((float) rate)/60f)*(0.8f*(1f - (((float) ticks)/120f))));
@@ -667,6 +591,8 @@ public class Level {
             int startSample = -(int) (((float) rate/60f)*introLength);
             sample = startSample + (int) (((float) rate/60f)*ticks);
         }
+        sampleTime = System.nanoTime();
+        rules.update(sample, mode == 1);
 
         for (int i = 0; i < bandMembers.length; ++i) {
             BandMember bandMember = bandMembers[i];
@@ -678,19 +604,10 @@ public class Level {
                 bandMember.setGameOver(true);
                 bandMember.pickFrame();
             }
-
-            if (!bandMember.getHitNotes().isEmpty() && mode == 1 && !bandMember.hasHold()) {
-                float loss = -1f * bandMember.getLossRate() * (sample - lastDec) / ((float) music.getSampleRate());
-                // TODO: ONLY UPDATE IF YOU ARE NOT HOLDING
-                bandMember.compUpdate(loss);
-            }
-            //spawn new notes accordingly
-            bandMember.spawnNotes(sample);
-            //update the note frames
-            bandMember.updateNotes(spawnY, sample);
-
+            //move the notes to where they are drawn; only the drawing is corrected for the visual
+            //calibration, judgement and note deaths go by the song position
+            bandMember.updateNotes(spawnY, sample - drawOffset);
         }
-        lastDec = sample;
     }
 
     /**
@@ -698,131 +615,93 @@ public class Level {
      */
     public void startmusic(){
         musicInitialized = true;
-        music.play();
-    }
-
-    public boolean hasMoreNotes(){
-        boolean tog = false;
-        for(BandMember bm : bandMembers){
-            tog = tog ||  bm.hasMoreNotes();
+        if (!frameClock) {
+            music.play();
         }
-        return tog;
     }
 
-    public void resetLevel(){
-        sample = 0;
-        float oldVolume = music.getVolume();
-        lastDec = 0;
-        music.stop();
-        music.reset();
-        music.clearSources();
-        music = ((AudioEngine) Gdx.audio).newMusicBuffer( songSource.getChannels() == 1, songSource.getSampleRate() );
-        music.addSource(songSource);
-        // reset volume
-        music.setVolume(oldVolume);
-        bandMembers = new BandMember[data.get("bandMembers").size];
-        int fallSpeed = data.getInt("fallSpeed");
-        spawnOffset = 10*music.getSampleRate()/fallSpeed;
-        // switch note is twice as slow
-        spawnOffsetSwitch = 2L * spawnOffset;
-        float samplesPerBeat = songSource.getSampleRate() * 60f/bpm;
-        for(int i = 0; i < bandMembers.length; i++){
-            bandMembers[i] = new BandMember();
-            JsonValue bandMemberData = data.get("bandMembers").get(i);
-            Queue<Note> notes = new Queue<>();
-            JsonValue noteData = bandMemberData.get("notes");
-            for(int j = 0; j < noteData.size; ++j){
-                JsonValue thisNote = noteData.get(j);
-                Note n;
-                if (thisNote.getString("type").equals("beat")){
-                    if(thisNote.getLong("position") > maxSample){
-                        continue;
-                    }
-                    n = new Note(thisNote.getInt("line"), Note.NoteType.BEAT, thisNote.getLong("position") - spawnOffset, hitNoteTexture);
-                }
-                else if (thisNote.getString("type").equals("switch")){
-                    if(thisNote.getLong("position") > maxSample){
-                        continue;
-                    }
-                    n = new Note(thisNote.getInt("line"), Note.NoteType.SWITCH, thisNote.getLong("position") - spawnOffsetSwitch, switchNoteTexture);
-                }
-                else {
-                    if(thisNote.getLong("position") + thisNote.getLong("duration")> maxSample){
-                        continue;
-                    }
-                    n = new Note(thisNote.getInt("line"), Note.NoteType.HELD, thisNote.getLong("position") - spawnOffset, holdNoteTexture);
-                    n.setHoldTextures(holdTrailTexture,1,holdEndTexture,1, backSplash, frontSplash, getAnimationRateFromBPM(bpm));
-                    n.setHoldSamples(thisNote.getLong("duration"));
-                }
-                n.setHitSample(thisNote.getLong("position"));
-                notes.addLast(n);
-            }
-            bandMembers[i].setAllNotes(notes);
-            bandMembers[i].setCurComp(maxCompetency);
-            bandMembers[i].setMaxComp(maxCompetency);
-            JsonValue compFlags = bandMemberData.get("compFlags");
-            PriorityQueue<Long[]> compData = new PriorityQueue<>(10, new CustomComparator());
-            for(int j = 0; j < compFlags.size; ++j){
-                JsonValue thisCompFlag = compFlags.get(j);
-                Long[] arr = new Long[3];
-                arr[0] = thisCompFlag.getLong("position");
-                arr[1] = (long) thisCompFlag.getInt("rate");
-                arr[2] = (long) thisCompFlag.getInt("gain");
-                compData.add(arr);
-            }
-            bandMembers[i].setCompData(compData);
-            bandMembers[i].setSPB(samplesPerBeat);
-            bandMembers[i].setHpBarFilmStrip(hpbar, 47);
-            switch (bandMemberData.getString("instrument")) {
-                case "violin":
-                    bandMembers[i].setFilmStrips(violinSet);
-                    break;
-                case "piano":
-                    bandMembers[i].setFilmStrips(pianoSet);
-                    break;
-                case "drum":
-                    bandMembers[i].setFilmStrips(drummerSet);
-                    break;
-                case "voice":
-                    bandMembers[i].setFilmStrips(singerSet);
-                    break;
-            }
-            bandMembers[i].setLoomFilmStrip(ghostLoom);
-            bandMembers[i].recieveSample(sample);
-            bandMembers[i].pickFrame();
+    /**
+     * Sets whether the song position follows the music or a frame clock.
+     *
+     * The frame clock advances the song by one 60th of a second every update, no matter
+     * how long the frame took. It is used to play replays faster than realtime, so the
+     * music is silenced while it runs. Switching back seeks the music to the song position.
+     *
+     * @param on true to use the frame clock, false to follow the music
+     */
+    public void setFrameClock(boolean on) {
+        if (on == frameClock) {
+            return;
+        }
+        frameClock = on;
+        if (on) {
+            frameSample = Math.max(sample, 0);
+            music.pause();
+        } else if (musicInitialized) {
+            music.setPosition((float) frameSample / music.getSampleRate());
+            songClock.reset();
+            music.play();
         }
+    }
 
-        // TUTORIAL LOGIC
+    /**
+     * Returns the chart of this level
+     */
+    public Chart getChart() {
+        return chart;
+    }
 
-        // need autoplay ranges, need switch ranges, need random hit
-        JsonValue tutorialData = data.get("tutorialData");
-        if (tutorialData != null) {
-            fontGenerator = new FreeTypeFontGenerator(Gdx.files.internal("fonts/Blinker-SemiBold.ttf"));
-
-            fontParameter = new FreeTypeFontGenerator.FreeTypeFontParameter();
-            fontParameter.size = 96;
-            font = fontGenerator.generateFont(fontParameter);
-            fontScale = 1f;
-            isTutorial = true;
+    /**
+     * Returns the mixer that plays the sounds of a replay in time with the song
+     *
+     * Only a replay is known ahead of the music, so the sounds of live play are sound
+     * effects instead.
+     */
+    public KeysoundMixer getKeysounds() {
+        return keysounds;
+    }
 
-            autoplayRanges = new Queue<>();
-            switchRanges = new Queue<>();
-            arrowAppear = new Queue<>();
+    /**
+     * Returns the number of samples the frame clock advances every update
+     */
+    public int getSamplesPerFrame() {
+        return music.getSampleRate() / 60;
+    }
 
-            long[] autoplayRanges = tutorialData.get("autoplayRanges").asLongArray();
-            for (long val : autoplayRanges) {
-                this.autoplayRanges.addLast(val);
-            }
+    /**
+     * Returns the length of the song, in samples
+     */
+    public long getMaxSample() {
+        return (long) maxSample;
+    }
 
-            long[] switchRanges = tutorialData.get("switchSamples").asLongArray();
-            for (long val : switchRanges) {
-                this.switchRanges.addLast(val);
-            }
+    public boolean hasMoreNotes(){
+        return rules.hasMoreNotes();
+    }
 
-            long[] arrowAppear = tutorialData.get("arrowAppear").asLongArray();
-            for (long val : arrowAppear) {
-                this.arrowAppear.addLast(val);
-            }
+    /**
+     * Rewinds the level to its start so it can be played again.
+     *
+     * The chart and the decoded song are kept. Only the per-run state is rewound:
+     * the song position and the rules of the run.
+     */
+    public void resetLevel(){
+        sample = 0;
+        frameSample = 0;
+        music.stop();
+        // the buffer drops the song once it has finished playing, so re-attach it if needed
+        if (music.getNumberOfSources() == 0) {
+            music.addSource(keysounds);
+        }
+        keysounds.stop();
+        music.reset();
+        musicInitialized = false;
+        Gdx.app.log("Level", "Song clock " + songClock);
+        songClock.reset();
+        rules.restart();
+        for (BandMember bandMember : bandMembers) {
+            bandMember.recieveSample(sample);
+            bandMember.pickFrame();
         }
     }
 
@@ -843,23 +722,108 @@ public class Level {
     }
 
     /**
-     * Gets the current sample of the song
+     * Gets the current sample of the song.
+     *
+     * This is extrapolated between audio position updates, so it has sub-millisecond
+     * resolution and never runs backwards (see {@link SongClock}). While the frame
+     * clock is on, this is the frame clock position instead.
      * @return
      */
     public long getCurrentSample(){
-        return (long)(music.getPosition()*music.getSampleRate());
+        return frameClock ? frameSample : songClock.getSample(music);
     }
 
     public long getLevelSample(){
         return sample;
     }
 
+    /**
+     * Sets how far behind the song the notes are drawn, in samples
+     *
+     * @param drawOffset the audio offset minus the visual offset, in samples
+     */
+    public void setDrawOffset(long drawOffset) {
+        this.drawOffset = drawOffset;
+    }
+
+    /**
+     * Converts a point in time to a song position, relative to the last level sample
+     *
+     * @param time the time in nanoseconds (same timebase as System.nanoTime)
+     * @return the sample of the song that was playing at that time
+     */
+    public long getSampleAtTime(long time){
+        return sample + (long) ((time - sampleTime) * (music.getSampleRate() / 1e9));
+    }
+
     /**
      * Returns true if the player has unlocked this level
      * @return
      */
     public boolean hasUnlocked(){ return true; };
-    float fontScale;
+
+    /**
+     * Fits the tutorial key labels to the control boxes of band members of the given size
+     *
+     * The labels are read from the key bindings and measured here, so drawing them costs
+     * no layout and allocates nothing. This is called when the screen is laid out, and
+     * again by {@link #drawEverything} if the key bindings change. The labels keep the
+     * size of a settled band member during a switch.
+     *
+     * @param largeWidth - the width of the active band member
+     * @param smallWidth - the width of an inactive band member
+     * @param height - the height of a band member
+     */
+    public void fitKeyLabels(float largeWidth, float smallWidth, float height) {
+        labelLargeWidth = largeWidth;
+        labelSmallWidth = smallWidth;
+        labelHeight = height;
+        if (!isTutorial) {
+            return;
+        }
+        labelBindings = InputController.getKeybindingChanges();
+        GlyphLayout layout = new GlyphLayout();
+        float scale = font.getData().scaleX;
+        font.getData().setScale(1f);
+        triggerLabels = fitKeyLabels(InputController.triggerKeyBinds(true), layout, controlBoxSize(hitCBOX, largeWidth, height));
+        switchLabels = fitKeyLabels(InputController.switchKeyBinds(bandMembers.length - 1), layout, controlBoxSize(switchCBOX, smallWidth, height));
+        font.getData().setScale(scale);
+    }
+
+    /**
+     * Returns the key labels, each scaled so that it fills half of its control box
+     *
+     * @param keys - the names of the keys
+     * @param layout - a layout to measure the keys with, at the unscaled font size
+     * @param boundSize - the size of the control box
+     * @return the fitted labels
+     */
+    private KeyLabel[] fitKeyLabels(String[] keys, GlyphLayout layout, float boundSize) {
+        KeyLabel[] labels = new KeyLabel[keys.length];
+        for (int k = 0; k < keys.length; k++) {
+            KeyLabel label = new KeyLabel();
+            label.text = keys[k];
+            layout.setText(font, label.text);
+            label.scale = 0.5f*Math.min(boundSize/layout.width, boundSize/layout.height);
+            if (label.scale <= 0 || Float.isInfinite(label.scale) || Float.isNaN(label.scale)) {
+                // an unbound key (or a box of no size) has nothing to fit
+                label.scale = 1f;
+            }
+            // a layout grows with the scale of the font
+            label.width = layout.width*label.scale;
+            label.height = layout.height*label.scale;
+            labels[k] = label;
+        }
+        return labels;
+    }
+
+    /**
+     * Returns the size of the control box drawn over a band member of the given size
+     */
+    private static float controlBoxSize(TextureRegion box, float width, float height) {
+        return box.getRegionHeight()*Math.min(0.2f*height/box.getRegionHeight(), 0.85f*width/box.getRegionWidth());
+    }
+
     /**
      * this draws everything the level needs to display on the given canvas
      * @param canvas - what are we drawing on
@@ -869,6 +833,9 @@ public class Level {
      * @param switches - which switches are pressed?
      */
     public void drawEverything(GameCanvas canvas, int active, int goal, boolean[] triggers, boolean[] switches, float borderThickness){
+        if (isTutorial && labelBindings != InputController.getKeybindingChanges()) {
+            fitKeyLabels(labelLargeWidth, labelSmallWidth, labelHeight);
+        }
         canvas.drawBackground(bkgTexture,0,0);
         for(int i = 0; i < bandMembers.length; ++i){
             //Draw the border of each band member
@@ -898,15 +865,11 @@ public class Level {
                 }
                 if(isTutorial){
                     bandMembers[i].drawControlBox(canvas, hitCBOX);
-                    String[] controls = InputController.triggerKeyBinds(true);
+                    font.setColor(Color.WHITE);
                     for(int k = 0; k < 4; ++k){
-                        GlyphLayout layout = new GlyphLayout(font,controls[k]);
-                        float boundSize = hitCBOX.getHeight()*Math.min(0.2f * bandMembers[i].getHeight()/hitCBOX.getHeight(), 0.85f*bandMembers[i].getWidth()/hitCBOX.getWidth());
-                        fontScale *= 0.5*Math.min(boundSize/layout.width, boundSize/layout.height);
-                        font.getData().setScale(fontScale);
-                        layout = new GlyphLayout(font, controls[k]);
-                        font.setColor(Color.WHITE);
-                        canvas.drawTextSetColor(controls[k], font, bandMembers[i].getBottomLeft().x + bandMembers[i].getWidth()/8f + k*bandMembers[i].getWidth()/4f - layout.width/2, 0.85f*bandMembers[i].getHeight()+ bandMembers[i].getBottomLeft().y + layout.height/2);
+                        KeyLabel label = triggerLabels[k];
+                        font.getData().setScale(label.scale);
+                        canvas.drawTextSetColor(label.text, font, bandMembers[i].getBottomLeft().x + bandMembers[i].getWidth()/8f + k*bandMembers[i].getWidth()/4f - label.width/2, 0.85f*bandMembers[i].getHeight()+ bandMembers[i].getBottomLeft().y + label.height/2);
                     }
                 }
             }
@@ -914,19 +877,16 @@ public class Level {
             else{
                 bandMembers[i].drawSwitchNotes(canvas);
                 bandMembers[i].drawIndicator(canvas, switchIndicator, switchIndicatorHit, switches[i]);
-                if (isAutoSwitching() && i == toBandMember && getCurrentSample() <= (endSwitchRange + startSwitchRange)/2f) {
+                if (isAutoSwitching() && i == rules.getToBandMember()
+                        && getCurrentSample() <= (rules.getEndSwitchRange() + rules.getStartSwitchRange())/2f) {
                     bandMembers[i].drawPawIndicator(canvas, pawIndicator);
                 }
                 if(isTutorial){
                     bandMembers[i].drawControlBox(canvas, switchCBOX);
-                    String[] controls = InputController.switchKeyBinds(bandMembers.length - 1);
-                    GlyphLayout layout = new GlyphLayout(font,controls[i]);
-                    float boundSize = switchCBOX.getHeight()*Math.min(0.2f * bandMembers[i].getHeight()/switchCBOX.getHeight(), 0.85f*bandMembers[i].getWidth()/switchCBOX.getWidth());
-                    fontScale *= 0.5*Math.min(boundSize/layout.width, boundSize/layout.height);
-                    font.getData().setScale(fontScale);
                     font.setColor(Color.WHITE);
-                    layout = new GlyphLayout(font,controls[i]);
-                    canvas.drawTextSetColor(controls[i], font, bandMembers[i].getBottomLeft().x + bandMembers[i].getWidth()/2f - layout.width/2f, 0.85f*bandMembers[i].getHeight()+ bandMembers[i].getBottomLeft().y + layout.height/2);
+                    KeyLabel label = switchLabels[i];
+                    font.getData().setScale(label.scale);
+                    canvas.drawTextSetColor(label.text, font, bandMembers[i].getBottomLeft().x + bandMembers[i].getWidth()/2f - label.width/2f, 0.85f*bandMembers[i].getHeight()+ bandMembers[i].getBottomLeft().y + label.height/2);
                 }
             }
         }
@@ -944,8 +904,8 @@ public class Level {
                     (TR.x + BL.x)/2f, (BL.y),
                     0f,
                     (TR.x - BL.x)/(progressBackground.getWidth()),(BL.y - (BL.y - (TR.y - BL.y) * 0.1f))/(progressBackground.getHeight()));
-            long st = isInAutoplayRange() ? startRange : startSwitchRange;
-            long fin = isInAutoplayRange() ? endRange : endSwitchRange;
+            long st = isInAutoplayRange() ? rules.getStartRange() : rules.getStartSwitchRange();
+            long fin = isInAutoplayRange() ? rules.getEndRange() : rules.getEndSwitchRange();
             canvas.draw(progressForeground,
                     Color.WHITE,
                     0, progressForeground.getHeight()/2f,
@@ -969,17 +929,17 @@ public class Level {
     }
 
     public void dispose(){
+        Gdx.app.log("Level", "Song clock " + songClock);
+        // the textures belong to the asset directory (and may be pages of an atlas)
+        // and the song belongs to the song cache
+        music.stop();
+        music.clearSources();
         music.dispose();
-        activeLane.dispose();
-        inactiveLane.dispose();
-        hitNoteTexture.dispose();
-        holdTrailTexture.dispose();
-        holdNoteTexture.dispose();
-        switchNoteTexture.dispose();
-        holdEndTexture.dispose();
-        noteIndicator.dispose();
-        noteIndicatorHit.dispose();
-        hpbar.dispose();
-        music.dispose();
+        keysounds.dispose();
+        SongCache.getInstance().release(songSource);
+        if (font != null) {
+            ResourceManager.get().releaseFont(font);
+            font = null;
+        }
     }
 }
@@ -0,0 +1,47 @@
+package edu.cornell.gdiac.temporary;
+
+import edu.cornell.gdiac.audio.AudioSource;
+
+/**
+ * The part of a level that does not need the GL context: its chart and its song.
+ *
+ * Reading the chart and opening the song are the slow parts of starting a level, and
+ * neither touches OpenGL, so they can be done on a worker thread (see {@link LevelLoader}).
+ * {@link Level} then only binds textures and attaches the song to a music buffer.
+ */
+public class LevelData {
+    /** The chart of the level */
+    public final Chart chart;
+    /** The song of the level */
+    public final AudioSource song;
+
+    /**
+     * Opens the song of a chart (or takes it from the {@link SongCache})
+     *
+     * The song is held until the {@link Level} made from this data is disposed, or
+     * until {@link #release} if no level is made from it.
+     *
+     * @param chart the chart of the level
+     */
+    public LevelData(Chart chart) {
+        this.chart = chart;
+        song = SongCache.getInstance().acquire(chart.song);
+    }
+
+    /**
+     * Gives the song back to the song cache, for data that will not be played
+     */
+    public void release() {
+        SongCache.getInstance().release(song);
+    }
+
+    /**
+     * Reads the chart of a level and opens its song
+     *
+     * @param levelPath internal path of the level JSON (e.g. "levels/yr-hard.json")
+     * @return the chart and song of the level
+     */
+    public static LevelData load(String levelPath) {
+        return new LevelData(ChartCompiler.load(levelPath));
+    }
+}
@@ -0,0 +1,144 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.async.AsyncExecutor;
+import com.badlogic.gdx.utils.async.AsyncResult;
+import com.badlogic.gdx.utils.async.AsyncTask;
+
+/**
+ * Prepares the {@link LevelData} of a level on a worker thread.
+ *
+ * The level select screen asks for the level that is currently selected, so that by
+ * the time play is pressed the chart is read and the song is decoded. Only the last level
+ * asked for is kept; a level that was prepared but not played gives its song back to
+ * the {@link SongCache}, and a level that another was asked for before the worker got to
+ * is skipped, so the last level does not wait behind it.
+ */
+public class LevelLoader implements Disposable {
+    /** The worker thread */
+    private final AsyncExecutor executor;
+    /** The level being prepared (null if none) */
+    private Preparation prepared;
+
+    /** A level prepared on the worker, handed over under the lock of the loader */
+    private class Preparation implements AsyncTask<Void> {
+        /** Internal path of the level JSON */
+        final String levelPath;
+        /** The task on the worker */
+        AsyncResult<Void> result;
+        /** The prepared level, until it is taken (null if it is not ready) */
+        LevelData data;
+        /** Whether another level was asked for since */
+        boolean superseded;
+
+        Preparation(String levelPath) {
+            this.levelPath = levelPath;
+        }
+
+        @Override
+        public Void call() {
+            synchronized (LevelLoader.this) {
+                // another level was asked for while this one waited for the worker
+                if (superseded) {
+                    return null;
+                }
+            }
+            LevelData loaded = LevelData.load(levelPath);
+            synchronized (LevelLoader.this) {
+                if (superseded) {
+                    loaded.release();
+                } else {
+                    data = loaded;
+                }
+            }
+            return null;
+        }
+    }
+
+    public LevelLoader() {
+        executor = new AsyncExecutor(1, "LevelLoader");
+    }
+
+    /**
+     * Starts preparing a level, unless it is already being prepared
+     *
+     * @param levelPath internal path of the level JSON
+     */
+    public synchronized void prepare(String levelPath) {
+        if (prepared != null && levelPath.equals(prepared.levelPath)) {
+            return;
+        }
+        supersede();
+        prepared = new Preparation(levelPath);
+        prepared.result = executor.submit(prepared);
+    }
+
+    /**
+     * Returns the chart of a level that is prepared, without waiting for it
+     *
+     * @param levelPath internal path of the level JSON
+     * @return the chart, or null if the level is not prepared (or not ready yet)
+     */
+    public synchronized Chart getPreparedChart(String levelPath) {
+        if (prepared == null || prepared.data == null || !levelPath.equals(prepared.levelPath)) {
+            return null;
+        }
+        return prepared.data.chart;
+    }
+
+    /**
+     * Drops the level being prepared, giving back its song if it is ready
+     */
+    private void supersede() {
+        if (prepared != null) {
+            prepared.superseded = true;
+            if (prepared.data != null) {
+                prepared.data.release();
+                prepared.data = null;
+            }
+            prepared = null;
+        }
+    }
+
+    /**
+     * Returns the data of a level
+     *
+     * If the level was prepared, this waits for the worker to finish it (if it has not
+     * already). Otherwise, the level is read on this thread.
+     *
+     * @param levelPath internal path of the level JSON
+     * @return the chart and song of the level
+     */
+    public LevelData take(String levelPath) {
+        Preparation preparation;
+        synchronized (this) {
+            preparation = prepared;
+            if (preparation == null || !levelPath.equals(preparation.levelPath)) {
+                preparation = null;
+            }
+        }
+        if (preparation != null) {
+            // waits outside the lock, which the worker needs to hand the level over
+            preparation.result.get();
+            synchronized (this) {
+                LevelData data = preparation.data;
+                preparation.data = null;
+                if (prepared == preparation) {
+                    prepared = null;
+                }
+                if (data != null) {
+                    return data;
+                }
+            }
+        }
+        return LevelData.load(levelPath);
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            supersede();
+        }
+        executor.dispose();
+    }
+}
@@ -9,12 +9,13 @@ import com.badlogic.gdx.controllers.ControllerListener;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
-import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
 import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Json;
 import com.badlogic.gdx.utils.JsonReader;
 import com.badlogic.gdx.utils.JsonValue;
 import edu.cornell.gdiac.assets.AssetDirectory;
+import edu.cornell.gdiac.assets.ResourceManager;
 import edu.cornell.gdiac.util.ScreenListener;
 
 import java.util.Locale;
@@ -134,6 +135,9 @@ public class LevelSelect implements Screen, InputProcessor, ControllerListener {
      * invariant 2: size is a multiple of 3, because we have 3 difficulties */
     private static String[] allLevels;
 
+    /** The best run of each level, in the order of allLevels (null if it was never finished) */
+    private ScoreHistory.Run[] bestRuns;
+
     private Texture levelGhost;
 
     private Texture goLeft;
@@ -173,6 +177,13 @@ public class LevelSelect implements Screen, InputProcessor, ControllerListener {
 
     private BitmapFont blinkerBold;
 
+    /** Prepares the chart and song of the highlighted level (null to not prepare them) */
+    private LevelLoader levelLoader;
+    /** The level whose instrument and background tiers are queued (null if none) */
+    private String tieredLevel;
+    /** The asset tiers queued for the highlighted level */
+    private Array<String> levelTiers = new Array<String>();
+
 
     public LevelSelect(GameCanvas canvas) {
         s = new SoundController<>();
@@ -221,6 +232,56 @@ public class LevelSelect implements Screen, InputProcessor, ControllerListener {
         this.listener = listener;
     }
 
+    /**
+     * Sets the loader that prepares the highlighted level ahead of time
+     *
+     * @param loader the level loader
+     */
+    public void setLevelLoader(LevelLoader loader) {
+        levelLoader = loader;
+    }
+
+    /**
+     * Starts preparing the highlighted level, so that it is ready when play is pressed.
+     *
+     * Once its chart is read, the asset tiers of its instruments and background are
+     * queued, so they are streamed in while the level is highlighted. Nothing is prepared
+     * while the albums are moving, so that scrolling past a level does not read it.
+     */
+    private void prepareSelectedLevel() {
+        if (levelLoader != null && !isInTransition) {
+            String levelPath = allLevels[selectedDifficulty + selectedLevel * 3 - 1];
+            levelLoader.prepare(levelPath);
+            if (!levelPath.equals(tieredLevel)) {
+                // the chart is read on the loader thread, so this waits until it is ready
+                Chart chart = levelLoader.getPreparedChart(levelPath);
+                if (chart != null) {
+                    queueLevelTiers(levelPath, chart);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues the asset tiers of a level, and unloads those of the level highlighted before
+     *
+     * @param levelPath internal path of the level JSON
+     * @param chart     the chart of the level
+     */
+    private void queueLevelTiers(String levelPath, Chart chart) {
+        Array<String> tiers = chart.getAssetTiers();
+        for (int i = 0; i < levelTiers.size; i++) {
+            if (!tiers.contains(levelTiers.get(i), false)) {
+                directory.unloadTier(levelTiers.get(i));
+            }
+        }
+        for (int i = 0; i < tiers.size; i++) {
+            directory.loadTier(tiers.get(i));
+        }
+        levelTiers = tiers;
+        tieredLevel = levelPath;
+    }
+
     public static void setSelectedJson(String json){
         selectedJson = json;
     }
@@ -229,9 +290,6 @@ public class LevelSelect implements Screen, InputProcessor, ControllerListener {
         return selectedJson;
     }
 
-    FreeTypeFontGenerator generator;
-    FreeTypeFontGenerator.FreeTypeFontParameter parameter;
-
     Vector2 tutorialGoRightCoords;
 
     Vector2 tutorialReadyCoords;
@@ -243,10 +301,9 @@ public class LevelSelect implements Screen, InputProcessor, ControllerListener {
      *
      */
     public void populate(AssetDirectory assetDirectory) {
-        generator = new FreeTypeFontGenerator(Gdx.files.internal("fonts/Blinker-Bold.ttf"));
-        parameter = new FreeTypeFontGenerator.FreeTypeFontParameter();
-        parameter.size = 30;
-        blinkerBold = generator.generateFont(parameter);
+        if (blinkerBold == null) {
+            blinkerBold = ResourceManager.get().acquireFont("fonts/Blinker-Bold.ttf", 30);
+        }
         s.addSound(0, "sound/click.ogg");
         directory  = assetDirectory;
         background  = directory.getEntry("background",Texture.class); //menu background
@@ -258,6 +315,8 @@ public class LevelSelect implements Screen, InputProcessor, ControllerListener {
         nLevels = allLevels.length;
         assert allLevels.length%3 == 0;
         albumCoverCoords = new Vector2[allLevels.length];
+        bestRuns = new ScoreHistory.Run[allLevels.length];
+        findBestRuns();
         albumScales = new float[allLevels.length];
         gameplayController = new GameplayController(canvas.getWidth(),canvas.getHeight());
         albumCovers = new Texture[numSongs];
@@ -355,6 +414,9 @@ public class LevelSelect implements Screen, InputProcessor, ControllerListener {
         hoverState = NO_BUTTON_HOVERED;
         howToPlayPressed = false;
         tutorialIdx = 0;
+        // the tiers of the last level highlighted were unloaded with the previous screen
+        tieredLevel = null;
+        levelTiers.clear();
     }
 
 
@@ -444,11 +506,10 @@ public class LevelSelect implements Screen, InputProcessor, ControllerListener {
 
             // draw past scores
             for (int i = 0; i < allLevels.length; i++) {
-                String noPath = allLevels[i].substring("levels/".length());
-                long highScore = SaveManager.getInstance().getHighScore(noPath);
-                String grade = SaveManager.getInstance().getGrade(noPath);
-                long highestCombo = SaveManager.getInstance().getHighestCombo(noPath);
-                drawPastScores(i / 3, i < 3 ? 1 : (i % 3 + 1), (int) highScore, grade, (int) highestCombo, !grade.equals(""));
+                ScoreHistory.Run best = bestRuns[i];
+                if (best != null) {
+                    drawPastScores(i / 3, i < 3 ? 1 : (i % 3 + 1), (int) best.score, best.grade, (int) best.maxCombo, true);
+                }
             }
         }
 
@@ -467,11 +528,9 @@ public class LevelSelect implements Screen, InputProcessor, ControllerListener {
             canvas.draw(scoreLine, Color.WHITE, scoreLine.getWidth()/2f, scoreLine.getHeight()/2f,
                     canvas.getWidth()/2f*1.1f, canvas.getHeight()*0.85f, 0, 0.85f*scale, 0.85f*scale);
 
-            parameter.size = 40;
             canvas.drawText("Combo "+combo, blinkerBold,canvas.getWidth()*0.5f,
                     canvas.getHeight()*0.89f, Color.valueOf("FF00FE"));
 
-            parameter.size = 48;
             canvas.drawText(Integer.toString(pastScore), blinkerBold,canvas.getWidth()*0.5f,
                     canvas.getHeight()*0.83f, Color.valueOf("1531D7"));
 
@@ -779,6 +838,19 @@ public class LevelSelect implements Screen, InputProcessor, ControllerListener {
     @Override
     public void show() {
         active = true;
+        // a run may have been finished since the screen was last shown
+        if (bestRuns != null) {
+            findBestRuns();
+        }
+    }
+
+    /**
+     * Looks up the best run of every level, so drawing does not have to
+     */
+    private void findBestRuns() {
+        for (int i = 0; i < allLevels.length; i++) {
+            bestRuns[i] = SaveManager.getInstance().getBestRun(allLevels[i].substring("levels/".length()));
+        }
     }
 
     int currLevel;
@@ -791,6 +863,7 @@ public class LevelSelect implements Screen, InputProcessor, ControllerListener {
     public void render(float delta) {
         if (active) {
             update();
+            prepareSelectedLevel();
             draw();
             if (playPressed && listener != null) {
                 // go to game
@@ -838,6 +911,10 @@ public class LevelSelect implements Screen, InputProcessor, ControllerListener {
 
     @Override
     public void dispose() {
+        if (blinkerBold != null) {
+            ResourceManager.get().releaseFont(blinkerBold);
+            blinkerBold = null;
+        }
         directory.unloadAssets();
         directory.dispose();
     }
@@ -215,7 +215,7 @@ public class LoadingMode implements Screen {
 		// No progress so far.
 		progress = 0;
 
-		// Start loading the real assets
+		// Start loading the real assets (the tiers of the directory are left to GDXRoot)
 		assets = new AssetDirectory( file );
 		assets.loadAssets();
 		active = true;
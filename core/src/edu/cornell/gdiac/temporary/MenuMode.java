@@ -7,7 +7,6 @@ import com.badlogic.gdx.controllers.ControllerMapping;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
-import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
 import com.badlogic.gdx.scenes.scene2d.Actor;
 import com.badlogic.gdx.scenes.scene2d.InputEvent;
 import com.badlogic.gdx.scenes.scene2d.InputListener;
@@ -18,6 +17,7 @@ import com.badlogic.gdx.scenes.scene2d.utils.TextureRegionDrawable;
 import com.badlogic.gdx.utils.ObjectMap;
 import com.badlogic.gdx.utils.viewport.ExtendViewport;
 import edu.cornell.gdiac.assets.AssetDirectory;
+import edu.cornell.gdiac.assets.ResourceManager;
 import edu.cornell.gdiac.util.ScreenListener;
 
 /**
@@ -573,21 +573,10 @@ public class MenuMode implements Screen, InputProcessor, ControllerListener {
         buttonGroup = new ButtonGroup<>();
 
         // fonts
-        FreeTypeFontGenerator generator = new FreeTypeFontGenerator(Gdx.files.internal("fonts/Blinker-Bold.ttf"));
-        FreeTypeFontGenerator.FreeTypeFontParameter parameter = new FreeTypeFontGenerator.FreeTypeFontParameter();
-        parameter.size = 50;
-        blinkerBold = generator.generateFont(parameter);
-
-        generator = new FreeTypeFontGenerator(Gdx.files.internal("fonts/Blinker-SemiBold.ttf"));
-        parameter.size = 35;
-        blinkerSemiBold = generator.generateFont(parameter);
-
-        parameter.size = 20;
-        blinkerSemiBoldSmaller = generator.generateFont(parameter);
-
-        generator = new FreeTypeFontGenerator(Gdx.files.internal("fonts/Blinker-Regular.ttf"));
-        parameter.size = 20;
-        blinkerRegular = generator.generateFont(parameter);
+        blinkerBold = ResourceManager.get().acquireFont("fonts/Blinker-Bold.ttf", 50);
+        blinkerSemiBold = ResourceManager.get().acquireFont("fonts/Blinker-SemiBold.ttf", 35);
+        blinkerSemiBoldSmaller = ResourceManager.get().acquireFont("fonts/Blinker-SemiBold.ttf", 20);
+        blinkerRegular = ResourceManager.get().acquireFont("fonts/Blinker-Regular.ttf", 20);
 
         // Compute the dimensions from the canvas
         resize(canvas.getWidth(),canvas.getHeight());
@@ -710,6 +699,10 @@ public class MenuMode implements Screen, InputProcessor, ControllerListener {
     public void dispose() {
         canvas = null;
         stage = null;
+        ResourceManager.get().releaseFont(blinkerBold);
+        ResourceManager.get().releaseFont(blinkerSemiBold);
+        ResourceManager.get().releaseFont(blinkerSemiBoldSmaller);
+        ResourceManager.get().releaseFont(blinkerRegular);
     }
 
     /**
@@ -0,0 +1,225 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.files.FileHandle;
+import edu.cornell.gdiac.audio.AudioSource;
+import edu.cornell.gdiac.audio.AudioStream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A song decoded into memory once, so playing it again does not decode it again.
+ *
+ * A source of the audio engine (like an OGG file) decodes the file from the start every
+ * time a stream of it is opened. This source decodes it once, as 16-bit samples, and
+ * its streams read them from memory. Every stream has its own position, so several music
+ * buffers can play the song at once.
+ *
+ * The bytes of a stream are 16-bit little-endian samples, interleaved by channel. The
+ * channels, sample rate and duration are those of the source that was decoded.
+ */
+public class PcmSource implements AudioSource {
+    /** The file the song was decoded from */
+    private final FileHandle file;
+    private final int channels;
+    private final int sampleRate;
+    private final float duration;
+    /** The decoded samples, interleaved by channel (null once disposed) */
+    private short[] samples;
+
+    /**
+     * Decodes all of a source into memory
+     *
+     * The source is read with a stream of its own, and is left open.
+     *
+     * @param source    The source to decode
+     */
+    public PcmSource(AudioSource source) {
+        file = source.getFile();
+        channels = source.getChannels();
+        sampleRate = source.getSampleRate();
+        duration = source.getDuration();
+
+        AudioStream stream = source.getStream();
+        short[] decoded = new short[(int) Math.max(0, stream.getSampleSize())];
+        short[] page = new short[4096 * channels];
+        int size = 0;
+        int read;
+        while ((read = stream.read(page)) > 0) {
+            if (size + read > decoded.length) {
+                decoded = Arrays.copyOf(decoded, Math.max(size + read, 2 * decoded.length));
+            }
+            System.arraycopy(page, 0, decoded, size, read);
+            size += read;
+        }
+        samples = size == decoded.length ? decoded : Arrays.copyOf(decoded, size);
+    }
+
+    /**
+     * Returns the number of bytes of decoded audio this source keeps in memory
+     *
+     * @return the number of bytes of decoded audio this source keeps in memory
+     */
+    public long getByteSize() {
+        return samples == null ? 0 : 2L * samples.length;
+    }
+
+    @Override
+    public FileHandle getFile() {
+        return file;
+    }
+
+    @Override
+    public int getChannels() {
+        return channels;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public float getDuration() {
+        return duration;
+    }
+
+    @Override
+    public AudioStream getStream() {
+        return new Stream(samples);
+    }
+
+    @Override
+    public ByteBuffer getData() {
+        ByteBuffer data = ByteBuffer.allocate(2 * samples.length).order(ByteOrder.LITTLE_ENDIAN);
+        data.asShortBuffer().put(samples);
+        return data;
+    }
+
+    /**
+     * Drops the decoded samples
+     *
+     * Streams opened before keep reading the samples they were opened on.
+     */
+    @Override
+    public void dispose() {
+        samples = null;
+    }
+
+    /** A stream of the decoded samples */
+    private class Stream implements AudioStream {
+        /** The samples read */
+        private final short[] data;
+        /** The next sample to read */
+        private int position;
+
+        Stream(short[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public AudioSource getSource() {
+            return PcmSource.this;
+        }
+
+        @Override
+        public long getByteSize() {
+            return 2L * data.length;
+        }
+
+        @Override
+        public long getByteOffset() {
+            return 2L * position;
+        }
+
+        @Override
+        public long getSampleSize() {
+            return data.length;
+        }
+
+        @Override
+        public long getSampleOffset() {
+            return position;
+        }
+
+        @Override
+        public int read(byte[] buffer) {
+            int count = Math.min(buffer.length / 2, data.length - position);
+            for (int i = 0; i < count; i++) {
+                short value = data[position + i];
+                buffer[2 * i] = (byte) value;
+                buffer[2 * i + 1] = (byte) (value >> 8);
+            }
+            position += count;
+            return 2 * count;
+        }
+
+        @Override
+        public int read(short[] buffer) {
+            int count = Math.min(buffer.length, data.length - position);
+            System.arraycopy(data, position, buffer, 0, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int read(float[] buffer) {
+            int count = Math.min(buffer.length, data.length - position);
+            for (int i = 0; i < count; i++) {
+                buffer[i] = data[position + i] / (float) Short.MAX_VALUE;
+            }
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int seek(long pos, byte[] buffer) {
+            if (!moveTo(pos / 2)) {
+                return 0;
+            }
+            return read(buffer);
+        }
+
+        @Override
+        public int seek(long pos, short[] buffer) {
+            if (!moveTo(pos)) {
+                return 0;
+            }
+            return read(buffer);
+        }
+
+        @Override
+        public int seek(long pos, float[] buffer) {
+            if (!moveTo(pos)) {
+                return 0;
+            }
+            return read(buffer);
+        }
+
+        /**
+         * Moves to the given sample, if it is in the stream
+         *
+         * @param pos   The sample to move to
+         *
+         * @return true if the stream moved
+         */
+        private boolean moveTo(long pos) {
+            if (pos < 0 || pos >= data.length) {
+                return false;
+            }
+            position = (int) pos;
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            position = 0;
+        }
+
+        @Override
+        public void loop() {
+            position = 0;
+        }
+    }
+}
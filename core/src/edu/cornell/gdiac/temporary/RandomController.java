@@ -23,6 +23,27 @@ import java.util.Random;
 public class RandomController {
 	/** Pseudo-random number generator */
 	private static Random generator = new Random(0); // Make it deterministic
+	/** The seed the generator was last reset to */
+	private static long seed = 0;
+
+	/**
+	 * Resets the generator to the given seed, so the numbers that follow can be reproduced.
+	 *
+	 * @param seed the seed of the generator
+	 */
+	public static void setSeed(long seed) {
+		RandomController.seed = seed;
+		generator.setSeed(seed);
+	}
+
+	/**
+	 * Returns the seed the generator was last reset to
+	 *
+	 * @return the seed the generator was last reset to
+	 */
+	public static long getSeed() {
+		return seed;
+	}
 
 	/**
 	 * Returns a random int between min and max (inclusive).
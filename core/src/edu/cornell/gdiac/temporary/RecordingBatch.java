@@ -0,0 +1,471 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.PolygonBatch;
+import com.badlogic.gdx.graphics.g2d.PolygonRegion;
+import com.badlogic.gdx.graphics.g2d.PolygonSpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Affine2;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * A sprite batch that counts (and optionally records) what is drawn with it.
+ *
+ * Every call is passed on to a target batch, which does the actual drawing. Without a
+ * target, nothing is drawn and no GL calls are made: the batch only keeps its state, so
+ * a screen can be drawn without a GPU to see what it would have sent.
+ *
+ * Flushes are counted the way {@link PolygonSpriteBatch} makes them: when the texture,
+ * blending, shader or matrices change with draws pending, when the batch is full, and on
+ * {@link #flush} and {@link #end}.
+ */
+public class RecordingBatch implements PolygonBatch {
+    /** Number of vertices a {@link PolygonSpriteBatch} holds before it has to flush */
+    public static final int CAPACITY = 2000;
+    /** Number of floats per sprite vertex (x, y, color, u, v) */
+    private static final int VERTEX_SIZE = 5;
+
+    /**
+     * One draw given to the batch
+     */
+    public static class Command {
+        /** The texture drawn */
+        public final Texture texture;
+        /** The number of vertices of the draw */
+        public final int vertices;
+        /** The source blend function */
+        public final int blendSrc;
+        /** The destination blend function */
+        public final int blendDst;
+
+        public Command(Texture texture, int vertices, int blendSrc, int blendDst) {
+            this.texture = texture;
+            this.vertices = vertices;
+            this.blendSrc = blendSrc;
+            this.blendDst = blendDst;
+        }
+    }
+
+    /** The batch that does the drawing (or null to only count) */
+    private final PolygonBatch target;
+    /** The counts since the last {@link #begin} */
+    private final RenderStats stats = new RenderStats();
+    /** The draws since the last {@link #begin}, if recording */
+    private final Array<Command> commands = new Array<Command>();
+    /** Whether draws are recorded as commands */
+    private boolean recording;
+
+    /** The texture of the pending draws */
+    private Texture lastTexture;
+    /** The number of vertices waiting to be flushed */
+    private int pending;
+
+    // The state kept when there is no target
+    private boolean drawing;
+    private boolean blending = true;
+    private int blendSrc = GL20.GL_SRC_ALPHA;
+    private int blendDst = GL20.GL_ONE_MINUS_SRC_ALPHA;
+    private int blendSrcAlpha = GL20.GL_SRC_ALPHA;
+    private int blendDstAlpha = GL20.GL_ONE_MINUS_SRC_ALPHA;
+    private final Color color = new Color(1, 1, 1, 1);
+    private float packedColor = Color.WHITE_FLOAT_BITS;
+    private final Matrix4 projection = new Matrix4();
+    private final Matrix4 transform = new Matrix4();
+    private ShaderProgram shader;
+
+    /**
+     * Creates a batch drawing with the given target
+     *
+     * @param target the batch that does the drawing (or null to only count)
+     */
+    public RecordingBatch(PolygonBatch target) {
+        this.target = target;
+    }
+
+    /** Returns the counts since the last {@link #begin} */
+    public RenderStats getStats() {
+        return stats;
+    }
+
+    /** Returns true if draws are recorded as commands */
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Starts or stops recording draws as commands. Recording allocates a command per draw.
+     *
+     * @param recording true to record draws
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /** Returns the draws since the last {@link #begin} (empty if not recording) */
+    public Array<Command> getCommands() {
+        return commands;
+    }
+
+    /**
+     * Counts a draw, flushing first if it cannot join the pending draws
+     *
+     * @param texture  the texture drawn
+     * @param vertices the number of vertices of the draw
+     */
+    private void submit(Texture texture, int vertices) {
+        if (texture != lastTexture) {
+            flushPending();
+            stats.addTextureSwitch();
+            lastTexture = texture;
+        } else if (pending + vertices > CAPACITY) {
+            flushPending();
+        }
+        pending += vertices;
+        stats.addDraw(vertices);
+        if (recording) {
+            commands.add(new Command(texture, vertices, getBlendSrcFunc(), getBlendDstFunc()));
+        }
+    }
+
+    /** Counts a flush if there are draws pending */
+    private void flushPending() {
+        if (pending > 0) {
+            stats.addFlush();
+            pending = 0;
+        }
+    }
+
+    @Override
+    public void begin() {
+        stats.reset();
+        commands.clear();
+        pending = 0;
+        drawing = true;
+        if (target != null) {
+            target.begin();
+        }
+    }
+
+    @Override
+    public void end() {
+        flushPending();
+        lastTexture = null;
+        drawing = false;
+        if (target != null) {
+            target.end();
+        }
+    }
+
+    @Override
+    public void flush() {
+        flushPending();
+        if (target != null) {
+            target.flush();
+        }
+    }
+
+    @Override
+    public void setColor(Color tint) {
+        if (target != null) {
+            target.setColor(tint);
+        } else {
+            color.set(tint);
+            packedColor = tint.toFloatBits();
+        }
+    }
+
+    @Override
+    public void setColor(float r, float g, float b, float a) {
+        if (target != null) {
+            target.setColor(r, g, b, a);
+        } else {
+            color.set(r, g, b, a);
+            packedColor = color.toFloatBits();
+        }
+    }
+
+    @Override
+    public Color getColor() {
+        return target != null ? target.getColor() : color;
+    }
+
+    @Override
+    public void setPackedColor(float packedColor) {
+        if (target != null) {
+            target.setPackedColor(packedColor);
+        } else {
+            Color.abgr8888ToColor(color, packedColor);
+            this.packedColor = packedColor;
+        }
+    }
+
+    @Override
+    public float getPackedColor() {
+        return target != null ? target.getPackedColor() : packedColor;
+    }
+
+    @Override
+    public void draw(Texture texture, float x, float y, float originX, float originY, float width, float height,
+                     float scaleX, float scaleY, float rotation, int srcX, int srcY, int srcWidth, int srcHeight,
+                     boolean flipX, boolean flipY) {
+        submit(texture, 4);
+        if (target != null) {
+            target.draw(texture, x, y, originX, originY, width, height, scaleX, scaleY, rotation,
+                    srcX, srcY, srcWidth, srcHeight, flipX, flipY);
+        }
+    }
+
+    @Override
+    public void draw(Texture texture, float x, float y, float width, float height, int srcX, int srcY,
+                     int srcWidth, int srcHeight, boolean flipX, boolean flipY) {
+        submit(texture, 4);
+        if (target != null) {
+            target.draw(texture, x, y, width, height, srcX, srcY, srcWidth, srcHeight, flipX, flipY);
+        }
+    }
+
+    @Override
+    public void draw(Texture texture, float x, float y, int srcX, int srcY, int srcWidth, int srcHeight) {
+        submit(texture, 4);
+        if (target != null) {
+            target.draw(texture, x, y, srcX, srcY, srcWidth, srcHeight);
+        }
+    }
+
+    @Override
+    public void draw(Texture texture, float x, float y, float width, float height, float u, float v, float u2, float v2) {
+        submit(texture, 4);
+        if (target != null) {
+            target.draw(texture, x, y, width, height, u, v, u2, v2);
+        }
+    }
+
+    @Override
+    public void draw(Texture texture, float x, float y) {
+        submit(texture, 4);
+        if (target != null) {
+            target.draw(texture, x, y);
+        }
+    }
+
+    @Override
+    public void draw(Texture texture, float x, float y, float width, float height) {
+        submit(texture, 4);
+        if (target != null) {
+            target.draw(texture, x, y, width, height);
+        }
+    }
+
+    @Override
+    public void draw(Texture texture, float[] spriteVertices, int offset, int count) {
+        submit(texture, count / VERTEX_SIZE);
+        if (target != null) {
+            target.draw(texture, spriteVertices, offset, count);
+        }
+    }
+
+    @Override
+    public void draw(TextureRegion region, float x, float y) {
+        submit(region.getTexture(), 4);
+        if (target != null) {
+            target.draw(region, x, y);
+        }
+    }
+
+    @Override
+    public void draw(TextureRegion region, float x, float y, float width, float height) {
+        submit(region.getTexture(), 4);
+        if (target != null) {
+            target.draw(region, x, y, width, height);
+        }
+    }
+
+    @Override
+    public void draw(TextureRegion region, float x, float y, float originX, float originY, float width, float height,
+                     float scaleX, float scaleY, float rotation) {
+        submit(region.getTexture(), 4);
+        if (target != null) {
+            target.draw(region, x, y, originX, originY, width, height, scaleX, scaleY, rotation);
+        }
+    }
+
+    @Override
+    public void draw(TextureRegion region, float x, float y, float originX, float originY, float width, float height,
+                     float scaleX, float scaleY, float rotation, boolean clockwise) {
+        submit(region.getTexture(), 4);
+        if (target != null) {
+            target.draw(region, x, y, originX, originY, width, height, scaleX, scaleY, rotation, clockwise);
+        }
+    }
+
+    @Override
+    public void draw(TextureRegion region, float width, float height, Affine2 transform) {
+        submit(region.getTexture(), 4);
+        if (target != null) {
+            target.draw(region, width, height, transform);
+        }
+    }
+
+    @Override
+    public void draw(PolygonRegion region, float x, float y) {
+        submit(region.getRegion().getTexture(), region.getVertices().length / 2);
+        if (target != null) {
+            target.draw(region, x, y);
+        }
+    }
+
+    @Override
+    public void draw(PolygonRegion region, float x, float y, float width, float height) {
+        submit(region.getRegion().getTexture(), region.getVertices().length / 2);
+        if (target != null) {
+            target.draw(region, x, y, width, height);
+        }
+    }
+
+    @Override
+    public void draw(PolygonRegion region, float x, float y, float originX, float originY, float width, float height,
+                     float scaleX, float scaleY, float rotation) {
+        submit(region.getRegion().getTexture(), region.getVertices().length / 2);
+        if (target != null) {
+            target.draw(region, x, y, originX, originY, width, height, scaleX, scaleY, rotation);
+        }
+    }
+
+    @Override
+    public void draw(Texture texture, float[] polygonVertices, int verticesOffset, int verticesCount,
+                     short[] polygonTriangles, int trianglesOffset, int trianglesCount) {
+        submit(texture, verticesCount / VERTEX_SIZE);
+        if (target != null) {
+            target.draw(texture, polygonVertices, verticesOffset, verticesCount,
+                    polygonTriangles, trianglesOffset, trianglesCount);
+        }
+    }
+
+    @Override
+    public void disableBlending() {
+        if (isBlendingEnabled()) {
+            flushPending();
+        }
+        blending = false;
+        if (target != null) {
+            target.disableBlending();
+        }
+    }
+
+    @Override
+    public void enableBlending() {
+        if (!isBlendingEnabled()) {
+            flushPending();
+        }
+        blending = true;
+        if (target != null) {
+            target.enableBlending();
+        }
+    }
+
+    @Override
+    public void setBlendFunction(int srcFunc, int dstFunc) {
+        setBlendFunctionSeparate(srcFunc, dstFunc, srcFunc, dstFunc);
+    }
+
+    @Override
+    public void setBlendFunctionSeparate(int srcFuncColor, int dstFuncColor, int srcFuncAlpha, int dstFuncAlpha) {
+        if (srcFuncColor != blendSrc || dstFuncColor != blendDst
+                || srcFuncAlpha != blendSrcAlpha || dstFuncAlpha != blendDstAlpha) {
+            flushPending();
+        }
+        blendSrc = srcFuncColor;
+        blendDst = dstFuncColor;
+        blendSrcAlpha = srcFuncAlpha;
+        blendDstAlpha = dstFuncAlpha;
+        if (target != null) {
+            target.setBlendFunctionSeparate(srcFuncColor, dstFuncColor, srcFuncAlpha, dstFuncAlpha);
+        }
+    }
+
+    @Override
+    public int getBlendSrcFunc() {
+        return blendSrc;
+    }
+
+    @Override
+    public int getBlendDstFunc() {
+        return blendDst;
+    }
+
+    @Override
+    public int getBlendSrcFuncAlpha() {
+        return blendSrcAlpha;
+    }
+
+    @Override
+    public int getBlendDstFuncAlpha() {
+        return blendDstAlpha;
+    }
+
+    @Override
+    public Matrix4 getProjectionMatrix() {
+        return target != null ? target.getProjectionMatrix() : projection;
+    }
+
+    @Override
+    public Matrix4 getTransformMatrix() {
+        return target != null ? target.getTransformMatrix() : transform;
+    }
+
+    @Override
+    public void setProjectionMatrix(Matrix4 projection) {
+        flushPending();
+        if (target != null) {
+            target.setProjectionMatrix(projection);
+        } else {
+            this.projection.set(projection);
+        }
+    }
+
+    @Override
+    public void setTransformMatrix(Matrix4 transform) {
+        flushPending();
+        if (target != null) {
+            target.setTransformMatrix(transform);
+        } else {
+            this.transform.set(transform);
+        }
+    }
+
+    @Override
+    public void setShader(ShaderProgram shader) {
+        flushPending();
+        if (target != null) {
+            target.setShader(shader);
+        } else {
+            this.shader = shader;
+        }
+    }
+
+    @Override
+    public ShaderProgram getShader() {
+        return target != null ? target.getShader() : shader;
+    }
+
+    @Override
+    public boolean isBlendingEnabled() {
+        return target != null ? target.isBlendingEnabled() : blending;
+    }
+
+    @Override
+    public boolean isDrawing() {
+        return target != null ? target.isDrawing() : drawing;
+    }
+
+    @Override
+    public void dispose() {
+        if (target != null) {
+            target.dispose();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.Gdx;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+/**
+ * The record framing of the append-only files of the game (see {@link SaveStore} and
+ * {@link ScoreHistory}).
+ *
+ * Each record is framed as
+ * <pre>
+ * record:  length (short), bytes, CRC32 of the bytes (int)
+ * </pre>
+ * so a record cut off by a crash, or damaged since, is found on reading. A file is read
+ * up to its first torn or corrupt record, and then cut off there, so new records are not
+ * appended behind the damage.
+ */
+class Records {
+    /** Takes the records read from a file */
+    interface Handler {
+        /**
+         * Reads a whole record
+         *
+         * @param record    The bytes of the record
+         *
+         * @return false if the record is not understood, which ends the file there
+         */
+        boolean read(DataInputStream record) throws IOException;
+    }
+
+    private Records() {
+    }
+
+    /**
+     * Writes the bytes of a record, framed with its length and checksum
+     *
+     * @param out       The stream to write to
+     * @param record    The bytes of the record (at most 65535)
+     */
+    static void write(DataOutputStream out, ByteArrayOutputStream record) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(record.toByteArray());
+        out.writeShort(record.size());
+        record.writeTo(out);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Reads records up to the end of the stream, or its first torn or corrupt record
+     *
+     * @param in        The stream to read from
+     * @param handler   The handler of each whole record
+     * @param tag       The tag of any error logged
+     * @param source    The name of the stream, for any error logged
+     *
+     * @return the number of bytes of whole records
+     */
+    static long read(DataInputStream in, Handler handler, String tag, String source) {
+        long valid = 0;
+        try {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length = in.readUnsignedShort();
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                int checksum = in.readInt();
+                crc.reset();
+                crc.update(bytes);
+                if (checksum != (int) crc.getValue()) {
+                    break;
+                }
+                if (!handler.read(new DataInputStream(new ByteArrayInputStream(bytes)))) {
+                    break;
+                }
+                valid += 2 + length + 4;
+            }
+        } catch (EOFException e) {
+            // the end of the file, or a record cut off by a crash
+        } catch (IOException e) {
+            Gdx.app.error(tag, "Could not read " + source, e);
+        }
+        return valid;
+    }
+
+    /**
+     * Cuts off whatever follows the whole records of a file
+     *
+     * @param file      The file to cut
+     * @param valid     The length of the whole records, to keep
+     * @param tag       The tag of anything logged
+     */
+    static void truncate(File file, long valid, String tag) {
+        if (valid >= file.length()) {
+            return;
+        }
+        Gdx.app.error(tag, "Dropped " + (file.length() - valid) + " torn bytes from " + file);
+        RandomAccessFile out = null;
+        try {
+            out = new RandomAccessFile(file, "rw");
+            out.setLength(valid);
+        } catch (IOException e) {
+            Gdx.app.error(tag, "Could not truncate " + file, e);
+        } finally {
+            close(out, tag);
+        }
+    }
+
+    /**
+     * Closes a stream, logging (rather than throwing) any error
+     *
+     * @param closeable The stream to close (may be null)
+     * @param tag       The tag of any error logged
+     */
+    static void close(Closeable closeable, String tag) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Gdx.app.error(tag, "Could not close a file", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package edu.cornell.gdiac.temporary;
+
+/**
+ * Counts of the work a frame of {@link GameCanvas} sent to the sprite batch.
+ *
+ * A draw is one image, shape or glyph given to the batch. The batch collects draws of
+ * the same texture and sends them to the GPU in one flush, so the number of flushes
+ * (the actual GL draw calls) is what a frame costs. A flush is forced every time the
+ * texture changes, which is why texture switches are counted separately.
+ */
+public class RenderStats {
+    /** Number of images, shapes and glyphs drawn */
+    private int draws;
+    /** Number of times the batch was sent to the GPU */
+    private int flushes;
+    /** Number of times the texture changed */
+    private int textureSwitches;
+    /** Number of vertices submitted */
+    private int vertices;
+
+    /** Returns the number of images, shapes and glyphs drawn */
+    public int getDraws() {
+        return draws;
+    }
+
+    /** Returns the number of times the batch was sent to the GPU (the GL draw calls) */
+    public int getFlushes() {
+        return flushes;
+    }
+
+    /** Returns the number of times the texture changed */
+    public int getTextureSwitches() {
+        return textureSwitches;
+    }
+
+    /** Returns the number of vertices submitted */
+    public int getVertices() {
+        return vertices;
+    }
+
+    /**
+     * Counts a draw
+     *
+     * @param vertices the number of vertices of the draw
+     */
+    void addDraw(int vertices) {
+        draws++;
+        this.vertices += vertices;
+    }
+
+    /** Counts a flush */
+    void addFlush() {
+        flushes++;
+    }
+
+    /** Counts a texture switch */
+    void addTextureSwitch() {
+        textureSwitches++;
+    }
+
+    /** Sets every count to zero */
+    public void reset() {
+        draws = 0;
+        flushes = 0;
+        textureSwitches = 0;
+        vertices = 0;
+    }
+
+    /**
+     * Copies the counts of other stats
+     *
+     * @param other the stats to copy
+     */
+    public void set(RenderStats other) {
+        draws = other.draws;
+        flushes = other.flushes;
+        textureSwitches = other.textureSwitches;
+        vertices = other.vertices;
+    }
+
+    @Override
+    public String toString() {
+        return "draws " + draws + ", flushes " + flushes + ", texture switches " + textureSwitches
+                + ", vertices " + vertices;
+    }
+}
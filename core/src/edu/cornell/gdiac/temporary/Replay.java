@@ -0,0 +1,366 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The recorded input of a single run of a level.
+ *
+ * A replay holds everything needed to play a run again: the level, the calibration
+ * offsets, the seed of {@link RandomController} and every trigger press, trigger release
+ * and switch, stamped with the song sample it happened on. The song position of every
+ * frame is kept too, since the rules of the run are applied once per frame, so the
+ * input is judged on the same frames when it is played again. Finished runs also end
+ * with the totals of the {@link Scoreboard}, so a replay can be checked against the score
+ * the player actually got (see {@link ReplayVerifier}).
+ *
+ * Replays are written by a {@link Recorder} as a binary, append-only stream:
+ * <pre>
+ * header:  magic, version, levelPath, offset, visualOffset, seed, sampleRate, maxSample
+ * record:  kind (byte), then
+ *          PRESS, RELEASE, SWITCH: line or band member (byte), sample (delta)
+ *          FRAME: flags (byte), sample (delta)
+ *          END: score, maxCombo, perfect, good, ok, miss, grade, failed
+ * </pre>
+ * A FRAME ends the input of a frame and holds the song position the frame moved to.
+ * Samples are zig-zag variable length deltas from the previous record, as in compiled
+ * charts. A replay that was cut short (e.g. the game crashed) is read up to its last
+ * complete record.
+ */
+public class Replay {
+    /** Marks a file as a replay ("TMPR") */
+    private static final int MAGIC = 0x544D5052;
+    /** Version of the format; bump this whenever the layout changes */
+    private static final int VERSION = 2;
+    /** Record kind of the totals at the end of a finished run */
+    private static final int END = 3;
+    /** Record kind of the end of a frame */
+    private static final int FRAME = 4;
+    /** Local directory that replays are written to */
+    public static final String REPLAY_DIRECTORY = "replays/";
+    /** File extension of replays */
+    public static final String REPLAY_EXTENSION = ".replay";
+
+    /** Internal path of the level JSON */
+    public final String levelPath;
+    /** The calibration offset, in milliseconds */
+    public final int offset;
+    /** The visual calibration offset, in milliseconds */
+    public final int visualOffset;
+    /** Seed of the random number generator at the start of the run */
+    public final long seed;
+    /** Sample rate of the song */
+    public final int sampleRate;
+    /** Length of the song, in samples */
+    public final long maxSample;
+    /** The input of the run, in the order it happened */
+    public final GameSimulator.Script script;
+
+    /** Whether the run was finished (and the totals below are set) */
+    private boolean finished;
+    private long score;
+    private long maxCombo;
+    private int numberPerfect;
+    private int numberGood;
+    private int numberOk;
+    private int numberMiss;
+    private String grade;
+    private boolean failed;
+
+    private Replay(String levelPath, int offset, int visualOffset, long seed, int sampleRate, long maxSample) {
+        this.levelPath = levelPath;
+        this.offset = offset;
+        this.visualOffset = visualOffset;
+        this.seed = seed;
+        this.sampleRate = sampleRate;
+        this.maxSample = maxSample;
+        script = new GameSimulator.Script();
+    }
+
+    /** Returns true if the run was finished and the totals of the scoreboard were recorded */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public long getScore() {
+        return score;
+    }
+
+    public long getMaxCombo() {
+        return maxCombo;
+    }
+
+    public int getNPerfect() {
+        return numberPerfect;
+    }
+
+    public int getNGood() {
+        return numberGood;
+    }
+
+    public int getNOk() {
+        return numberOk;
+    }
+
+    public int getNMiss() {
+        return numberMiss;
+    }
+
+    public String getGrade() {
+        return grade;
+    }
+
+    /** Returns true if the run ended because a band member ran out of competency */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Reads a replay file
+     *
+     * @param file the replay file
+     * @return the replay stored in the file
+     */
+    public static Replay read(FileHandle file) throws IOException {
+        return read(ByteBuffer.wrap(file.readBytes()));
+    }
+
+    /**
+     * Reads a replay from the given buffer
+     *
+     * @param in the buffer holding the replay
+     * @return the replay stored in the buffer
+     */
+    public static Replay read(ByteBuffer in) throws IOException {
+        Replay replay;
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a replay");
+            }
+            int version = in.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported replay version " + version);
+            }
+            replay = new Replay(ChartCompiler.readString(in), in.getInt(), in.getInt(), in.getLong(), in.getInt(), in.getLong());
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Replay header is truncated", e);
+        }
+
+        long last = 0;
+        try {
+            while (in.hasRemaining()) {
+                int kind = in.get();
+                if (kind == END) {
+                    long score = in.getLong();
+                    long maxCombo = in.getLong();
+                    int perfect = in.getInt();
+                    int good = in.getInt();
+                    int ok = in.getInt();
+                    int miss = in.getInt();
+                    String grade = ChartCompiler.readString(in);
+                    boolean failed = in.get() != 0;
+                    replay.finish(score, maxCombo, perfect, good, ok, miss, grade, failed);
+                    break;
+                }
+                int target = in.get();
+                last += ChartCompiler.readVarLong(in);
+                switch (kind) {
+                    case GameSimulator.Script.PRESS:
+                        replay.script.press(target, last);
+                        break;
+                    case GameSimulator.Script.RELEASE:
+                        replay.script.release(target, last);
+                        break;
+                    case GameSimulator.Script.SWITCH:
+                        replay.script.switchTo(target, last);
+                        break;
+                    case FRAME:
+                        replay.script.frame(last, (target & GameSimulator.Script.FRAME_PLAYING) != 0,
+                                (target & GameSimulator.Script.FRAME_REACTED) != 0);
+                        break;
+                    default:
+                        throw new IOException("Unknown replay record " + kind);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            // the run was cut short, so keep the complete records
+        }
+        return replay;
+    }
+
+    private void finish(long score, long maxCombo, int perfect, int good, int ok, int miss,
+                        String grade, boolean failed) {
+        this.finished = true;
+        this.score = score;
+        this.maxCombo = maxCombo;
+        this.numberPerfect = perfect;
+        this.numberGood = good;
+        this.numberOk = ok;
+        this.numberMiss = miss;
+        this.grade = grade;
+        this.failed = failed;
+    }
+
+    /**
+     * Starts recording a run to a new file in the local replay directory
+     *
+     * @param levelPath    internal path of the level JSON
+     * @param offset       the calibration offset, in milliseconds
+     * @param visualOffset the visual calibration offset, in milliseconds
+     * @param seed         seed of the random number generator
+     * @param sampleRate   sample rate of the song
+     * @param maxSample    length of the song, in samples
+     * @return the recorder of the run
+     */
+    public static Recorder record(String levelPath, int offset, int visualOffset, long seed, int sampleRate, long maxSample) throws IOException {
+        String name = levelPath.substring(levelPath.lastIndexOf('/') + 1).replace(".json", "");
+        FileHandle file = Gdx.files.local(REPLAY_DIRECTORY + name + "-" + System.currentTimeMillis() + REPLAY_EXTENSION);
+        try {
+            return new Recorder(file, levelPath, offset, visualOffset, seed, sampleRate, maxSample);
+        } catch (GdxRuntimeException e) {
+            // FileHandle reports files it cannot open this way
+            throw new IOException("Could not open " + file.path(), e);
+        }
+    }
+
+    /**
+     * Appends the input of a run to a replay file as it happens.
+     *
+     * Records are buffered and written in order; nothing already written is ever changed.
+     */
+    public static class Recorder {
+        private final FileHandle file;
+        private DataOutputStream out;
+        /** Sample of the last record */
+        private long last;
+
+        private Recorder(FileHandle file, String levelPath, int offset, int visualOffset, long seed, int sampleRate,
+                         long maxSample) throws IOException {
+            this.file = file;
+            out = new DataOutputStream(new BufferedOutputStream(file.write(false)));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            ChartCompiler.writeString(out, levelPath);
+            out.writeInt(offset);
+            out.writeInt(visualOffset);
+            out.writeLong(seed);
+            out.writeInt(sampleRate);
+            out.writeLong(maxSample);
+        }
+
+        /** Returns the file this recorder writes to */
+        public FileHandle getFile() {
+            return file;
+        }
+
+        /** Returns true if the run is still being recorded */
+        public boolean isOpen() {
+            return out != null;
+        }
+
+        /**
+         * Records a trigger press or release
+         *
+         * @param line    the line of the trigger
+         * @param pressed true for a press, false for a release
+         * @param sample  the song sample of the event
+         */
+        public void recordHit(int line, boolean pressed, long sample) {
+            append(pressed ? GameSimulator.Script.PRESS : GameSimulator.Script.RELEASE, line, sample);
+        }
+
+        /**
+         * Records a switch to another band member
+         *
+         * @param bandMember the band member switched to
+         * @param sample     the song sample of the switch
+         */
+        public void recordSwitch(int bandMember, long sample) {
+            append(GameSimulator.Script.SWITCH, bandMember, sample);
+        }
+
+        /**
+         * Ends the input of a frame
+         *
+         * @param sample  the song sample the frame moved the song to
+         * @param playing whether the song was playing
+         * @param reacted whether the input of the frame was judged
+         */
+        public void recordFrame(long sample, boolean playing, boolean reacted) {
+            int flags = (playing ? GameSimulator.Script.FRAME_PLAYING : 0) | (reacted ? GameSimulator.Script.FRAME_REACTED : 0);
+            append(FRAME, flags, sample);
+        }
+
+        private void append(int kind, int target, long sample) {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.writeByte(kind);
+                out.writeByte(target);
+                ChartCompiler.writeVarLong(out, sample - last);
+                last = sample;
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Records the totals of the scoreboard and closes the replay
+         *
+         * @param gameplay the gameplay controller of the finished run
+         * @param failed   true if the run ended because a band member ran out of competency
+         */
+        public void finish(GameplayController gameplay, boolean failed) {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.writeByte(END);
+                out.writeLong(gameplay.sb.getScore());
+                out.writeLong(gameplay.sb.getMaxCombo());
+                out.writeInt(gameplay.getNPerfect());
+                out.writeInt(gameplay.getNGood());
+                out.writeInt(gameplay.getNOk());
+                out.writeInt(gameplay.getNMiss());
+                ChartCompiler.writeString(out, gameplay.sb.getLetterGradeAsString());
+                out.writeByte(failed ? 1 : 0);
+            } catch (IOException e) {
+                fail(e);
+            }
+            close();
+        }
+
+        /**
+         * Closes the replay. A replay closed before {@link #finish} has no totals.
+         */
+        public void close() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                Gdx.app.error("Replay", "Could not close " + file.path(), e);
+            }
+            out = null;
+        }
+
+        private void fail(IOException e) {
+            Gdx.app.error("Replay", "Could not write " + file.path(), e);
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // already failed
+            }
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.JsonReader;
+
+import java.io.IOException;
+
+/**
+ * Re-scores replays without rendering and checks them against the recorded scoreboard.
+ *
+ * The input of a replay is played through {@link GameSimulator} on the frames it was
+ * recorded with. The simulator and the game judge with the same {@link GameRules}, so the
+ * resulting score, combo and hit counts must equal the totals the scoreboard had at the
+ * end of the run; any difference means the replay or the rules have changed.
+ */
+public class ReplayVerifier {
+
+    /**
+     * Re-scores a replay
+     *
+     * @param replay the replay to score
+     * @param chart  the chart of the level of the replay
+     * @return the result of playing the replay
+     */
+    public static GameSimulator.Result simulate(Replay replay, Chart chart) {
+        GameSimulator simulator = new GameSimulator(chart, replay.sampleRate);
+        simulator.setOffset(replay.offset);
+        simulator.setMaxSample(replay.maxSample);
+        return simulator.run(replay.script);
+    }
+
+    /**
+     * Returns the differences between a replay and its re-scored result
+     *
+     * @param replay the replay that was scored
+     * @param result the result of {@link #simulate}
+     * @return the differences, or an empty string if the result matches the replay
+     */
+    public static String compare(Replay replay, GameSimulator.Result result) {
+        if (!replay.isFinished()) {
+            return "replay was not finished";
+        }
+        StringBuilder diff = new StringBuilder();
+        compare(diff, "score", replay.getScore(), result.score);
+        compare(diff, "max combo", replay.getMaxCombo(), result.maxCombo);
+        compare(diff, "perfect", replay.getNPerfect(), result.numberPerfect);
+        compare(diff, "good", replay.getNGood(), result.numberGood);
+        compare(diff, "ok", replay.getNOk(), result.numberOk);
+        compare(diff, "miss", replay.getNMiss(), result.numberMiss);
+        if (replay.isFailed() != result.failed) {
+            diff.append("failed: recorded ").append(replay.isFailed()).append(", simulated ").append(result.failed).append("; ");
+        }
+        return diff.toString();
+    }
+
+    private static void compare(StringBuilder diff, String name, long recorded, long simulated) {
+        if (recorded != simulated) {
+            diff.append(name).append(": recorded ").append(recorded).append(", simulated ").append(simulated).append("; ");
+        }
+    }
+
+    /**
+     * Verifies replay files from the command line
+     *
+     * Run this from the assets directory, so the level paths stored in the replays resolve.
+     * Exits with status 1 if any replay does not match.
+     *
+     * @param args the replay files to verify
+     */
+    public static void main(String[] args) throws IOException {
+        boolean ok = true;
+        for (String path : args) {
+            Replay replay = Replay.read(new FileHandle(path));
+            Chart chart = Chart.fromJson(new JsonReader().parse(new FileHandle(replay.levelPath)));
+            GameSimulator.Result result = simulate(replay, chart);
+            String diff = compare(replay, result);
+            System.out.println(path + ": " + (diff.isEmpty() ? "OK " : "MISMATCH " + diff) + result);
+            ok = ok && diff.isEmpty();
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+}
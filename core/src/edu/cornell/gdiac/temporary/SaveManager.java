@@ -1,33 +1,65 @@
 package edu.cornell.gdiac.temporary;
 
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.Preferences;
 import com.badlogic.gdx.utils.IntMap;
-import com.badlogic.gdx.utils.ObjectMap;
 
-import java.util.Arrays;
+import java.util.Map;
 
-/** This class utilizes LibGDX Preferences to store saved games */
+/**
+ * This class stores saved games and settings in a {@link SaveStore}.
+ *
+ * Saving only changes the values in memory. The store writes them to disk on its own
+ * thread, so saving is safe to do from the frame loop. Saves made with LibGDX
+ * Preferences by older versions of the game are copied into the store the first time
+ * it is opened.
+ */
 // TODO: ADD CALIBRATION VALUE
 public class SaveManager {
+    /** Local directory of the save store */
+    public static final String SAVE_DIRECTORY = "saves/";
+    /** Prefix of the keys of the game's levels */
+    private static final String LEVELS = "levels.";
+    /** Prefix of the keys of user volume settings (and calibration) */
+    private static final String VOLUME = "settings.volume.";
+    /** Prefix of the keys of hit bindings */
+    private static final String HIT_BINDINGS = "settings.hitBindings.";
+    /** Prefix of the keys of switch bindings */
+    private static final String SWITCH_BINDINGS = "settings.switchBindings.";
+
     /** Singleton save manager */
     private static SaveManager saveManager;
-    /** LibGDX Preferences for all the game's levels */
-    private Preferences levels;
-    /** LibGDX Preferences for user volume settings (and calibration) */
-    private Preferences volumeSettings;
-    /** LibGDX preferences for hit bindings */
-    private Preferences hitBindingSettings;
-    /** LibGDX preferences for switch bindings */
-    private Preferences[] switchBindingSettings;
+    /** The saved values */
+    private SaveStore store;
+    /** Every finished run */
+    private ScoreHistory history;
 
     private SaveManager() {
-        levels = Gdx.app.getPreferences("edu.cornell.gdiac.temporary.levels");
-        volumeSettings = Gdx.app.getPreferences("edu.cornell.gdiac.temporary.settings.volume");
-        hitBindingSettings = Gdx.app.getPreferences("edu.cornell.gdiac.temporary.settings.hitBindingSettings");
-        switchBindingSettings = new Preferences[InputController.MAX_BAND_MEMBERS];
-        for (int i = 0; i < InputController.MAX_BAND_MEMBERS; i++) {
-            switchBindingSettings[i] = Gdx.app.getPreferences("edu.cornell.gdiac.temporary.settings.switchBindingSettings." + i);
+        store = new SaveStore(Gdx.files.local(SAVE_DIRECTORY));
+        history = new ScoreHistory(Gdx.files.local(ScoreHistory.HISTORY_FILE));
+        if (store.isEmpty()) {
+            importPreferences("edu.cornell.gdiac.temporary.levels", LEVELS);
+            importPreferences("edu.cornell.gdiac.temporary.settings.volume", VOLUME);
+            importPreferences("edu.cornell.gdiac.temporary.settings.hitBindingSettings", HIT_BINDINGS);
+            for (int i = 0; i < InputController.MAX_BAND_MEMBERS; i++) {
+                importPreferences("edu.cornell.gdiac.temporary.settings.switchBindingSettings." + i,
+                        SWITCH_BINDINGS + i + ".");
+            }
+        }
+    }
+
+    /**
+     * Copies the values of the LibGDX Preferences of an older version into the store
+     *
+     * @param name      The name of the Preferences
+     * @param prefix    The prefix of their keys in the store
+     */
+    private void importPreferences(String name, String prefix) {
+        Map<String, ?> saved = Gdx.app.getPreferences(name).get();
+        for (Map.Entry<String, ?> entry : saved.entrySet()) {
+            store.putString(prefix + entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        if (!saved.isEmpty()) {
+            Gdx.app.log("SaveManager", "Imported " + saved.size() + " values from " + name);
         }
     }
 
@@ -42,54 +74,92 @@ public class SaveManager {
         return saveManager;
     }
 
+    /**
+     * Saves the result of a level, if it is at least the high score
+     *
+     * This only touches memory, and does nothing if the result is already saved.
+     */
     public void saveGame(String levelName, long score, String grade, long maxCombo) {
-        if (score >= levels.getLong(levelName+".highScore", 0)) {
-            levels.putLong(levelName+".highScore", score);
-            levels.putString(levelName+".grade", grade);
-            levels.putLong(levelName+".maxCombo", maxCombo);
-            levels.flush();
+        if (score >= getHighScore(levelName)) {
+            store.putLong(LEVELS + levelName + ".highScore", score);
+            store.putString(LEVELS + levelName + ".grade", grade);
+            store.putLong(LEVELS + levelName + ".maxCombo", maxCombo);
+        }
+    }
+
+    /**
+     * Saves a finished run to the score history, and its result if it is the high score
+     *
+     * The run is written on a background thread, so this is safe to call from the frame loop.
+     */
+    public void saveRun(String levelName, long score, String grade, long maxCombo,
+                        int numberPerfect, int numberGood, int numberOk, int numberMiss) {
+        saveGame(levelName, score, grade, maxCombo);
+        history.add(new ScoreHistory.Run(levelName, System.currentTimeMillis(), score, maxCombo,
+                numberPerfect, numberGood, numberOk, numberMiss, grade));
+    }
+
+    /**
+     * Returns the best run of a level, or null if it was never finished
+     *
+     * A level finished only before the score history existed gets a run with just its
+     * high score, grade and combo.
+     */
+    public ScoreHistory.Run getBestRun(String levelName) {
+        ScoreHistory.Run best = history.getBest(levelName);
+        if (best == null && !getGrade(levelName).equals("")) {
+            best = new ScoreHistory.Run(levelName, 0, getHighScore(levelName), getHighestCombo(levelName),
+                    0, 0, 0, 0, getGrade(levelName));
         }
+        return best;
+    }
+
+    /**
+     * Returns the score history, for queries over every finished run
+     */
+    public ScoreHistory getScoreHistory() {
+        return history;
     }
 
     // currently just returns the high score for now
     public long getHighScore(String levelName) {
-        return levels.getLong(levelName+".highScore", 0);
+        return store.getLong(LEVELS + levelName + ".highScore", 0);
     }
 
     public String getGrade(String levelName) {
-        return levels.getString(levelName+".grade", "");
+        return store.getString(LEVELS + levelName + ".grade", "");
     }
 
     public long getHighestCombo(String levelName) {
-        return levels.getLong(levelName+".maxCombo", 0);
+        return store.getLong(LEVELS + levelName + ".maxCombo", 0);
     }
 
     public void saveSettings(int[] hitBindings, IntMap<int[]> switchBindings, float musicVol, float fxVol) {
         for (int i = 0; i < hitBindings.length; i++) {
-            hitBindingSettings.putInteger("main." + i, hitBindings[i]);
+            store.putInteger(HIT_BINDINGS + "main." + i, hitBindings[i]);
         }
         for (int i = 0; i < InputController.MAX_BAND_MEMBERS; i++) {
             for (int j = 0; j < i + 1; j++) {
-                switchBindingSettings[i].putInteger("main." + j, switchBindings.get(i)[j]);
+                store.putInteger(SWITCH_BINDINGS + i + ".main." + j, switchBindings.get(i)[j]);
             }
-            switchBindingSettings[i].flush();
         }
-        volumeSettings.putFloat("music", musicVol);
-        volumeSettings.putFloat("fx", fxVol);
-        hitBindingSettings.flush();
-        volumeSettings.flush();
+        store.putFloat(VOLUME + "music", musicVol);
+        store.putFloat(VOLUME + "fx", fxVol);
     }
 
     public void saveCalibration(int offset) {
-        volumeSettings.putInteger("calibration", offset);
-        volumeSettings.flush();
+        store.putInteger(VOLUME + "calibration", offset);
+    }
+
+    public void saveVisualCalibration(int offset) {
+        store.putInteger(VOLUME + "visualCalibration", offset);
     }
 
     // MEANT TO BE CALLED ONCE WHEN INITIALIZING SETTINGS
     public int[] getHitKeybindingSettings(int[] def) {
         int[] temp = new int[InputController.MAX_LINES_PER_LANE];
         for (int i = 0; i < temp.length; i++) {
-            temp[i] = hitBindingSettings.getInteger("main." + i, -2);
+            temp[i] = store.getInteger(HIT_BINDINGS + "main." + i, -2);
             if (temp[i] == -2) {
                 return def;
             }
@@ -102,7 +172,7 @@ public class SaveManager {
         for (int i = 0; i < InputController.MAX_BAND_MEMBERS; i++) {
             int[] curr = new int[i + 1];
             for (int j = 0; j < curr.length; j++) {
-                curr[j] = switchBindingSettings[i].getInteger("main." + j, -2);
+                curr[j] = store.getInteger(SWITCH_BINDINGS + i + ".main." + j, -2);
                 if (curr[j] == -2) {
                     return def;
                 }
@@ -116,31 +186,52 @@ public class SaveManager {
      * Retrieves save data for music volume
      */
     public float getMusicVolume() {
-        return volumeSettings.getFloat("music", 1);
+        return store.getFloat(VOLUME + "music", 1);
     }
 
     /**
      * Retrieves save data for soundFX volume
      */
     public float getFXVolume() {
-        return volumeSettings.getFloat("fx", 1);
+        return store.getFloat(VOLUME + "fx", 1);
     }
 
     /**
      * Retrieves saved calibration offset data
      */
     public int getCalibrationOffset() {
-        return volumeSettings.getInteger("calibration", 0);
+        return store.getInteger(VOLUME + "calibration", 0);
+    }
+
+    /**
+     * Retrieves saved visual calibration offset data
+     *
+     * Players calibrated before the visual offset existed only have an audio offset, which
+     * their notes were drawn with. The visual offset defaults to it, so their notes are
+     * drawn where they were.
+     */
+    public int getVisualCalibrationOffset() {
+        return store.getInteger(VOLUME + "visualCalibration", getCalibrationOffset());
     }
 
 
     public void resetSettings() {
-        volumeSettings.clear();
-        hitBindingSettings.clear();
-        for (Preferences s:
-             switchBindingSettings) {
-            s.clear();
-            s.flush();
+        store.removeAll(VOLUME);
+        store.removeAll(HIT_BINDINGS);
+        store.removeAll(SWITCH_BINDINGS);
+    }
+
+    /**
+     * Writes every pending save to disk, and stops the save threads
+     *
+     * This blocks until the saves are written, so it is meant for when the game closes.
+     */
+    public static void dispose() {
+        if (saveManager != null) {
+            Gdx.app.log("SaveManager", "Score history: " + saveManager.history);
+            saveManager.history.dispose();
+            saveManager.store.dispose();
+            saveManager = null;
         }
     }
 }
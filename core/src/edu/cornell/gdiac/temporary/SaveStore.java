@@ -0,0 +1,437 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.ObjectMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A key-value store of saved data, written to disk behind the game.
+ *
+ * Every value is kept in memory, so reading one never touches the disk, and neither
+ * does writing one: a change is queued, and a background thread appends it to a
+ * journal. Changes to the same key that pile up before the thread gets to them are
+ * written once, with the last value. Putting a value equal to the stored one does
+ * nothing, so a caller may save the same thing every frame for free.
+ *
+ * The store is two files in its directory. The snapshot holds every value as of the
+ * last compaction, and the journal the changes since, one record at a time. Each record
+ * carries a checksum (see {@link Records}) and the journal is synced after every batch, so a crash loses at
+ * most the batch being written: on loading, the journal is replayed up to its first
+ * torn or corrupt record. Once the journal holds {@link #COMPACT_RECORDS} records, the
+ * thread writes a new snapshot next to the old one, moves it in place, and empties the
+ * journal. Replaying a journal over a snapshot that already has its changes is harmless,
+ * so a crash at any point of this leaves the store whole.
+ */
+public class SaveStore {
+    /** Name of the snapshot file */
+    private static final String SNAPSHOT = "save.snapshot";
+    /** Name of the journal file */
+    private static final String JOURNAL = "save.journal";
+    /** Suffix of a snapshot being written */
+    private static final String TEMPORARY = ".tmp";
+    /** Version of the files, to change whenever their layout does */
+    private static final int VERSION = 1;
+    /** Number of journal records that triggers a compaction */
+    private static final int COMPACT_RECORDS = 256;
+
+    /** Record of a value put */
+    private static final byte PUT = 1;
+    /** Record of a value removed */
+    private static final byte REMOVE = 2;
+
+    /** The directory of the store */
+    private final File directory;
+    /** The values, as strings. Changed on the game thread only, under the lock of pending. */
+    private final ObjectMap<String, String> values = new ObjectMap<String, String>();
+
+    /** Changes not written yet, by key (a null value is a removal). Guarded by itself. */
+    private final LinkedHashMap<String, String> pending = new LinkedHashMap<String, String>();
+    /** The thread writing the changes */
+    private final Thread writer;
+    /** Whether the store is closing. Guarded by pending. */
+    private boolean closing;
+
+    /** The journal, opened for appending by the writer */
+    private FileOutputStream journalFile;
+    private DataOutputStream journal;
+    /** Number of records in the journal */
+    private int records;
+
+    /**
+     * Opens the store in the given directory, loading what it has saved
+     *
+     * @param directory The directory of the store
+     */
+    public SaveStore(FileHandle directory) {
+        directory.mkdirs();
+        this.directory = directory.file();
+        load();
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeBehind();
+            }
+        }, "SaveStore");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Returns true if the store holds no values
+     *
+     * @return true if the store holds no values
+     */
+    public boolean isEmpty() {
+        return values.size == 0;
+    }
+
+    /**
+     * Returns true if the store holds a value for the given key
+     *
+     * @param key   The key of the value
+     *
+     * @return true if the store holds a value for the given key
+     */
+    public boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    public String getString(String key, String def) {
+        String value = values.get(key);
+        return value == null ? def : value;
+    }
+
+    public long getLong(String key, long def) {
+        String value = values.get(key);
+        if (value != null) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                Gdx.app.error("SaveStore", "Bad long for " + key + ": " + value);
+            }
+        }
+        return def;
+    }
+
+    public int getInteger(String key, int def) {
+        return (int) getLong(key, def);
+    }
+
+    public float getFloat(String key, float def) {
+        String value = values.get(key);
+        if (value != null) {
+            try {
+                return Float.parseFloat(value);
+            } catch (NumberFormatException e) {
+                Gdx.app.error("SaveStore", "Bad float for " + key + ": " + value);
+            }
+        }
+        return def;
+    }
+
+    /**
+     * Stores a value, and queues it to be written
+     *
+     * This does nothing if the value is already stored.
+     *
+     * @param key   The key of the value
+     * @param value The value
+     */
+    public void putString(String key, String value) {
+        if (value.equals(values.get(key))) {
+            return;
+        }
+        synchronized (pending) {
+            values.put(key, value);
+            queue(key, value);
+        }
+    }
+
+    public void putLong(String key, long value) {
+        putString(key, Long.toString(value));
+    }
+
+    public void putInteger(String key, int value) {
+        putString(key, Integer.toString(value));
+    }
+
+    public void putFloat(String key, float value) {
+        putString(key, Float.toString(value));
+    }
+
+    /**
+     * Removes a value, and queues the removal to be written
+     *
+     * @param key   The key of the value
+     */
+    public void remove(String key) {
+        synchronized (pending) {
+            if (values.remove(key) != null) {
+                queue(key, null);
+            }
+        }
+    }
+
+    /**
+     * Removes every value whose key starts with the given prefix
+     *
+     * @param prefix    The prefix of the keys to remove
+     */
+    public void removeAll(String prefix) {
+        synchronized (pending) {
+            ObjectMap.Keys<String> keys = values.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (key.startsWith(prefix)) {
+                    keys.remove();
+                    queue(key, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues a change for the writer, under the lock of pending
+     *
+     * @param key   The key of the value
+     * @param value The value, or null if it was removed
+     */
+    private void queue(String key, String value) {
+        // re-inserting moves the key to the end, keeping the changes in order
+        pending.remove(key);
+        pending.put(key, value);
+        pending.notifyAll();
+    }
+
+    /**
+     * Writes every pending change, and stops the writer
+     */
+    public void dispose() {
+        synchronized (pending) {
+            closing = true;
+            pending.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the queued changes in batches, until the store is closed
+     */
+    private void writeBehind() {
+        LinkedHashMap<String, String> batch = new LinkedHashMap<String, String>();
+        while (true) {
+            synchronized (pending) {
+                while (pending.isEmpty() && !closing) {
+                    try {
+                        pending.wait();
+                    } catch (InterruptedException e) {
+                        closing = true;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+                batch.putAll(pending);
+                pending.clear();
+            }
+            try {
+                append(batch);
+                if (records >= COMPACT_RECORDS) {
+                    compact();
+                }
+            } catch (IOException e) {
+                // the values are still in memory, so the next batch compacts them all to disk
+                Gdx.app.error("SaveStore", "Could not write to " + directory, e);
+                closeJournal();
+                records = COMPACT_RECORDS;
+            }
+            batch.clear();
+        }
+        closeJournal();
+    }
+
+    /**
+     * Appends a batch of changes to the journal, and syncs it
+     *
+     * @param batch The changes, by key (a null value is a removal)
+     */
+    private void append(LinkedHashMap<String, String> batch) throws IOException {
+        if (journal == null) {
+            journalFile = new FileOutputStream(new File(directory, JOURNAL), true);
+            journal = new DataOutputStream(new BufferedOutputStream(journalFile));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        for (Map.Entry<String, String> change : batch.entrySet()) {
+            bytes.reset();
+            if (change.getValue() == null) {
+                record.writeByte(REMOVE);
+                record.writeUTF(change.getKey());
+            } else {
+                record.writeByte(PUT);
+                record.writeUTF(change.getKey());
+                record.writeUTF(change.getValue());
+            }
+            record.flush();
+            Records.write(journal, bytes);
+            records++;
+        }
+        journal.flush();
+        journalFile.getFD().sync();
+    }
+
+    /**
+     * Writes every value to a new snapshot, moves it in place, and empties the journal
+     */
+    private void compact() throws IOException {
+        // anything changed after the copy is still pending, and goes to the new journal
+        ObjectMap<String, String> copy;
+        synchronized (pending) {
+            copy = new ObjectMap<String, String>(values);
+        }
+        File snapshot = new File(directory, SNAPSHOT);
+        File temporary = new File(directory, SNAPSHOT + TEMPORARY);
+        FileOutputStream stream = new FileOutputStream(temporary);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        try {
+            out.writeInt(VERSION);
+            out.writeInt(copy.size);
+            CRC32 crc = new CRC32();
+            for (ObjectMap.Entry<String, String> entry : copy) {
+                out.writeUTF(entry.key);
+                out.writeUTF(entry.value);
+                crc.update(entry.key.getBytes("UTF-8"));
+                crc.update(entry.value.getBytes("UTF-8"));
+            }
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            stream.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(snapshot)) {
+            // some platforms will not rename over a file; a crash here leaves the temporary file to load
+            snapshot.delete();
+            if (!temporary.renameTo(snapshot)) {
+                throw new IOException("Could not move " + temporary + " to " + snapshot);
+            }
+        }
+        closeJournal();
+        new FileOutputStream(new File(directory, JOURNAL)).close();
+        records = 0;
+        Gdx.app.log("SaveStore", "Compacted " + copy.size + " values");
+    }
+
+    /**
+     * Loads the snapshot, and replays the journal over it
+     */
+    private void load() {
+        File snapshot = new File(directory, SNAPSHOT);
+        if (!snapshot.exists()) {
+            // a compaction was cut off between removing the old snapshot and moving in the new one
+            snapshot = new File(directory, SNAPSHOT + TEMPORARY);
+        }
+        if (snapshot.exists() && !loadSnapshot(snapshot)) {
+            values.clear();
+        }
+        File journalFile = new File(directory, JOURNAL);
+        if (journalFile.exists()) {
+            Records.truncate(journalFile, replay(journalFile), "SaveStore");
+        }
+    }
+
+    /**
+     * Loads the values of a snapshot
+     *
+     * @param file  The snapshot file
+     *
+     * @return true if the snapshot is whole
+     */
+    private boolean loadSnapshot(File file) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != VERSION) {
+                Gdx.app.error("SaveStore", "Unknown version of " + file);
+                return false;
+            }
+            int size = in.readInt();
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < size; i++) {
+                String key = in.readUTF();
+                String value = in.readUTF();
+                crc.update(key.getBytes("UTF-8"));
+                crc.update(value.getBytes("UTF-8"));
+                values.put(key, value);
+            }
+            if (in.readInt() != (int) crc.getValue()) {
+                Gdx.app.error("SaveStore", "Corrupt snapshot " + file);
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            Gdx.app.error("SaveStore", "Could not read " + file, e);
+            return false;
+        } finally {
+            Records.close(in, "SaveStore");
+        }
+    }
+
+    /**
+     * Applies the records of a journal, up to the first torn or corrupt one
+     *
+     * @param file  The journal file
+     *
+     * @return the number of bytes of whole records
+     */
+    private long replay(File file) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            return Records.read(in, new Records.Handler() {
+                @Override
+                public boolean read(DataInputStream record) throws IOException {
+                    byte op = record.readByte();
+                    String key = record.readUTF();
+                    if (op == PUT) {
+                        values.put(key, record.readUTF());
+                    } else if (op == REMOVE) {
+                        values.remove(key);
+                    } else {
+                        return false;
+                    }
+                    records++;
+                    return true;
+                }
+            }, "SaveStore", file.toString());
+        } catch (IOException e) {
+            Gdx.app.error("SaveStore", "Could not read " + file, e);
+            return 0;
+        } finally {
+            Records.close(in, "SaveStore");
+        }
+    }
+
+    private void closeJournal() {
+        Records.close(journal, "SaveStore");
+        journal = null;
+        journalFile = null;
+    }
+}
@@ -0,0 +1,360 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The result of every finished run of every level, with an index per level.
+ *
+ * The history is one binary file, read once when it is opened. Each run is a record
+ * with a checksum (see {@link Records}), appended on a background thread when the run is added, so a crash
+ * loses at most the run being written:
+ * <pre>
+ * header:  magic, version
+ * record:  length (short), then
+ *          level, timestamp, score, maxCombo, perfect, good, ok, miss, grade
+ *          and a CRC32 of the record (int)
+ * </pre>
+ * The runs of a level are kept in the order they were played, and in order of score, so
+ * the best run and the recent runs are array reads, and the top runs and the rank of a
+ * score are a binary search.
+ */
+public class ScoreHistory {
+    /** Marks a file as a score history ("TMPH") */
+    private static final int MAGIC = 0x544D5048;
+    /** Version of the format; bump this whenever the layout changes */
+    private static final int VERSION = 1;
+    /** Size of the header */
+    private static final int HEADER_SIZE = 8;
+    /** Local file of the history */
+    public static final String HISTORY_FILE = "saves/scores.history";
+
+    /** The result of a finished run */
+    public static class Run {
+        /** The name of the level */
+        public final String level;
+        /** When the run was finished, in milliseconds since the epoch (0 if unknown) */
+        public final long timestamp;
+        public final long score;
+        public final long maxCombo;
+        public final int numberPerfect;
+        public final int numberGood;
+        public final int numberOk;
+        public final int numberMiss;
+        /** The letter grade */
+        public final String grade;
+
+        public Run(String level, long timestamp, long score, long maxCombo,
+                   int numberPerfect, int numberGood, int numberOk, int numberMiss, String grade) {
+            this.level = level;
+            this.timestamp = timestamp;
+            this.score = score;
+            this.maxCombo = maxCombo;
+            this.numberPerfect = numberPerfect;
+            this.numberGood = numberGood;
+            this.numberOk = numberOk;
+            this.numberMiss = numberMiss;
+            this.grade = grade;
+        }
+
+        /**
+         * Returns the accuracy of the run, from 0 to 1
+         *
+         * A perfect hit counts fully, a good hit for two thirds and an ok hit for a third.
+         *
+         * @return the accuracy of the run
+         */
+        public float getAccuracy() {
+            int notes = numberPerfect + numberGood + numberOk + numberMiss;
+            if (notes == 0) {
+                return 0;
+            }
+            return (3f * numberPerfect + 2f * numberGood + numberOk) / (3f * notes);
+        }
+    }
+
+    /** The runs of a single level */
+    private static class LevelIndex {
+        /** The runs, in the order they were played */
+        final Array<Run> recent = new Array<Run>();
+        /** The runs, from the highest score down (ties in the order they were played) */
+        final Array<Run> byScore = new Array<Run>();
+
+        void add(Run run) {
+            recent.add(run);
+            byScore.insert(countAtLeast(run.score), run);
+        }
+
+        /**
+         * Returns the number of runs that scored at least the given score
+         *
+         * @param score the score
+         * @return the number of runs that scored at least the given score
+         */
+        int countAtLeast(long score) {
+            int low = 0;
+            int high = byScore.size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (byScore.get(mid).score >= score) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /** The file of the history */
+    private final FileHandle file;
+    /** The runs of each level, by level name */
+    private final ObjectMap<String, LevelIndex> levels = new ObjectMap<String, LevelIndex>();
+    /** The thread appending runs to the file */
+    private final ExecutorService writer;
+    /** Number of runs in the history */
+    private int size;
+
+    /**
+     * Opens the history in the given file, reading every run in it
+     *
+     * @param file  The file of the history
+     */
+    public ScoreHistory(FileHandle file) {
+        this.file = file;
+        load();
+        writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ScoreHistory");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Adds a run to the history, and queues it to be written
+     *
+     * @param run   The run to add
+     */
+    public void add(final Run run) {
+        index(run);
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                append(run);
+            }
+        });
+    }
+
+    /** Returns the number of runs in the history */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of runs of a level
+     *
+     * @param level the name of the level
+     * @return the number of runs of a level
+     */
+    public int getNumberOfRuns(String level) {
+        LevelIndex index = levels.get(level);
+        return index == null ? 0 : index.recent.size;
+    }
+
+    /**
+     * Returns the run of a level with the highest score, or null if it was never finished
+     *
+     * Of runs with the same score, this is the first one played.
+     *
+     * @param level the name of the level
+     * @return the best run of a level
+     */
+    public Run getBest(String level) {
+        LevelIndex index = levels.get(level);
+        return index == null ? null : index.byScore.first();
+    }
+
+    /**
+     * Adds the runs of a level with the highest scores to an array, from the highest down
+     *
+     * @param level the name of the level
+     * @param n     the number of runs to add, at most
+     * @param out   the array to add them to
+     * @return the array
+     */
+    public Array<Run> getTop(String level, int n, Array<Run> out) {
+        LevelIndex index = levels.get(level);
+        if (index != null) {
+            for (int i = 0; i < Math.min(n, index.byScore.size); i++) {
+                out.add(index.byScore.get(i));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Adds the last runs of a level to an array, from the most recent back
+     *
+     * @param level the name of the level
+     * @param n     the number of runs to add, at most
+     * @param out   the array to add them to
+     * @return the array
+     */
+    public Array<Run> getRecent(String level, int n, Array<Run> out) {
+        LevelIndex index = levels.get(level);
+        if (index != null) {
+            for (int i = index.recent.size - 1; i >= Math.max(0, index.recent.size - n); i--) {
+                out.add(index.recent.get(i));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Returns the share of the runs of a level that scored below the given score
+     *
+     * @param level the name of the level
+     * @param score the score
+     * @return the percentile of the score, from 0 to 1 (0 if the level was never finished)
+     */
+    public float getPercentile(String level, long score) {
+        LevelIndex index = levels.get(level);
+        if (index == null) {
+            return 0;
+        }
+        int below = index.byScore.size - index.countAtLeast(score);
+        return below / (float) index.byScore.size;
+    }
+
+    /**
+     * Waits for the runs being written, and stops the writer
+     */
+    public void dispose() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void index(Run run) {
+        LevelIndex index = levels.get(run.level);
+        if (index == null) {
+            index = new LevelIndex();
+            levels.put(run.level, index);
+        }
+        index.add(run);
+        size++;
+    }
+
+    /**
+     * Reads every run in the file, up to the first torn or corrupt record
+     */
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        long valid = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(file.read(8192));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Gdx.app.error("ScoreHistory", "Unknown format of " + file.path() + ", starting over");
+                file.moveTo(file.sibling(file.name() + ".old"));
+                return;
+            }
+            valid = HEADER_SIZE + Records.read(in, new Records.Handler() {
+                @Override
+                public boolean read(DataInputStream record) throws IOException {
+                    index(readRun(record));
+                    return true;
+                }
+            }, "ScoreHistory", file.path());
+        } catch (EOFException e) {
+            // a header cut off by a crash
+        } catch (IOException e) {
+            Gdx.app.error("ScoreHistory", "Could not read " + file.path(), e);
+        } finally {
+            Records.close(in, "ScoreHistory");
+        }
+        Records.truncate(file.file(), valid, "ScoreHistory");
+        Gdx.app.log("ScoreHistory", "Read " + size + " runs of " + levels.size + " levels");
+    }
+
+    /**
+     * Appends a run to the file, writing the header first if the file is new
+     *
+     * @param run   The run to append
+     */
+    private void append(Run run) {
+        OutputStream out = null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(bytes);
+            if (!file.exists() || file.length() == 0) {
+                record.writeInt(MAGIC);
+                record.writeInt(VERSION);
+            }
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            writeRun(new DataOutputStream(payload), run);
+            Records.write(record, payload);
+            record.flush();
+            file.parent().mkdirs();
+            out = file.write(true);
+            bytes.writeTo(out);
+        } catch (IOException | GdxRuntimeException e) {
+            Gdx.app.error("ScoreHistory", "Could not write to " + file.path(), e);
+        } finally {
+            Records.close(out, "ScoreHistory");
+        }
+    }
+
+    private static Run readRun(DataInputStream in) throws IOException {
+        String level = in.readUTF();
+        long timestamp = in.readLong();
+        long score = in.readLong();
+        long maxCombo = in.readLong();
+        int perfect = in.readInt();
+        int good = in.readInt();
+        int ok = in.readInt();
+        int miss = in.readInt();
+        String grade = in.readUTF();
+        return new Run(level, timestamp, score, maxCombo, perfect, good, ok, miss, grade);
+    }
+
+    private static void writeRun(DataOutputStream out, Run run) throws IOException {
+        out.writeUTF(run.level);
+        out.writeLong(run.timestamp);
+        out.writeLong(run.score);
+        out.writeLong(run.maxCombo);
+        out.writeInt(run.numberPerfect);
+        out.writeInt(run.numberGood);
+        out.writeInt(run.numberOk);
+        out.writeInt(run.numberMiss);
+        out.writeUTF(run.grade);
+        out.flush();
+    }
+
+    @Override
+    public String toString() {
+        return size + " runs of " + levels.size + " levels";
+    }
+}
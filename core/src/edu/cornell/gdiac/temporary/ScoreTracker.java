@@ -0,0 +1,124 @@
+package edu.cornell.gdiac.temporary;
+
+import static java.lang.Math.max;
+
+/**
+ * Score, combo and letter grade of a single run.
+ *
+ * This is the bookkeeping behind {@link Scoreboard}, without any of the drawing,
+ * so it can also be used by {@link GameSimulator}.
+ */
+public class ScoreTracker {
+    private long[] scoreThreholds;
+    private int curTH;
+    /**
+     * Our current meter - starts at 0
+     */
+    private long meter;
+
+    private long maxCombo;
+    /**
+     * Our current level - starts at 0
+     */
+    private int level;
+    /**
+     * Score multiplier for each combo-level <br>
+     * level i has multiplier levelMultipliers[i]
+     */
+    private int[] levelMultipliers;
+    /**
+     * Meter requirement for each combo-level <br>
+     * Reached levelMeters[i] to advance from level i to level i + 1
+     */
+    private long[] levelMeters;
+    /**
+     * Keep track of total score
+     */
+    private long totalScore;
+
+    /**
+     * Maximum combo level
+     */
+    private int maxLevel;
+
+    public ScoreTracker(int maxLevel, int[] multiplers, long[] meters){
+        curTH = 0;
+        scoreThreholds = new long[4];
+        totalScore = 0;
+        level = 0;
+        meter = 0;
+        levelMultipliers = multiplers;
+        levelMeters = meters;
+        this.maxLevel = maxLevel;
+    }
+
+    public void setletterTH(long[] th){
+        scoreThreholds = th;
+    }
+
+    public void resetScore() {
+        curTH = 0;
+        totalScore = 0;
+        level = 0;
+        meter = 0;
+        maxCombo = 0;
+    }
+
+    public void resetCombo(){
+        meter = 0;
+        level = 0;
+    }
+
+    public void receiveHit(int hitVal){
+        ++meter;
+        if(level < maxLevel-1 && meter > levelMeters[level]){
+            ++level;
+
+        }
+        totalScore += (long) hitVal* (long)levelMultipliers[level];
+        maxCombo = max(maxCombo,meter);
+        if(curTH < 4 && totalScore >= scoreThreholds[curTH]){
+            ++curTH;
+        }
+    }
+
+    public long getScore(){
+        return totalScore;
+    }
+
+    public long getMaxCombo(){
+        return maxCombo;
+    }
+
+    public long getCombo(){
+        return meter;
+    }
+
+    public int getMultiplier(){
+        return levelMultipliers[level];
+    }
+
+    /**
+     * Returns the index of the letter grade, from 0 (D) to 4 (S)
+     */
+    public int getLetterGrade(){
+        return curTH;
+    }
+
+    public String getLetterGradeAsString() {
+        switch (curTH) {
+            case 0:
+                return "D";
+            case 1:
+                return "C";
+            case 2:
+                return "B";
+            case 3:
+                return "A";
+            case 4:
+                return "S";
+            default:
+                return "";
+        }
+    }
+}
@@ -5,28 +5,24 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.GlyphLayout;
-import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
 import com.badlogic.gdx.math.Vector2;
-
-import static java.lang.Math.max;
+import edu.cornell.gdiac.assets.ResourceManager;
 
 public class Scoreboard {
     private Texture[] letterGrades;
 
-    private long[] scoreThreholds;
-    private int curTH;
+    private ScoreTracker score;
     private Texture background;
 
     private Vector2 BL;
     private Vector2 TR;
 
     private Color tint = new Color(1.0f,1.0f,1.0f,0.3f);
-    private FreeTypeFontGenerator fontGenerator;
-
-    private FreeTypeFontGenerator boldFont;
-    private FreeTypeFontGenerator.FreeTypeFontParameter fontParameter;
+    /** Color of the combo text */
+    private Color comboColor = new Color(1f, 0f, 254f/255f,1f);
 
     //due to different sizes, we use one font for every score piece
+    //(score and multiplier share the rasterized font, so each sets its scale before use)
     private BitmapFont scoreFont;
     private BitmapFont multiplierFont;
     private BitmapFont comboFont;
@@ -39,59 +35,15 @@ public class Scoreboard {
      * SFX for hitting combos
      */
     //private SoundController<Integer> sfx;
-    /**
-     * Our current meter - starts at 0
-     */
-    private long meter;
-
-    private long maxCombo;
-    /**
-     * Our current level - starts at 0
-     */
-    private int level;
-    /**
-     * Score multiplier for each combo-level <br>
-     * level i has multiplier levelMultipliers[i]
-     */
-    private int[] levelMultipliers;
-    /**
-     * Meter requirement for each combo-level <br>
-     * Reached levelMeters[i] to advance from level i to level i + 1
-     */
-    private long[] levelMeters;
-    /**
-     * Keep track of total score
-     */
-    private long totalScore;
-
-    /**
-     * Maximum combo level
-     */
-    private int maxLevel;
 
     public Scoreboard(int maxLevel, int[] multiplers, long[] meters){
-        curTH = 0;
         letterGrades = new Texture[5];
-        scoreThreholds = new long[4];
-        totalScore = 0;
-        level = 0;
-        meter = 0;
-        levelMultipliers = multiplers;
-        levelMeters = meters;
+        score = new ScoreTracker(maxLevel, multiplers, meters);
         background = new Texture(Gdx.files.internal("images/scoreboard_background.png"));
-        this.maxLevel = maxLevel;
 
-        fontGenerator = new FreeTypeFontGenerator(Gdx.files.internal("fonts/Blinker-SemiBold.ttf"));
-
-        fontParameter = new FreeTypeFontGenerator.FreeTypeFontParameter();
-        boldFont = new FreeTypeFontGenerator(Gdx.files.internal("fonts/Blinker-Bold.ttf"));
-        fontParameter.size = 96;
-        scoreFont = fontGenerator.generateFont(fontParameter);
-        multiplierFont = fontGenerator.generateFont(fontParameter);
-        comboFont = boldFont.generateFont(fontParameter);
-        scoreFont.setColor(Color.WHITE);
-        multiplierFont.setColor(Color.WHITE);
-        comboFont.setColor(new Color(1f, 0f, 254f/255f,1f));
+        scoreFont = ResourceManager.get().acquireFont("fonts/Blinker-SemiBold.ttf", 96);
+        multiplierFont = ResourceManager.get().acquireFont("fonts/Blinker-SemiBold.ttf", 96);
+        comboFont = ResourceManager.get().acquireFont("fonts/Blinker-Bold.ttf", 96);
         scoreLayout = new GlyphLayout();
         multiplierLayout = new GlyphLayout();
         comboLayout = new GlyphLayout();
@@ -102,8 +54,17 @@ public class Scoreboard {
         letterGrades[4] = new Texture(Gdx.files.internal("images/win_lose/S.png"));
     }
 
+    /**
+     * Shows the score of the given tracker, such as the one of the rules of a level
+     *
+     * @param score the score to show
+     */
+    public void setScoreTracker(ScoreTracker score){
+        this.score = score;
+    }
+
     public void setletterTH(long[] th){
-        scoreThreholds = th;
+        score.setletterTH(th);
     }
 
     public void setBounds(Vector2 tr, Vector2 bl){
@@ -112,43 +73,29 @@ public class Scoreboard {
     }
 
     public void resetScoreboard() {
-        curTH = 0;
-        totalScore = 0;
-        level = 0;
-        meter = 0;
+        score.resetScore();
     }
 
     public void resetCombo(){
-        meter = 0;
-        level = 0;
+        score.resetCombo();
     }
 
     public void receiveHit(int hitVal){
-        ++meter;
-        if(level < maxLevel-1 && meter > levelMeters[level]){
-            ++level;
-
-        }
-        totalScore += (long) hitVal* (long)levelMultipliers[level];
-        maxCombo = max(maxCombo,meter);
-        if(curTH < 4 && totalScore >= scoreThreholds[curTH]){
-            ++curTH;
-        }
+        score.receiveHit(hitVal);
     }
 
     public long getScore(){
-        return totalScore;
+        return score.getScore();
     }
 
     public long getMaxCombo(){
-        return maxCombo;
+        return score.getMaxCombo();
     }
     public void dispose(){
         background.dispose();
-        fontGenerator.dispose();
-        scoreFont.dispose();
-        comboFont.dispose();
-        multiplierFont.dispose();
+        ResourceManager.get().releaseFont(scoreFont);
+        ResourceManager.get().releaseFont(comboFont);
+        ResourceManager.get().releaseFont(multiplierFont);
         for(int i = 0; i < letterGrades.length; ++i){
             letterGrades[i].dispose();
         }
@@ -160,67 +107,64 @@ public class Scoreboard {
 
     public void setScoreScale(float heightConfine){
         String disp = "Score 0000000";
+        scoreFont.getData().setScale(scoreScale);
         scoreLayout.setText(scoreFont, disp);
         scoreScale *= heightConfine/scoreLayout.height;
         scoreFont.getData().setScale(scoreScale);
     }
     public void setComboScale(float heightConfine){
-        String disp = "Combo " + meter;
+        String disp = "Combo " + score.getCombo();
+        comboFont.getData().setScale(comboScale);
         comboLayout.setText(comboFont, disp);
         comboScale *= heightConfine/comboLayout.height;
         comboFont.getData().setScale(comboScale);
     }
 
     public void setMultiplierScale(float heightConfine){
-        String disp = "Multiplier x" + levelMultipliers[level];
+        String disp = "Multiplier x" + score.getMultiplier();
+        multiplierFont.getData().setScale(multiplierScale);
         multiplierLayout.setText(multiplierFont, disp);
         multiplierScale *= heightConfine/multiplierLayout.height;
         multiplierFont.getData().setScale(multiplierScale);
     }
 
     public Texture getLetterGrade(){
-        return letterGrades[curTH];
+        return letterGrades[score.getLetterGrade()];
     }
 
     public String getLetterGradeAsString() {
-        switch (curTH) {
-            case 0:
-                return "D";
-            case 1:
-                return "C";
-            case 2:
-                return "B";
-            case 3:
-                return "A";
-            case 4:
-                return "S";
-            default:
-                return "";
-        }
+        return score.getLetterGradeAsString();
     }
 
     public void displayScore(float xPos, float yPos, GameCanvas canvas){
-        String disp = Long.toString(totalScore);
+        String disp = Long.toString(score.getScore());
+        scoreFont.getData().setScale(scoreScale);
+        scoreFont.setColor(Color.WHITE);
         scoreLayout.setText(scoreFont, disp);
         canvas.drawTextSetColor(disp, scoreFont, xPos - scoreLayout.width/2f, yPos + scoreLayout.height/2f);
     }
 
     public void displayCombo(float xPos, float yPos, GameCanvas canvas){
-        String disp = "Combo " + meter;
+        String disp = "Combo " + score.getCombo();
+        comboFont.getData().setScale(comboScale);
+        comboFont.setColor(comboColor);
         comboLayout.setText(comboFont, disp);
         canvas.drawTextSetColor(disp, comboFont, xPos - comboLayout.width/2f, yPos + comboLayout.height/2f);
     }
 
     public void displayMultiplier(float xPos, float yPos, GameCanvas canvas){
-        String disp = "Multiplier x" + levelMultipliers[level];
+        String disp = "Multiplier x" + score.getMultiplier();
+        multiplierFont.getData().setScale(multiplierScale);
+        multiplierFont.setColor(Color.WHITE);
         multiplierLayout.setText(multiplierFont, disp);
         canvas.drawTextSetColor(disp, multiplierFont, xPos - multiplierLayout.width/2f, yPos + multiplierLayout.height/2f);
     }
 
     public void displayLetterGrade(GameCanvas canvas){
-        float sc = (2f*(TR.y - BL.y)/3f)/letterGrades[curTH].getHeight();
-        canvas.draw(letterGrades[curTH], Color.WHITE,
-                 letterGrades[curTH].getWidth()/2f, letterGrades[curTH].getHeight()/2f,
+        Texture grade = letterGrades[score.getLetterGrade()];
+        float sc = (2f*(TR.y - BL.y)/3f)/grade.getHeight();
+        canvas.draw(grade, Color.WHITE,
+                 grade.getWidth()/2f, grade.getHeight()/2f,
                     BL.x*5f/6f + TR.x/6f, (BL.y + TR.y)/2f,
                     0f,
                     sc, sc);
@@ -0,0 +1,158 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonValue;
+import edu.cornell.gdiac.audio.AudioEngine;
+import edu.cornell.gdiac.audio.AudioSource;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the songs that were played recently, decoded, so they are not decoded again.
+ *
+ * Songs are keyed by their id in the "samples" section of assets.json, so the easy,
+ * medium and hard charts of a song share one song. The first time a song is asked for,
+ * it is decoded into memory (see {@link PcmSource}), and replaying the level or picking
+ * another difficulty of it reads the decoded samples.
+ *
+ * Every song handed out by {@link #acquire} must be given back with {@link #release}
+ * once no music buffer plays it. The cache holds at most {@link #CAPACITY} bytes of
+ * decoded audio, counted exactly. When it is over, the least recently used songs that
+ * nobody holds are disposed first. Songs that are held are never dropped, so the cache
+ * may be over while they are.
+ *
+ * Songs may be asked for from any thread (see {@link LevelLoader}). A song is decoded
+ * by the thread asking for it, with the cache locked.
+ */
+public class SongCache {
+    /** Singleton song cache */
+    private static SongCache songCache;
+    /** Most decoded audio kept, in bytes */
+    private static final long CAPACITY = 256L * 1024 * 1024;
+
+    /** A cached song */
+    private static class Entry {
+        /** The decoded song */
+        final PcmSource song;
+        /** The number of holders that have not given the song back */
+        int holders;
+
+        Entry(PcmSource song) {
+            this.song = song;
+        }
+    }
+
+    /** The cached songs, from least to most recently used */
+    private final LinkedHashMap<String, Entry> songs;
+    /** The song files of assets.json, by song id (read when first needed) */
+    private JsonValue samples;
+    /** Decoded size of the cached songs, in bytes */
+    private long size;
+    /** Number of songs that were found in the cache */
+    private int hits;
+    /** Number of songs that had to be decoded */
+    private int misses;
+
+    private SongCache() {
+        songs = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    }
+
+    /**
+     * Return the singleton instance of the song cache
+     *
+     * This is synchronized, since the first song may be asked for by the loader thread.
+     *
+     * @return the singleton song cache
+     */
+    public static synchronized SongCache getInstance() {
+        if (songCache == null) {
+            songCache = new SongCache();
+        }
+        return songCache;
+    }
+
+    /**
+     * Returns the song with the given id, decoding it if it is not cached
+     *
+     * Every call must be matched by a call to {@link #release} once the song is no
+     * longer played.
+     *
+     * @param songId the song id in the "samples" section of assets.json
+     * @return the song
+     */
+    public synchronized AudioSource acquire(String songId) {
+        Entry entry = songs.get(songId);
+        if (entry != null) {
+            hits++;
+        } else {
+            misses++;
+            if (samples == null) {
+                samples = new JsonReader().parse(Gdx.files.internal("assets.json")).get("samples");
+            }
+            AudioSource source = ((AudioEngine) Gdx.audio).newSource(Gdx.files.internal(samples.getString(songId)));
+            try {
+                entry = new Entry(new PcmSource(source));
+            } finally {
+                // the decoder is only needed to decode the song once
+                source.dispose();
+            }
+            songs.put(songId, entry);
+            size += entry.song.getByteSize();
+        }
+        entry.holders++;
+        trim();
+        return entry.song;
+    }
+
+    /**
+     * Gives back a song returned by {@link #acquire}
+     *
+     * Once nobody holds the song, it may be disposed to keep the cache under its cap.
+     *
+     * @param song the song to give back
+     */
+    public synchronized void release(AudioSource song) {
+        for (Entry entry : songs.values()) {
+            if (entry.song == song) {
+                if (entry.holders > 0) {
+                    entry.holders--;
+                }
+                trim();
+                return;
+            }
+        }
+        Gdx.app.error("SongCache", "Released a song that is not cached: " + song.getFile());
+    }
+
+    /**
+     * Disposes the least recently used songs nobody holds, until the cache is under its cap
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> entries = songs.entrySet().iterator();
+        while (size > CAPACITY && entries.hasNext()) {
+            Entry entry = entries.next().getValue();
+            if (entry.holders == 0) {
+                size -= entry.song.getByteSize();
+                entry.song.dispose();
+                entries.remove();
+            }
+        }
+    }
+
+    /** Disposes every cached song. Nothing may play them any more. */
+    public synchronized void clear() {
+        for (Entry entry : songs.values()) {
+            entry.song.dispose();
+        }
+        songs.clear();
+        size = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return songs.size() + " songs, " + size / (1024 * 1024) + " MB decoded, " + hits + " hits, " + misses + " misses";
+    }
+}
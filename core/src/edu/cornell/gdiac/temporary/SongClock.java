@@ -0,0 +1,185 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.audio.Music;
+
+/**
+ * A smoothed, monotonic clock for the song position
+ *
+ * The audio backend only updates the music position once per buffer, so reading it
+ * directly makes the song position advance in coarse steps. This clock extrapolates
+ * between those updates with System.nanoTime. Every time the backend reports a new
+ * position, the difference between it and our prediction (the drift) is measured and
+ * a fraction of it is corrected. If the drift is too large (e.g. the music was seeked
+ * or stalled) we resync to the reported position instead. The returned sample never
+ * runs backwards until the clock is reset.
+ */
+public class SongClock {
+    /** Fraction of the measured drift to correct at every position update */
+    private static final double DRIFT_CORRECTION = 0.1;
+    /** Drift (in seconds) above which we jump straight to the reported position */
+    private static final double RESYNC_THRESHOLD = 0.05;
+
+    /** Sample rate of the song */
+    private int sampleRate;
+    /** Song position (in samples) at the anchor time */
+    private double anchorSample;
+    /** The time (System.nanoTime) of the anchor */
+    private long anchorTime;
+    /** The last position reported by the backend (in seconds) */
+    private float lastPosition;
+    /** The last sample returned by this clock */
+    private long lastSample;
+    /** Whether the clock has been anchored to the music yet */
+    private boolean anchored;
+
+    /** Number of position updates that we have measured drift on */
+    private int driftCount;
+    /** Sum of the absolute drift (in samples) over all position updates */
+    private double totalDrift;
+    /** Largest absolute drift (in samples) seen */
+    private double maxDrift;
+    /** Drift (in samples) measured at the last position update */
+    private double lastDrift;
+    /** Number of times the clock was resynced to the backend */
+    private int resyncCount;
+
+    /**
+     * Creates a clock for a song at the given sample rate
+     *
+     * @param sampleRate the sample rate of the song
+     */
+    public SongClock(int sampleRate) {
+        this.sampleRate = sampleRate;
+        reset();
+    }
+
+    /**
+     * Resets the clock to the start of the song and clears the statistics
+     */
+    public void reset() {
+        anchored = false;
+        anchorSample = 0;
+        anchorTime = 0;
+        lastPosition = -1;
+        lastSample = 0;
+        driftCount = 0;
+        totalDrift = 0;
+        maxDrift = 0;
+        lastDrift = 0;
+        resyncCount = 0;
+    }
+
+    /**
+     * Returns the current song position of the given music, in samples
+     *
+     * @param music the music this clock follows
+     * @return the current song position in samples
+     */
+    public long getSample(Music music) {
+        return getSample(music.getPosition(), music.isPlaying(), System.nanoTime());
+    }
+
+    /**
+     * Returns the song position at the given time, in samples
+     *
+     * @param position the position (in seconds) reported by the audio backend
+     * @param playing  whether the music is currently playing
+     * @param now      the current time in nanoseconds
+     * @return the song position in samples
+     */
+    public long getSample(float position, boolean playing, long now) {
+        double reported = (double) position * sampleRate;
+        if (!playing) {
+            // Nothing to extrapolate while paused or stopped
+            anchored = false;
+            lastPosition = position;
+            return advance((long) reported);
+        }
+        if (!anchored) {
+            anchorSample = reported;
+            anchorTime = now;
+            lastPosition = position;
+            anchored = true;
+        } else if (position != lastPosition) {
+            // The backend moved, so measure how far off our prediction was
+            double predicted = anchorSample + (now - anchorTime) * (sampleRate / 1e9);
+            double drift = reported - predicted;
+            lastPosition = position;
+            lastDrift = drift;
+            driftCount++;
+            totalDrift += Math.abs(drift);
+            maxDrift = Math.max(maxDrift, Math.abs(drift));
+            if (Math.abs(drift) > RESYNC_THRESHOLD * sampleRate) {
+                anchorSample = reported;
+                resyncCount++;
+            } else {
+                anchorSample = predicted + DRIFT_CORRECTION * drift;
+            }
+            anchorTime = now;
+        }
+        return advance((long) (anchorSample + (now - anchorTime) * (sampleRate / 1e9)));
+    }
+
+    /**
+     * Returns the given sample, or the last returned sample if it would run backwards
+     */
+    private long advance(long sample) {
+        if (sample > lastSample) {
+            lastSample = sample;
+        }
+        return lastSample;
+    }
+
+    /**
+     * Returns the number of position updates that drift was measured on
+     *
+     * @return the number of position updates that drift was measured on
+     */
+    public int getDriftCount() {
+        return driftCount;
+    }
+
+    /**
+     * Returns the mean absolute drift, in milliseconds
+     *
+     * @return the mean absolute drift, in milliseconds
+     */
+    public float getMeanDrift() {
+        return driftCount == 0 ? 0 : (float) (1000 * totalDrift / driftCount / sampleRate);
+    }
+
+    /**
+     * Returns the largest absolute drift seen, in milliseconds
+     *
+     * @return the largest absolute drift seen, in milliseconds
+     */
+    public float getMaxDrift() {
+        return (float) (1000 * maxDrift / sampleRate);
+    }
+
+    /**
+     * Returns the drift measured at the last position update, in milliseconds
+     *
+     * Positive means the audio is ahead of the clock.
+     *
+     * @return the drift measured at the last position update, in milliseconds
+     */
+    public float getLastDrift() {
+        return (float) (1000 * lastDrift / sampleRate);
+    }
+
+    /**
+     * Returns the number of times the clock jumped to the reported position
+     *
+     * @return the number of resync events
+     */
+    public int getResyncCount() {
+        return resyncCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("drift mean %.2fms max %.2fms last %.2fms over %d updates, %d resyncs",
+                getMeanDrift(), getMaxDrift(), getLastDrift(), driftCount, resyncCount);
+    }
+}
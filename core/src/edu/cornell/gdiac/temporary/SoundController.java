@@ -3,21 +3,83 @@ package edu.cornell.gdiac.temporary;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.audio.Sound;
+import edu.cornell.gdiac.audio.SoundEffect;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
  * Controller for sound effects
+ *
+ * Every effect is loaded into memory when it is added, and may play several times at
+ * once, up to its number of voices. A tap followed right away by a hit sound plays both,
+ * instead of the hit cutting the tap off. When every voice of an effect is busy, the
+ * oldest one is stopped to make room.
+ *
  * @param <T> key type
  */
 public class SoundController<T>{
+    /** Number of voices of an effect when none is given */
+    public static final int DEFAULT_VOICES = 4;
 
-    private HashMap<T, Sound> effectList;
+    /** An effect and the instances of it playing */
+    private static class Effect {
+        /** The effect, in memory */
+        final Sound sound;
+        /** The id of the instance of each voice (-1 if the voice is free) */
+        final long[] voices;
+        /** When each voice started, in number of sounds played */
+        final long[] started;
+
+        Effect(Sound sound, int voices) {
+            this.sound = sound;
+            this.voices = new long[voices];
+            this.started = new long[voices];
+            Arrays.fill(this.voices, -1);
+        }
+
+        /**
+         * Returns the voice to play the next instance on
+         *
+         * This is a free voice if there is one, and the oldest voice otherwise, which
+         * is stopped.
+         *
+         * @return the voice to play the next instance on
+         */
+        int takeVoice() {
+            int oldest = 0;
+            for (int i = 0; i < voices.length; i++) {
+                if (voices[i] == -1 || !isPlaying(voices[i])) {
+                    return i;
+                }
+                if (started[i] < started[oldest]) {
+                    oldest = i;
+                }
+            }
+            sound.stop(voices[oldest]);
+            return oldest;
+        }
+
+        /**
+         * Returns true if the given instance may still be playing
+         *
+         * Only a {@link SoundEffect} can tell when an instance is done, so the voices
+         * of other sounds are only ever reused by age.
+         *
+         * @param instance  The instance id
+         * @return true if the given instance may still be playing
+         */
+        private boolean isPlaying(long instance) {
+            return !(sound instanceof SoundEffect) || ((SoundEffect) sound).isPlaying(instance);
+        }
+    }
+
+    private HashMap<T, Effect> effectList;
 
     private static float volumeAdjust;
 
-    private Sound curSound;
+    /** Number of sounds played, to tell which voice is the oldest */
+    private long played;
 
     public SoundController(){
         effectList = new HashMap<>();
@@ -25,21 +87,35 @@ public class SoundController<T>{
     }
 
     public void addSound(T id, String fileName){
+        addSound(id, fileName, DEFAULT_VOICES);
+    }
+
+    /**
+     * Loads a sound effect that may play up to the given number of times at once
+     *
+     * @param id the key of the effect
+     * @param fileName the internal file of the effect
+     * @param voices the number of instances that may play at once
+     */
+    public void addSound(T id, String fileName, int voices){
         Sound nextSound = Gdx.audio.newSound(Gdx.files.internal(fileName));
-        effectList.put(id, nextSound);
+        effectList.put(id, new Effect(nextSound, Math.max(1, voices)));
     }
 
     public void playSound(T id, float vol){
-        if(curSound != null){
-            curSound.stop();
+        Effect effect = effectList.get(id);
+        if (effect == null) {
+            Gdx.app.error("SoundController", "No sound effect " + id);
+            return;
         }
-        curSound = effectList.get(id);
-        curSound.play(vol * volumeAdjust);
+        int voice = effect.takeVoice();
+        effect.voices[voice] = effect.sound.play(vol * volumeAdjust);
+        effect.started[voice] = ++played;
     }
 
     public void dispose(){
-        for (Sound sound : effectList.values()) {
-            sound.dispose();
+        for (Effect effect : effectList.values()) {
+            effect.sound.dispose();
         }
         effectList = new HashMap<>();
     }
@@ -51,4 +127,12 @@ public class SoundController<T>{
     public static void setVolumeAdjust(float vol) {
         volumeAdjust = vol;
     }
+
+    /**
+     * Returns the volume for all sound effects
+     * @return volume
+     */
+    public static float getVolumeAdjust() {
+        return volumeAdjust;
+    }
 }
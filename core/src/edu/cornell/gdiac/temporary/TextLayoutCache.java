@@ -0,0 +1,130 @@
+package edu.cornell.gdiac.temporary;
+
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.GlyphLayout;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.Pool;
+
+/**
+ * The text layouts of the strings drawn by a {@link GameCanvas}, kept from frame to frame.
+ *
+ * Laying out text walks every glyph of the string and allocates its runs, so doing it for
+ * the same labels every frame is wasted. A layout depends on the font, the string, the
+ * scale of the font and its color (a layout keeps the color of the font it was made
+ * with), so all four make up the key.
+ *
+ * Text that changes every frame, like a score, still needs a new layout each time. The
+ * cache is emptied once it holds {@link #CAPACITY} layouts, so such text cannot make it
+ * grow without bound. It is also emptied when the canvas is resized, as the screens scale
+ * their fonts to the window and the old layouts are of no more use.
+ */
+public class TextLayoutCache {
+    /** Maximum number of layouts kept */
+    private static final int CAPACITY = 256;
+
+    /** A layout and what it was made with */
+    private static class Entry implements Pool.Poolable {
+        /** The font of the layout */
+        BitmapFont font;
+        /** The scale of the font */
+        float scaleX;
+        float scaleY;
+        /** The color of the font */
+        int color;
+        /** The layout of the string */
+        final GlyphLayout layout = new GlyphLayout();
+        /** The next layout of the same string */
+        Entry next;
+
+        @Override
+        public void reset() {
+            font = null;
+            layout.reset();
+            next = null;
+        }
+    }
+
+    /** The layouts, by string */
+    private final ObjectMap<String, Entry> entries = new ObjectMap<String, Entry>();
+    /** Entries to reuse once the cache is emptied */
+    private final Pool<Entry> pool = new Pool<Entry>() {
+        @Override
+        protected Entry newObject() {
+            return new Entry();
+        }
+    };
+    /** Number of layouts kept */
+    private int size;
+    /** Number of layouts found in the cache */
+    private int hits;
+    /** Number of layouts made */
+    private int misses;
+
+    /**
+     * Returns the layout of the text in the font, with its current scale and color
+     *
+     * The layout belongs to the cache, so it must not be changed, and it should be used
+     * right away: it may be reused for other text once the cache is emptied.
+     *
+     * @param font  The font to lay the text out with
+     * @param text  The string to lay out
+     *
+     * @return the layout of the text in the font
+     */
+    public GlyphLayout get(BitmapFont font, String text) {
+        BitmapFont.BitmapFontData data = font.getData();
+        int color = font.getColor().toIntBits();
+        Entry first = entries.get(text);
+        for (Entry entry = first; entry != null; entry = entry.next) {
+            if (entry.font == font && entry.scaleX == data.scaleX && entry.scaleY == data.scaleY
+                    && entry.color == color) {
+                hits++;
+                return entry.layout;
+            }
+        }
+
+        misses++;
+        if (size >= CAPACITY) {
+            clear();
+            first = null;
+        }
+        Entry entry = pool.obtain();
+        entry.font = font;
+        entry.scaleX = data.scaleX;
+        entry.scaleY = data.scaleY;
+        entry.color = color;
+        entry.layout.setText(font, text);
+        entry.next = first;
+        entries.put(text, entry);
+        size++;
+        return entry.layout;
+    }
+
+    /** Empties the cache */
+    public void clear() {
+        for (Entry entry : entries.values()) {
+            while (entry != null) {
+                Entry next = entry.next;
+                pool.free(entry);
+                entry = next;
+            }
+        }
+        entries.clear();
+        size = 0;
+    }
+
+    /** Returns the number of layouts found in the cache */
+    public int getHits() {
+        return hits;
+    }
+
+    /** Returns the number of layouts made */
+    public int getMisses() {
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+        return size + " layouts, " + hits + " hits, " + misses + " misses";
+    }
+}
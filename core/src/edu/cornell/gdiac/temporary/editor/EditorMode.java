@@ -428,6 +428,10 @@ public class EditorMode implements Screen {
 
     /** Height of the lane rectangles*/
     private float laneHeight;
+    /** Minimum distance (in pixels) between two beat lines that are drawn */
+    private static final float MIN_LINE_SPACING = 4f;
+    /** Most beats skipped between two beat lines (keeps the line positions within an int) */
+    private static final int MAX_BEAT_STEP = 1 << 14;
 
     /** Color of the lane rectangle borders*/
     private Color laneBorderColor;
@@ -1144,16 +1148,16 @@ public class EditorMode implements Screen {
             if (note.getLane() == lane && note.getLine() == line) {
                 if (currentPlaceType == PlaceType.FREE && note.getPos() < PlacePos + (int) ((1 / (4 * zoom) * beat)) && note.getPos() > PlacePos - (int) ((1 / (4 * zoom) * beat))) {
                     noteConflict = true;
-                    System.out.println("Note Conflict");
+                    Gdx.app.debug("EditorMode", "Note Conflict");
                 }
                 if (currentPlaceType != PlaceType.FREE && note.getPos() == PlacePos){
                     noteConflict = true;
-                    System.out.println("Note Conflict");
+                    Gdx.app.debug("EditorMode", "Note Conflict");
                 }
             }
         }
         if (!noteConflict) {
-            System.out.println("No Note Conflict");
+            Gdx.app.debug("EditorMode", "No Note Conflict");
             EditorNote n = new EditorNote(type, lane, line, PlacePos, duration);
             n.setTexture(catNoteTexture);
             Notes.add(n);
@@ -1187,16 +1191,16 @@ public class EditorMode implements Screen {
             if (flag.getLane() == lane) {
                 if (currentPlaceType == PlaceType.FREE && flag.getPos() < PlacePos + (int) ((1 / (4 * zoom) * beat)) && flag.getPos() > PlacePos - (int) ((1 / (4 * zoom) * beat))) {
                     flagConflict = true;
-                    System.out.println("Flag Conflict");
+                    Gdx.app.debug("EditorMode", "Flag Conflict");
                 }
                 if (currentPlaceType != PlaceType.FREE && flag.getPos() == PlacePos){
                     flagConflict = true;
-                    System.out.println("Flag Conflict");
+                    Gdx.app.debug("EditorMode", "Flag Conflict");
                 }
             }
         }
         if (!flagConflict) {
-            System.out.println("No Flag Conflict");
+            Gdx.app.debug("EditorMode", "No Flag Conflict");
             EditorFlag f = new EditorFlag(lane, PlacePos, lossRate, noteGain);
             Flags.add(f);
             return f;
@@ -1218,16 +1222,16 @@ public class EditorMode implements Screen {
         for (EditorHit hit : Hits){
             if (currentPlaceType == PlaceType.FREE && hit.getPos() < PlacePos + (int) ((1 / (4 * zoom) * beat)) && hit.getPos() > PlacePos - (int) ((1 / (4 * zoom) * beat))) {
                 hitConflict = true;
-                System.out.println("Hit Conflict");
+                Gdx.app.debug("EditorMode", "Hit Conflict");
             }
             if (currentPlaceType != PlaceType.FREE && hit.getPos() == PlacePos){
                 hitConflict = true;
-                System.out.println("Hit Conflict");
+                Gdx.app.debug("EditorMode", "Hit Conflict");
             }
 
         }
         if (!hitConflict) {
-            System.out.println("No Hit Conflict");
+            Gdx.app.debug("EditorMode", "No Hit Conflict");
             EditorHit h = new EditorHit(PlacePos, probabilities);
             Hits.add(h);
             return h;
@@ -1588,7 +1592,7 @@ public class EditorMode implements Screen {
                 laneNumber = Integer.parseInt(typedString);
                 if (laneNumber > 4) {
                     laneNumber = 4;
-                    System.out.println("maximum lane number is 4");
+                    Gdx.app.log("EditorMode", "maximum lane number is 4");
                 }
             }
             typedString = "";
@@ -1602,7 +1606,7 @@ public class EditorMode implements Screen {
                 lineNumber = Integer.parseInt(typedString);
                 if (lineNumber > 4) {
                     lineNumber = 4;
-                    System.out.println("maximum line number is 4");
+                    Gdx.app.log("EditorMode", "maximum line number is 4");
                 }
             }
             typedString = "";
@@ -2225,32 +2229,35 @@ public class EditorMode implements Screen {
             }
 
             //draw beat lines
+            //lines closer together than MIN_LINE_SPACING pixels are skipped, so zooming out
+            //does not add more lines than fit on the screen
+            float beatSpacing = laneHeight*zoom/8f; //pixels between two beats
+            int beatStep = 1;
+            while (beatSpacing*beatStep < MIN_LINE_SPACING && beatStep < MAX_BEAT_STEP){
+                beatStep *= 2;
+            }
+            int divisions = currentPlaceType == PlaceType.THIRD ? 3 :
+                    (currentPlaceType == PlaceType.QUARTER || currentPlaceType == PlaceType.FREE ? 4 : 1);
+            boolean subdivide = divisions > 1 && beatStep == 1 && beatSpacing/divisions >= MIN_LINE_SPACING;
+            int stride = beat*beatStep;
             int beatLine = songPosition - (int) ((5/zoom)*beat); //line starts at the top of the screen space
-            beatLine = beat*Math.round((float) (beatLine/((float )beat))); //set line to the nearest beat
+            beatLine = stride*Math.round((float) (beatLine/((float) stride))); //set line to the nearest shown beat
             while (beatLine < songPosition + (int) ((5/zoom)*beat)){
                 if (onScreen(beatLine)){
                     l = songPosToScreenY(beatLine);
                     canvas.drawLine(x, l, x+laneWidth, l, 3, Color.CYAN);
                 }
-                if (currentPlaceType == PlaceType.QUARTER || currentPlaceType == PlaceType.FREE){
-                    for (int i = 0; i < 3; i++){
-                        beatLine += beat / 4;
+                if (subdivide){
+                    for (int i = 0; i < divisions - 1; i++){
+                        beatLine += beat / divisions;
                         if (onScreen(beatLine)) {
                             l = songPosToScreenY(beatLine);
                             canvas.drawLine(x, l, x + laneWidth, l,2, Color.GRAY);
                         }
                     }
-                    beatLine += beat / 4;
-                }
-                if (currentPlaceType == PlaceType.THIRD){
-                    for (int i = 0; i < 2; i++){
-                        beatLine += beat / 3;
-                        if (onScreen(beatLine)) {
-                            l = songPosToScreenY(beatLine);
-                            canvas.drawLine(x, l, x + laneWidth, l, 2, Color.GRAY);
-                        }
-                    }
-                    beatLine += beat / 3;
+                    beatLine += beat / divisions;
+                } else {
+                    beatLine += stride;
                 }
             }
 
@@ -3,15 +3,12 @@ package edu.cornell.gdiac.temporary.entity;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.utils.Array;
-import com.badlogic.gdx.utils.Queue;
 import edu.cornell.gdiac.temporary.*;
 import edu.cornell.gdiac.util.FilmStrip;
 
-import java.util.PriorityQueue;
-
-
 public class BandMember {
 
     FilmStrip DF;
@@ -266,8 +263,8 @@ public class BandMember {
     private Vector2 bottomLeftCorner;
 
     /** Textures */
-    private Texture noteIndicator;
-    private Texture noteIndicatorHit;
+    private TextureRegion noteIndicator;
+    private TextureRegion noteIndicatorHit;
 
     private Texture perfectHitIndicator;
     private Texture okHitIndicator;
@@ -375,22 +372,38 @@ public class BandMember {
     }
 
     public boolean hasMoreNotes(){
-        return !switchNotes.isEmpty() || !hitNotes.isEmpty() || !allNotes.isEmpty();
+        return !switchNotes.isEmpty() || !hitNotes.isEmpty() || nextNote < lane.size();
     }
     public Array<Note> getSwitchNotes(){
         return switchNotes;
     }
     /**
-     * Queue to hold all the notes for this band member across the entire level
+     * Chart of all the notes for this band member across the entire level
      */
-    private Queue<Note> allNotes;
+    private Chart.Lane lane;
+    /**
+     * Row of the next note in the chart that has not been spawned yet
+     */
+    private int nextNote;
 
-    public void setAllNotes(Queue<Note> l){
-        allNotes = l;
+    /**
+     * Sets the chart of this band member and rewinds to its first note
+     */
+    public void setLane(Chart.Lane l){
+        lane = l;
+        nextNote = 0;
+    }
+
+    public Chart.Lane getLane(){
+        return lane;
     }
 
-    public Queue<Note> getAllNotes(){
-        return allNotes;
+    public int getNextNote(){
+        return nextNote;
+    }
+
+    public void setNextNote(int row){
+        nextNote = row;
     }
 
     /**
@@ -401,13 +414,6 @@ public class BandMember {
 
     private int gainRate;
     private int lossRate;
-    private PriorityQueue<Long[]> compData;
-    public void setCompData(PriorityQueue<Long[]> compData) {
-        this.compData = compData;
-    }
-    public PriorityQueue<Long[]> getCompData() {
-        return compData;
-    }
     public void setLossRate(int t){
         lossRate = t;
     }
@@ -448,8 +454,6 @@ public class BandMember {
         bottomLeftCorner = new Vector2();
         hitNotes = new Array<>();
         switchNotes = new Array<>();
-        allNotes = new Queue<>();
-        compData = new PriorityQueue<>();
         backing = new Array<>();
         done = false;
         mode = -1;
@@ -461,16 +465,40 @@ public class BandMember {
 
     }
 
-    public void setHpBarFilmStrip(Texture t, int numFrames){
+    /**
+     * Rewinds this band member to the start of its chart, keeping its layout and textures
+     */
+    public void restart(){
+        hitNotes.clear();
+        switchNotes.clear();
+        backing.clear();
+        nextNote = 0;
+        curComp = maxComp;
+        gainRate = 0;
+        lossRate = 0;
+        if (hpbar != null) {
+            hpbar.setFrame(0);
+        }
+        done = false;
+        held = false;
+        mode = -1;
+        gameOver = false;
+        AS = ACTIVE_STATE.IDLE;
+        sample = 0f;
+        DFprev = false;
+        JKprev = false;
+    }
+
+    public void setHpBarFilmStrip(TextureRegion t, int numFrames){
         hpbarFrames = numFrames;
         hpbar = new FilmStrip(t,1,hpbarFrames,hpbarFrames);
         hpbar.setFrame(0);
     }
 
-    public void setStartingState(int comp, Queue<Note> notes){
+    public void setStartingState(int comp, Chart.Lane notes){
         curComp = comp;
         maxComp = comp;
-        allNotes = notes;
+        setLane(notes);
     }
 
     /**
@@ -486,9 +514,8 @@ public class BandMember {
             if(n.getNoteType() == Note.NoteType.HELD){
                 //Y coordinates based on formula mentioned in discord.
                 float bottomYCalc = spawnY + (float)(currentSample - n.getStartSample())/(n.getHitSample() - n.getStartSample()) *(hitY - spawnY);
-                if (!n.isHolding()) {
-                    n.setBottomY(bottomYCalc);
-                }
+                // a held note stays on the hit line while it is held
+                n.setBottomY(n.isHolding() ? hitY : bottomYCalc);
                 if (n.isHolding() && n.getY() <= n.getBottomY()) {
                     n.setY(n.getBottomY());
                 } else {
@@ -504,19 +531,15 @@ public class BandMember {
     }
 
     /**
-     * Add notes from the queue to the correct active array
-     * @param currentSample
+     * Add a newly spawned note to the correct active array
+     * @param n
      */
-    public void spawnNotes(long currentSample){
-        //add everything at the front of the queue that's supposed to start on this frame
-        while(!allNotes.isEmpty() && allNotes.first().getStartSample() <= currentSample){
-            Note n = allNotes.removeFirst();
-            if(n.getNoteType() == Note.NoteType.SWITCH){
-                switchNotes.add(n);
-            }
-            else{
-                hitNotes.add(n);
-            }
+    public void addNote(Note n){
+        if(n.getNoteType() == Note.NoteType.SWITCH){
+            switchNotes.add(n);
+        }
+        else{
+            hitNotes.add(n);
         }
     }
 
@@ -548,7 +571,10 @@ public class BandMember {
      */
     public void compUpdate(float amount){
         curComp = Math.min(Math.max(0, curComp + amount), maxComp);
-        hpbar.setFrame(Math.min((int)((1 - curComp/maxComp)*(hpbarFrames)), hpbarFrames - 1));
+        // band members of the simulator have no HP bar
+        if (hpbar != null) {
+            hpbar.setFrame(Math.min((int)((1 - curComp/maxComp)*(hpbarFrames)), hpbarFrames - 1));
+        }
     }
 
     // DRAWING METHODS
@@ -556,44 +582,44 @@ public class BandMember {
     /**
      * Draw the indicator in a certain color according to if we triggered the line. Pass in an array for the active lane
      */
-    public void drawIndicator(GameCanvas canvas, Texture noteIndicator, Texture noteIndicatorHit, boolean[] hits){
+    public void drawIndicator(GameCanvas canvas, TextureRegion noteIndicator, TextureRegion noteIndicatorHit, boolean[] hits){
         //If we get passed an array we must draw 4 hit bars
-        float scale = NOTE_SIZE_SCALE*(width/4)/noteIndicatorHit.getWidth();
+        float scale = NOTE_SIZE_SCALE*(width/4)/noteIndicatorHit.getRegionWidth();
         for(int i = 0; i < numLines; ++i){
-            canvas.draw(hits[i] ? noteIndicatorHit : noteIndicator, Color.WHITE, noteIndicatorHit.getWidth() / 2, noteIndicatorHit.getHeight() / 2,
+            canvas.draw(hits[i] ? noteIndicatorHit : noteIndicator, Color.WHITE, noteIndicatorHit.getRegionWidth() / 2, noteIndicatorHit.getRegionHeight() / 2,
                     ((bottomLeftCorner.x + i * width/numLines) + (bottomLeftCorner.x +(i+1) * width/numLines)) / 2 - 5, hitY,
                     0.0f, scale, scale);
 //            canvas.drawText(InputController.triggerKeyBinds()[i], displayFont, (bottomLeftCorner.x + i * width/numLines + bottomLeftCorner.x +(i+1) * width/numLines) / 2, hitY - 80);
         }
     }
 
-    public void drawPawIndicator(GameCanvas canvas, Texture pawIndicator, int line) {
-        float scale = Math.min(0.2f * height/pawIndicator.getHeight(), 0.85f* width/pawIndicator.getWidth());
+    public void drawPawIndicator(GameCanvas canvas, TextureRegion pawIndicator, int line) {
+        float scale = Math.min(0.2f * height/pawIndicator.getRegionHeight(), 0.85f* width/pawIndicator.getRegionWidth());
         if (line >= 0) {
-            canvas.draw(pawIndicator, Color.WHITE, pawIndicator.getWidth() / 2, pawIndicator.getHeight() / 2,
+            canvas.draw(pawIndicator, Color.WHITE, pawIndicator.getRegionWidth() / 2, pawIndicator.getRegionHeight() / 2,
                     ((bottomLeftCorner.x + line * width / numLines) + (bottomLeftCorner.x + (line + 1) * width / numLines)) / 2 - 5, 0.65f*height + bottomLeftCorner.y,
                     0.0f, scale, scale);
         }
     }
 
-    public void drawControlBox(GameCanvas canvas, Texture backgroundBox){
+    public void drawControlBox(GameCanvas canvas, TextureRegion backgroundBox){
         if(mode == -1){
-            float scale = Math.min(0.2f * height/backgroundBox.getHeight(), 0.85f* width/backgroundBox.getWidth());
-            canvas.draw(backgroundBox, Color.WHITE, backgroundBox.getWidth()/2, backgroundBox.getHeight()/2, bottomLeftCorner.x + width/2f, 0.85f*height + bottomLeftCorner.y, 0f, scale, scale);
+            float scale = Math.min(0.2f * height/backgroundBox.getRegionHeight(), 0.85f* width/backgroundBox.getRegionWidth());
+            canvas.draw(backgroundBox, Color.WHITE, backgroundBox.getRegionWidth()/2, backgroundBox.getRegionHeight()/2, bottomLeftCorner.x + width/2f, 0.85f*height + bottomLeftCorner.y, 0f, scale, scale);
         }
         else{
-            float scale = Math.min(0.15f * height/backgroundBox.getHeight(), 0.85f* width/(4f*backgroundBox.getWidth()));
+            float scale = Math.min(0.15f * height/backgroundBox.getRegionHeight(), 0.85f* width/(4f*backgroundBox.getRegionWidth()));
             for(int i = 0; i < 4; ++i){
-                canvas.draw(backgroundBox, Color.WHITE, backgroundBox.getWidth()/2, backgroundBox.getHeight()/2, bottomLeftCorner.x + width/8f+i*width/4f, 0.85f*height + bottomLeftCorner.y, 0f, scale, scale);
+                canvas.draw(backgroundBox, Color.WHITE, backgroundBox.getRegionWidth()/2, backgroundBox.getRegionHeight()/2, bottomLeftCorner.x + width/8f+i*width/4f, 0.85f*height + bottomLeftCorner.y, 0f, scale, scale);
 
             }
         }
 
     }
 
-    public void drawPawIndicator(GameCanvas canvas, Texture pawIndicator) {
-        float scale = Math.min(0.2f * height/pawIndicator.getHeight(), 0.85f* width/pawIndicator.getWidth());
-            canvas.draw(pawIndicator, Color.WHITE, pawIndicator.getWidth() / 2, pawIndicator.getHeight() / 2,
+    public void drawPawIndicator(GameCanvas canvas, TextureRegion pawIndicator) {
+        float scale = Math.min(0.2f * height/pawIndicator.getRegionHeight(), 0.85f* width/pawIndicator.getRegionWidth());
+            canvas.draw(pawIndicator, Color.WHITE, pawIndicator.getRegionWidth() / 2, pawIndicator.getRegionHeight() / 2,
                     bottomLeftCorner.x + width/2, 0.65f*height + bottomLeftCorner.y,
                     0.0f, scale, scale);
     }
@@ -602,9 +628,9 @@ public class BandMember {
      * Draw the hit bar in a certain color according to if we triggered the line. Pass in a value for a switchable lane
      * also draw the keyBind
      */
-    public void drawIndicator(GameCanvas canvas, Texture noteIndicator, Texture noteIndicatorHit, boolean hit){
-       float scale = width/noteIndicatorHit.getWidth();
-        canvas.draw(hit ? noteIndicatorHit : noteIndicator, Color.WHITE, noteIndicatorHit.getWidth() / 2, noteIndicatorHit.getHeight() / 2,
+    public void drawIndicator(GameCanvas canvas, TextureRegion noteIndicator, TextureRegion noteIndicatorHit, boolean hit){
+       float scale = width/noteIndicatorHit.getRegionWidth();
+        canvas.draw(hit ? noteIndicatorHit : noteIndicator, Color.WHITE, noteIndicatorHit.getRegionWidth() / 2, noteIndicatorHit.getRegionHeight() / 2,
                 bottomLeftCorner.x + width/2, hitY,
                 0.0f,scale, scale);
 //         TODO: fix these values
@@ -646,32 +672,32 @@ public class BandMember {
     /**
      * Draw the border
      */
-    public void drawBorder(GameCanvas canvas, Texture HorizontalUnit, Texture VerticalUnit, Texture Corner, float thickness){
+    public void drawBorder(GameCanvas canvas, TextureRegion HorizontalUnit, TextureRegion VerticalUnit, TextureRegion Corner, float thickness){
         borderthickness = thickness;
-        Vector2 HOrigin = new Vector2(HorizontalUnit.getWidth()/2f, HorizontalUnit.getHeight()/2f);
-        Vector2 VOrigin = new Vector2(VerticalUnit.getWidth()/2f, VerticalUnit.getHeight()/2f);
-        Vector2 COrigin = new Vector2(Corner.getWidth()/2f, Corner.getHeight()/2f);
+        Vector2 HOrigin = new Vector2(HorizontalUnit.getRegionWidth()/2f, HorizontalUnit.getRegionHeight()/2f);
+        Vector2 VOrigin = new Vector2(VerticalUnit.getRegionWidth()/2f, VerticalUnit.getRegionHeight()/2f);
+        Vector2 COrigin = new Vector2(Corner.getRegionWidth()/2f, Corner.getRegionHeight()/2f);
 
         //First, calculate 4 borderline coordinates
         float xLocBottom = bottomLeftCorner.x + width/2;
         float yLocBottom = bottomLeftCorner.y - thickness/2;
-        float xScaleBottom = width/HorizontalUnit.getWidth();
-        float yScaleBottom = thickness/VerticalUnit.getHeight();
+        float xScaleBottom = width/HorizontalUnit.getRegionWidth();
+        float yScaleBottom = thickness/VerticalUnit.getRegionHeight();
 
         float xLocTop = bottomLeftCorner.x + width/2;
         float yLocTop = bottomLeftCorner.y + height + thickness/2;
-        float xScaleTop = width/HorizontalUnit.getWidth();
-        float yScaleTop = thickness/VerticalUnit.getHeight();
+        float xScaleTop = width/HorizontalUnit.getRegionWidth();
+        float yScaleTop = thickness/VerticalUnit.getRegionHeight();
 
         float xLocLeft = bottomLeftCorner.x - thickness/2;
         float yLocLeft = bottomLeftCorner.y + height/2;
-        float xScaleLeft = thickness/HorizontalUnit.getWidth();
-        float yScaleLeft = height/VerticalUnit.getHeight();
+        float xScaleLeft = thickness/HorizontalUnit.getRegionWidth();
+        float yScaleLeft = height/VerticalUnit.getRegionHeight();
 
         float xLocRight = bottomLeftCorner.x + width + thickness/2;
         float yLocRight = bottomLeftCorner.y + height/2;
-        float xScaleRight = thickness/HorizontalUnit.getWidth();
-        float yScaleRight = height/VerticalUnit.getHeight();
+        float xScaleRight = thickness/HorizontalUnit.getRegionWidth();
+        float yScaleRight = height/VerticalUnit.getRegionHeight();
 
         //Now, draw the 4 corners
 
@@ -684,34 +710,35 @@ public class BandMember {
         canvas.draw(Corner, Color.WHITE, COrigin.x, COrigin.y, xLocLeft, yLocTop, 270.0f, xScaleLeft, yScaleTop);
 
         //Now, draw the sidebars such that they don't intersect the corners
-        float barHeight = (yLocTop - (Corner.getHeight()*yScaleTop/2)) - (yLocBottom + (Corner.getHeight()*yScaleBottom/2));
-        float barWidth = (xLocRight - (Corner.getWidth()*xScaleRight/2)) - (xLocLeft + (Corner.getWidth()*xScaleLeft/2));
-        float lengthScale = barWidth/HorizontalUnit.getWidth();
+        float barHeight = (yLocTop - (Corner.getRegionHeight()*yScaleTop/2)) - (yLocBottom + (Corner.getRegionHeight()*yScaleBottom/2));
+        float barWidth = (xLocRight - (Corner.getRegionWidth()*xScaleRight/2)) - (xLocLeft + (Corner.getRegionWidth()*xScaleLeft/2));
+        float lengthScale = barWidth/HorizontalUnit.getRegionWidth();
         canvas.draw(HorizontalUnit, Color.WHITE, HOrigin.x, HOrigin.y, xLocBottom, yLocBottom, 0.0f, lengthScale, yScaleBottom);
         canvas.draw(HorizontalUnit, Color.WHITE, HOrigin.x, HOrigin.y, xLocTop, yLocTop, 0.0f, lengthScale, yScaleTop);
 
-        float heightScale = barHeight/VerticalUnit.getWidth();
+        float heightScale = barHeight/VerticalUnit.getRegionWidth();
         canvas.draw(VerticalUnit, Color.WHITE, VOrigin.x, VOrigin.y, xLocLeft, yLocLeft, 0.0f, xScaleLeft, heightScale);
         canvas.draw(VerticalUnit, Color.WHITE, VOrigin.x, VOrigin.y, xLocRight, yLocRight, 0.0f, xScaleRight, heightScale);
     }
 
+    /** Tint of the lane backgrounds (so that drawing them does not change Color.WHITE) */
+    private final Color laneColor = new Color();
+
     /**
      * Draw the background of this bandMember
      * @param canvas
 
      */
-    public void drawBackground(GameCanvas canvas, Texture activeBackground, Texture inactiveBackground){
-        float xScale = width/activeBackground.getWidth();
-        float yScale = height/activeBackground.getHeight();
+    public void drawBackground(GameCanvas canvas, TextureRegion activeBackground, TextureRegion inactiveBackground){
+        float xScale = width/activeBackground.getRegionWidth();
+        float yScale = height/activeBackground.getRegionHeight();
 
-        float ixScale = width/inactiveBackground.getWidth();
-        float iyScale = height/inactiveBackground.getHeight();
-        Color tint = Color.WHITE;
-        tint.a = laneTint;
-        canvas.draw(activeBackground, tint, 0, 0, bottomLeftCorner.x, bottomLeftCorner.y, 0.0f, xScale, yScale);
-        Color itint = Color.WHITE;
-        itint.a = 1f - laneTint;
-        canvas.draw(inactiveBackground, tint, 0, 0, bottomLeftCorner.x, bottomLeftCorner.y, 0.0f, ixScale, iyScale);
+        float ixScale = width/inactiveBackground.getRegionWidth();
+        float iyScale = height/inactiveBackground.getRegionHeight();
+        laneColor.set(1f, 1f, 1f, laneTint);
+        canvas.draw(activeBackground, laneColor, 0, 0, bottomLeftCorner.x, bottomLeftCorner.y, 0.0f, xScale, yScale);
+        laneColor.a = 1f - laneTint;
+        canvas.draw(inactiveBackground, laneColor, 0, 0, bottomLeftCorner.x, bottomLeftCorner.y, 0.0f, ixScale, iyScale);
     }
 
     public void drawHPBar(GameCanvas canvas){
@@ -721,10 +748,10 @@ public class BandMember {
                 0.0f, scale, scale);
     }
 
-    public void drawArrow(GameCanvas canvas, Texture arrow) {
-        float scale = Math.min((bottomLeftCorner.y*1/4)/arrow.getHeight(), 1.5f*width/arrow.getWidth());
-        float trueHeight = scale*arrow.getHeight();
-        canvas.draw(arrow, Color.WHITE, arrow.getWidth()/2, arrow.getHeight()/2, bottomLeftCorner.x + width/5, (bottomLeftCorner.y - trueHeight),
+    public void drawArrow(GameCanvas canvas, TextureRegion arrow) {
+        float scale = Math.min((bottomLeftCorner.y*1/4)/arrow.getRegionHeight(), 1.5f*width/arrow.getRegionWidth());
+        float trueHeight = scale*arrow.getRegionHeight();
+        canvas.draw(arrow, Color.WHITE, arrow.getRegionWidth()/2, arrow.getRegionHeight()/2, bottomLeftCorner.x + width/5, (bottomLeftCorner.y - trueHeight),
                 90f, scale, scale);
     }
 
@@ -747,18 +774,18 @@ public class BandMember {
     /**
      * Draw separation lines to divide each line within this lane
      */
-    public void drawLineSeps(GameCanvas canvas, Texture lineSep){
+    public void drawLineSeps(GameCanvas canvas, TextureRegion lineSep){
         float thickness = width/50f;
-        float xScale = thickness/lineSep.getWidth();
+        float xScale = thickness/lineSep.getRegionWidth();
         float trueHeight = 0.95f*lineHeight;
-        float yScale = trueHeight/lineSep.getHeight();
+        float yScale = trueHeight/lineSep.getRegionHeight();
         float yCoord = ((bottomLeftCorner.y + height) + (bottomLeftCorner.y + height - lineHeight))/2f;
         for(int i = 1; i < numLines; ++i){
-            canvas.draw(lineSep, Color.WHITE, lineSep.getWidth()/2f, lineSep.getHeight()/2f, bottomLeftCorner.x + i * (width/numLines), yCoord, 0.0f, xScale, yScale);
+            canvas.draw(lineSep, Color.WHITE, lineSep.getRegionWidth()/2f, lineSep.getRegionHeight()/2f, bottomLeftCorner.x + i * (width/numLines), yCoord, 0.0f, xScale, yScale);
         }
     }
 
-    public void setIndicatorTextures(Texture texture, Texture textureHit) {
+    public void setIndicatorTextures(TextureRegion texture, TextureRegion textureHit) {
         noteIndicator = texture;
         noteIndicatorHit = textureHit;
     }
@@ -12,6 +12,7 @@ import edu.cornell.gdiac.util.*;
 
 import com.badlogic.gdx.math.*;
 import com.badlogic.gdx.graphics.*;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 
 /**
  * Model class for Notes.
@@ -158,10 +159,26 @@ public class Note {
 	FilmStrip animator;
 	Vector2 origin;
 
+	/**
+	 * Note constructor for notes that are only judged, never drawn (see GameSimulator)
+	 */
+	public Note(int line, NoteType n, long startSample) {
+		this.line = line;
+		nt = n;
+		this.startSample = startSample;
+	}
+
 	/**
 	 * Note constructor
 	 */
 	public Note(int line, NoteType n, long startSample, Texture t) {
+		this(line, n, startSample, new TextureRegion(t));
+	}
+
+	/**
+	 * Note constructor, drawing the note from a texture region (e.g. of an atlas)
+	 */
+	public Note(int line, NoteType n, long startSample, TextureRegion t) {
 		// Set minimum Y velocity for this shell
 		this.line = line;
 		hitStatus = 0;
@@ -193,6 +210,14 @@ public class Note {
 	 * @param texture
 	 */
 	public void setTexture(Texture texture) {
+		setTexture(new TextureRegion(texture));
+	}
+
+	/**
+	 * Sets the note texture region
+	 * @param texture
+	 */
+	public void setTexture(TextureRegion texture) {
 		animator = new FilmStrip(texture,1,NUM_ANIM_FRAMES,NUM_ANIM_FRAMES);
 		origin = new Vector2(animator.getRegionWidth()/2.0f, animator.getRegionHeight()/2.0f);
 		h = animator.getRegionHeight();
@@ -235,7 +260,7 @@ public class Note {
 	/**
 	 * Set the textures for held notes. This is outside the constructor because not every note is a held note
 	 */
-	public void setHoldTextures(Texture trail, int trailFrames, Texture end, int endFrames,
+	public void setHoldTextures(TextureRegion trail, int trailFrames, TextureRegion end, int endFrames,
 								FilmStrip backSplash, FilmStrip frontSplash, float holdingAnimationSpeed) {
 		trailAnimator = new FilmStrip(trail, 1, trailFrames, trailFrames);
 		this.trailFrames = trailFrames;
@@ -89,6 +89,26 @@ public class FilmStrip extends TextureRegion {
 		this(texture,rows,cols,size,0,0, texture.getWidth(), texture.getHeight() );
 	}
 
+	/**
+	 * Creates a new filmstrip from the given texture region.
+	 *
+	 * The parameter size is to indicate that there are unused frames in
+	 * the filmstrip.  The value size must be less than or equal to
+	 * rows*cols, or this constructor will raise an error.
+	 *
+	 * The filmstrip will use the entire region, so this can animate a
+	 * sprite sheet that was packed into a texture atlas.
+	 *
+	 * @param region The texture region to use
+	 * @param rows The number of rows in the filmstrip
+	 * @param cols The number of columns in the filmstrip
+	 * @param size The number of frames in the filmstrip
+	 */
+	public FilmStrip(TextureRegion region, int rows, int cols, int size) {
+		this(region.getTexture(),rows,cols,size,region.getRegionX(),region.getRegionY(),
+			 region.getRegionWidth(),region.getRegionHeight());
+	}
+
 	/**
 	 * Creates a new filmstrip from the given texture.
 	 * 
@@ -118,6 +138,10 @@ public class FilmStrip extends TextureRegion {
 		this.rows = rows;
 		this.cols = cols;
 		this.size = size;
+		this.x = x;
+		this.y = y;
+		this.width  = width;
+		this.height = height;
 		fwidth  = width/cols;
 		fheight = height/rows;
 		setFrame(0);
@@ -170,7 +194,7 @@ public class FilmStrip extends TextureRegion {
 	 * @return a copy of this filmstrip
 	 */
 	public FilmStrip copy() {
-		return new FilmStrip( getTexture(), rows, cols, size );
+		return new FilmStrip( getTexture(), rows, cols, size, x, y, width, height );
 	}
 
 }
\ No newline at end of file
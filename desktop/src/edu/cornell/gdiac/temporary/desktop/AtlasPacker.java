@@ -0,0 +1,81 @@
+package edu.cornell.gdiac.temporary.desktop;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.tools.texturepacker.TexturePacker;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonValue;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Packs the textures of the asset directory into texture atlases.
+ *
+ * The atlases and the texture keys that go into each of them are listed in atlases.json.
+ * Every region is named after its texture key, so that AssetDirectory.getRegion can find
+ * it. Images are packed as is (no rotation or whitespace stripping), so that film strip
+ * frames keep their grid. An image too big for an atlas page is left out, and the game
+ * keeps loading it as a plain texture.
+ *
+ * Run it with the packAtlases task of this project, from the assets directory.
+ */
+public class AtlasPacker {
+    /** The list of atlases to pack */
+    private static final String ATLAS_FILE = "atlases.json";
+    /** The asset directory, mapping texture keys to image files */
+    private static final String DIRECTORY_FILE = "assets.json";
+    /** The directory the atlases are written to */
+    private static final String OUTPUT_DIRECTORY = "atlases";
+
+    public static void main(String[] args) throws IOException {
+        JsonReader reader = new JsonReader();
+        JsonValue config = reader.parse(new File(ATLAS_FILE));
+        JsonValue textures = reader.parse(new File(DIRECTORY_FILE)).get("textures");
+
+        TexturePacker.Settings settings = new TexturePacker.Settings();
+        settings.maxWidth = config.getInt("maxSize", 4096);
+        settings.maxHeight = settings.maxWidth;
+        settings.paddingX = config.getInt("padding", 2);
+        settings.paddingY = settings.paddingX;
+        settings.duplicatePadding = true;
+        settings.rotation = false;
+        settings.stripWhitespaceX = false;
+        settings.stripWhitespaceY = false;
+        settings.useIndexes = false;
+        settings.filterMin = Texture.TextureFilter.Linear;
+        settings.filterMag = Texture.TextureFilter.Linear;
+
+        File output = new File(OUTPUT_DIRECTORY);
+        for (JsonValue atlas = config.get("atlases").child; atlas != null; atlas = atlas.next) {
+            TexturePacker packer = new TexturePacker(settings);
+            int packed = 0;
+            for (String key : atlas.asStringArray()) {
+                String file = textures.getString(key, null);
+                if (file == null) {
+                    System.err.println(atlas.name + ": no texture " + key);
+                    continue;
+                }
+                File source = new File(file);
+                if (!source.exists()) {
+                    System.err.println(atlas.name + ": missing " + file);
+                    continue;
+                }
+                BufferedImage image = ImageIO.read(source);
+                if (image.getWidth() + 2 * settings.paddingX > settings.maxWidth
+                        || image.getHeight() + 2 * settings.paddingY > settings.maxHeight) {
+                    System.err.println(atlas.name + ": " + file + " (" + image.getWidth() + "x" + image.getHeight()
+                            + ") does not fit a page, left as a texture");
+                    continue;
+                }
+                packer.addImage(image, key);
+                packed++;
+            }
+            if (packed > 0) {
+                packer.pack(output, atlas.name);
+            }
+            System.out.println(atlas.name + ": packed " + packed + " of " + atlas.size + " textures");
+        }
+    }
+}